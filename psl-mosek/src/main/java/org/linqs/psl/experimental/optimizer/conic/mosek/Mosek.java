@@ -19,6 +19,8 @@ package org.linqs.psl.experimental.optimizer.conic.mosek;
 
 import org.linqs.psl.config.Config;
 import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.SolutionStatus;
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
 import org.linqs.psl.experimental.optimizer.conic.program.ConeType;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
 import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
@@ -97,6 +99,7 @@ public class Mosek implements ConicProgramSolver {
 	private final double dFeasTol;
 	private final int numThreads;
 	private final solveform solveForm;
+	private final SolverStatistics statistics;
 
 	private static final List<ConeType> supportedCones = new ArrayList<ConeType>(3);
 	static {
@@ -116,6 +119,7 @@ public class Mosek implements ConicProgramSolver {
 		dFeasTol = Config.getDouble(DUAL_FEASIBILITY_THRESHOLD_KEY, DUAL_FEASIBILITY_THRESHOLD_DEFAULT);
 		numThreads = Config.getInt(NUM_THREADS_KEY, NUM_THREADS_DEFAULT);
 		solveForm = solveform.valueOf(Config.getString(SOLVE_FORM_KEY, SOLVE_FORM_DEFAULT));
+		statistics = new SolverStatistics();
 	}
 
 	@Override
@@ -128,13 +132,20 @@ public class Mosek implements ConicProgramSolver {
 		program = p;
 	}
 
+	@Override
+	public SolverStatistics getStatistics() {
+		return statistics;
+	}
+
 	@Override
 	public void solve() {
 		if (program == null) {
 			throw new IllegalStateException("No conic program has been set.");
 		}
 
+		statistics.clear();
 		program.checkOutMatrices();
+		statistics.addAssemblyTime(program.getAssemblyTime());
 		SparseCCDoubleMatrix2D A = program.getA();
 		DoubleMatrix1D x = program.getX();
 		DoubleMatrix1D b = program.getB();
@@ -238,6 +249,7 @@ public class Mosek implements ConicProgramSolver {
 
 			mosek.solsta solsta[] = new mosek.solsta[1];
 			task.getsolsta(mosek.soltype.itr, solsta);
+			recordStatistics(task, solsta[0]);
 
 			double[] solution = new double[A.columns()];
 			task.getsolutionslice(
@@ -254,6 +266,8 @@ public class Mosek implements ConicProgramSolver {
 				// Store solution in conic program.
 				x.assign(solution);
 				program.checkInMatrices();
+				if (program.getJournal() != null && statistics.getStatus() == SolutionStatus.Optimal)
+					program.getJournal().clear();
 				if (mosek.solsta.unknown.equals(solsta[0])) {
 					log.warn("Mosek solution status unknown.");
 				}
@@ -275,6 +289,25 @@ public class Mosek implements ConicProgramSolver {
 		}
 	}
 
+	/**
+	 * Copies the information items Mosek reports about the interior-point
+	 * optimizer into the statistics. Mosek does not report the times it
+	 * spends factorizing and solving, so they are left at zero.
+	 */
+	private void recordStatistics(Task task, mosek.solsta solsta) {
+		statistics.setIterations(task.getintinf(mosek.iinfitem.intpnt_iter));
+		statistics.setSolveTime((long) (task.getdouinf(mosek.dinfitem.optimizer_time) * 1e9));
+		statistics.updatePeakFactorNonZeros(task.getlintinf(mosek.liinfitem.intpnt_factor_num_nz));
+
+		double primalObj = task.getprimalobj(mosek.soltype.itr);
+		double dualObj = task.getdualobj(mosek.soltype.itr);
+		statistics.setSolution(
+				(mosek.solsta.optimal.equals(solsta) || mosek.solsta.near_optimal.equals(solsta)) ? SolutionStatus.Optimal : SolutionStatus.Unknown,
+				Math.abs(primalObj - dualObj) / (1 + Math.abs(dualObj)),
+				task.getdouinf(mosek.dinfitem.intpnt_primal_feas),
+				task.getdouinf(mosek.dinfitem.intpnt_dual_feas));
+	}
+
 	private static class MsgClass extends mosek.Stream {
 		public MsgClass () {
 			super ();
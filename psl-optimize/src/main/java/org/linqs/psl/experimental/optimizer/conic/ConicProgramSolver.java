@@ -28,4 +28,10 @@ public interface ConicProgramSolver {
 	public void solve();
 	
 	public boolean supportsConeTypes(Collection<ConeType> types);
+	
+	/**
+	 * Returns statistics about the last call to {@link #solve()}. The
+	 * returned object is reused, and cleared when solve() is called again.
+	 */
+	public SolverStatistics getStatistics();
 }
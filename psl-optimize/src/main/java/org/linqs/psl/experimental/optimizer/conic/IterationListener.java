@@ -0,0 +1,35 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic;
+
+/**
+ * Receives the state of an iterative {@link ConicProgramSolver} after each
+ * of its iterations.
+ */
+public interface IterationListener {
+	/**
+	 * Called by the solver's thread after each iteration.
+	 * <p>
+	 * The snapshot is reused for every iteration, so it should not be
+	 * kept after this method returns.
+	 *
+	 * @return true if the solver should stop, in which case it finishes with
+	 *         status {@link SolutionStatus#Aborted}
+	 */
+	public boolean iterationCompleted(ConicProgramSolver sender, IterationSnapshot snapshot);
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic;
+
+/**
+ * The state of a solver after one iteration, passed to
+ * {@link IterationListener IterationListeners}.
+ * <p>
+ * A solver reuses one snapshot for all of its iterations. Times are in
+ * nanoseconds and cover only the latest iteration. The measures of the
+ * iterate are those of {@link SolverStatistics}.
+ */
+public class IterationSnapshot {
+
+	private int iteration;
+	private double mu;
+	private double gap;
+	private double primalInfeasibility;
+	private double dualInfeasibility;
+	private double stepSize;
+
+	private long iterationTime;
+	private long factorizationTime;
+	private long triangularSolveTime;
+	private long stepSizeTime;
+	private int cgIterations;
+
+	/* Totals at the end of the previous iteration */
+	private long lastTime;
+	private long lastFactorizationTime;
+	private long lastTriangularSolveTime;
+	private long lastStepSizeTime;
+	private int lastCGIterations;
+
+	/**
+	 * Prepares for a new solve. Called by solvers.
+	 */
+	public void reset() {
+		lastTime = System.nanoTime();
+		lastFactorizationTime = 0;
+		lastTriangularSolveTime = 0;
+		lastStepSizeTime = 0;
+		lastCGIterations = 0;
+	}
+
+	/**
+	 * Records the state after an iteration. Called by solvers.
+	 *
+	 * @param statistics  the statistics of the current solve, from which the
+	 *                    iteration number and the times of the iteration
+	 *                    are taken
+	 */
+	public void update(double mu, double gap, double primalInfeasibility, double dualInfeasibility,
+			double stepSize, SolverStatistics statistics) {
+		long time = System.nanoTime();
+		iteration = statistics.getIterations();
+		this.mu = mu;
+		this.gap = gap;
+		this.primalInfeasibility = primalInfeasibility;
+		this.dualInfeasibility = dualInfeasibility;
+		this.stepSize = stepSize;
+
+		iterationTime = time - lastTime;
+		factorizationTime = statistics.getFactorizationTime() - lastFactorizationTime;
+		triangularSolveTime = statistics.getTriangularSolveTime() - lastTriangularSolveTime;
+		stepSizeTime = statistics.getStepSizeTime() - lastStepSizeTime;
+		cgIterations = statistics.getCGIterations() - lastCGIterations;
+
+		lastTime = time;
+		lastFactorizationTime = statistics.getFactorizationTime();
+		lastTriangularSolveTime = statistics.getTriangularSolveTime();
+		lastStepSizeTime = statistics.getStepSizeTime();
+		lastCGIterations = statistics.getCGIterations();
+	}
+
+	/**
+	 * @return the number of iterations completed, starting at one
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 * @return the average complementarity of the iterate
+	 */
+	public double getMu() {
+		return mu;
+	}
+
+	public double getGap() {
+		return gap;
+	}
+
+	public double getPrimalInfeasibility() {
+		return primalInfeasibility;
+	}
+
+	public double getDualInfeasibility() {
+		return dualInfeasibility;
+	}
+
+	/**
+	 * @return the size of the step taken, as a fraction of the search direction
+	 */
+	public double getStepSize() {
+		return stepSize;
+	}
+
+	public long getIterationTime() {
+		return iterationTime;
+	}
+
+	public long getFactorizationTime() {
+		return factorizationTime;
+	}
+
+	public long getTriangularSolveTime() {
+		return triangularSolveTime;
+	}
+
+	public long getStepSizeTime() {
+		return stepSizeTime;
+	}
+
+	public int getCGIterations() {
+		return cgIterations;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic;
+
+/**
+ * How a {@link ConicProgramSolver} finished solving a conic program.
+ */
+public enum SolutionStatus {
+	
+	/** The solver met its convergence criteria. */
+	Optimal,
+	
+	/** The solver stopped after its maximum number of iterations. */
+	IterationLimit,
+	
+	/** The solver stopped after its maximum time. */
+	TimeLimit,
+	
+	/** The solver stopped because an {@link IterationListener} asked it to. */
+	Aborted,
+	
+	/** The solver found that the program is infeasible. */
+	Infeasible,
+	
+	/** The solver found that the program is ill-posed. */
+	IllPosed,
+	
+	/** The solver could not take a step that kept its iterate near the central path. */
+	Stalled,
+	
+	/** The solver finished without a solution that it reports as optimal. */
+	Unknown;
+}
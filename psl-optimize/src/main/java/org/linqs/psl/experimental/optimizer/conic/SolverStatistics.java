@@ -0,0 +1,243 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic;
+
+/**
+ * Statistics about a call to {@link ConicProgramSolver#solve()}.
+ * <p>
+ * All times are in nanoseconds. A solver that cannot measure a quantity
+ * leaves it at zero, or at NaN for the measures of the solution. The
+ * gap is the relative duality gap |c'x - b'w| / (1 + |b'w|) for every
+ * solver. The infeasibilities are those the solver uses as stopping
+ * criteria, so they are only comparable between runs of the same solver.
+ */
+public class SolverStatistics {
+
+	private int iterations;
+	private long assemblyTime;
+	private long factorizationTime;
+	private long triangularSolveTime;
+	private int cgIterations;
+	private int correctors;
+	private long stepSizeTime;
+	private long solveTime;
+	private long peakFactorNonZeros;
+	private boolean warmStarted;
+
+	private SolutionStatus status;
+	private double gap;
+	private double primalInfeasibility;
+	private double dualInfeasibility;
+
+	public SolverStatistics() {
+		clear();
+	}
+
+	/**
+	 * Resets all statistics, as at the start of a solve.
+	 */
+	public void clear() {
+		iterations = 0;
+		assemblyTime = 0;
+		factorizationTime = 0;
+		triangularSolveTime = 0;
+		cgIterations = 0;
+		correctors = 0;
+		stepSizeTime = 0;
+		solveTime = 0;
+		peakFactorNonZeros = 0;
+		warmStarted = false;
+		status = null;
+		gap = Double.NaN;
+		primalInfeasibility = Double.NaN;
+		dualInfeasibility = Double.NaN;
+	}
+
+	/**
+	 * @return the number of iterations of the solver
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	public void addIteration() {
+		iterations++;
+	}
+
+	public void setIterations(int iterations) {
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @return the time spent assembling the matrices of the program(s)
+	 */
+	public long getAssemblyTime() {
+		return assemblyTime;
+	}
+
+	public void addAssemblyTime(long time) {
+		assemblyTime += time;
+	}
+
+	/**
+	 * @return the time spent factorizing normal systems
+	 */
+	public long getFactorizationTime() {
+		return factorizationTime;
+	}
+
+	public void addFactorizationTime(long time) {
+		factorizationTime += time;
+	}
+
+	/**
+	 * @return the time spent solving normal systems with their factors
+	 */
+	public long getTriangularSolveTime() {
+		return triangularSolveTime;
+	}
+
+	public void addTriangularSolveTime(long time) {
+		triangularSolveTime += time;
+	}
+
+	/**
+	 * @return the total number of conjugate gradient iterations
+	 */
+	public int getCGIterations() {
+		return cgIterations;
+	}
+
+	public void addCGIterations(int cgIterations) {
+		this.cgIterations += cgIterations;
+	}
+
+	/**
+	 * @return the total number of accepted centrality correctors
+	 */
+	public int getCorrectors() {
+		return correctors;
+	}
+
+	public void addCorrectors(int correctors) {
+		this.correctors += correctors;
+	}
+
+	/**
+	 * @return the time spent computing step sizes
+	 */
+	public long getStepSizeTime() {
+		return stepSizeTime;
+	}
+
+	public void addStepSizeTime(long time) {
+		stepSizeTime += time;
+	}
+
+	/**
+	 * @return the total time spent solving, not including assembly
+	 */
+	public long getSolveTime() {
+		return solveTime;
+	}
+
+	public void setSolveTime(long time) {
+		solveTime = time;
+	}
+
+	/**
+	 * @return the largest number of nonzeros in a factor of a normal system
+	 */
+	public long getPeakFactorNonZeros() {
+		return peakFactorNonZeros;
+	}
+
+	/**
+	 * Records the number of nonzeros in a factor, keeping the largest.
+	 */
+	public void updatePeakFactorNonZeros(long nonZeros) {
+		peakFactorNonZeros = Math.max(nonZeros, peakFactorNonZeros);
+	}
+
+	/**
+	 * @return whether the solver started from the solution stored in the program
+	 */
+	public boolean isWarmStarted() {
+		return warmStarted;
+	}
+
+	public void setWarmStarted(boolean warmStarted) {
+		this.warmStarted = warmStarted;
+	}
+
+	/**
+	 * @return how the solver finished, or null if no solve has finished
+	 */
+	public SolutionStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the relative duality gap of the solution
+	 */
+	public double getGap() {
+		return gap;
+	}
+
+	/**
+	 * @return the primal infeasibility of the solution
+	 */
+	public double getPrimalInfeasibility() {
+		return primalInfeasibility;
+	}
+
+	/**
+	 * @return the dual infeasibility of the solution
+	 */
+	public double getDualInfeasibility() {
+		return dualInfeasibility;
+	}
+
+	/**
+	 * Records how the solver finished and the quality of its solution.
+	 */
+	public void setSolution(SolutionStatus status, double gap, double primalInfeasibility, double dualInfeasibility) {
+		this.status = status;
+		this.gap = gap;
+		this.primalInfeasibility = primalInfeasibility;
+		this.dualInfeasibility = dualInfeasibility;
+	}
+
+	@Override
+	public String toString() {
+		return "Status: " + status
+				+ " -- Itr: " + iterations
+				+ " -- Warm Start: " + warmStarted
+				+ " -- Gap: " + gap
+				+ " -- P. Inf: " + primalInfeasibility
+				+ " -- D. Inf: " + dualInfeasibility
+				+ " -- Solve: " + solveTime / 1000000 + " ms"
+				+ " -- Assembly: " + assemblyTime / 1000000 + " ms"
+				+ " -- Factorization: " + factorizationTime / 1000000 + " ms"
+				+ " -- Tri. Solves: " + triangularSolveTime / 1000000 + " ms"
+				+ " -- Step Sizes: " + stepSizeTime / 1000000 + " ms"
+				+ " -- CG Itr: " + cgIterations
+				+ " -- Correctors: " + correctors
+				+ " -- Peak Factor NNZ: " + peakFactorNonZeros;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+
+/**
+ * A block-diagonal matrix with one dense, symmetric block per cone.
+ * <p>
+ * Block b covers the variables at indexes[blockPtr[b]] through
+ * indexes[blockPtr[b+1]-1], and its entries are stored in row-major order
+ * starting at position getValueStart(b) of getValues(). Matrices created
+ * with {@link #ConeBlockMatrix(ConeBlockMatrix)} share their structure.
+ */
+class ConeBlockMatrix {
+	
+	private final int[] blockPtr;
+	private final int[] indexes;
+	private final int[] valuePtr;
+	private final double[] values;
+	
+	/**
+	 * @param blockPtr  the start of each block in indexes, followed by the
+	 *                  length of indexes
+	 * @param indexes  the variables of the blocks
+	 */
+	ConeBlockMatrix(int[] blockPtr, int[] indexes) {
+		this.blockPtr = blockPtr;
+		this.indexes = indexes;
+		valuePtr = new int[blockPtr.length];
+		for (int b = 0; b < blockPtr.length - 1; b++) {
+			int size = blockPtr[b+1] - blockPtr[b];
+			valuePtr[b+1] = valuePtr[b] + size * size;
+		}
+		values = new double[valuePtr[blockPtr.length - 1]];
+	}
+	
+	/**
+	 * Creates a matrix with the same blocks as another.
+	 */
+	ConeBlockMatrix(ConeBlockMatrix structure) {
+		blockPtr = structure.blockPtr;
+		indexes = structure.indexes;
+		valuePtr = structure.valuePtr;
+		values = new double[structure.values.length];
+	}
+	
+	int getNumBlocks() {
+		return blockPtr.length - 1;
+	}
+	
+	int getBlockStart(int block) {
+		return blockPtr[block];
+	}
+	
+	int getBlockSize(int block) {
+		return blockPtr[block+1] - blockPtr[block];
+	}
+	
+	int[] getIndexes() {
+		return indexes;
+	}
+	
+	int getValueStart(int block) {
+		return valuePtr[block];
+	}
+	
+	double[] getValues() {
+		return values;
+	}
+	
+	/**
+	 * Computes z = this * y. Entries of z not covered by any block are
+	 * left unchanged.
+	 * 
+	 * @return z
+	 */
+	DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z) {
+		if (y == z)
+			throw new IllegalArgumentException("y and z must be different vectors.");
+		for (int b = 0; b < blockPtr.length - 1; b++) {
+			int start = blockPtr[b];
+			int size = blockPtr[b+1] - start;
+			int p = valuePtr[b];
+			if (size == 1) {
+				z.setQuick(indexes[start], values[p] * y.getQuick(indexes[start]));
+			}
+			else {
+				for (int i = 0; i < size; i++) {
+					double sum = 0.0;
+					for (int j = 0; j < size; j++)
+						sum += values[p++] * y.getQuick(indexes[start + j]);
+					z.setQuick(indexes[start + i], sum);
+				}
+			}
+		}
+		return z;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+/**
+ * The normal system of the primal or dual step of one element of a
+ * {@link ParallelPartitionedIPM} partition.
+ * <p>
+ * For an element with constraint matrix A and inverse barrier Hessian Hinv,
+ * the system is (A Hinv A^T) dw = A Hinv r. The dual step is dw and
+ * ds = -A^T dw. The primal step also has dx = -Hinv (r + ds) / mu.
+ * <p>
+ * Each method may be called from any thread, but only one at a time.
+ */
+interface ElementSystem {
+	/**
+	 * Sets the inverse barrier Hessian used by later factorizations and solves.
+	 */
+	public void setInvH(SparseCCDoubleMatrix2D Hinv);
+
+	/**
+	 * Factorizes the system with the current inverse barrier Hessian.
+	 */
+	public void factorize();
+
+	/**
+	 * @return the time spent in the latest factorization, in nanoseconds
+	 */
+	public long getFactorizationTime();
+
+	/**
+	 * @return the number of nonzeros in the latest factor
+	 */
+	public long getFactorNonZeros();
+
+	/**
+	 * Computes the step for a residual.
+	 * 
+	 * @param stale  whether the inverse barrier Hessian has been set since
+	 *               the latest factorization, in which case the factor
+	 *               preconditions a conjugate gradient refinement
+	 */
+	public void solve(DoubleMatrix1D r, double mu, boolean stale);
+
+	/**
+	 * @return dx of the latest solve, or null for a dual system
+	 */
+	public DoubleMatrix1D getDx();
+
+	/**
+	 * @return dw of the latest solve
+	 */
+	public DoubleMatrix1D getDw();
+
+	/**
+	 * @return ds of the latest solve
+	 */
+	public DoubleMatrix1D getDs();
+
+	/**
+	 * @return the time spent solving with the factor in the latest solve,
+	 *         in nanoseconds
+	 */
+	public long getSolveTime();
+
+	/**
+	 * @return the number of conjugate gradient iterations of the latest solve
+	 */
+	public int getCGIterations();
+}
@@ -19,14 +19,22 @@ package org.linqs.psl.experimental.optimizer.conic.ipm;
 
 import org.linqs.psl.config.Config;
 import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.IterationListener;
+import org.linqs.psl.experimental.optimizer.conic.IterationSnapshot;
+import org.linqs.psl.experimental.optimizer.conic.SolutionStatus;
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
+import org.linqs.psl.experimental.optimizer.conic.ipm.solver.MatrixFreeNormalSystemSolver;
 import org.linqs.psl.experimental.optimizer.conic.ipm.solver.NormalSystemSolver;
+import org.linqs.psl.experimental.optimizer.conic.program.ChangeJournal;
 import org.linqs.psl.experimental.optimizer.conic.program.Cone;
 import org.linqs.psl.experimental.optimizer.conic.program.ConeType;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
 import org.linqs.psl.experimental.optimizer.conic.program.NonNegativeOrthantCone;
+import org.linqs.psl.experimental.optimizer.conic.program.RotatedSecondOrderCone;
 import org.linqs.psl.experimental.optimizer.conic.program.SecondOrderCone;
 import org.linqs.psl.experimental.optimizer.conic.program.Variable;
 import org.linqs.psl.experimental.optimizer.conic.util.Dualizer;
+import org.linqs.psl.experimental.optimizer.conic.util.WorkerPool;
 
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
@@ -39,13 +47,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
  * Primal-dual interior-point method using the self-dual homogeneous model.
  *
- * Supports conic programs with non-negative orthant cones and second-order cones.
+ * Supports conic programs with non-negative orthant cones, second-order cones,
+ * and rotated second-order cones. The IPM solves rotated second-order cones
+ * as second-order cones after rotating the coordinates of their nth and
+ * (n-1)st variables.
  *
  * This solver follows the algorithm presented in
  * E. D. Andersen, C. Roos and T. Terlaky. "On implementing a primal-dual
@@ -133,17 +146,90 @@ public class HomogeneousIPM implements ConicProgramSolver {
 	/** Default value for DELTA_KEY property. */
 	public static final double DELTA_DEFAULT = 0.5;
 
+	/**
+	 * Key for boolean property. If true, the IPM will start from the solution
+	 * stored in the conic program, moved toward the central path, instead of
+	 * from the centers of the cones. If the stored solution cannot be used,
+	 * the IPM will start from the centers of the cones. If the program keeps
+	 * a {@link ChangeJournal}, the stored solution is only used if the
+	 * structure of the program has not changed since it was last solved to
+	 * optimality.
+	 */
+	public static final String WARM_START_KEY = CONFIG_PREFIX + ".warmstart";
+	/** Default value for WARM_START_KEY property. */
+	public static final boolean WARM_START_DEFAULT = false;
+
+	/**
+	 * Key for double property in (0,1]. When warm starting, the IPM will start
+	 * from a convex combination of the stored solution and the centers of the
+	 * cones in which the centers have its value as their weight.
+	 */
+	public static final String WARM_START_CENTERING_KEY = CONFIG_PREFIX + ".warmstartcentering";
+	/** Default value for WARM_START_CENTERING_KEY property. */
+	public static final double WARM_START_CENTERING_DEFAULT = 0.1;
+
+	/**
+	 * Key for positive integer property. The number of threads used to
+	 * process the cones in each step. Results do not depend on its value.
+	 * Solvers with the same number of threads share one {@link WorkerPool}.
+	 */
+	public static final String THREADS_KEY = CONFIG_PREFIX + ".threads";
+	/** Default value for THREADS_KEY property. */
+	public static final int THREADS_DEFAULT = 1;
+
+	/**
+	 * Key for non-negative integer property. The IPM will try up to this many
+	 * centrality correctors in each step, reusing the step's factorization,
+	 * and keep each one that sufficiently lengthens the step.
+	 */
+	public static final String CORRECTORS_KEY = CONFIG_PREFIX + ".correctors";
+	/** Default value for CORRECTORS_KEY property. */
+	public static final int CORRECTORS_DEFAULT = 0;
+
+	/**
+	 * Key for positive integer property. The IPM will stop after this many
+	 * iterations and return the best iterate found.
+	 *
+	 * @see #getStatus()
+	 */
+	public static final String MAX_ITERATIONS_KEY = CONFIG_PREFIX + ".maxiterations";
+	/** Default value for MAX_ITERATIONS_KEY property. */
+	public static final int MAX_ITERATIONS_DEFAULT = Integer.MAX_VALUE;
+
+	/**
+	 * Key for positive long property. The IPM will stop after the first
+	 * iteration that ends this many milliseconds after the IPM started and
+	 * return the best iterate found.
+	 *
+	 * @see #getStatus()
+	 */
+	public static final String MAX_TIME_KEY = CONFIG_PREFIX + ".maxtime";
+	/** Default value for MAX_TIME_KEY property. */
+	public static final long MAX_TIME_DEFAULT = Long.MAX_VALUE;
+
+	/* Each centrality corrector aims for a step this much longer */
+	private static final double CORRECTOR_STEP_INCREASE = 0.1;
+	/* and is kept if it achieves at least this fraction of the increase */
+	private static final double CORRECTOR_ACCEPTANCE = 0.1;
+	/* Correctors move complementarity products into this range around the target */
+	private static final double CORRECTOR_MIN_PRODUCT = 0.1;
+	private static final double CORRECTOR_MAX_PRODUCT = 10.0;
+
 	/**
 	 * Should be set to a {@link NormalSystemSolver} or the fully qualified
 	 * name of one. Will be used to instantiate a {@link NormalSystemSolver}.
+	 * A {@link MatrixFreeNormalSystemSolver} is given A and the scaling
+	 * instead of the normal matrix when all cones are non-negative orthant
+	 * cones.
 	 */
 	public static final String NORMAL_SYS_SOLVER_KEY = CONFIG_PREFIX + ".normalsolver";
 	public static final String NORMAL_SYS_SOLVER_DEFAULT = "org.linqs.psl.experimental.optimizer.conic.ipm.solver.Cholesky";
 
-	private static final ArrayList<ConeType> supportedCones = new ArrayList<ConeType>(2);
+	private static final ArrayList<ConeType> supportedCones = new ArrayList<ConeType>(3);
 	static {
 		supportedCones.add(ConeType.NonNegativeOrthantCone);
 		supportedCones.add(ConeType.SecondOrderCone);
+		supportedCones.add(ConeType.RotatedSecondOrderCone);
 	}
 
 	private ConicProgram currentProgram;
@@ -158,9 +244,28 @@ public class HomogeneousIPM implements ConicProgramSolver {
 	private final double muThreshold;
 	private final double beta;
 	private final double delta;
+	private final boolean warmStart;
+	private final double warmStartCentering;
 	private final NormalSystemSolver solver;
+	private final WorkerPool pool;
+	private final int numCorrectors;
+	private final int maxIterations;
+	private final long maxTime;
 
 	private int stepNum;
+	private double lastStepSize;
+	private boolean warmStarted;
+
+	/* Statistics, status, and quality of the last solution */
+	private final SolverStatistics statistics;
+
+	private final Set<IterationListener> listeners;
+	private final IterationSnapshot snapshot;
+
+	/* Best iterate found, scaled by tau, if the IPM can stop early */
+	private DoubleMatrix1D bestX;
+	private DoubleMatrix1D bestW;
+	private DoubleMatrix1D bestS;
 
 	/* Data structures for computing objective, infeasibility, etc. */
 	private DoubleMatrix1D baseResP;
@@ -172,6 +277,32 @@ public class HomogeneousIPM implements ConicProgramSolver {
 	private SparseDoubleMatrix2D T;
 	private DoubleMatrix1D e;
 
+	/*
+	 * The variables of each cone, as blocks of blockIndexes starting at the
+	 * entries of blockPtr. NNOCs come first, followed by SOCs, each of which
+	 * starts with its nth variable, and then RSOCs, each of which starts with
+	 * its nth and (n-1)st variables.
+	 *
+	 * Each NNOC is a block of one variable, so the ith NNOC is block i and
+	 * its variable is blockIndexes[i], for i less than numNNOCs. Each pass
+	 * over the cones processes the NNOCs in one loop and the other cones in
+	 * another.
+	 */
+	private int[] blockPtr;
+	private int[] blockIndexes;
+	private int numNNOCs;
+
+	/*
+	 * The nth and (n-1)st variables of each RSOC. While solving, x and s hold
+	 * (x_n + x_(n-1)) / sqrt(2) and (x_n - x_(n-1)) / sqrt(2) in their places,
+	 * which makes each RSOC an SOC. rotatedA and rotatedC are A and c in these
+	 * coordinates, or the program's own if it has no RSOCs.
+	 */
+	private int[] rsocN;
+	private int[] rsocNMinus1;
+	private SparseCCDoubleMatrix2D rotatedA;
+	private DoubleMatrix1D rotatedC;
+
 	/* Additional numeric variables for the homogeneous model */
 	private double tau;
 	private double kappa;
@@ -182,8 +313,8 @@ public class HomogeneousIPM implements ConicProgramSolver {
 	/* Intermediates for computing residuals */
 	private DoubleMatrix1D dxn;
 	private DoubleMatrix1D dsn;
-	private DoubleMatrix2D Dxn;
-	private DoubleMatrix2D Dsn;
+	private ConeBlockMatrix Dxn;
+	private ConeBlockMatrix Dsn;
 
 	/* Residuals */
 	private DoubleMatrix1D r1;
@@ -194,12 +325,20 @@ public class HomogeneousIPM implements ConicProgramSolver {
 
 	/* Intermediates for computing search directions*/
 	private double mu;
-	private SparseCCDoubleMatrix2D XBar;
-	private SparseCCDoubleMatrix2D invXBar;
-	private SparseCCDoubleMatrix2D ThetaW;
-	private SparseCCDoubleMatrix2D invThetaInvW;
-	private SparseCCDoubleMatrix2D invThetaSqInvWSq;
-	private SparseCCDoubleMatrix2D AInvThetaSqInvWSq;
+	private ConeBlockMatrix XBar;
+	private ConeBlockMatrix invXBar;
+	private ConeBlockMatrix ThetaW;
+	private ConeBlockMatrix invThetaInvW;
+	private ConeBlockMatrix invThetaSqInvWSq;
+	private NormalMatrixProduct normalProduct;
+
+	/*
+	 * The solver and the diagonal of invThetaSqInvWSq if the solver is a
+	 * MatrixFreeNormalSystemSolver and all cones are NNOCs, in which case
+	 * normalProduct is not used
+	 */
+	private MatrixFreeNormalSystemSolver matrixFreeSolver;
+	private DoubleMatrix1D scalingDiagonal;
 	private DoubleMatrix1D g1;
 	private DoubleMatrix1D g2;
 
@@ -217,6 +356,12 @@ public class HomogeneousIPM implements ConicProgramSolver {
 	private double dTauDescaled;
 	private double dKappaDescaled;
 
+	/* Centrality correctors and the search direction before one is applied */
+	private DoubleMatrix1D corrector;
+	private DoubleMatrix1D dxSaved;
+	private DoubleMatrix1D dwSaved;
+	private DoubleMatrix1D dsSaved;
+
 	/* Scratch vectors */
 	private DoubleMatrix1D scratchN1;
 	private DoubleMatrix1D scratchN2;
@@ -224,6 +369,23 @@ public class HomogeneousIPM implements ConicProgramSolver {
 	private DoubleMatrix1D scratchM1;
 	private DoubleMatrix1D scratchM2;
 
+	/* Scratch arrays for the cones, one per chunk of cones */
+	private double[][] coneScratch1;
+	private double[][] coneScratch2;
+	private double[][] coneScratch3;
+	private double[][] coneScratch4;
+	private double[][] coneScratch5;
+	private final double[] partials;
+	private final int[] chunkSteps;
+
+	/* Tasks for processing chunks of cones in parallel */
+	private final ScalingTask scalingTask;
+	private final UpdateTask updateTask;
+	private final ArrowheadTask arrowheadTask;
+	private final MaxStepTask maxStepTask;
+	private final StepSizeTask stepSizeTask;
+	private final CorrectorTask correctorTask;
+
 	public HomogeneousIPM() {
 		tryDualize = Config.getBoolean(DUALIZE_KEY, DUALIZE_DEFAULT);
 		infeasibilityThreshold = Config.getDouble(INFEASIBILITY_THRESHOLD_KEY, INFEASIBILITY_THRESHOLD_DEFAULT);
@@ -232,12 +394,41 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		muThreshold = Config.getDouble(MU_THRESHOLD_KEY, MU_THRESHOLD_DEFAULT);
 		beta = Config.getDouble(BETA_KEY, BETA_DEFAULT);
 		solver = (NormalSystemSolver)Config.getNewObject(NORMAL_SYS_SOLVER_KEY, NORMAL_SYS_SOLVER_DEFAULT);
+		statistics = new SolverStatistics();
+		solver.setStatistics(statistics);
+		listeners = new HashSet<IterationListener>();
+		snapshot = new IterationSnapshot();
 
 		if (beta <= 0 || beta >= 1)
 			throw new IllegalArgumentException("Property " + BETA_KEY + " must be in (0,1).");
 		delta = Config.getDouble(DELTA_KEY, DELTA_DEFAULT);
 		if (delta < 0 || delta > 1)
 			throw new IllegalArgumentException("Property " + DELTA_KEY + " must be in [0,1].");
+		warmStart = Config.getBoolean(WARM_START_KEY, WARM_START_DEFAULT);
+		warmStartCentering = Config.getDouble(WARM_START_CENTERING_KEY, WARM_START_CENTERING_DEFAULT);
+		if (warmStartCentering <= 0 || warmStartCentering > 1)
+			throw new IllegalArgumentException("Property " + WARM_START_CENTERING_KEY + " must be in (0,1].");
+		numCorrectors = Config.getInt(CORRECTORS_KEY, CORRECTORS_DEFAULT);
+		if (numCorrectors < 0)
+			throw new IllegalArgumentException("Property " + CORRECTORS_KEY + " must be non-negative.");
+		maxIterations = Config.getInt(MAX_ITERATIONS_KEY, MAX_ITERATIONS_DEFAULT);
+		if (maxIterations < 1)
+			throw new IllegalArgumentException("Property " + MAX_ITERATIONS_KEY + " must be positive.");
+		maxTime = Config.getLong(MAX_TIME_KEY, MAX_TIME_DEFAULT);
+		if (maxTime < 1)
+			throw new IllegalArgumentException("Property " + MAX_TIME_KEY + " must be positive.");
+		int threads = Config.getInt(THREADS_KEY, THREADS_DEFAULT);
+		if (threads < 1)
+			throw new IllegalArgumentException("Property " + THREADS_KEY + " must be positive.");
+		pool = WorkerPool.getShared(threads);
+		partials = new double[threads];
+		chunkSteps = new int[threads];
+		scalingTask = new ScalingTask();
+		updateTask = new UpdateTask();
+		arrowheadTask = new ArrowheadTask();
+		maxStepTask = new MaxStepTask();
+		stepSizeTask = new StepSizeTask();
+		correctorTask = new CorrectorTask();
 
 		currentProgram = null;
 		dualized = false;
@@ -268,6 +459,7 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		ConicProgram program;
 		boolean checkedOutDualProgram = false;
 
+		statistics.clear();
 		currentProgram.checkOutMatrices();
 
 		if (dualized && Dualizer.supportsConeTypes(currentProgram.getConeTypes())) {
@@ -283,14 +475,25 @@ public class HomogeneousIPM implements ConicProgramSolver {
 
 		if (!supportsConeTypes(program.getConeTypes())) {
 			throw new IllegalStateException("Program contains at least one unsupported cone."
-					+ " Supported cones are non-negative orthant cones and second-order cones.");
+					+ " Supported cones are non-negative orthant cones, second-order cones,"
+					+ " and rotated second-order cones.");
 		}
 
 		DoubleMatrix2D A = program.getA();
 
 		log.debug("Starting optimization with {} variables and {} constraints.", A.columns(), A.rows());
 
+		long assemblyTime = currentProgram.getAssemblyTime();
+		if (program != currentProgram)
+			assemblyTime += program.getAssemblyTime();
+		statistics.addAssemblyTime(assemblyTime);
+		long start = System.currentTimeMillis();
+		long nanoStart = System.nanoTime();
+		snapshot.reset();
+
 		doSolve(program);
+		long solveTime = System.currentTimeMillis() - start;
+		statistics.setSolveTime(System.nanoTime() - nanoStart);
 
 		if (checkedOutDualProgram) {
 			program.checkInMatrices();
@@ -298,34 +501,114 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		}
 
 		currentProgram.checkInMatrices();
+		if (currentProgram.getJournal() != null && statistics.getStatus() == SolutionStatus.Optimal)
+			currentProgram.getJournal().clear();
+
+		log.debug("Completed optimization in {} ms and {} iterations{} with status {}. Assembling matrices took {} ms.",
+				new Object[] {solveTime, stepNum, (warmStarted) ? " from a warm start" : "", statistics.getStatus(), assemblyTime / 1000000});
+		log.debug("Statistics: {}", statistics);
+	}
 
-		log.debug("Completed optimization.");
+	@Override
+	public SolverStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Returns how the last call to {@link #solve()} finished.
+	 * <p>
+	 * If the IPM stopped because of its iteration or time budget, the program
+	 * holds the best iterate found instead of an optimal solution. Iterates
+	 * that are primal feasible are preferred by duality gap, and others by
+	 * primal infeasibility.
+	 * <p>
+	 * If the IPM has a budget or an {@link IterationListener}, it also
+	 * finishes with the best iterate instead of throwing an exception when
+	 * it finds that the program is infeasible or ill-posed or when it cannot
+	 * take a step, and reports why with {@link SolutionStatus#Infeasible},
+	 * {@link SolutionStatus#IllPosed}, or {@link SolutionStatus#Stalled}.
+	 *
+	 * @return the status, or null if no program has been solved
+	 */
+	public SolutionStatus getStatus() {
+		return statistics.getStatus();
+	}
+
+	/**
+	 * Returns the relative duality gap of the solution found by the last call
+	 * to {@link #solve()}. Like the infeasibilities, it is measured on the
+	 * program the IPM solved, which is the dual program if it dualized.
+	 */
+	public double getGap() {
+		return statistics.getGap();
+	}
+
+	/**
+	 * Returns the relative primal infeasibility of the solution found by the
+	 * last call to {@link #solve()}.
+	 */
+	public double getPrimalInfeasibility() {
+		return statistics.getPrimalInfeasibility();
+	}
+
+	/**
+	 * Returns the relative dual infeasibility of the solution found by the
+	 * last call to {@link #solve()}.
+	 */
+	public double getDualInfeasibility() {
+		return statistics.getDualInfeasibility();
+	}
+
+	/**
+	 * Registers a listener to be notified after each iteration. Listeners
+	 * can stop the IPM, which then finishes with the best iterate found,
+	 * as when its budget runs out.
+	 */
+	public void registerForIterationEvents(IterationListener l) {
+		listeners.add(l);
+	}
+
+	public void unregisterForIterationEvents(IterationListener l) {
+		listeners.remove(l);
 	}
 
 	private void doSolve(ConicProgram program) {
+		long start = System.currentTimeMillis();
 		solver.setConicProgram(program);
 
-		DoubleMatrix2D A = program.getA();
 		DoubleMatrix1D x = program.getX();
 		DoubleMatrix1D b = program.getB();
 		DoubleMatrix1D w = program.getW();
 		DoubleMatrix1D s = program.getS();
-		DoubleMatrix1D c = program.getC();
 
 		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
 
 		double cDotX, bDotW;
-		double gapInfeasibility, mu, primalInfeasibility, dualInfeasibility, gap;
+		double gapInfeasibility, mu;
+		double primalInfeasibility = Double.POSITIVE_INFINITY, dualInfeasibility = Double.POSITIVE_INFINITY, gap = Double.POSITIVE_INFINITY;
 		boolean primalFeasible, dualFeasible, gapIsSmall, gapFeasible, tauIsSmall, tauIsVerySmall, muIsSmall;
-		boolean solved, programInfeasible, illPosed;
+		boolean solved = false, programInfeasible = false, illPosed = false;
+		boolean iterationLimit = false, timeLimit = false, aborted = false, stalled = false;
+		boolean budgeted = maxIterations < Integer.MAX_VALUE || maxTime < Long.MAX_VALUE || !listeners.isEmpty();
+		double bestGap = Double.POSITIVE_INFINITY;
+		double bestPrimalInfeasibility = Double.POSITIVE_INFINITY;
+		double bestDualInfeasibility = Double.POSITIVE_INFINITY;
 
 		/* Initializes program matrices that can be reused for entire procedure */
 		initializeProgramMatrices(program);
+		DoubleMatrix2D A = rotatedA;
+		DoubleMatrix1D c = rotatedC;
 
 		/* Initializes program variables */
-		T.zMult(e, x);
-		s.assign(x);
-		w.assign(0.0);
+		warmStarted = warmStart && isStoredSolutionReusable() && initializeWarmStart(program);
+		statistics.setWarmStarted(warmStarted);
+		rotateRSOCs(x);
+		rotateRSOCs(s);
+		if (!warmStarted) {
+			T.zMult(e, x);
+			s.assign(x);
+			w.assign(0.0);
+		}
 
 		/* Initializes special variables for the homogeneous model */
 		tau = 1;
@@ -335,29 +618,42 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		v = x.copy();
 
 		/* Performs additional variable setup for NNOCs */
-		for (NonNegativeOrthantCone cone : program.getNonNegativeOrthantCones()) {
-			int index = program.getIndex(cone.getVariable());
+		for (int i = 0; i < numNNOCs; i++) {
+			int index = blockIndexes[i];
 			d.setQuick(index, 1.0);
 			detD.setQuick(index, 1.0);
-			v.setQuick(index, 1.0);
+			v.setQuick(index, Math.sqrt(x.getQuick(index) * s.getQuick(index)));
 		}
 
+		/* At the centers of the cones, the scaling of the SOCs is the identity */
+		if (warmStarted)
+			initializeSOCScaling(program);
+
 		/* Initializes data structures to be reused in each step */
 		int m = A.rows();
 		int n = A.columns();
 
-		/*
-		 * Initializes vectors for search direction intermediates. Matrices
-		 * will be initialized the first time getIntermediates() is called.
-		 */
+		/* Initializes matrices and vectors for search direction intermediates */
+		ThetaW = new ConeBlockMatrix(blockPtr, blockIndexes);
+		invThetaInvW = new ConeBlockMatrix(ThetaW);
+		invThetaSqInvWSq = new ConeBlockMatrix(ThetaW);
+		XBar = new ConeBlockMatrix(ThetaW);
+		invXBar = new ConeBlockMatrix(ThetaW);
+		if (solver instanceof MatrixFreeNormalSystemSolver && numNNOCs == blockPtr.length - 1) {
+			matrixFreeSolver = (MatrixFreeNormalSystemSolver) solver;
+			matrixFreeSolver.setConstraintMatrix(rotatedA);
+			scalingDiagonal = new DenseDoubleMatrix1D(n);
+		}
+		else
+			normalProduct = new NormalMatrixProduct(rotatedA, ThetaW);
 		g1 = new DenseDoubleMatrix1D(n);
 		g2 = new DenseDoubleMatrix1D(m);
 
 		/* Initializes vectors and matrices for intermediates for residuals */
 		dxn = new DenseDoubleMatrix1D((int) x.size());
 		dsn = new DenseDoubleMatrix1D((int) s.size());
-		Dxn = new SparseDoubleMatrix2D(n, n, n*4, 0.2, 0.5);
-		Dsn = new SparseDoubleMatrix2D(n, n, n*4, 0.2, 0.5);
+		Dxn = new ConeBlockMatrix(ThetaW);
+		Dsn = new ConeBlockMatrix(ThetaW);
 
 		/* Initializes vectors for residuals */
 		r1  = new DenseDoubleMatrix1D(m);
@@ -381,6 +677,21 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		scratchM1 = new DenseDoubleMatrix1D(m);
 		scratchM2 = new DenseDoubleMatrix1D(m);
 
+		/* Initializes vectors for centrality correctors */
+		if (numCorrectors > 0) {
+			corrector = new DenseDoubleMatrix1D(n);
+			dxSaved = new DenseDoubleMatrix1D(n);
+			dwSaved = new DenseDoubleMatrix1D(m);
+			dsSaved = new DenseDoubleMatrix1D(n);
+		}
+
+		/* Initializes vectors for the best iterate */
+		if (budgeted) {
+			bestX = new DenseDoubleMatrix1D(n);
+			bestW = new DenseDoubleMatrix1D(m);
+			bestS = new DenseDoubleMatrix1D(n);
+		}
+
 		/* Computes values to measure objective, infeasibility, etc. */
 		baseResP = A.zMult(x, b.copy().assign(DoubleFunctions.mult(tau)), 1.0, -1.0, false);
 		baseResD = A.zMult(w, c.copy().assign(DoubleFunctions.mult(tau)), 1.0, -1.0, true);
@@ -398,7 +709,17 @@ public class HomogeneousIPM implements ConicProgramSolver {
 
 		stepNum = 0;
 		do {
-			step(program);
+			try {
+				step(program);
+			}
+			catch (StuckException e) {
+				if (!budgeted) {
+					removeMatrixReferences();
+					throw e;
+				}
+				stalled = true;
+				break;
+			}
 
 			mu	  = (v.zDotProduct(v) + tau * kappa) / (k+1);
 			cDotX  = c.zDotProduct(x);
@@ -417,6 +738,14 @@ public class HomogeneousIPM implements ConicProgramSolver {
 			gap = Math.abs(cDotX / tau - bDotW / tau) / (1 + Math.abs(bDotW / tau));
 
 			log.trace("Itr: {} -- Comp: {} -- P. Inf: {} -- D. Inf: {} -- Sig: {}", new Object[] {++stepNum, mu, primalInfeasibility, dualInfeasibility, gap});
+			statistics.addIteration();
+
+			aborted = false;
+			if (!listeners.isEmpty()) {
+				snapshot.update(mu, gap, primalInfeasibility, dualInfeasibility, lastStepSize, statistics);
+				for (IterationListener l : listeners)
+					aborted = l.iterationCompleted(this, snapshot) || aborted;
+			}
 
 			primalFeasible  = primalInfeasibility <= infeasibilityThreshold;
 			dualFeasible	 = dualInfeasibility <= infeasibilityThreshold;
@@ -429,19 +758,72 @@ public class HomogeneousIPM implements ConicProgramSolver {
 			solved				 = primalFeasible && dualFeasible && gapIsSmall;
 			programInfeasible  = primalFeasible && dualFeasible && gapFeasible && tauIsSmall;
 			illPosed			  = muIsSmall && tauIsVerySmall;
-		} while (!solved && !programInfeasible && !illPosed);
 
-		removeMatrixReferences();
+			/* Keeps the best iterate in case the budget runs out or a listener stops the IPM */
+			if (budgeted && (
+					(primalFeasible && (bestPrimalInfeasibility > infeasibilityThreshold || gap < bestGap))
+					|| (!primalFeasible && primalInfeasibility < bestPrimalInfeasibility))) {
+				bestX.assign(x).assign(DoubleFunctions.div(tau));
+				bestW.assign(w).assign(DoubleFunctions.div(tau));
+				bestS.assign(s).assign(DoubleFunctions.div(tau));
+				bestGap = gap;
+				bestPrimalInfeasibility = primalInfeasibility;
+				bestDualInfeasibility = dualInfeasibility;
+			}
+
+			iterationLimit = stepNum >= maxIterations;
+			timeLimit = System.currentTimeMillis() - start >= maxTime;
+		} while (!solved && !programInfeasible && !illPosed && !iterationLimit && !timeLimit && !aborted);
 
-		if (illPosed)
+		if (illPosed && !budgeted) {
+			removeMatrixReferences();
 			throw new IllegalArgumentException("Optimization program is ill-posed.");
-		else if (programInfeasible)
+		}
+		else if (programInfeasible && !budgeted) {
+			removeMatrixReferences();
 			throw new IllegalArgumentException("Optimization program is infeasible.");
-		else {
+		}
+		else if (solved && !illPosed && !programInfeasible) {
 			x.assign(DoubleFunctions.div(tau));
 			w.assign(DoubleFunctions.div(tau));
 			s.assign(DoubleFunctions.div(tau));
+			statistics.setSolution(SolutionStatus.Optimal, gap, primalInfeasibility, dualInfeasibility);
+		}
+		else {
+			/* Stalling on the first step leaves no best iterate, so keeps the starting point */
+			if (bestPrimalInfeasibility < Double.POSITIVE_INFINITY) {
+				x.assign(bestX);
+				w.assign(bestW);
+				s.assign(bestS);
+			}
+			else {
+				x.assign(DoubleFunctions.div(tau));
+				w.assign(DoubleFunctions.div(tau));
+				s.assign(DoubleFunctions.div(tau));
+			}
+
+			SolutionStatus status;
+			if (stalled)
+				status = SolutionStatus.Stalled;
+			else if (illPosed)
+				status = SolutionStatus.IllPosed;
+			else if (programInfeasible)
+				status = SolutionStatus.Infeasible;
+			else if (aborted)
+				status = SolutionStatus.Aborted;
+			else if (iterationLimit)
+				status = SolutionStatus.IterationLimit;
+			else
+				status = SolutionStatus.TimeLimit;
+			statistics.setSolution(status, bestGap, bestPrimalInfeasibility, bestDualInfeasibility);
+			log.debug("Stopped early ({}) with gap {}, primal infeasibility {}, and dual infeasibility {}.",
+					new Object[] {status, bestGap, bestPrimalInfeasibility, bestDualInfeasibility});
 		}
+
+		rotateRSOCs(x);
+		rotateRSOCs(s);
+
+		removeMatrixReferences();
 	}
 
 	private void step(ConicProgram program) {
@@ -449,7 +831,6 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		DoubleMatrix1D		x	= program.getX();
 		DoubleMatrix1D		w	= program.getW();
 		DoubleMatrix1D		s	= program.getS();
-		DenseDoubleAlgebra  alg = new DenseDoubleAlgebra();
 		getIntermediates(program);
 
 		/* Computes affine scaling (Newton) direction */
@@ -463,11 +844,13 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		/* Computes corrected direction */
 		getResiduals(program, gamma, true);
 		getSearchDirection(program);
+		applyCentralityCorrectors(program, gamma);
 		descaleSearchDirection();
 
 		/* Gets step size */
 				  alphaMax = getMaxStepSize(program);
 		double  stepSize = getStepSize(program, alphaMax, beta, gamma);
+		lastStepSize = stepSize;
 
 		/* Updates variables */
 		x.assign(dxDescaled, DoubleFunctions.plusMultSecond(stepSize));
@@ -480,92 +863,200 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		baseResD.assign(DoubleFunctions.mult(1 - stepSize * (1 - gamma)));
 		baseResG *= (1 - stepSize * (1 - gamma));
 
-		/* Processes NNOCs */
-		for (NonNegativeOrthantCone cone : program.getNonNegativeOrthantCones()) {
-			int index = program.getIndex(cone.getVariable());
-			v.setQuick(index, Math.sqrt(x.getQuick(index) * s.getQuick(index)));
+		/* Updates the scaling of each cone */
+		updateTask.x = x;
+		updateTask.s = s;
+		updateTask.stepSize = stepSize;
+		pool.forEach(blockPtr.length - 1, updateTask);
+	}
+
+	/**
+	 * @return false if the journal of the program shows that its structure
+	 *         has changed since it was last solved to optimality
+	 */
+	private boolean isStoredSolutionReusable() {
+		ChangeJournal journal = currentProgram.getJournal();
+		if (journal != null && journal.getLevel() == ChangeJournal.Level.Structure) {
+			log.debug("Program structure has changed since the last solve. Not warm starting.");
+			return false;
 		}
+		return true;
+	}
 
-		/* Processes SOCs */
-		for (SecondOrderCone cone : program.getSecondOrderCones()) {
-			/* Collects the cone's variables */
-			Set<Variable> coneVars = cone.getVariables();
-			Variable nthVariable = cone.getNthVariable();
-			int nCone = coneVars.size();
-
-			/* Creates an array of the variables' indices */
-			int[] selection = new int[nCone];
-			int selectionIndex = 1;
-			for (Variable var : coneVars) {
-				if (nthVariable.equals(var))
-					selection[0] = program.getIndex(var);
-				else
-					selection[selectionIndex++] = program.getIndex(var);
-			}
+	/**
+	 * Updates d, detD, and v for an SOC after a step.
+	 *
+	 * @param chunk  the chunk of cones being updated
+	 * @param start  position of the cone's first variable in blockIndexes
+	 * @param nCone  size of the cone
+	 * @param stepSize  size of the step taken
+	 */
+	private void updateSOC(int chunk, int start, int nCone, double stepSize) {
+		double[] xBarPlus = coneScratch1[chunk];
+		double[] sBarPlus = coneScratch2[chunk];
+		double[] chi = coneScratch3[chunk];
+		double[] sqrtD = coneScratch4[chunk];
+		double[] dSel = coneScratch5[chunk];
+		int index0 = blockIndexes[start];
+		double d0 = d.getQuick(index0);
+		double detDSel = detD.getQuick(index0);
+
+		/* Computes the scaled variables after the step */
+		for (int i = 0; i < nCone; i++) {
+			int index = blockIndexes[start + i];
+			xBarPlus[i] = v.getQuick(index) + stepSize * dx.getQuick(index);
+			sBarPlus[i] = v.getQuick(index) + stepSize * ds.getQuick(index);
+		}
+
+		/* Computes intermediate values */
+		double detXBarPlus = Math.pow(xBarPlus[0], 2);
+		double detSBarPlus = Math.pow(sBarPlus[0], 2);
+		double xBarPlusDotSBarPlus = xBarPlus[0] * sBarPlus[0];
+		for (int i = 1; i < nCone; i++) {
+			detXBarPlus -= Math.pow(xBarPlus[i], 2);
+			detSBarPlus -= Math.pow(sBarPlus[i], 2);
+			xBarPlusDotSBarPlus += xBarPlus[i] * sBarPlus[i];
+		}
+		detXBarPlus /= 2;
+		detSBarPlus /= 2;
+		double detVPlus = Math.sqrt(detXBarPlus * detSBarPlus);
+		double traceVPlus = Math.sqrt(xBarPlusDotSBarPlus + 2 * detVPlus);
+		if (traceVPlus == 0.0)
+			throw new IllegalStateException(Double.toString(xBarPlusDotSBarPlus + 2 * detVPlus));
+
+		/* Computes chi and, in place of xBarPlus, psi */
+		double ratio = detVPlus / detSBarPlus;
+		double[] psi = xBarPlus;
+		for (int i = 0; i < nCone; i++) {
+			double qs = (i == 0) ? ratio * sBarPlus[i] : -1 * ratio * sBarPlus[i];
+			chi[i] = (xBarPlus[i] + qs) / traceVPlus;
+			psi[i] = xBarPlus[i] - qs;
+		}
+		double detChi = ratio;
+
+		/* Computes, in place of sBarPlus, dPlus = P(d^(1/2))chi */
+		for (int i = 0; i < nCone; i++)
+			dSel[i] = d.getQuick(blockIndexes[start + i]);
+		getSOCSqrt(dSel, detDSel, nCone, sqrtD);
+		double detSqrtD = Math.pow(sqrtD[0], 2);
+		double sqrtDDotChi = sqrtD[0] * chi[0];
+		for (int i = 1; i < nCone; i++) {
+			detSqrtD -= Math.pow(sqrtD[i], 2);
+			sqrtDDotChi += sqrtD[i] * chi[i];
+		}
+		detSqrtD /= 2;
+		double[] dPlus = sBarPlus;
+		dPlus[0] = sqrtD[0] * sqrtDDotChi - detSqrtD * chi[0];
+		for (int i = 1; i < nCone; i++)
+			dPlus[i] = sqrtD[i] * sqrtDDotChi + detSqrtD * chi[i];
+		double detDPlus = detDSel * detChi;
+		double traceDPlus = Math.sqrt(2.0) * dPlus[0];
+
+		double dDotPsi = 0.0;
+		for (int i = 0; i < nCone; i++)
+			dDotPsi += dSel[i] * psi[i];
+		double alpha = dDotPsi / (traceDPlus + 2 * Math.sqrt(detDPlus));
+
+		/* Computes, in place of psi, phi */
+		double[] phi = psi;
+		for (int i = 0; i < nCone; i++)
+			phi[i] = (psi[i] - alpha * chi[i]) / (2 * Math.sqrt(detChi));
+
+		double gammaForUpdate = (alpha + Math.sqrt(2.0) * phi[0])
+				/ (Math.sqrt(2.0) * d0 + 2 * Math.sqrt(detDSel));
+
+		/* Updates v */
+		v.setQuick(index0, traceVPlus / Math.sqrt(2.0));
+		for (int i = 1; i < nCone; i++)
+			v.setQuick(blockIndexes[start + i], phi[i] + gammaForUpdate * dSel[i]);
+
+		/* Updates d and detD */
+		for (int i = 0; i < nCone; i++)
+			d.setQuick(blockIndexes[start + i], dPlus[i]);
+		detD.setQuick(index0, detDPlus);
+	}
+
+	/**
+	 * Moves the solution stored in the program toward the centers of the
+	 * cones.
+	 *
+	 * @return whether the result is in the interiors of the cones
+	 */
+	private boolean initializeWarmStart(ConicProgram program) {
+		DoubleMatrix1D x = program.getX();
+		DoubleMatrix1D w = program.getW();
+		DoubleMatrix1D s = program.getS();
+
+		/* The stored solution is not rotated, so neither are the centers */
+		DoubleMatrix1D center = rotateRSOCs(e.copy());
+		x.assign(DoubleFunctions.mult(1 - warmStartCentering));
+		x.assign(center, DoubleFunctions.plusMultSecond(warmStartCentering));
+		s.assign(DoubleFunctions.mult(1 - warmStartCentering));
+		s.assign(center, DoubleFunctions.plusMultSecond(warmStartCentering));
+		w.assign(DoubleFunctions.mult(1 - warmStartCentering));
+
+		/* Infeasibilities are infinite outside the interiors and NaN if any value is */
+		double primalInfeasibility = program.getPrimalInfeasibility(true);
+		double dualInfeasibility = program.getDualInfeasibility(true);
+		if (Double.isInfinite(primalInfeasibility) || Double.isNaN(primalInfeasibility)
+				|| Double.isInfinite(dualInfeasibility) || Double.isNaN(dualInfeasibility)) {
+			log.debug("Stored solution cannot be used for a warm start.");
+			return false;
+		}
 
-			/* Selects the variables */
-			DoubleMatrix1D  dSel	 = d.viewSelection(selection);
-			DoubleMatrix1D  detDSel = detD.viewSelection(selection);
-			DoubleMatrix1D  vSel	 = v.viewSelection(selection);
-
-			/* Creates a Q matrix for the variables */
-			DoubleMatrix2D Q = new SparseDoubleMatrix2D(nCone, nCone);
-			Q.setQuick(0, 0, 1.0);
-			for (int i = 1; i < nCone; i++)
-				Q.setQuick(i, i, -1.0);
-
-			/* Creates temporary vectors */
-			DoubleMatrix1D xBarPlus = new DenseDoubleMatrix1D(nCone);
-			xBarPlus.assign(vSel).assign(dx.viewSelection(selection).assign(DoubleFunctions.mult(stepSize)), DoubleFunctions.plus);
-			DoubleMatrix1D sBarPlus = new DenseDoubleMatrix1D(nCone);
-			sBarPlus.assign(vSel).assign(ds.viewSelection(selection).assign(DoubleFunctions.mult(stepSize)), DoubleFunctions.plus);
-
-			/* Computes intermediate values */
-			double detXBarPlus = (Math.pow(xBarPlus.getQuick(0), 2) - xBarPlus.zDotProduct(xBarPlus, 1, nCone-1)) / 2;
-			double detSBarPlus = (Math.pow(sBarPlus.getQuick(0), 2) - sBarPlus.zDotProduct(sBarPlus, 1, nCone-1)) / 2;
-			double detVPlus = Math.sqrt(detXBarPlus * detSBarPlus);
-			double traceVPlus = Math.sqrt(xBarPlus.zDotProduct(sBarPlus) + 2 * detVPlus);
-			if (traceVPlus == 0.0)
-				throw new IllegalStateException(Double.toString((xBarPlus.zDotProduct(sBarPlus) + 2 * detVPlus)));
-
-			DoubleMatrix1D chi = Q.zMult(sBarPlus, null);
-			chi.assign(DoubleFunctions.mult(detVPlus/detSBarPlus));
-			chi.assign(xBarPlus, DoubleFunctions.plus);
-			chi.assign(DoubleFunctions.div(traceVPlus));
-			double detChi = detVPlus / detSBarPlus;
-
-			DoubleMatrix1D sqrtD = dSel.copy();
-			sqrtD.setQuick(0, sqrtD.getQuick(0) + Math.sqrt(2 * detDSel.getQuick(0)));
-			sqrtD.assign(DoubleFunctions.div(Math.sqrt(Math.sqrt(2) * dSel.getQuick(0) + 2 * Math.sqrt(detDSel.getQuick(0)))));
-			double detSqrtD = Q.zMult(sqrtD, null).zDotProduct(sqrtD) / 2;
-			DoubleMatrix2D POfSqrtD = alg.multOuter(sqrtD, sqrtD, null);
-			POfSqrtD.assign(Q.copy().assign(DoubleFunctions.mult(detSqrtD)), DoubleFunctions.minus);
-
-			DoubleMatrix1D dPlus = POfSqrtD.zMult(chi, null);
-			double detDPlus = detDSel.getQuick(0) * detChi;
-			double traceDPlus = Math.sqrt(2.0) * dPlus.getQuick(0);
-
-			DoubleMatrix1D psi = Q.zMult(sBarPlus, null);
-			psi.assign(DoubleFunctions.mult(-1 * detVPlus/detSBarPlus));
-			psi.assign(xBarPlus, DoubleFunctions.plus);
-
-			double alpha = dSel.zDotProduct(psi) / (traceDPlus + 2 * Math.sqrt(detDPlus));
-
-			DoubleMatrix1D phi = chi.copy().assign(DoubleFunctions.mult(-1 * alpha));
-			phi.assign(psi, DoubleFunctions.plus);
-			phi.assign(DoubleFunctions.div(2 * Math.sqrt(detChi)));
-
-			double gammaForUpdate = (alpha + Math.sqrt(2.0) * phi.getQuick(0))
-					/ (Math.sqrt(2.0) * dSel.getQuick(0) + 2 * Math.sqrt(detDSel.getQuick(0)));
-
-			/* Updates v */
-			vSel.setQuick(0, traceVPlus / Math.sqrt(2.0));
-			for (int i = 1; i < nCone; i++)
-				vSel.setQuick(i, phi.getQuick(i) + gammaForUpdate * dSel.get(i));
-
-			/* Updates d and detD */
-			dSel.assign(dPlus);
-			detDSel.setQuick(0, detDPlus);
+		return true;
+	}
+
+	/**
+	 * Sets d, detD, and v for the SOCs to the Nesterov-Todd scaling of the
+	 * current x and s. For each SOC, d is the point such that P(d)s = x, and
+	 * v = P(d^(1/2))s.
+	 */
+	private void initializeSOCScaling(ConicProgram program) {
+		DoubleMatrix1D x = program.getX();
+		DoubleMatrix1D s = program.getS();
+
+		for (int block = numNNOCs; block < blockPtr.length - 1; block++) {
+			int start = blockPtr[block];
+			int nCone = blockPtr[block+1] - start;
+
+			/* Computes the scaling point */
+			double detX = Math.pow(x.getQuick(blockIndexes[start]), 2);
+			double detS = Math.pow(s.getQuick(blockIndexes[start]), 2);
+			double xDotS = x.getQuick(blockIndexes[start]) * s.getQuick(blockIndexes[start]);
+			for (int i = 1; i < nCone; i++) {
+				int index = blockIndexes[start + i];
+				detX -= Math.pow(x.getQuick(index), 2);
+				detS -= Math.pow(s.getQuick(index), 2);
+				xDotS += x.getQuick(index) * s.getQuick(index);
+			}
+			detX /= 2;
+			detS /= 2;
+			double detV = Math.sqrt(detX * detS);
+			double traceV = Math.sqrt(xDotS + 2 * detV);
+
+			double[] dSel = coneScratch1[0];
+			for (int i = 0; i < nCone; i++) {
+				int index = blockIndexes[start + i];
+				double qs = (i == 0) ? s.getQuick(index) : -1 * s.getQuick(index);
+				dSel[i] = (x.getQuick(index) + detV / detS * qs) / traceV;
+				d.setQuick(index, dSel[i]);
+			}
+			double detDSel = detV / detS;
+			detD.setQuick(blockIndexes[start], detDSel);
+
+			/* Computes v = P(d^(1/2))s */
+			double[] sqrtD = coneScratch2[0];
+			getSOCSqrt(dSel, detDSel, nCone, sqrtD);
+			double detSqrtD = Math.sqrt(detDSel);
+			double sqrtDDotS = 0.0;
+			for (int i = 0; i < nCone; i++)
+				sqrtDDotS += sqrtD[i] * s.getQuick(blockIndexes[start + i]);
+			for (int i = 0; i < nCone; i++) {
+				int index = blockIndexes[start + i];
+				double qs = (i == 0) ? s.getQuick(index) : -1 * s.getQuick(index);
+				v.setQuick(index, sqrtD[i] * sqrtDDotS - detSqrtD * qs);
+			}
 		}
 	}
 
@@ -574,236 +1065,318 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		int size = A.columns();
 
 		k = program.getNumCones();
-		e = new DenseDoubleMatrix1D(size);
-		T = new SparseDoubleMatrix2D(size, size, size*4, 0.2, 0.5);
 
+		/*
+		 * Collects the variables of each cone once, so that each step can
+		 * iterate over the cones without looking up variables
+		 */
+		numNNOCs = program.getNonNegativeOrthantCones().size();
+		int numRSOCs = program.getRotatedSecondOrderCones().size();
+		blockPtr = new int[numNNOCs + program.getSecondOrderCones().size() + numRSOCs + 1];
+		int numConeVars = numNNOCs;
+		for (SecondOrderCone cone : program.getSecondOrderCones())
+			numConeVars += cone.getN();
+		for (RotatedSecondOrderCone cone : program.getRotatedSecondOrderCones())
+			numConeVars += cone.getN();
+		blockIndexes = new int[numConeVars];
+
+		int block = 0;
 		for (NonNegativeOrthantCone cone : program.getNonNegativeOrthantCones()) {
-			int i = program.getIndex(cone.getVariable());
-			e.setQuick(i, 1.0);
-			T.setQuick(i, i, 1.0);
+			blockIndexes[block] = program.getIndex(cone.getVariable());
+			block++;
+			blockPtr[block] = block;
 		}
 
+		int next = numNNOCs;
 		for (SecondOrderCone cone : program.getSecondOrderCones()) {
-			for (Variable var : cone.getVariables()) {
-				int i = program.getIndex(var);
-				e.setQuick(i, 0);
-				T.setQuick(i, i, 1.0);
-			}
-			int i = program.getIndex(cone.getNthVariable());
-			e.setQuick(i, 1.0);
+			Variable nthVariable = cone.getNthVariable();
+			blockIndexes[next++] = program.getIndex(nthVariable);
+			for (Variable var : cone.getVariables())
+				if (!nthVariable.equals(var))
+					blockIndexes[next++] = program.getIndex(var);
+			block++;
+			blockPtr[block] = next;
 		}
-	}
-
-	/**
-	 * Computes matrices and vectors that will be used to find search directions
-	 * during the current step.
-	 *
-	 * The first time this method is called after a call to solve(), new sparse
-	 * matrices will be created. At the end of the method call, they will be
-	 * converted to sparse, column-compressed matrices. Those matrices will be
-	 * reused until solve() is finished, since they will always have the same
-	 * non-zero structure.
-	 *
-	 * @param program  program being solved
-	 */
-	private void getIntermediates(ConicProgram program) {
-		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
-
-		SparseCCDoubleMatrix2D A = program.getA();
-		DoubleMatrix1D x = program.getX();
-		DoubleMatrix1D b = program.getB();
-		DoubleMatrix1D s = program.getS();
-		DoubleMatrix1D c = program.getC();
-		int n = (int) x.size();
 
-		mu = (v.zDotProduct(v) + tau * kappa) / (k+1);
+		rsocN = new int[numRSOCs];
+		rsocNMinus1 = new int[numRSOCs];
+		int rsoc = 0;
+		for (RotatedSecondOrderCone cone : program.getRotatedSecondOrderCones()) {
+			Variable nthVariable = cone.getNthVariable();
+			Variable nMinus1stVariable = cone.getNMinus1stVariable();
+			rsocN[rsoc] = program.getIndex(nthVariable);
+			rsocNMinus1[rsoc] = program.getIndex(nMinus1stVariable);
+			blockIndexes[next++] = rsocN[rsoc];
+			blockIndexes[next++] = rsocNMinus1[rsoc];
+			for (Variable var : cone.getVariables())
+				if (!nthVariable.equals(var) && !nMinus1stVariable.equals(var))
+					blockIndexes[next++] = program.getIndex(var);
+			rsoc++;
+			block++;
+			blockPtr[block] = next;
+		}
 
-		/* Declares local aliases */
-		DoubleMatrix2D ThetaWLocal;
-		DoubleMatrix2D invThetaInvWLocal;
-		DoubleMatrix2D invThetaSqInvWSqLocal;
-		DoubleMatrix2D XBarLocal;
-		DoubleMatrix2D invXBarLocal;
-
-		/* If this is the first time this method is called after a call to solve()... */
-		if (ThetaW == null) {
-			ThetaWLocal			  = new SparseDoubleMatrix2D(n, n, n*4, 0.2, 0.5);
-			invThetaInvWLocal	  = new SparseDoubleMatrix2D(n, n, n*4, 0.2, 0.5);
-			invThetaSqInvWSqLocal = new SparseDoubleMatrix2D(n, n, n*4, 0.2, 0.5);
-			XBarLocal				 = new SparseDoubleMatrix2D(n, n, n*4, 0.2, 0.5);
-			invXBarLocal			 = new SparseDoubleMatrix2D(n, n, n*4, 0.2, 0.5);
+		if (numRSOCs == 0) {
+			rotatedA = A;
+			rotatedC = program.getC();
 		}
 		else {
-			ThetaWLocal			  = ThetaW;
-			invThetaInvWLocal	  = invThetaInvW;
-			invThetaSqInvWSqLocal = invThetaSqInvWSq;
-			XBarLocal				 = XBar;
-			invXBarLocal			 = invXBar;
+			rotatedA = getRotatedA(A);
+			rotatedC = rotateRSOCs(program.getC().copy());
 		}
 
-		/* Processes NNOCs */
-		for (NonNegativeOrthantCone cone : program.getNonNegativeOrthantCones()) {
-			int index = program.getIndex(cone.getVariable());
-			double thetaSq = s.getQuick(index) / x.getQuick(index);
-			double theta = Math.sqrt(thetaSq);
-			double invTheta = 1 / theta;
-			ThetaWLocal.setQuick(index, index, theta);
-			invThetaInvWLocal.setQuick(index, index, invTheta);
-			invThetaSqInvWSqLocal.setQuick(index, index, 1 / thetaSq);
-			XBarLocal.setQuick(index, index, theta * x.getQuick(index));
-			invXBarLocal.setQuick(index, index, invTheta * 1 / x.getQuick(index));
+		e = new DenseDoubleMatrix1D(size);
+		T = new SparseDoubleMatrix2D(size, size, size*4, 0.2, 0.5);
+		int maxConeSize = 1;
+		for (block = 0; block < blockPtr.length - 1; block++) {
+			e.setQuick(blockIndexes[blockPtr[block]], 1.0);
+			for (int i = blockPtr[block]; i < blockPtr[block+1]; i++)
+				T.setQuick(blockIndexes[i], blockIndexes[i], 1.0);
+			maxConeSize = Math.max(maxConeSize, blockPtr[block+1] - blockPtr[block]);
 		}
 
-		/* Processes SOCs */
-		for (SecondOrderCone cone : program.getSecondOrderCones()) {
-			/* Collects the cone's variables */
-			Set<Variable> coneVars = cone.getVariables();
-			Variable nthVariable = cone.getNthVariable();
-			int nCone = coneVars.size();
-
-			/* Creates an array of the variables' indices */
-			int[] selection = new int[nCone];
-			int selectionIndex = 1;
-			for (Variable var : coneVars) {
-				if (nthVariable.equals(var))
-					selection[0] = program.getIndex(var);
-				else
-					selection[selectionIndex++] = program.getIndex(var);
-			}
+		coneScratch1 = new double[pool.getNumThreads()][maxConeSize];
+		coneScratch2 = new double[pool.getNumThreads()][maxConeSize];
+		coneScratch3 = new double[pool.getNumThreads()][maxConeSize];
+		coneScratch4 = new double[pool.getNumThreads()][maxConeSize];
+		coneScratch5 = new double[pool.getNumThreads()][maxConeSize];
+	}
 
-			/* Selects the variables */
-			DoubleMatrix1D  dSel	 = d.viewSelection(selection);
-			double			 detDSel = detD.viewSelection(selection).getQuick(0);
-			DoubleMatrix1D  vSel	 = v.viewSelection(selection);
-
-			/* Creates a Q matrix for the variables */
-			DoubleMatrix2D Q = new SparseDoubleMatrix2D(nCone, nCone);
-			Q.setQuick(0, 0, 1.0);
-			for (int i = 1; i < nCone; i++)
-				Q.setQuick(i, i, -1.0);
-
-			/*
-			 * Computes selections of matrices
-			 */
-
-			/* Gets the selections */
-//			DoubleMatrix2D  ThetaWSel			  = ThetaW.viewSelection(selection, selection);
-//			DoubleMatrix2D  invThetaInvWSel	  = invThetaInvW.viewSelection(selection, selection);
-//			DoubleMatrix2D  XBarSel				 = XBar.viewSelection(selection, selection);
-//			DoubleMatrix2D  invXBarSel			 = invXBar.viewSelection(selection, selection);
-//			DoubleMatrix2D  invThetaSqInvWSqSel = invThetaSqInvWSq.viewSelection(selection, selection);
-
-			DoubleMatrix2D temp;
-
-			/* Computes invThetaSqInvWSq selection */
-			temp = alg.multOuter(dSel, dSel, null);
-			for (int i = 0; i < temp.rows(); i++) {
-				for (int j = 0; j < temp.columns(); j++) {
-					invThetaSqInvWSqLocal.setQuick(selection[i], selection[j], temp.getQuick(i, j));
-				}
-			}
-//			alg.multOuter(dSel, dSel, invThetaSqInvWSqSel);
-			temp = Q.copy().assign(DoubleFunctions.mult(detDSel));
-			for (int i = 0; i < temp.rows(); i++) {
-				for (int j = 0; j < temp.columns(); j++) {
-					invThetaSqInvWSqLocal.setQuick(selection[i], selection[j], invThetaSqInvWSqLocal.getQuick(selection[i], selection[j]) - temp.getQuick(i, j));
-				}
-			}
-//			invThetaSqInvWSqSel.assign(Q.copy().assign(DoubleFunctions.mult(detDSel)), DoubleFunctions.minus);
-			temp = getSOCFunction(getSOCSqrt(getSOCInverse(dSel, detDSel), 1 / detDSel), 1 / Math.sqrt(detDSel));
-			for (int i = 0; i < temp.rows(); i++) {
-				for (int j = 0; j < temp.columns(); j++) {
-					ThetaWLocal.setQuick(selection[i], selection[j], temp.getQuick(i, j));
-				}
+	/**
+	 * Computes A * Q, where Q is the rotation applied by
+	 * {@link #rotateRSOCs(DoubleMatrix1D)}.
+	 * <p>
+	 * Q only mixes columns n-1 and n of each RSOC, so A's compressed columns
+	 * are copied and only those pairs are rewritten, each column of a pair
+	 * getting the union of the rows of both. Row indices stay sorted.
+	 */
+	private SparseCCDoubleMatrix2D getRotatedA(SparseCCDoubleMatrix2D A) {
+		double scale = 1 / Math.sqrt(2);
+		int columns = A.columns();
+		int[] partner = new int[columns];
+		boolean[] isNth = new boolean[columns];
+		Arrays.fill(partner, -1);
+		for (int rsoc = 0; rsoc < rsocN.length; rsoc++) {
+			partner[rsocN[rsoc]] = rsocNMinus1[rsoc];
+			partner[rsocNMinus1[rsoc]] = rsocN[rsoc];
+			isNth[rsocN[rsoc]] = true;
+		}
+
+		int[] colPtr = A.getColumnPointers();
+		int[] rowIndexes = A.getRowIndexes();
+		double[] values = A.getValues();
+
+		/* Counts the nonzeros of each rotated column */
+		int[] rotatedColPtr = new int[columns + 1];
+		for (int col = 0; col < columns; col++) {
+			int count;
+			if (partner[col] == -1)
+				count = colPtr[col+1] - colPtr[col];
+			else
+				count = countRowUnion(rowIndexes, colPtr[col], colPtr[col+1], colPtr[partner[col]], colPtr[partner[col]+1]);
+			rotatedColPtr[col+1] = rotatedColPtr[col] + count;
+		}
+
+		SparseCCDoubleMatrix2D rotated = new SparseCCDoubleMatrix2D(A.rows(), columns, rotatedColPtr[columns]);
+		System.arraycopy(rotatedColPtr, 0, rotated.getColumnPointers(), 0, rotatedColPtr.length);
+		int[] rotatedRowIndexes = rotated.getRowIndexes();
+		double[] rotatedValues = rotated.getValues();
+		for (int col = 0; col < columns; col++) {
+			int k = rotatedColPtr[col];
+			if (partner[col] == -1) {
+				System.arraycopy(rowIndexes, colPtr[col], rotatedRowIndexes, k, colPtr[col+1] - colPtr[col]);
+				System.arraycopy(values, colPtr[col], rotatedValues, k, colPtr[col+1] - colPtr[col]);
+				continue;
 			}
-//			ThetaWSel.assign(getSOCFunction(getSOCSqrt(getSOCInverse(dSel, detDSel), 1 / detDSel), 1 / Math.sqrt(detDSel)));
-			temp = getSOCFunction(getSOCSqrt(dSel, detDSel), Math.sqrt(detDSel));
-			for (int i = 0; i < temp.rows(); i++) {
-				for (int j = 0; j < temp.columns(); j++) {
-					invThetaInvWLocal.setQuick(selection[i], selection[j], temp.getQuick(i, j));
+
+			/* Column n of A * Q is the sum of columns n and n-1, and column n-1 their difference */
+			int nCol = (isNth[col]) ? col : partner[col];
+			int nMinus1Col = (isNth[col]) ? partner[col] : col;
+			double sign = (isNth[col]) ? 1.0 : -1.0;
+			int i = colPtr[nCol], iEnd = colPtr[nCol+1];
+			int j = colPtr[nMinus1Col], jEnd = colPtr[nMinus1Col+1];
+			while (i < iEnd || j < jEnd) {
+				if (j == jEnd || (i < iEnd && rowIndexes[i] < rowIndexes[j])) {
+					rotatedRowIndexes[k] = rowIndexes[i];
+					rotatedValues[k++] = values[i++] * scale;
 				}
-			}
-//			invThetaInvWSel.assign(getSOCFunction(getSOCSqrt(dSel, detDSel), Math.sqrt(detDSel)));
-
-			/* Computes selections of XBar and invXBar */
-			DoubleMatrix1D xbar = vSel.copy();
-			temp = getArrowheadMatrix(xbar);
-			for (int i = 0; i < temp.rows(); i++) {
-				for (int j = 0; j < temp.columns(); j++) {
-					XBarLocal.setQuick(selection[i], selection[j], temp.getQuick(i, j));
+				else if (i == iEnd || rowIndexes[j] < rowIndexes[i]) {
+					rotatedRowIndexes[k] = rowIndexes[j];
+					rotatedValues[k++] = sign * values[j++] * scale;
 				}
-			}
-//			XBarSel.assign(getArrowheadMatrix(xbar));
-			temp = alg.multOuter(xbar, xbar, null);
-			for (int i = 0; i < temp.rows(); i++) {
-				for (int j = 0; j < temp.columns(); j++) {
-					invXBarLocal.setQuick(selection[i], selection[j], temp.getQuick(i, j) / xbar.getQuick(0));
+				else {
+					rotatedRowIndexes[k] = rowIndexes[i];
+					rotatedValues[k++] = (values[i++] + sign * values[j++]) * scale;
 				}
 			}
-//			alg.multOuter(xbar, xbar, invXBarSel);
-//			invXBarSel.assign(DoubleFunctions.div(xbar.getQuick(0)));
+		}
+		return rotated;
+	}
 
-			for (int i = 0; i < xbar.size(); i++) {
-				invXBarLocal.setQuick(selection[i], selection[0], -1 * xbar.getQuick(i));
-				invXBarLocal.setQuick(selection[0], selection[i], -1 * xbar.getQuick(i));
-			}
-//			invXBarSel.viewColumn(0).assign(xbar).assign(DoubleFunctions.mult(-1));
-//			invXBarSel.viewRow(0).assign(xbar).assign(DoubleFunctions.mult(-1));
-//
-			invXBarLocal.setQuick(selection[0], selection[0], xbar.getQuick(0));
-//			invXBarSel.setQuick(0, 0, xbar.getQuick(0));
-			double normSq = Math.pow(alg.norm2(xbar.viewPart(1, nCone-1)), 2);
-			double coeff = xbar.getQuick(0) - normSq / xbar.getQuick(0);
-			for (int i = 1; i < nCone; i++)
-				invXBarLocal.setQuick(selection[i], selection[i], invXBarLocal.getQuick(selection[i], selection[i]) + coeff);
-//			for (int i = 1; i < nCone; i++)
-//				invXBarSel.setQuick(i, i, invXBarSel.getQuick(i, i) + coeff);
-			coeff = Math.pow(xbar.getQuick(0), 2) - normSq;
-			for (int i = 0; i < selection.length; i++) {
-				for (int j = 0; j < selection.length; j++) {
-					invXBarLocal.setQuick(selection[i], selection[j],
-							invXBarLocal.getQuick(selection[i], selection[j]) / coeff);
-				}
+	/* Counts the distinct rows in two sorted ranges of row indices */
+	private static int countRowUnion(int[] rowIndexes, int i, int iEnd, int j, int jEnd) {
+		int count = 0;
+		while (i < iEnd || j < jEnd) {
+			if (j == jEnd || (i < iEnd && rowIndexes[i] < rowIndexes[j]))
+				i++;
+			else if (i == iEnd || rowIndexes[j] < rowIndexes[i])
+				j++;
+			else {
+				i++;
+				j++;
 			}
-//			invXBarSel.assign(DoubleFunctions.div(Math.pow(xbar.getQuick(0), 2) - normSq));
+			count++;
 		}
+		return count;
+	}
 
-		if (ThetaW == null) {
-			/* Creates column-compressed matrices */
-			ThetaW				= ((SparseDoubleMatrix2D) ThetaWLocal).getColumnCompressed(false);
-			invThetaInvW		= ((SparseDoubleMatrix2D) invThetaInvWLocal).getColumnCompressed(false);
-			invThetaSqInvWSq  = ((SparseDoubleMatrix2D) invThetaSqInvWSqLocal).getColumnCompressed(false);
-			XBar				  = ((SparseDoubleMatrix2D) XBarLocal).getColumnCompressed(false);
-			invXBar			  = ((SparseDoubleMatrix2D) invXBarLocal).getColumnCompressed(false);
-
-			/* Makes memory available to garbage collector */
-			ThetaWLocal			  = null;
-			invThetaInvWLocal	  = null;
-			invThetaSqInvWSqLocal = null;
-			XBarLocal				 = null;
-			invXBarLocal			 = null;
+	/**
+	 * Applies to a vector the rotation that makes each RSOC an SOC. The
+	 * rotation is its own inverse.
+	 *
+	 * @return the vector
+	 */
+	private DoubleMatrix1D rotateRSOCs(DoubleMatrix1D vector) {
+		double scale = 1 / Math.sqrt(2);
+		for (int rsoc = 0; rsoc < rsocN.length; rsoc++) {
+			double xN = vector.getQuick(rsocN[rsoc]);
+			double xNMinus1 = vector.getQuick(rsocNMinus1[rsoc]);
+			vector.setQuick(rsocN[rsoc], (xN + xNMinus1) * scale);
+			vector.setQuick(rsocNMinus1[rsoc], (xN - xNMinus1) * scale);
 		}
+		return vector;
+	}
 
-		/* Computes more intermediate matrices */
-		AInvThetaSqInvWSq = new SparseCCDoubleMatrix2D(A.rows(), n);
-		A.zMult(invThetaSqInvWSq, AInvThetaSqInvWSq, 1.0, 0.0, false, false);
+	/**
+	 * Computes matrices and vectors that will be used to find search directions
+	 * during the current step.
+	 *
+	 * The scaling matrices are block diagonal with one block per cone, so
+	 * they are written in place into the blocks allocated by doSolve(), and
+	 * the normal matrix is recomputed into a matrix whose sparsity pattern
+	 * is fixed for the entire procedure.
+	 *
+	 * @param program  program being solved
+	 */
+	private void getIntermediates(ConicProgram program) {
+		SparseCCDoubleMatrix2D A = rotatedA;
+		DoubleMatrix1D x = program.getX();
+		DoubleMatrix1D b = program.getB();
+		DoubleMatrix1D s = program.getS();
+		DoubleMatrix1D c = rotatedC;
 
-		/* Computes M and gives it to the normal-system solver */
-		SparseCCDoubleMatrix2D M = new SparseCCDoubleMatrix2D(A.rows(), A.rows());
-		AInvThetaSqInvWSq.zMult(A, M, 1.0, 0.0, false, true);
-		solver.setA(M);
+		mu = (v.zDotProduct(v) + tau * kappa) / (k+1);
+
+		/* Computes the blocks of the scaling matrices */
+		scalingTask.x = x;
+		scalingTask.s = s;
+		pool.forEach(blockPtr.length - 1, scalingTask);
+
+		/* Computes M, or only its scaling for a matrix-free solver, and gives it to the normal-system solver */
+		if (matrixFreeSolver != null) {
+			double[] values = invThetaSqInvWSq.getValues();
+			for (int i = 0; i < numNNOCs; i++)
+				scalingDiagonal.setQuick(blockIndexes[i], values[invThetaSqInvWSq.getValueStart(i)]);
+			matrixFreeSolver.setScaling(scalingDiagonal);
+		}
+		else {
+			normalProduct.multiply(invThetaSqInvWSq);
+			solver.setA(normalProduct.getProduct());
+		}
 
 		/* Computes intermediate vectors */
 
 		/* g2 */
+		invThetaSqInvWSq.zMult(c, scratchN1);
 		g2.assign(b);
-		AInvThetaSqInvWSq.zMult(c, g2, 1.0, 1.0, false);
+		A.zMult(scratchN1, g2, 1.0, 1.0, false);
 		solver.solve(g2);
 
 		/* g1 */
 		A.zMult(g2, scratchN1, 1.0, 0.0, true);
 		scratchN1.assign(c, DoubleFunctions.minus);
-		invThetaInvW.zMult(scratchN1, g1, 1.0, 0.0, false);
+		invThetaInvW.zMult(scratchN1, g1);
+	}
+
+	/**
+	 * Computes the blocks of the scaling matrices for the NNOCs in [start, end).
+	 */
+	private void computeNNOCScaling(int start, int end, DoubleMatrix1D x, DoubleMatrix1D s) {
+		double[] ThetaWValues = ThetaW.getValues();
+		double[] invThetaInvWValues = invThetaInvW.getValues();
+		double[] invThetaSqInvWSqValues = invThetaSqInvWSq.getValues();
+		double[] XBarValues = XBar.getValues();
+		double[] invXBarValues = invXBar.getValues();
+
+		/* The block of the ith NNOC is the ith value */
+		for (int i = start; i < end; i++) {
+			int index = blockIndexes[i];
+			double thetaSq = s.getQuick(index) / x.getQuick(index);
+			double theta = Math.sqrt(thetaSq);
+			double invTheta = 1 / theta;
+			ThetaWValues[i] = theta;
+			invThetaInvWValues[i] = invTheta;
+			invThetaSqInvWSqValues[i] = 1 / thetaSq;
+			XBarValues[i] = theta * x.getQuick(index);
+			invXBarValues[i] = invTheta * 1 / x.getQuick(index);
+		}
+	}
+
+	/**
+	 * Computes the blocks of the scaling matrices for an SOC.
+	 */
+	private void computeSOCScaling(int chunk, int block, DoubleMatrix1D x, DoubleMatrix1D s) {
+		double[] scratch1 = coneScratch1[chunk];
+		double[] scratch2 = coneScratch2[chunk];
+		double[] ThetaWValues = ThetaW.getValues();
+		double[] invThetaInvWValues = invThetaInvW.getValues();
+		double[] invThetaSqInvWSqValues = invThetaSqInvWSq.getValues();
+		double[] XBarValues = XBar.getValues();
+		double[] invXBarValues = invXBar.getValues();
+		int start = ThetaW.getBlockStart(block);
+		int nCone = ThetaW.getBlockSize(block);
+		int p = ThetaW.getValueStart(block);
+
+		for (int i = 0; i < nCone; i++)
+			scratch1[i] = d.getQuick(blockIndexes[start + i]);
+		double detDSel = detD.getQuick(blockIndexes[start]);
+
+		/* invThetaSqInvWSq = P(d) */
+		getSOCFunction(scratch1, detDSel, nCone, invThetaSqInvWSqValues, p);
+
+		/* invThetaInvW = P(d^(1/2)) */
+		getSOCSqrt(scratch1, detDSel, nCone, scratch2);
+		getSOCFunction(scratch2, Math.sqrt(detDSel), nCone, invThetaInvWValues, p);
+
+		/* ThetaW = P(d^(-1/2)) */
+		scratch1[0] /= detDSel;
+		for (int i = 1; i < nCone; i++)
+			scratch1[i] /= -1 * detDSel;
+		getSOCSqrt(scratch1, 1 / detDSel, nCone, scratch2);
+		getSOCFunction(scratch2, 1 / Math.sqrt(detDSel), nCone, ThetaWValues, p);
+
+		/* Computes XBar and invXBar */
+		getArrowheadMatrix(v, start, nCone, XBarValues, p);
+
+		double v0 = v.getQuick(blockIndexes[start]);
+		double normSq = 0.0;
+		for (int i = 1; i < nCone; i++)
+			normSq += Math.pow(v.getQuick(blockIndexes[start + i]), 2);
+		double det = Math.pow(v0, 2) - normSq;
+		double coeff = v0 - normSq / v0;
+
+		invXBarValues[p] = v0 / det;
+		for (int i = 1; i < nCone; i++) {
+			double vi = v.getQuick(blockIndexes[start + i]);
+			invXBarValues[p + i] = -1 * vi / det;
+			invXBarValues[p + i * nCone] = -1 * vi / det;
+			for (int j = 1; j < nCone; j++) {
+				double value = vi * v.getQuick(blockIndexes[start + j]) / v0;
+				if (i == j)
+					value += coeff;
+				invXBarValues[p + i * nCone + j] = value / det;
+			}
+		}
 	}
 
 	/**
@@ -838,53 +1411,8 @@ public class HomogeneousIPM implements ConicProgramSolver {
 			T.zMult(dx, dxn);
 			T.zMult(ds, dsn);
 
-			for (NonNegativeOrthantCone cone : program.getNonNegativeOrthantCones()) {
-				int index = program.getIndex(cone.getVariable());
-				Dxn.setQuick(index, index, dxn.getQuick(index));
-				Dsn.setQuick(index, index, dsn.getQuick(index));
-			}
-
-			for (SecondOrderCone cone : program.getSecondOrderCones()) {
-				/* Collects the cone's variables */
-				Set<Variable> coneVars = cone.getVariables();
-				Variable nthVariable = cone.getNthVariable();
-				int nCone = coneVars.size();
-
-				/* Creates an array of the variables' indices */
-				int[] selection = new int[nCone];
-				int selectionIndex = 1;
-				for (Variable var : coneVars) {
-					if (nthVariable.equals(var))
-						selection[0] = program.getIndex(var);
-					else
-						selection[selectionIndex++] = program.getIndex(var);
-				}
-
-				/* Selects the variables */
-				DoubleMatrix1D dxnSel = dxn.viewSelection(selection);
-				DoubleMatrix1D dsnSel = dsn.viewSelection(selection);
-
-				/* Gets the selections */
-//				DoubleMatrix2D DxnSel  = Dxn.viewSelection(selection, selection);
-//				DoubleMatrix2D DsnSel  = Dsn.viewSelection(selection, selection);
-
-				/* Computes the arrowhead matrices */
-				DoubleMatrix2D temp;
-				temp = getArrowheadMatrix(dxnSel);
-				for (int i = 0; i < temp.rows(); i++) {
-					for (int j = 0; j < temp.columns(); j++) {
-						Dxn.setQuick(selection[i], selection[j], temp.getQuick(i, j));
-					}
-				}
-//				DxnSel.assign(getArrowheadMatrix(dxnSel));
-				temp = getArrowheadMatrix(dsnSel);
-				for (int i = 0; i < temp.rows(); i++) {
-					for (int j = 0; j < temp.columns(); j++) {
-						Dsn.setQuick(selection[i], selection[j], temp.getQuick(i, j));
-					}
-				}
-//				DsnSel.assign(getArrowheadMatrix(dsnSel));
-			}
+			/* Computes the arrowhead matrices */
+			pool.forEach(blockPtr.length - 1, arrowheadTask);
 
 			Dsn.zMult(e, scratchN1);
 			Dxn.zMult(scratchN1, scratchN2);
@@ -894,9 +1422,9 @@ public class HomogeneousIPM implements ConicProgramSolver {
 	}
 
 	private void getSearchDirection(ConicProgram program) {
-		SparseCCDoubleMatrix2D A = program.getA();
+		SparseCCDoubleMatrix2D A = rotatedA;
 		DoubleMatrix1D b = program.getB();
-		DoubleMatrix1D c = program.getC();
+		DoubleMatrix1D c = rotatedC;
 
 		invXBar.zMult(r4, scratchN2);
 		/* Aliases scratchN1 as TInvVR4. Don't reuse it! */
@@ -905,7 +1433,8 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		/* h2 */
 		/* Aliases scratchM1 as h2. Don't reuse it! */
 		DoubleMatrix1D h2 = scratchM1.assign(r1);
-		AInvThetaSqInvWSq.zMult(r2, scratchM2);
+		invThetaSqInvWSq.zMult(r2, scratchN3);
+		A.zMult(scratchN3, scratchM2);
 		h2.assign(scratchM2, DoubleFunctions.plus);
 		invThetaInvW.zMult(TInvVR4, scratchN2);
 		A.zMult(scratchN2, scratchM2);
@@ -929,17 +1458,82 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		ds.assign(TInvVR4).assign(dx, DoubleFunctions.minus);
 	}
 
+	/**
+	 * Applies Gondzio-style centrality correctors to the search direction.
+	 *
+	 * Each corrector moves the complementarity products of the cones at a
+	 * longer trial step toward a range around their target and solves for a
+	 * new direction with the factorization of the current step. A corrector
+	 * is kept only if it lengthens the maximum step by a sufficient amount.
+	 * Otherwise, the previous direction is restored and no more correctors
+	 * are tried.
+	 *
+	 * @param program  program being solved
+	 * @param gamma  parameter in [0,1] controlling adherence to central path
+	 */
+	private void applyCentralityCorrectors(ConicProgram program, double gamma) {
+		if (numCorrectors == 0)
+			return;
+
+		double alphaMax = getMaxStepSize(program);
+		int numAccepted = 0;
+		while (numAccepted < numCorrectors && alphaMax < 1.0) {
+			double targetAlpha = Math.min(1.0, alphaMax + CORRECTOR_STEP_INCREASE);
+
+			dxSaved.assign(dx);
+			dwSaved.assign(dw);
+			dsSaved.assign(ds);
+			double dTauSaved = dTau;
+			double dKappaSaved = dKappa;
+
+			/* Computes the corrector and adds it to the complementarity residual */
+			correctorTask.alpha = targetAlpha;
+			correctorTask.target = (1 - targetAlpha * (1 - gamma)) * mu;
+			pool.forEach(blockPtr.length - 1, correctorTask);
+			r4.assign(corrector, DoubleFunctions.plus);
+			getSearchDirection(program);
+
+			double correctedAlphaMax = getMaxStepSize(program);
+			if (correctedAlphaMax >= alphaMax + CORRECTOR_ACCEPTANCE * (targetAlpha - alphaMax)) {
+				alphaMax = correctedAlphaMax;
+				numAccepted++;
+			}
+			else {
+				dx.assign(dxSaved);
+				dw.assign(dwSaved);
+				ds.assign(dsSaved);
+				dTau = dTauSaved;
+				dKappa = dKappaSaved;
+				break;
+			}
+		}
+
+		statistics.addCorrectors(numAccepted);
+		log.trace("Accepted {} centrality correctors.", numAccepted);
+	}
+
+	/**
+	 * @return the change to a complementarity product needed to move it
+	 *         into the range around a target
+	 */
+	private double getProductCorrection(double product, double target) {
+		if (product < CORRECTOR_MIN_PRODUCT * target)
+			return CORRECTOR_MIN_PRODUCT * target - product;
+		else if (product > CORRECTOR_MAX_PRODUCT * target)
+			return Math.max(CORRECTOR_MAX_PRODUCT * target - product, -1 * CORRECTOR_MAX_PRODUCT * target);
+		else
+			return 0.0;
+	}
+
 	private double getMaxStepSize(ConicProgram program) {
+		long start = System.nanoTime();
 		double alphaMax = 1.0;
 
-		DoubleMatrix1D x = v;
-		DoubleMatrix1D s = v;
-
 		/* Checks distance to boundaries of cones */
-		for (Cone cone : program.getCones()) {
-			alphaMax = Math.min(cone.getMaxStep(program.getVarMap(), x, dx), alphaMax);
-			alphaMax = Math.min(cone.getMaxStep(program.getVarMap(), s, ds), alphaMax);
-		}
+		int numBlocks = blockPtr.length - 1;
+		pool.forEach(numBlocks, maxStepTask);
+		for (int chunk = 0; chunk < pool.getNumChunks(numBlocks); chunk++)
+			alphaMax = Math.min(partials[chunk], alphaMax);
 
 		/* Checks distance to min. tau */
 		if (dTau < 0)
@@ -949,115 +1543,190 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		if (dKappa < 0)
 			alphaMax = Math.min(-0.95 * kappa / dKappa, alphaMax);
 
+		statistics.addStepSizeTime(System.nanoTime() - start);
 		return alphaMax;
 	}
 
+	/**
+	 * Computes the maximum step along dx that stays in the interior of the
+	 * NNOCs in [start, end), in the same way as {@link Cone#getMaxStep(java.util.Map, DoubleMatrix1D, DoubleMatrix1D)}.
+	 */
+	private double getNNOCMaxStep(DoubleMatrix1D x, DoubleMatrix1D dx, int start, int end) {
+		double alpha = 1.0;
+		for (int i = start; i < end; i++) {
+			int index = blockIndexes[i];
+			double dxi = dx.getQuick(index);
+			if (dxi < 0)
+				alpha = Math.min((x.getQuick(index) * .95) / (- dxi), alpha);
+		}
+		return alpha;
+	}
+
+	/**
+	 * Computes the maximum step along dx that stays in the interior of an
+	 * SOC, in the same way as {@link Cone#getMaxStep(java.util.Map, DoubleMatrix1D, DoubleMatrix1D)}.
+	 *
+	 * @param start  position of the cone's first variable in blockIndexes
+	 * @param nCone  size of the cone
+	 */
+	private double getSOCMaxStep(DoubleMatrix1D x, DoubleMatrix1D dx, int start, int nCone) {
+		int index0 = blockIndexes[start];
+		double alpha = 1.0;
+		while (x.getQuick(index0) + alpha * dx.getQuick(index0) <= Math.sqrt(getInnerNormSq(x, dx, alpha, start, nCone)))
+			alpha *= 0.9;
+		return alpha;
+	}
+
+	private double getInnerNormSq(DoubleMatrix1D x, DoubleMatrix1D dx, double alpha, int start, int nCone) {
+		double normSq = 0.0;
+		for (int i = 1; i < nCone; i++) {
+			int index = blockIndexes[start + i];
+			normSq += Math.pow(x.getQuick(index) + alpha * dx.getQuick(index), 2);
+		}
+		return normSq;
+	}
+
+	/**
+	 * Finds the largest step size of the form alphaMax * (1 - j/50) at which
+	 * the step stays in the neighborhood of the central path.
+	 *
+	 * The cones are checked in parallel, each starting from the same step
+	 * size, and the step size is reduced to the smallest one found until
+	 * every cone accepts it. The result does not depend on how the cones
+	 * are divided into chunks.
+	 */
 	private double getStepSize(ConicProgram program
 			, double alphaMax, double beta, double gamma
 			) {
-		DoubleMatrix1D x = v;
-		DoubleMatrix1D s = v;
+		long start = System.nanoTime();
 		double stepSize = alphaMax;
 		double stepSizeDecrement = alphaMax / 50;
+		int decrements = 0;
 
 		double ssCond = getStepSizeCondition(stepSize, beta, gamma, mu);
 
 		while ((tau + stepSize * dTau) * (kappa + stepSize * dKappa) < ssCond) {
-			stepSize -= stepSizeDecrement;
+			stepSize = alphaMax - ++decrements * stepSizeDecrement;
 			ssCond = getStepSizeCondition(stepSize, beta, gamma, mu);
 		}
 
-		for (NonNegativeOrthantCone cone : program.getNonNegativeOrthantCones()) {
-			int index = program.getIndex(cone.getVariable());
-			double vX1 = Math.pow(x.getQuick(index), 2);
-			double vX2 = 2 * dx.getQuick(index) * x.getQuick(index);
-			double vX3 = Math.pow(dx.getQuick(index), 2);
-
-			double vS1 = Math.pow(s.getQuick(index), 2);
-			double vS2 = 2 * ds.getQuick(index) * s.getQuick(index);
-			double vS3 = Math.pow(ds.getQuick(index), 2);
-
-			while (Math.sqrt(
-					(vX1 + stepSize * vX2 + stepSize * stepSize * vX3)
-					* (vS1 + stepSize * vS2 + stepSize * stepSize * vS3)
-					) < ssCond) {
-				stepSize -= stepSizeDecrement;
-				ssCond = getStepSizeCondition(stepSize, beta, gamma, mu);
-				if (stepSize <= 0)
-					throw new IllegalStateException("Stuck.");
-			}
+		int numBlocks = blockPtr.length - 1;
+		stepSizeTask.alphaMax = alphaMax;
+		stepSizeTask.beta = beta;
+		stepSizeTask.gamma = gamma;
+		while (true) {
+			stepSizeTask.decrements = decrements;
+			pool.forEach(numBlocks, stepSizeTask);
+			int nextDecrements = decrements;
+			for (int chunk = 0; chunk < pool.getNumChunks(numBlocks); chunk++)
+				nextDecrements = Math.max(chunkSteps[chunk], nextDecrements);
+			if (nextDecrements == decrements)
+				break;
+			decrements = nextDecrements;
 		}
 
-		for (SecondOrderCone cone : program.getSecondOrderCones()) {
-			/* Collects the cone's variables */
-			Set<Variable> coneVars = cone.getVariables();
-			Variable nthVariable = cone.getNthVariable();
-			int nCone = coneVars.size();
-
-			/* Creates an array of the variables' indices */
-			int[] selection = new int[nCone];
-			int selectionIndex = 1;
-			for (Variable var : coneVars) {
-				if (nthVariable.equals(var))
-					selection[0] = program.getIndex(var);
-				else
-					selection[selectionIndex++] = program.getIndex(var);
-			}
+		statistics.addStepSizeTime(System.nanoTime() - start);
+		return alphaMax - decrements * stepSizeDecrement;
+	}
 
-			/* Selects the variables */
-			DoubleMatrix1D xSel = x.viewSelection(selection);
-			DoubleMatrix1D sSel = s.viewSelection(selection);
-			DoubleMatrix1D dxSel = dx.viewSelection(selection);
-			DoubleMatrix1D dsSel = ds.viewSelection(selection);
-
-			/* Creates a Q matrix for the variables */
-			DoubleMatrix2D Q = new SparseDoubleMatrix2D(nCone, nCone);
-			Q.setQuick(0, 0, 1.0);
-			for (int i = 1; i < nCone; i++)
-				Q.setQuick(i, i, -1.0);
-
-			double vX1 = Q.zMult(xSel, null).zDotProduct(xSel);
-			double vX2 = 2 * Q.zMult(xSel, null).zDotProduct(dxSel);
-			double vX3 = Q.zMult(dxSel, null).zDotProduct(dxSel);
-
-			double vS1 = Q.zMult(sSel, null).zDotProduct(sSel);
-			double vS2 = 2 * Q.zMult(sSel, null).zDotProduct(dsSel);
-			double vS3 = Q.zMult(dsSel, null).zDotProduct(dsSel);
-
-			while (Math.sqrt(
-					(vX1 + stepSize * vX2 + stepSize * stepSize * vX3)
-					* (vS1 + stepSize * vS2 + stepSize * stepSize * vS3)
-					) < ssCond) {
-				stepSize -= stepSizeDecrement;
-				ssCond = getStepSizeCondition(stepSize, beta, gamma, mu);
+	/**
+	 * Finds the most decrements, starting from a given number, after which
+	 * a step of the form alphaMax * (1 - j/50) keeps one of the NNOCs in
+	 * [start, end) in the neighborhood of the central path.
+	 */
+	private int getNNOCStepSizeDecrements(int start, int end
+			, double alphaMax, double beta, double gamma, int decrements
+			) {
+		double stepSizeDecrement = alphaMax / 50;
+		int maxDecrements = decrements;
+		for (int i = start; i < end; i++) {
+			int index = blockIndexes[i];
+			double vi = v.getQuick(index);
+			double dxi = dx.getQuick(index);
+			double dsi = ds.getQuick(index);
+			int j = decrements;
+			double stepSize = alphaMax - j * stepSizeDecrement;
+			while (Math.abs((vi + stepSize * dxi) * (vi + stepSize * dsi))
+					< getStepSizeCondition(stepSize, beta, gamma, mu)) {
+				stepSize = alphaMax - ++j * stepSizeDecrement;
 				if (stepSize <= 0)
-					throw new IllegalStateException("Stuck.");
+					throw new StuckException();
 			}
+			maxDecrements = Math.max(j, maxDecrements);
+		}
+		return maxDecrements;
+	}
+
+	/**
+	 * Finds the number of decrements, starting from a given number, after
+	 * which a step of the form alphaMax * (1 - j/50) keeps an SOC in the
+	 * neighborhood of the central path.
+	 *
+	 * @param start  position of the cone's first variable in blockIndexes
+	 * @param nCone  size of the cone
+	 */
+	private int getStepSizeDecrements(int start, int nCone
+			, double alphaMax, double beta, double gamma, int decrements
+			) {
+		DoubleMatrix1D x = v;
+		DoubleMatrix1D s = v;
+		double stepSizeDecrement = alphaMax / 50;
+		double stepSize = alphaMax - decrements * stepSizeDecrement;
+		double ssCond = getStepSizeCondition(stepSize, beta, gamma, mu);
+
+		/* Computes the coefficients of the squared determinants along the step */
+		int index0 = blockIndexes[start];
+		double vX1 = Math.pow(x.getQuick(index0), 2);
+		double vX2 = 2 * dx.getQuick(index0) * x.getQuick(index0);
+		double vX3 = Math.pow(dx.getQuick(index0), 2);
+
+		double vS1 = Math.pow(s.getQuick(index0), 2);
+		double vS2 = 2 * ds.getQuick(index0) * s.getQuick(index0);
+		double vS3 = Math.pow(ds.getQuick(index0), 2);
+
+		for (int i = 1; i < nCone; i++) {
+			int index = blockIndexes[start + i];
+			vX1 -= Math.pow(x.getQuick(index), 2);
+			vX2 -= 2 * dx.getQuick(index) * x.getQuick(index);
+			vX3 -= Math.pow(dx.getQuick(index), 2);
+
+			vS1 -= Math.pow(s.getQuick(index), 2);
+			vS2 -= 2 * ds.getQuick(index) * s.getQuick(index);
+			vS3 -= Math.pow(ds.getQuick(index), 2);
 		}
 
-		return stepSize;
+		while (Math.sqrt(
+				(vX1 + stepSize * vX2 + stepSize * stepSize * vX3)
+				* (vS1 + stepSize * vS2 + stepSize * stepSize * vS3)
+				) < ssCond) {
+			stepSize = alphaMax - ++decrements * stepSizeDecrement;
+			ssCond = getStepSizeCondition(stepSize, beta, gamma, mu);
+			if (stepSize <= 0)
+				throw new StuckException();
+		}
+
+		return decrements;
 	}
 
 	private double getStepSizeCondition(double stepSize, double beta, double gamma, double mu) {
 		return beta * (1 - stepSize * (1 - gamma)) * mu;
 	}
 
-	private DoubleMatrix2D getArrowheadMatrix(DoubleMatrix1D v) {
-		int n = (int) v.size();
-		double v0 = v.getQuick(0);
-		DoubleMatrix2D ahm = new SparseDoubleMatrix2D(n, n);
-		if (n > 1) {
-			ahm.viewColumn(0).assign(v);
-			ahm.viewRow(0).assign(v);
-			for (int i = 1; i < n; i++) {
-				ahm.setQuick(i, i, v0);
+	/**
+	 * Writes the arrowhead matrix of the entries of u in a block into values,
+	 * starting at position p.
+	 */
+	private void getArrowheadMatrix(DoubleMatrix1D u, int start, int size, double[] values, int p) {
+		double u0 = u.getQuick(blockIndexes[start]);
+		for (int i = 0; i < size; i++)
+			for (int j = 0; j < size; j++) {
+				if (i == 0)
+					values[p + j] = u.getQuick(blockIndexes[start + j]);
+				else if (j == 0)
+					values[p + i * size] = u.getQuick(blockIndexes[start + i]);
+				else
+					values[p + i * size + j] = (i == j) ? u0 : 0.0;
 			}
-		}
-		else {
-			ahm.setQuick(0, 0, v0);
-		}
-
-		return ahm;
 	}
 
 	private void descaleSearchDirection() {
@@ -1068,43 +1737,184 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		dKappaDescaled = dKappa;
 	}
 
-	private DoubleMatrix2D getSOCFunction(DoubleMatrix1D x, double detX) {
-		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
-		int n = (int) x.size();
+	/**
+	 * Writes P(x) for the first n entries of x into values, starting at
+	 * position p.
+	 */
+	private void getSOCFunction(double[] x, double detX, int n, double[] values, int p) {
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				values[p + i * n + j] = x[i] * x[j];
+		values[p] -= detX;
+		for (int i = 1; i < n; i++)
+			values[p + i * n + i] += detX;
+	}
 
-		/* Creates a Q matrix for the variables */
-		DoubleMatrix2D Q = new SparseDoubleMatrix2D(n, n);
-		Q.setQuick(0, 0, 1.0);
+	/**
+	 * Writes the square root of the first n entries of x into sqrtX.
+	 */
+	private void getSOCSqrt(double[] x, double detX, int n, double[] sqrtX) {
+		double denom = Math.sqrt(Math.sqrt(2) * x[0] + 2 * Math.sqrt(detX));
+		sqrtX[0] = (x[0] + Math.sqrt(2 * detX)) / denom;
 		for (int i = 1; i < n; i++)
-			Q.setQuick(i, i, -1.0);
+			sqrtX[i] = x[i] / denom;
+	}
+
+	/* Thrown when no step keeps the iterate in the neighborhood of the central path */
+	private static class StuckException extends IllegalStateException {
+
+		private static final long serialVersionUID = 1L;
 
-		DoubleMatrix2D P = alg.multOuter(x, x, null);
-		P.assign(Q.copy().assign(DoubleFunctions.mult(detX)), DoubleFunctions.minus);
-		return P;
+		public StuckException() {
+			super("Stuck.");
+		}
 	}
 
-	private DoubleMatrix1D getSOCInverse(DoubleMatrix1D x, double detX) {
-		int n = (int) x.size();
-		/* Creates a Q matrix for the variables */
-		DoubleMatrix2D Q = new SparseDoubleMatrix2D(n, n);
-		Q.setQuick(0, 0, 1.0);
-		for (int i = 1; i < n; i++)
-			Q.setQuick(i, i, -1.0);
+	/* Computes the blocks of the scaling matrices for a chunk of cones */
+	private class ScalingTask implements WorkerPool.RangeTask {
+
+		private DoubleMatrix1D x;
+		private DoubleMatrix1D s;
+
+		@Override
+		public void run(int chunk, int start, int end) {
+			computeNNOCScaling(start, Math.min(end, numNNOCs), x, s);
+			for (int block = Math.max(start, numNNOCs); block < end; block++)
+				computeSOCScaling(chunk, block, x, s);
+		}
+	}
+
+	/* Updates d, detD, and v for a chunk of cones after a step */
+	private class UpdateTask implements WorkerPool.RangeTask {
+
+		private DoubleMatrix1D x;
+		private DoubleMatrix1D s;
+		private double stepSize;
+
+		@Override
+		public void run(int chunk, int start, int end) {
+			/* Processes NNOCs */
+			for (int i = start; i < Math.min(end, numNNOCs); i++) {
+				int index = blockIndexes[i];
+				v.setQuick(index, Math.sqrt(x.getQuick(index) * s.getQuick(index)));
+			}
+
+			/* Processes SOCs */
+			for (int block = Math.max(start, numNNOCs); block < end; block++)
+				updateSOC(chunk, blockPtr[block], blockPtr[block+1] - blockPtr[block], stepSize);
+		}
+	}
 
-		return Q.zMult(x, null).assign(DoubleFunctions.div(detX));
+	/* Computes the blocks of Dxn and Dsn for a chunk of cones */
+	private class ArrowheadTask implements WorkerPool.RangeTask {
+		@Override
+		public void run(int chunk, int start, int end) {
+			for (int block = start; block < end; block++) {
+				getArrowheadMatrix(dxn, Dxn.getBlockStart(block), Dxn.getBlockSize(block), Dxn.getValues(), Dxn.getValueStart(block));
+				getArrowheadMatrix(dsn, Dsn.getBlockStart(block), Dsn.getBlockSize(block), Dsn.getValues(), Dsn.getValueStart(block));
+			}
+		}
 	}
 
-	private DoubleMatrix1D getSOCSqrt(DoubleMatrix1D x, double detX) {
-		DoubleMatrix1D sqrtD = x.copy();
-		sqrtD.setQuick(0, sqrtD.getQuick(0) + Math.sqrt(2 * detX));
-		sqrtD.assign(DoubleFunctions.div(Math.sqrt(Math.sqrt(2) * x.getQuick(0) + 2 * Math.sqrt(detX))));
-		return sqrtD;
+	/* Sets partials[chunk] to the maximum step for a chunk of cones */
+	private class MaxStepTask implements WorkerPool.RangeTask {
+		@Override
+		public void run(int chunk, int start, int end) {
+			int nnocEnd = Math.min(end, numNNOCs);
+			double alphaMax = Math.min(getNNOCMaxStep(v, dx, start, nnocEnd), getNNOCMaxStep(v, ds, start, nnocEnd));
+			for (int block = Math.max(start, numNNOCs); block < end; block++) {
+				int first = blockPtr[block];
+				int nCone = blockPtr[block+1] - first;
+				alphaMax = Math.min(getSOCMaxStep(v, dx, first, nCone), alphaMax);
+				alphaMax = Math.min(getSOCMaxStep(v, ds, first, nCone), alphaMax);
+			}
+			partials[chunk] = alphaMax;
+		}
+	}
+
+	/* Sets chunkSteps[chunk] to the most decrements needed by a chunk of cones */
+	private class StepSizeTask implements WorkerPool.RangeTask {
+
+		private double alphaMax;
+		private double beta;
+		private double gamma;
+		private int decrements;
+
+		@Override
+		public void run(int chunk, int start, int end) {
+			int maxDecrements = getNNOCStepSizeDecrements(start, Math.min(end, numNNOCs),
+					alphaMax, beta, gamma, decrements);
+			for (int block = Math.max(start, numNNOCs); block < end; block++) {
+				int first = blockPtr[block];
+				int nCone = blockPtr[block+1] - first;
+				maxDecrements = Math.max(getStepSizeDecrements(first, nCone,
+						alphaMax, beta, gamma, decrements), maxDecrements);
+			}
+			chunkSteps[chunk] = maxDecrements;
+		}
+	}
+
+	/*
+	 * Computes the centrality corrector for a chunk of cones. For an SOC,
+	 * each eigenvalue of the Jordan product of the scaled variables at the
+	 * trial step is corrected separately.
+	 */
+	private class CorrectorTask implements WorkerPool.RangeTask {
+
+		private double alpha;
+		private double target;
+
+		@Override
+		public void run(int chunk, int start, int end) {
+			double[] xTrial = coneScratch1[chunk];
+			double[] sTrial = coneScratch2[chunk];
+			double[] product = coneScratch3[chunk];
+
+			/* Processes NNOCs */
+			for (int i = start; i < Math.min(end, numNNOCs); i++) {
+				int index = blockIndexes[i];
+				double vi = v.getQuick(index);
+				double product0 = (vi + alpha * dx.getQuick(index)) * (vi + alpha * ds.getQuick(index));
+				corrector.setQuick(index, getProductCorrection(product0, target));
+			}
+
+			/* Processes SOCs */
+			for (int block = Math.max(start, numNNOCs); block < end; block++) {
+				int first = blockPtr[block];
+				int nCone = blockPtr[block+1] - first;
+
+				double product0 = 0.0;
+				for (int i = 0; i < nCone; i++) {
+					int index = blockIndexes[first + i];
+					xTrial[i] = v.getQuick(index) + alpha * dx.getQuick(index);
+					sTrial[i] = v.getQuick(index) + alpha * ds.getQuick(index);
+					product0 += xTrial[i] * sTrial[i];
+				}
+
+				double norm = 0.0;
+				for (int i = 1; i < nCone; i++) {
+					product[i] = xTrial[0] * sTrial[i] + sTrial[0] * xTrial[i];
+					norm += Math.pow(product[i], 2);
+				}
+				norm = Math.sqrt(norm);
+
+				double upper = getProductCorrection(product0 + norm, target);
+				double lower = getProductCorrection(product0 - norm, target);
+				corrector.setQuick(blockIndexes[first], (upper + lower) / 2);
+				for (int i = 1; i < nCone; i++)
+					corrector.setQuick(blockIndexes[first + i],
+							(norm > 0.0) ? (upper - lower) / 2 * product[i] / norm : 0.0);
+			}
+		}
 	}
 
 	private void removeMatrixReferences() {
 		baseResP = null;
 		baseResD = null;
 
+		rotatedA = null;
+		rotatedC = null;
+
 		T = null;
 		e = null;
 
@@ -1126,7 +1936,9 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		ThetaW = null;
 		invThetaInvW = null;
 		invThetaSqInvWSq = null;
-		AInvThetaSqInvWSq = null;
+		normalProduct = null;
+		matrixFreeSolver = null;
+		scalingDiagonal = null;
 		g1 = null;
 		g2 = null;
 
@@ -1143,5 +1955,27 @@ public class HomogeneousIPM implements ConicProgramSolver {
 		scratchN3 = null;
 		scratchM1 = null;
 		scratchM2 = null;
+
+		bestX = null;
+		bestW = null;
+		bestS = null;
+
+		corrector = null;
+		dxSaved = null;
+		dwSaved = null;
+		dsSaved = null;
+		coneScratch1 = null;
+		coneScratch2 = null;
+		coneScratch3 = null;
+		coneScratch4 = null;
+		coneScratch5 = null;
+
+		blockPtr = null;
+		blockIndexes = null;
+
+		scalingTask.x = null;
+		scalingTask.s = null;
+		updateTask.x = null;
+		updateTask.s = null;
 	}
 }
@@ -19,6 +19,10 @@ package org.linqs.psl.experimental.optimizer.conic.ipm;
 
 import org.linqs.psl.config.Config;
 import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.IterationListener;
+import org.linqs.psl.experimental.optimizer.conic.IterationSnapshot;
+import org.linqs.psl.experimental.optimizer.conic.SolutionStatus;
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
 import org.linqs.psl.experimental.optimizer.conic.program.Cone;
 import org.linqs.psl.experimental.optimizer.conic.program.ConeType;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
@@ -39,6 +43,7 @@ import cern.jet.math.tdouble.DoubleFunctions;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -106,18 +111,30 @@ public class IPM implements ConicProgramSolver {
 	protected final double dualityGapThreshold;
 	protected final double infeasibilityThreshold;
 
+	protected final SolverStatistics statistics;
+
+	private final Set<IterationListener> listeners;
+	private final IterationSnapshot snapshot;
+
+	/** Whether a listener has stopped the current solve */
+	protected boolean aborted;
+
 	private static final ArrayList<ConeType> supportedCones = new ArrayList<ConeType>(2);
 	static {
 		supportedCones.add(ConeType.NonNegativeOrthantCone);
 	}
 
 	private int stepNum;
+	private double lastStepSize;
 
 	public IPM() {
 		initFeasible = Config.getBoolean(INIT_FEASIBLE_KEY, INIT_FEASIBLE_DEFAULT);
 		tryDualize = Config.getBoolean(DUALIZE_KEY, DUALIZE_DEFAULT);
 		dualityGapThreshold = Config.getDouble(DUALITY_GAP_THRESHOLD_KEY, DUALITY_GAP_THRESHOLD_DEFAULT);
 		infeasibilityThreshold = Config.getDouble(INFEASIBILITY_THRESHOLD_KEY, INFEASIBILITY_THRESHOLD_DEFAULT);
+		statistics = new SolverStatistics();
+		listeners = new HashSet<IterationListener>();
+		snapshot = new IterationSnapshot();
 
 		currentProgram = null;
 		dualized = false;
@@ -163,6 +180,8 @@ public class IPM implements ConicProgramSolver {
 
 		ConicProgram program;
 
+		statistics.clear();
+		aborted = false;
 		currentProgram.checkOutMatrices();
 
 		if (dualized) {
@@ -186,25 +205,76 @@ public class IPM implements ConicProgramSolver {
 
 		log.debug("Starting optimization with {} variables and {} constraints.", A.columns(), A.rows());
 
+		long assemblyTime = currentProgram.getAssemblyTime();
+		if (program != currentProgram)
+			assemblyTime += program.getAssemblyTime();
+		statistics.addAssemblyTime(assemblyTime);
+		long start = System.currentTimeMillis();
+		long nanoStart = System.nanoTime();
+		snapshot.reset();
+
 		if (program.getDualInfeasibility() > 0.01 || program.getPrimalInfeasibility() > 0.01)
 			throw new IllegalStateException();
 
 		doSolve(program);
+		long solveTime = System.currentTimeMillis() - start;
+		statistics.setSolveTime(System.nanoTime() - nanoStart);
 
-		if (program.getDualInfeasibility() > 0.01 || program.getPrimalInfeasibility() > 0.01) {
+		if (!aborted && (program.getDualInfeasibility() > 0.01 || program.getPrimalInfeasibility() > 0.01)) {
 			log.warn("Current primal infeasibility: {}.", program.getPrimalInfeasibility());
 			log.warn("Current dual infeasibility: {}.", program.getDualInfeasibility());
 			throw new IllegalStateException();
 		}
 
+		statistics.setSolution((aborted) ? SolutionStatus.Aborted : SolutionStatus.Optimal,
+				getRelativeGap(program.getC(), program.getX(), program.getB(), program.getW()),
+				program.getPrimalInfeasibility(), program.getDualInfeasibility());
+
 		if (dualized) {
 			program.checkInMatrices();
 			dualizer.checkInProgram();
 		}
 
 		currentProgram.checkInMatrices();
+		if (currentProgram.getJournal() != null && statistics.getStatus() == SolutionStatus.Optimal)
+			currentProgram.getJournal().clear();
+
+		log.debug("Completed optimization in {} ms. Assembling matrices took {} ms.", solveTime, assemblyTime / 1000000);
+		log.debug("Statistics: {}", statistics);
+	}
+
+	@Override
+	public SolverStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Registers a listener to be notified after each iteration. Listeners
+	 * can stop the IPM, which then keeps its current iterate.
+	 */
+	public void registerForIterationEvents(IterationListener l) {
+		listeners.add(l);
+	}
 
-		log.debug("Completed optimization.");
+	public void unregisterForIterationEvents(IterationListener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * Sends the state after an iteration to the registered listeners.
+	 *
+	 * @param mu  the duality gap measure of the iterate
+	 * @param stepSize  the smaller of the primal and dual step sizes
+	 * @return true if a listener has asked the IPM to stop
+	 */
+	protected boolean notifyIterationListeners(ConicProgram program, double mu, double stepSize) {
+		if (!listeners.isEmpty()) {
+			snapshot.update(mu, getRelativeGap(program.getC(), program.getX(), program.getB(), program.getW()),
+					program.getPrimalInfeasibility(), program.getDualInfeasibility(), stepSize, statistics);
+			for (IterationListener l : listeners)
+				aborted = l.iterationCompleted(this, snapshot) || aborted;
+		}
+		return aborted;
 	}
 
 	protected void doSolve(ConicProgram program) {
@@ -265,7 +335,10 @@ public class IPM implements ConicProgramSolver {
 			mu = alg.mult(x, s) / getV(program);
 			primalInfeasibility = program.getPrimalInfeasibility();
 			dualInfeasibility = program.getDualInfeasibility();
+			statistics.addIteration();
 			log.debug("Itr: {} -- Gap: {} -- P. Inf: {} -- D. Inf: {} -- Obj: {}", new Object[] {++stepNum, mu, primalInfeasibility, dualInfeasibility, alg.mult(program.getC(), x)});
+			if (notifyIterationListeners(program, mu, lastStepSize))
+				break;
 		}
 	}
 
@@ -304,16 +377,22 @@ public class IPM implements ConicProgramSolver {
 			.assign(DoubleFunctions.div(mu));
 
 		if (!inNeighborhood) {
+			long start = System.nanoTime();
 			double primalStepSize = 1.0;
 			double dualStepSize = 1.0;
 			for (Cone cone : program.getCones()) {
 				primalStepSize = Math.min(primalStepSize, cone.getMaxStep(program.getVarMap(), x, dx));
 				dualStepSize = Math.min(dualStepSize, cone.getMaxStep(program.getVarMap(), s, ds));
 			}
+			statistics.addStepSizeTime(System.nanoTime() - start);
 
 			dx.assign(DoubleFunctions.mult(primalStepSize));
 			dw.assign(DoubleFunctions.mult(dualStepSize));
 			ds.assign(DoubleFunctions.mult(dualStepSize));
+			lastStepSize = Math.min(primalStepSize, dualStepSize);
+		}
+		else {
+			lastStepSize = 1.0;
 		}
 
 		w.assign(dw, DoubleFunctions.plus);
@@ -321,12 +400,34 @@ public class IPM implements ConicProgramSolver {
 		x.assign(dx, DoubleFunctions.plus);
 	}
 
+	/**
+	 * @return the relative duality gap |c'x - b'w| / (1 + |b'w|), which is
+	 *         the gap reported in the statistics of all solvers
+	 */
+	protected static double getRelativeGap(DoubleMatrix1D c, DoubleMatrix1D x, DoubleMatrix1D b, DoubleMatrix1D w) {
+		double bDotW = b.zDotProduct(w);
+		return Math.abs(c.zDotProduct(x) - bDotW) / (1 + Math.abs(bDotW));
+	}
+
 	protected int getV(ConicProgram program) {
 		return program.getNumNNOC() + 2*program.gtNumSOC();
 	}
 
 	protected void solveNormalSystem(SparseCCDoubleMatrix2D A, DoubleMatrix1D x, ConicProgram program) {
+		long start = System.nanoTime();
 		SparseDoubleCholeskyDecomposition cd = new SparseDoubleCholeskyDecomposition(A, 1);
+		statistics.addFactorizationTime(System.nanoTime() - start);
+		statistics.updatePeakFactorNonZeros(getFactorNonZeros(cd));
+
+		start = System.nanoTime();
 		cd.solve(x);
+		statistics.addTriangularSolveTime(System.nanoTime() - start);
+	}
+
+	/**
+	 * @return the number of nonzeros in the factor of a Cholesky decomposition
+	 */
+	protected static long getFactorNonZeros(SparseDoubleCholeskyDecomposition cd) {
+		return (long) cd.getSymbolicAnalysis().lnz;
 	}
 }
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleCholeskyDecomposition;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+
+/**
+ * An {@link ElementSystem} factorized and solved in this process.
+ * <p>
+ * All vectors are allocated when the system is created, except those for
+ * refinement with a stale factor, which are allocated at the first such
+ * solve. Solves allocate nothing else.
+ */
+class LocalElementSystem implements ElementSystem {
+
+	/* Refinement stops early once the residual is this small relative to the right-hand side */
+	private static final double REFINEMENT_REL_TOL = 10e-10;
+
+	private final SparseCCDoubleMatrix2D A;
+	private final boolean primal;
+	private final int refinementSteps;
+
+	private SparseCCDoubleMatrix2D Hinv;
+	private SparseDoubleCholeskyDecomposition cd;
+	private long factorizationTime;
+
+	private final DenseDoubleMatrix1D dx;
+	private final DenseDoubleMatrix1D dw;
+	private final DenseDoubleMatrix1D ds;
+	private final DenseDoubleMatrix1D temp;
+	private RefinementWorkspace workspace;
+	private long solveTime;
+	private int cgIterations;
+
+	/**
+	 * @param A  the constraint matrix of the element
+	 * @param primal  whether this is the system of the primal step
+	 * @param refinementSteps  the maximum number of conjugate gradient
+	 *                         iterations used to refine a solve with a stale factor
+	 */
+	LocalElementSystem(SparseCCDoubleMatrix2D A, boolean primal, int refinementSteps) {
+		this.A = A;
+		this.primal = primal;
+		this.refinementSteps = refinementSteps;
+		dx = (primal) ? new DenseDoubleMatrix1D(A.columns()) : null;
+		dw = new DenseDoubleMatrix1D(A.rows());
+		ds = new DenseDoubleMatrix1D(A.columns());
+		temp = new DenseDoubleMatrix1D(A.columns());
+	}
+
+	@Override
+	public void setInvH(SparseCCDoubleMatrix2D Hinv) {
+		this.Hinv = Hinv;
+	}
+
+	@Override
+	public void factorize() {
+		SparseCCDoubleMatrix2D partial = new SparseCCDoubleMatrix2D(A.rows(), A.columns());
+		SparseCCDoubleMatrix2D coeff = new SparseCCDoubleMatrix2D(A.rows(), A.rows());
+		A.zMult(Hinv, partial, 1.0, 0.0, false, false);
+		partial.zMult(A, coeff, 1.0, 0.0, false, true);
+		long start = System.nanoTime();
+		cd = new SparseDoubleCholeskyDecomposition(coeff, 1);
+		factorizationTime = System.nanoTime() - start;
+	}
+
+	@Override
+	public long getFactorizationTime() {
+		return factorizationTime;
+	}
+
+	@Override
+	public long getFactorNonZeros() {
+		return IPM.getFactorNonZeros(cd);
+	}
+
+	@Override
+	public void solve(DoubleMatrix1D r, double mu, boolean stale) {
+		if (cd == null)
+			throw new IllegalStateException("System has not been factorized.");
+
+		Hinv.zMult(r, temp);
+		A.zMult(temp, dw);
+		long start = System.nanoTime();
+		cgIterations = solveNormalSystem(dw, stale);
+		solveTime = System.nanoTime() - start;
+		A.zMult(dw, ds, -1.0, 0.0, true);
+		if (primal) {
+			temp.assign(r).assign(ds, DoubleFunctions.plus);
+			Hinv.zMult(temp, dx, -1 / mu, 0.0, false);
+		}
+	}
+
+	@Override
+	public DoubleMatrix1D getDx() {
+		return dx;
+	}
+
+	@Override
+	public DoubleMatrix1D getDw() {
+		return dw;
+	}
+
+	@Override
+	public DoubleMatrix1D getDs() {
+		return ds;
+	}
+
+	@Override
+	public long getSolveTime() {
+		return solveTime;
+	}
+
+	@Override
+	public int getCGIterations() {
+		return cgIterations;
+	}
+
+	/**
+	 * Solves (A Hinv A^T) y = b in place. If the factor is stale, it was
+	 * computed for an earlier Hinv and instead preconditions a conjugate
+	 * gradient method started from its solution.
+	 *
+	 * @return the number of conjugate gradient iterations
+	 */
+	private int solveNormalSystem(DoubleMatrix1D b, boolean stale) {
+		if (!stale) {
+			cd.solve(b);
+			return 0;
+		}
+
+		if (workspace == null)
+			workspace = new RefinementWorkspace(A.rows(), A.columns());
+		RefinementWorkspace ws = workspace;
+		double tol = REFINEMENT_REL_TOL * Math.sqrt(b.zDotProduct(b));
+
+		ws.y.assign(b);
+		cd.solve(ws.y);
+		multiplyNormal(ws.y, ws.q);
+		ws.r.assign(b);
+		addMult(-1.0, ws.q, ws.r);
+		ws.z.assign(ws.r);
+		cd.solve(ws.z);
+		ws.d.assign(ws.z);
+		double rz = ws.r.zDotProduct(ws.z);
+
+		int iter = 0;
+		while (iter < refinementSteps && Math.sqrt(ws.r.zDotProduct(ws.r)) > tol) {
+			multiplyNormal(ws.d, ws.q);
+			double alpha = rz / ws.d.zDotProduct(ws.q);
+			addMult(alpha, ws.d, ws.y);
+			addMult(-1 * alpha, ws.q, ws.r);
+			ws.z.assign(ws.r);
+			cd.solve(ws.z);
+			double rzNew = ws.r.zDotProduct(ws.z);
+			double beta = rzNew / rz;
+			for (int i = 0; i < ws.d.size(); i++)
+				ws.d.setQuick(i, ws.z.getQuick(i) + beta * ws.d.getQuick(i));
+			rz = rzNew;
+			iter++;
+		}
+
+		b.assign(ws.y);
+		return iter;
+	}
+
+	/**
+	 * Computes out = A Hinv A^T y.
+	 */
+	private void multiplyNormal(DoubleMatrix1D y, DoubleMatrix1D out) {
+		A.zMult(y, workspace.temp1, 1.0, 0.0, true);
+		Hinv.zMult(workspace.temp1, workspace.temp2);
+		A.zMult(workspace.temp2, out);
+	}
+
+	/**
+	 * Computes y += alpha x.
+	 */
+	private static void addMult(double alpha, DoubleMatrix1D x, DoubleMatrix1D y) {
+		for (int i = 0; i < y.size(); i++)
+			y.setQuick(i, y.getQuick(i) + alpha * x.getQuick(i));
+	}
+
+	/**
+	 * Vectors for refining solves with stale factors.
+	 */
+	private static class RefinementWorkspace {
+		private final DoubleMatrix1D y, r, z, d, q;
+		private final DoubleMatrix1D temp1, temp2;
+
+		RefinementWorkspace(int rows, int vars) {
+			y = new DenseDoubleMatrix1D(rows);
+			r = new DenseDoubleMatrix1D(rows);
+			z = new DenseDoubleMatrix1D(rows);
+			d = new DenseDoubleMatrix1D(rows);
+			q = new DenseDoubleMatrix1D(rows);
+			temp1 = new DenseDoubleMatrix1D(vars);
+			temp2 = new DenseDoubleMatrix1D(vars);
+		}
+	}
+}
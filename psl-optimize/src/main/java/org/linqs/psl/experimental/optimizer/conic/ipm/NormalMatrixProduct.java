@@ -0,0 +1,228 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import java.util.Arrays;
+
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+/**
+ * Computes normal matrices A D A^T for a fixed A and block-diagonal
+ * matrices D with a fixed {@link ConeBlockMatrix} structure.
+ * <p>
+ * The sparsity pattern of the product, the dense submatrix of A touched by
+ * each block, and where each block's contribution goes in the product are
+ * computed once. Each product is then accumulated block by block into the
+ * same matrix, whose sparsity pattern never changes.
+ */
+class NormalMatrixProduct {
+	
+	private final ConeBlockMatrix structure;
+	
+	/* The rows of A with nonzeros in the columns of block b, in order */
+	private final int[] blockRowPtr;
+	private final int[] blockRows;
+	
+	/* The dense submatrix of A with those rows and the block's columns, in row-major order */
+	private final int[] blockAPtr;
+	private final double[] blockA;
+	
+	/*
+	 * The position in the values of the product of the entry in the ith and
+	 * jth rows of block b, in row-major order
+	 */
+	private final int[] positionPtr;
+	private final int[] positions;
+	
+	private final SparseCCDoubleMatrix2D product;
+	private final double[] scratch;
+	
+	NormalMatrixProduct(SparseCCDoubleMatrix2D A, ConeBlockMatrix structure) {
+		this.structure = structure;
+		int m = A.rows();
+		int numBlocks = structure.getNumBlocks();
+		int[] indexes = structure.getIndexes();
+		int[] colPtr = A.getColumnPointers();
+		int[] rowIndexes = A.getRowIndexes();
+		double[] values = A.getValues();
+		
+		/* Collects the rows of each block */
+		int[] marker = new int[m];
+		Arrays.fill(marker, -1);
+		blockRowPtr = new int[numBlocks + 1];
+		for (int b = 0; b < numBlocks; b++) {
+			int count = 0;
+			for (int i = structure.getBlockStart(b); i < structure.getBlockStart(b) + structure.getBlockSize(b); i++)
+				for (int k = colPtr[indexes[i]]; k < colPtr[indexes[i]+1]; k++)
+					if (marker[rowIndexes[k]] != b) {
+						marker[rowIndexes[k]] = b;
+						count++;
+					}
+			blockRowPtr[b+1] = blockRowPtr[b] + count;
+		}
+		
+		Arrays.fill(marker, -1);
+		blockRows = new int[blockRowPtr[numBlocks]];
+		for (int b = 0; b < numBlocks; b++) {
+			int next = blockRowPtr[b];
+			for (int i = structure.getBlockStart(b); i < structure.getBlockStart(b) + structure.getBlockSize(b); i++)
+				for (int k = colPtr[indexes[i]]; k < colPtr[indexes[i]+1]; k++)
+					if (marker[rowIndexes[k]] != b) {
+						marker[rowIndexes[k]] = b;
+						blockRows[next++] = rowIndexes[k];
+					}
+			Arrays.sort(blockRows, blockRowPtr[b], next);
+		}
+		
+		/* Copies the dense submatrix of A for each block */
+		blockAPtr = new int[numBlocks + 1];
+		int maxScratch = 0;
+		for (int b = 0; b < numBlocks; b++) {
+			int size = (blockRowPtr[b+1] - blockRowPtr[b]) * structure.getBlockSize(b);
+			blockAPtr[b+1] = blockAPtr[b] + size;
+			maxScratch = Math.max(maxScratch, size);
+		}
+		blockA = new double[blockAPtr[numBlocks]];
+		int[] localRow = marker;
+		for (int b = 0; b < numBlocks; b++) {
+			int numCols = structure.getBlockSize(b);
+			for (int r = blockRowPtr[b]; r < blockRowPtr[b+1]; r++)
+				localRow[blockRows[r]] = r - blockRowPtr[b];
+			for (int j = 0; j < numCols; j++) {
+				int col = indexes[structure.getBlockStart(b) + j];
+				for (int k = colPtr[col]; k < colPtr[col+1]; k++)
+					blockA[blockAPtr[b] + localRow[rowIndexes[k]] * numCols + j] = values[k];
+			}
+		}
+		scratch = new double[maxScratch];
+		
+		/* Finds the blocks with nonzeros in each row */
+		int[] rowBlockPtr = new int[m + 1];
+		for (int r = 0; r < blockRows.length; r++)
+			rowBlockPtr[blockRows[r] + 1]++;
+		for (int row = 0; row < m; row++)
+			rowBlockPtr[row+1] += rowBlockPtr[row];
+		int[] rowBlocks = new int[blockRows.length];
+		int[] next = Arrays.copyOf(rowBlockPtr, m);
+		for (int b = 0; b < numBlocks; b++)
+			for (int r = blockRowPtr[b]; r < blockRowPtr[b+1]; r++)
+				rowBlocks[next[blockRows[r]]++] = b;
+		
+		/* Computes the sparsity pattern of the product, one column at a time */
+		Arrays.fill(marker, -1);
+		int[] productColPtr = new int[m + 1];
+		for (int col = 0; col < m; col++) {
+			int count = 0;
+			for (int p = rowBlockPtr[col]; p < rowBlockPtr[col+1]; p++) {
+				int b = rowBlocks[p];
+				for (int r = blockRowPtr[b]; r < blockRowPtr[b+1]; r++)
+					if (marker[blockRows[r]] != col) {
+						marker[blockRows[r]] = col;
+						count++;
+					}
+			}
+			productColPtr[col+1] = productColPtr[col] + count;
+		}
+		
+		product = new SparseCCDoubleMatrix2D(m, m, Math.max(1, productColPtr[m]));
+		System.arraycopy(productColPtr, 0, product.getColumnPointers(), 0, m + 1);
+		int[] productRowIndexes = product.getRowIndexes();
+		Arrays.fill(marker, -1);
+		for (int col = 0; col < m; col++) {
+			int nextRow = productColPtr[col];
+			for (int p = rowBlockPtr[col]; p < rowBlockPtr[col+1]; p++) {
+				int b = rowBlocks[p];
+				for (int r = blockRowPtr[b]; r < blockRowPtr[b+1]; r++)
+					if (marker[blockRows[r]] != col) {
+						marker[blockRows[r]] = col;
+						productRowIndexes[nextRow++] = blockRows[r];
+					}
+			}
+			Arrays.sort(productRowIndexes, productColPtr[col], nextRow);
+		}
+		
+		/* Locates the entries of each block's contribution */
+		positionPtr = new int[numBlocks + 1];
+		for (int b = 0; b < numBlocks; b++) {
+			int numRows = blockRowPtr[b+1] - blockRowPtr[b];
+			positionPtr[b+1] = positionPtr[b] + numRows * numRows;
+		}
+		positions = new int[positionPtr[numBlocks]];
+		for (int b = 0; b < numBlocks; b++) {
+			int p = positionPtr[b];
+			for (int i = blockRowPtr[b]; i < blockRowPtr[b+1]; i++)
+				for (int j = blockRowPtr[b]; j < blockRowPtr[b+1]; j++) {
+					int col = blockRows[j];
+					positions[p++] = Arrays.binarySearch(productRowIndexes,
+							productColPtr[col], productColPtr[col+1], blockRows[i]);
+				}
+		}
+	}
+	
+	/**
+	 * @return the matrix into which products are written
+	 */
+	SparseCCDoubleMatrix2D getProduct() {
+		return product;
+	}
+	
+	/**
+	 * Computes A D A^T into {@link #getProduct()}.
+	 * 
+	 * @param D  a matrix with the structure given to the constructor
+	 */
+	void multiply(ConeBlockMatrix D) {
+		double[] values = product.getValues();
+		Arrays.fill(values, 0, product.getColumnPointers()[product.columns()], 0.0);
+		double[] dValues = D.getValues();
+		
+		for (int b = 0; b < structure.getNumBlocks(); b++) {
+			int numRows = blockRowPtr[b+1] - blockRowPtr[b];
+			int numCols = structure.getBlockSize(b);
+			int a = blockAPtr[b];
+			int d = D.getValueStart(b);
+			int p = positionPtr[b];
+			
+			if (numCols == 1) {
+				double scale = dValues[d];
+				for (int i = 0; i < numRows; i++)
+					for (int j = 0; j < numRows; j++)
+						values[positions[p++]] += scale * blockA[a + i] * blockA[a + j];
+			}
+			else {
+				/* Computes the block's submatrix of A times its block of D */
+				for (int i = 0; i < numRows; i++)
+					for (int j = 0; j < numCols; j++) {
+						double sum = 0.0;
+						for (int l = 0; l < numCols; l++)
+							sum += blockA[a + i * numCols + l] * dValues[d + l * numCols + j];
+						scratch[i * numCols + j] = sum;
+					}
+				
+				/* Multiplies by the transpose of the submatrix and accumulates */
+				for (int i = 0; i < numRows; i++)
+					for (int j = 0; j < numRows; j++) {
+						double sum = 0.0;
+						for (int l = 0; l < numCols; l++)
+							sum += scratch[i * numCols + l] * blockA[a + j * numCols + l];
+						values[positions[p++]] += sum;
+					}
+			}
+		}
+	}
+}
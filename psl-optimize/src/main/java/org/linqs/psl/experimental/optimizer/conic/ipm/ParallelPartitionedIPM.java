@@ -20,30 +20,29 @@ package org.linqs.psl.experimental.optimizer.conic.ipm;
 import org.linqs.psl.config.Config;
 import org.linqs.psl.experimental.optimizer.conic.partition.CompletePartitioner;
 import org.linqs.psl.experimental.optimizer.conic.partition.ConicProgramPartition;
-import org.linqs.psl.experimental.optimizer.conic.partition.ObjectiveCoefficientCompletePartitioner;
 import org.linqs.psl.experimental.optimizer.conic.program.Cone;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
 import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+import org.linqs.psl.experimental.optimizer.conic.util.WorkerPool;
 
+import cern.colt.function.tdouble.DoubleDoubleFunction;
 import cern.colt.matrix.tdouble.DoubleFactory1D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
-import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleCholeskyDecomposition;
-import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
 import cern.jet.math.tdouble.DoubleFunctions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 public class ParallelPartitionedIPM extends IPM {
 
@@ -53,15 +52,125 @@ public class ParallelPartitionedIPM extends IPM {
 
 	private final int threadPoolSize;
 
+	/* Runs the jobs of every sweep and factorization for the life of the solver */
+	private final WorkerPool pool;
+
 	public static final String CONFIG_PREFIX = "ppipm";
 
 	public static final String THREAD_POOL_SIZE_KEY = CONFIG_PREFIX + ".threadpoolsize";
 	public static final int THREAD_POOL_SIZE_DEFAULT = 1;
 
+	/**
+	 * Key for boolean property. If true, each sweep of the inner loop
+	 * computes the updates of all partitions concurrently from the same
+	 * residual and applies their damped average (block Jacobi). If false,
+	 * each sweep updates from one partition, in turn (block Gauss-Seidel),
+	 * which can leave threads idle when partitions have few elements.
+	 */
+	public static final String JACOBI_KEY = CONFIG_PREFIX + ".jacobi";
+	/** Default value for JACOBI_KEY property */
+	public static final boolean JACOBI_DEFAULT = false;
+
+	/**
+	 * Key for positive double property. In block Jacobi sweeps, the sum of
+	 * the updates of the partitions is multiplied by this value divided by
+	 * the number of partitions. Values above 1.0 can speed up sweeps but
+	 * may prevent them from converging.
+	 */
+	public static final String JACOBI_DAMPING_KEY = CONFIG_PREFIX + ".jacobidamping";
+	/** Default value for JACOBI_DAMPING_KEY property */
+	public static final double JACOBI_DAMPING_DEFAULT = 1.0;
+
+	/**
+	 * Key for non-negative double property. An element's normal systems are
+	 * refactorized when the diagonal of its inverse barrier Hessian has changed
+	 * by at least this much, relative to its value at the last factorization,
+	 * in any entry. Until then, the old factors precondition a conjugate
+	 * gradient refinement of each solve. The default of 0.0 refactorizes
+	 * every iteration.
+	 */
+	public static final String REFRESH_THRESHOLD_KEY = CONFIG_PREFIX + ".refreshthreshold";
+	/** Default value for REFRESH_THRESHOLD_KEY property */
+	public static final double REFRESH_THRESHOLD_DEFAULT = 0.0;
+
+	/**
+	 * Key for positive integer property. The maximum number of conjugate
+	 * gradient iterations used to refine a solve with an old factor.
+	 */
+	public static final String REFINEMENT_STEPS_KEY = CONFIG_PREFIX + ".refinementsteps";
+	/** Default value for REFINEMENT_STEPS_KEY property */
+	public static final int REFINEMENT_STEPS_DEFAULT = 5;
+
+	/**
+	 * Key for string property. A comma-separated list of the addresses, as
+	 * host:port, of {@link PartitionWorker PartitionWorkers} on which to
+	 * factorize and solve the systems of the elements, which are assigned to
+	 * the workers in turn. An address may be listed more than once to open
+	 * more than one connection to that worker and solve more than one system
+	 * on it at a time, in which case the primal and dual systems of each
+	 * element use different connections. {@link #THREAD_POOL_SIZE_KEY}
+	 * should be at least the length of the list. If empty, the elements are solved in this process.
+	 */
+	public static final String WORKERS_KEY = CONFIG_PREFIX + ".workers";
+	/** Default value for WORKERS_KEY property */
+	public static final String WORKERS_DEFAULT = "";
+
+	/**
+	 * Should be set to a {@link CompletePartitioner} or the fully qualified
+	 * name of one. Will be used to instantiate the partitioner of programs.
+	 */
+	public static final String PARTITIONER_KEY = CONFIG_PREFIX + ".partitioner";
+	/** Default value for PARTITIONER_KEY property */
+	public static final String PARTITIONER_DEFAULT = "org.linqs.psl.experimental.optimizer.conic.partition.ObjectiveCoefficientCompletePartitioner";
+
+	private final boolean jacobi;
+	private final double jacobiDamping;
+	private final double refreshThreshold;
+	private final int refinementSteps;
+	private final List<String> workers;
+
+	/* Connections to the workers, opened at the first solve, and the session they share */
+	private final List<WorkerConnection> connections;
+	private final long session;
+
+	/* The connections to each distinct worker */
+	private final List<List<WorkerConnection>> workerConnections;
+
+	private boolean closed;
+
+	/* Sweeps of the current iteration and their wall-clock and solve times */
+	private int numSweeps;
+	private long sweepTime;
+	private long sweepSolveTime;
+
 	public ParallelPartitionedIPM() {
 		super();
 		threadPoolSize = Config.getInt(THREAD_POOL_SIZE_KEY, THREAD_POOL_SIZE_DEFAULT);
-		partitioner = new ObjectiveCoefficientCompletePartitioner();
+		if (threadPoolSize < 1)
+			throw new IllegalArgumentException("Property " + THREAD_POOL_SIZE_KEY + " must be positive.");
+		pool = new WorkerPool(threadPoolSize);
+
+		jacobi = Config.getBoolean(JACOBI_KEY, JACOBI_DEFAULT);
+		jacobiDamping = Config.getDouble(JACOBI_DAMPING_KEY, JACOBI_DAMPING_DEFAULT);
+		if (jacobiDamping <= 0.0)
+			throw new IllegalArgumentException("Property " + JACOBI_DAMPING_KEY + " must be positive.");
+
+		refreshThreshold = Config.getDouble(REFRESH_THRESHOLD_KEY, REFRESH_THRESHOLD_DEFAULT);
+		if (refreshThreshold < 0.0)
+			throw new IllegalArgumentException("Property " + REFRESH_THRESHOLD_KEY + " must be non-negative.");
+		refinementSteps = Config.getInt(REFINEMENT_STEPS_KEY, REFINEMENT_STEPS_DEFAULT);
+		if (refinementSteps < 1)
+			throw new IllegalArgumentException("Property " + REFINEMENT_STEPS_KEY + " must be positive.");
+
+		workers = new Vector<String>();
+		for (String address : Config.getString(WORKERS_KEY, WORKERS_DEFAULT).split(","))
+			if (address.trim().length() > 0)
+				workers.add(address.trim());
+		connections = new Vector<WorkerConnection>();
+		session = new Random().nextLong();
+		workerConnections = new Vector<List<WorkerConnection>>();
+
+		partitioner = (CompletePartitioner) Config.getNewObject(PARTITIONER_KEY, PARTITIONER_DEFAULT);
 	}
 
 	@Override
@@ -70,16 +179,30 @@ public class ParallelPartitionedIPM extends IPM {
 		partitioner.setConicProgram((dualized) ? dualizer.getDualProgram() : currentProgram);
 	}
 
+	/**
+	 * Stops the threads of this solver and closes its connections to
+	 * workers. It cannot solve again afterward.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			pool.shutdown();
+			for (WorkerConnection connection : connections)
+				connection.close();
+			connections.clear();
+			workerConnections.clear();
+		}
+	}
+
 	@Override
 	protected void doSolve(ConicProgram program) {
+		if (closed)
+			throw new IllegalStateException("Solver has been closed.");
 
 		int p;
 		double mu, tau, muInitial, theta, err, epsilon_1;
 		boolean inNeighborhood;
 		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
-		ExecutorService threadPool;
-		Vector<PrimalStepRunnable> primalStepRunnables = new Vector<ParallelPartitionedIPM.PrimalStepRunnable>();
-		Vector<DualStepRunnable> dualStepRunnables = new Vector<ParallelPartitionedIPM.DualStepRunnable>();
 
 		int v = getV(program);
 		Set<Cone> cones = program.getCones();
@@ -107,22 +230,44 @@ public class ParallelPartitionedIPM extends IPM {
 
 		// log.debug("Partitioner: {}", partitioner);
 
+		prepareWorkers();
+		int element = 0;
 		Vector<Partition> partitions = new Vector<Partition>(partitioner.size());
 		for (int i = 0; i < partitioner.size(); i++) {
 			ConicProgramPartition cpp = partitioner.getPartition(i);
 			Partition partition = new Partition();
-			partition.A = cpp.getACopies();
-			partition.innerA = cpp.getInnerACopies();
+			List<SparseCCDoubleMatrix2D> A = cpp.getACopies();
+			List<SparseCCDoubleMatrix2D> innerA = cpp.getInnerACopies();
 			partition.dx = cpp.get1DViewsByVars(dx);
 			partition.innerDw = cpp.get1DViewsByInnerConstraints(dw);
 			partition.ds = cpp.get1DViewsByVars(ds);
 			partition.r = cpp.get1DViewsByVars(r);
 			partition.invH = cpp.getSparse2DByVars(invH);
-			partition.primalStepCDs = new Vector<SparseDoubleCholeskyDecomposition>();
-			partition.dualStepCDs = new Vector<SparseDoubleCholeskyDecomposition>();
+			int numElements = partition.dx.size();
+			partition.factoredDiagonals = new Vector<double[]>(Collections.<double[]>nCopies(numElements, null));
+			partition.staleCDs = new boolean[numElements];
+			partition.primalSystems = new Vector<ElementSystem>(numElements);
+			partition.dualSystems = new Vector<ElementSystem>(numElements);
+			partition.primalSteps = new Vector<StepRunnable>(numElements);
+			partition.dualSteps = new Vector<StepRunnable>(numElements);
+			partition.stepJobs = new Vector<Runnable>(2 * numElements);
+			for (int j = 0; j < numElements; j++) {
+				createSystems(partition, A.get(j), innerA.get(j), element++);
+				StepRunnable primal = new StepRunnable(partition, j, partition.primalSystems.get(j));
+				StepRunnable dual = new StepRunnable(partition, j, partition.dualSystems.get(j));
+				partition.primalSteps.add(primal);
+				partition.dualSteps.add(dual);
+				partition.stepJobs.add(primal);
+				partition.stepJobs.add(dual);
+			}
 			partitions.add(partition);
 		}
 
+		/* The jobs of block Jacobi sweeps, over all partitions */
+		Vector<Runnable> allStepJobs = new Vector<Runnable>();
+		for (Partition partition : partitions)
+			allStepJobs.addAll(partition.stepJobs);
+
 		/* Initializes mu */
 		muInitial = alg.mult(x, s) / v;
 		mu = muInitial;
@@ -140,8 +285,8 @@ public class ParallelPartitionedIPM extends IPM {
 			}
 			for (int i = 0; i < partitions.size(); i++) {
 				partitioner.getPartition(i).updateSparse2DByVars(invH, partitions.get(i).invH);
-				partitions.get(i).primalStepCDs.clear();
-				partitions.get(i).dualStepCDs.clear();
+				updateInvH(partitions.get(i));
+				checkCDs(partitions.get(i));
 			}
 
 			if (!inNeighborhood) {
@@ -165,50 +310,21 @@ public class ParallelPartitionedIPM extends IPM {
 
 			epsilon_1 = 0.01;
 			err = Math.sqrt(alg.mult(r, alg.mult(invH, r))) /(mu * tau * Math.sqrt(v));
-			Partition partition;
 			log.debug("Initial error: {}", err);
+			numSweeps = 0;
+			sweepTime = 0;
+			sweepSolveTime = 0;
 			do {
-				p = (p+1) % partitions.size();
-
-				partition = partitions.get(p);
-				log.trace("P = {}", p);
-
-				if (partition.primalStepCDs.size() == 0 || partition.dualStepCDs.size() == 0) {
-					prepareCDs(partition);
-				}
-
-				/* Sets up the thread pool and jobs */
-				threadPool = Executors.newFixedThreadPool(threadPoolSize);
-				primalStepRunnables.clear();
-				dualStepRunnables.clear();
-
-				for (int i = 0; i < partition.dx.size(); i++) {
-					PrimalStepRunnable primal = new PrimalStepRunnable(partition.primalStepCDs.get(i), partition.r.get(i), partition.A.get(i), partition.invH.get(i), mu);
-					threadPool.execute(primal);
-					primalStepRunnables.add(primal);
-					DualStepRunnable dual = new DualStepRunnable(partition.dualStepCDs.get(i), partition.r.get(i), partition.innerA.get(i), partition.invH.get(i));
-					threadPool.execute(dual);
-					dualStepRunnables.add(dual);
-				}
-
-				/* Runs the jobs */
-				threadPool.shutdown();
-
-				/* Waits for the thread pool */
-				try {
-					while (!threadPool.isTerminated()) {
-						threadPool.awaitTermination(5, TimeUnit.MINUTES);
-					}
+				if (jacobi) {
+					prepareCDs(partitions);
+					sweep(partitions, allStepJobs, mu, jacobiDamping / partitions.size());
 				}
-				catch (InterruptedException e) {
-					throw new IllegalStateException(e);
-				}
-
-				/* Processes the results */
-				for (int i = 0; i < partition.dx.size(); i++) {
-					partition.dx.get(i).assign(primalStepRunnables.get(i).getDx(), DoubleFunctions.plus);
-					partition.innerDw.get(i).assign(dualStepRunnables.get(i).getDw(), DoubleFunctions.plus);
-					partition.ds.get(i).assign(dualStepRunnables.get(i).getDs(), DoubleFunctions.plus);
+				else {
+					p = (p+1) % partitions.size();
+					log.trace("P = {}", p);
+					List<Partition> current = Collections.singletonList(partitions.get(p));
+					prepareCDs(current);
+					sweep(current, partitions.get(p).stepJobs, mu, 1.0);
 				}
 
 				r.assign(rInitial).assign(alg.mult(H, dx).assign(DoubleFunctions.mult(mu)).assign(ds, DoubleFunctions.plus) , DoubleFunctions.plus);
@@ -222,13 +338,17 @@ public class ParallelPartitionedIPM extends IPM {
 			} while (err > epsilon_1);
 
 			log.debug("Remaining error: {}", err);
+			log.debug("{} sweeps took {} us each, of which element solves took {} us of thread time.",
+					new Object[] {numSweeps, sweepTime / numSweeps / 1000, sweepSolveTime / numSweeps / 1000});
 
+			long start = System.nanoTime();
 			double primalStepSize = 1.0;
 			double dualStepSize = 1.0;
 			for (Cone cone : cones) {
 				primalStepSize = Math.min(primalStepSize, cone.getMaxStep(varMap, x, dx));
 				dualStepSize = Math.min(dualStepSize, cone.getMaxStep(varMap, s, ds));
 			}
+			statistics.addStepSizeTime(System.nanoTime() - start);
 
 			log.trace("Primal step size: {} * {}", primalStepSize, alg.norm2(dx));
 			log.trace("Dual step size: {} * {}", dualStepSize, alg.norm2(ds));
@@ -241,190 +361,241 @@ public class ParallelPartitionedIPM extends IPM {
 			ds.assign(0);
 			dw.assign(0);
 			mu = alg.mult(x, s) / v;
+			statistics.addIteration();
+			if (notifyIterationListeners(program, mu, Math.min(primalStepSize, dualStepSize)))
+				break;
 		}
 
 		partitioner.checkInAllMatrices();
 	}
 
-	private void prepareCDs(Partition partition) {
-		Vector<CholeskyDecompositionRunnable> primalCDs = new Vector<ParallelPartitionedIPM.CholeskyDecompositionRunnable>(partition.dx.size());
-		Vector<CholeskyDecompositionRunnable> dualCDs = new Vector<ParallelPartitionedIPM.CholeskyDecompositionRunnable>(partition.dx.size());
-
-		ExecutorService threadPool = Executors.newFixedThreadPool(threadPoolSize);
-
-		for (int i = 0; i < partition.dx.size(); i++) {
-			SparseCCDoubleMatrix2D A = partition.A.get(i);
-			SparseCCDoubleMatrix2D innerA = partition.innerA.get(i);
-			DoubleMatrix2D Hinv = partition.invH.get(i);
-
-			CholeskyDecompositionRunnable primalCDRunnable = new CholeskyDecompositionRunnable((SparseDoubleMatrix2D) Hinv, A);
-			threadPool.execute(primalCDRunnable);
-			primalCDs.add(primalCDRunnable);
-
-			CholeskyDecompositionRunnable dualCDRunnable = new CholeskyDecompositionRunnable((SparseDoubleMatrix2D) Hinv, innerA);
-			threadPool.execute(dualCDRunnable);
-			dualCDs.add(dualCDRunnable);
+	/**
+	 * Computes the updates of the steps from the elements of the given
+	 * partitions, all from the current residual, and adds them to the steps
+	 * multiplied by scale.
+	 *
+	 * @param jobs  the step runnables of the active partitions
+	 */
+	private void sweep(List<Partition> active, List<Runnable> jobs, double mu, double scale) {
+		for (int p = 0; p < active.size(); p++) {
+			Partition partition = active.get(p);
+			for (int i = 0; i < partition.dx.size(); i++) {
+				partition.primalSteps.get(i).prepare(mu);
+				partition.dualSteps.get(i).prepare(mu);
+			}
 		}
 
-		threadPool.shutdown();
-
-		try {
-			while (!threadPool.isTerminated()) {
-				threadPool.awaitTermination(5, TimeUnit.MINUTES);
+		/* Runs the jobs and waits for them */
+		long start = System.nanoTime();
+		pool.runAll(jobs);
+		sweepTime += System.nanoTime() - start;
+		numSweeps++;
+
+		/* Processes the results, summing solve times over threads */
+		DoubleDoubleFunction update = (scale == 1.0) ? DoubleFunctions.plus : DoubleFunctions.plusMultSecond(scale);
+		for (int p = 0; p < active.size(); p++) {
+			Partition partition = active.get(p);
+			for (int i = 0; i < partition.dx.size(); i++) {
+				ElementSystem primal = partition.primalSystems.get(i);
+				ElementSystem dual = partition.dualSystems.get(i);
+				partition.dx.get(i).assign(primal.getDx(), update);
+				partition.innerDw.get(i).assign(dual.getDw(), update);
+				partition.ds.get(i).assign(dual.getDs(), update);
+				statistics.addTriangularSolveTime(primal.getSolveTime());
+				statistics.addTriangularSolveTime(dual.getSolveTime());
+				sweepSolveTime += primal.getSolveTime() + dual.getSolveTime();
+				statistics.addCGIterations(primal.getCGIterations() + dual.getCGIterations());
 			}
 		}
-		catch (InterruptedException e) {
-			throw new IllegalStateException(e);
-		}
+	}
 
+	/**
+	 * Passes the inverse barrier Hessian of each element of a partition, in
+	 * compressed form, to the element's systems.
+	 */
+	private void updateInvH(Partition partition) {
 		for (int i = 0; i < partition.dx.size(); i++) {
-			partition.primalStepCDs.add(primalCDs.get(i).getDecomposition());
-			partition.dualStepCDs.add(dualCDs.get(i).getDecomposition());
+			SparseCCDoubleMatrix2D Hinv = partition.invH.get(i).getColumnCompressed(false);
+			partition.primalSystems.get(i).setInvH(Hinv);
+			partition.dualSystems.get(i).setInvH(Hinv);
 		}
 	}
 
-	private class CholeskyDecompositionRunnable implements Runnable {
+	/**
+	 * Marks for refactorization the elements of a partition whose inverse
+	 * barrier Hessians have changed too much since they were factorized,
+	 * and marks the factors of the others as stale.
+	 */
+	private void checkCDs(Partition partition) {
+		for (int i = 0; i < partition.dx.size(); i++) {
+			double[] factored = partition.factoredDiagonals.get(i);
+			if (factored == null)
+				continue;
 
-		private final SparseDoubleMatrix2D Hinv;
-		private final SparseCCDoubleMatrix2D A;
-		private SparseDoubleCholeskyDecomposition cd;
-		private boolean run;
+			DoubleMatrix2D Hinv = partition.invH.get(i);
+			double change = 0.0;
+			for (int j = 0; j < factored.length; j++)
+				change = Math.max(change, Math.abs(Hinv.getQuick(j, j) - factored[j]) / Math.abs(factored[j]));
 
-		public CholeskyDecompositionRunnable(SparseDoubleMatrix2D Hinv, SparseCCDoubleMatrix2D A) {
-			this.Hinv = Hinv;
-			this.A = A;
-			run = false;
+			/* Also refactorizes if the change is NaN */
+			if (!(change < refreshThreshold))
+				partition.factoredDiagonals.set(i, null);
+			else
+				partition.staleCDs[i] = true;
 		}
+	}
 
-		@Override
-		public void run() {
-			if (!run) {
-				SparseCCDoubleMatrix2D Hinv = ((SparseDoubleMatrix2D) this.Hinv).getColumnCompressed(false);
-				SparseCCDoubleMatrix2D partial = new SparseCCDoubleMatrix2D(A.rows(), A.columns());
-				SparseCCDoubleMatrix2D coeff = new SparseCCDoubleMatrix2D(A.rows(), A.rows());
-				A.zMult(Hinv, partial, 1.0, 0.0, false, false);
-				partial.zMult(A, coeff, 1.0, 0.0, false, true);
-				cd = new SparseDoubleCholeskyDecomposition(coeff, 1);
-				run = true;
+	/**
+	 * Factorizes the normal systems of the elements of the given partitions
+	 * that are marked for refactorization, all in one batch of jobs.
+	 */
+	private void prepareCDs(List<Partition> partitions) {
+		Vector<Runnable> jobs = new Vector<Runnable>();
+		Vector<Partition> owners = new Vector<Partition>();
+		Vector<Integer> elements = new Vector<Integer>();
+
+		for (Partition partition : partitions) {
+			for (int i = 0; i < partition.dx.size(); i++) {
+				if (partition.factoredDiagonals.get(i) != null)
+					continue;
+				owners.add(partition);
+				elements.add(i);
+				jobs.add(new FactorizationRunnable(partition.primalSystems.get(i)));
+				jobs.add(new FactorizationRunnable(partition.dualSystems.get(i)));
 			}
-			else
-				throw new IllegalStateException("Runnable already run.");
 		}
 
-		public SparseDoubleCholeskyDecomposition getDecomposition() {
-			if (run)
-				return cd;
-			else
-				throw new IllegalStateException("Runnable not yet run.");
-		}
-	}
+		if (jobs.isEmpty())
+			return;
+		pool.runAll(jobs);
 
-	private class PrimalStepRunnable implements Runnable {
+		/* Records the factorizations, summing factorization times over threads */
+		for (int job = 0; job < owners.size(); job++) {
+			Partition partition = owners.get(job);
+			int i = elements.get(job);
+			partition.staleCDs[i] = false;
 
-		private final SparseDoubleCholeskyDecomposition cd;
-		private final DoubleMatrix1D r;
-		private final SparseCCDoubleMatrix2D A;
-		private final SparseDoubleMatrix2D Hinv;
-		private final double mu;
-		private DenseDoubleMatrix1D dx;
-		private boolean run;
-
-		PrimalStepRunnable(SparseDoubleCholeskyDecomposition cd, DoubleMatrix1D r, SparseCCDoubleMatrix2D A, SparseDoubleMatrix2D Hinv, double mu) {
-			this.cd = cd;
-			this.r = r;
-			this.A = A;
-			this.Hinv = Hinv;
-			this.mu = mu;
-			run = false;
+			DoubleMatrix2D Hinv = partition.invH.get(i);
+			double[] diagonal = new double[Hinv.rows()];
+			for (int j = 0; j < diagonal.length; j++)
+				diagonal[j] = Hinv.getQuick(j, j);
+			partition.factoredDiagonals.set(i, diagonal);
+
+			ElementSystem primal = partition.primalSystems.get(i);
+			ElementSystem dual = partition.dualSystems.get(i);
+			statistics.addFactorizationTime(primal.getFactorizationTime());
+			statistics.addFactorizationTime(dual.getFactorizationTime());
+			statistics.updatePeakFactorNonZeros(primal.getFactorNonZeros());
+			statistics.updatePeakFactorNonZeros(dual.getFactorNonZeros());
 		}
+	}
 
-		@Override
-		public void run() {
-			if (!run) {
-				DoubleMatrix1D dw, ds;
-				DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
-
-				ds = DoubleFactory1D.dense.make(A.columns());
-				SparseCCDoubleMatrix2D Hinv = this.Hinv.getColumnCompressed(false);
-				dw = alg.mult(A, alg.mult(Hinv, r.copy()));
-				cd.solve(dw);
-				A.zMult(dw, ds, 1.0, 0.0, true);
-				ds.assign(DoubleFunctions.mult(-1.0));
-				dx = (DenseDoubleMatrix1D) alg.mult(Hinv, r.copy().assign(ds, DoubleFunctions.plus)).assign(DoubleFunctions.div(-1 * mu));
-
-				run = true;
-			}
-			else
-				throw new IllegalStateException("Runnable already run.");
+	/**
+	 * Creates the primal and dual systems of an element and adds them to its
+	 * partition. They are created in this process or, if workers are
+	 * configured, on the next worker in turn, through the next two of its
+	 * connections in turn.
+	 */
+	private void createSystems(Partition partition, SparseCCDoubleMatrix2D A, SparseCCDoubleMatrix2D innerA, int element) {
+		if (connections.isEmpty()) {
+			partition.primalSystems.add(new LocalElementSystem(A, true, refinementSteps));
+			partition.dualSystems.add(new LocalElementSystem(innerA, false, refinementSteps));
 		}
+		else {
+			RemoteElementSystem.Element remote = new RemoteElementSystem.Element(element);
+			List<WorkerConnection> worker = workerConnections.get(element % workerConnections.size());
+			int turn = element / workerConnections.size();
+			WorkerConnection primalConnection = worker.get((2 * turn) % worker.size());
+			WorkerConnection dualConnection = worker.get((2 * turn + 1) % worker.size());
+			partition.primalSystems.add(new RemoteElementSystem(primalConnection, remote, A, true, refinementSteps));
+			partition.dualSystems.add(new RemoteElementSystem(dualConnection, remote, innerA, false, refinementSteps));
+		}
+	}
 
-		public DenseDoubleMatrix1D getDx() {
-			if (run)
-				return dx;
-			else
-				throw new IllegalStateException("Runnable not yet run.");
+	/**
+	 * Connects to the configured workers, if not yet connected, and discards
+	 * any elements left on them by earlier solves.
+	 */
+	private void prepareWorkers() {
+		if (connections.isEmpty()) {
+			Map<String, List<WorkerConnection>> byAddress = new LinkedHashMap<String, List<WorkerConnection>>();
+			for (String address : workers) {
+				WorkerConnection connection = new WorkerConnection(address, session);
+				connections.add(connection);
+				if (!byAddress.containsKey(address))
+					byAddress.put(address, new Vector<WorkerConnection>());
+				byAddress.get(address).add(connection);
+			}
+			workerConnections.addAll(byAddress.values());
 		}
+		for (WorkerConnection connection : connections)
+			connection.clear();
 	}
 
-private class DualStepRunnable implements Runnable {
+	private class FactorizationRunnable implements Runnable {
 
-		private final SparseDoubleCholeskyDecomposition cd;
-		private final DoubleMatrix1D r;
-		private final SparseCCDoubleMatrix2D A;
-		private final SparseDoubleMatrix2D Hinv;
-		private DenseDoubleMatrix1D ds;
-		private DenseDoubleMatrix1D dw;
-		private boolean run;
-
-		DualStepRunnable(SparseDoubleCholeskyDecomposition cd, DoubleMatrix1D r, SparseCCDoubleMatrix2D A, SparseDoubleMatrix2D Hinv) {
-			this.cd = cd;
-			this.r = r;
-			this.A = A;
-			this.Hinv = Hinv;
-			run = false;
+		private final ElementSystem system;
+
+		FactorizationRunnable(ElementSystem system) {
+			this.system = system;
 		}
 
 		@Override
 		public void run() {
-			if (!run) {
-				DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
+			system.factorize();
+		}
+	}
 
-				SparseCCDoubleMatrix2D Hinv = this.Hinv.getColumnCompressed(false);
-				ds = new DenseDoubleMatrix1D(A.columns());
-				dw = (DenseDoubleMatrix1D) alg.mult(A, alg.mult(Hinv, r.copy()));
-				cd.solve(dw);
-				A.zMult(dw, ds, -1.0, 0.0, true);
+	/**
+	 * Computes the primal or dual step of one element of a partition.
+	 * Created once per element and side, and reused for every sweep.
+	 */
+	private class StepRunnable implements Runnable {
 
-				run = true;
-			}
-			else
-				throw new IllegalStateException("Runnable already run.");
+		private final Partition partition;
+		private final int element;
+		private final ElementSystem system;
+		private final DoubleMatrix1D r;
+		private double mu;
+
+		StepRunnable(Partition partition, int element, ElementSystem system) {
+			this.partition = partition;
+			this.element = element;
+			this.system = system;
+			r = partition.r.get(element);
 		}
 
-		public DenseDoubleMatrix1D getDs() {
-			if (run)
-				return ds;
-			else
-				throw new IllegalStateException("Runnable not yet run.");
+		/**
+		 * Prepares to run again.
+		 */
+		public void prepare(double mu) {
+			this.mu = mu;
 		}
 
-		public DenseDoubleMatrix1D getDw() {
-			if (run)
-				return dw;
-			else
-				throw new IllegalStateException("Runnable not yet run.");
+		@Override
+		public void run() {
+			system.solve(r, mu, partition.staleCDs[element]);
 		}
 	}
 
 	private class Partition {
-		private List<SparseCCDoubleMatrix2D> A;
-		private List<SparseCCDoubleMatrix2D> innerA;
 		private List<DoubleMatrix1D> dx;
 		private List<DoubleMatrix1D> innerDw;
 		private List<DoubleMatrix1D> ds;
 		private List<DoubleMatrix1D> r;
 		private List<SparseDoubleMatrix2D> invH;
-		private List<SparseDoubleCholeskyDecomposition> primalStepCDs;
-		private List<SparseDoubleCholeskyDecomposition> dualStepCDs;
+		private List<ElementSystem> primalSystems;
+		private List<ElementSystem> dualSystems;
+
+		/* The diagonal of each element's invH when it was last factorized, or null to refactorize */
+		private List<double[]> factoredDiagonals;
+
+		/* Whether each element's factors were computed for an earlier invH */
+		private boolean[] staleCDs;
+
+		/* Reusable step runnables of each element, and both as one list of jobs */
+		private List<StepRunnable> primalSteps;
+		private List<StepRunnable> dualSteps;
+		private List<Runnable> stepJobs;
 	}
 }
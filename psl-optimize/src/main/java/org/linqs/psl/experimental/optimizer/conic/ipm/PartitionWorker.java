@@ -0,0 +1,394 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serves the element systems of a {@link ParallelPartitionedIPM} from a
+ * separate process, which factorizes and solves them, so that the normal
+ * matrices and factors of the elements need not fit in the solver's heap.
+ * The solver still keeps the program and the barrier Hessians, but only
+ * keeps the constraint matrices of the elements until they are sent.
+ * <p>
+ * Start a worker with the port on which it should listen as its only
+ * argument, and list its address in the solver's
+ * {@link ParallelPartitionedIPM#WORKERS_KEY} property. Workers only accept
+ * connections from the local host. Each connection starts by naming its
+ * session, and the connections of a session share its elements, which the
+ * worker keeps, with their factors, until the session is cleared or all its
+ * connections are closed. Only the elements' matrices and step vectors are
+ * sent over a connection, and each element's inverse barrier Hessian is
+ * sent once for both its systems.
+ */
+public class PartitionWorker {
+
+	private static final Logger log = LoggerFactory.getLogger(PartitionWorker.class);
+
+	/* Requests */
+	static final byte LOAD = 1;
+	static final byte FACTORIZE = 2;
+	static final byte SOLVE = 3;
+	static final byte CLEAR = 4;
+	static final byte INV_H = 5;
+
+	/* Replies */
+	static final byte OK = 0;
+	static final byte ERROR = 1;
+
+	private final ServerSocket server;
+
+	/* Open sessions, by identifier */
+	private final Map<Long, Session> sessions;
+
+	/**
+	 * @param port  the port on which to listen, or 0 for any free port
+	 */
+	public PartitionWorker(int port) throws IOException {
+		server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+		sessions = new HashMap<Long, Session>();
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Accepts connections, serving each on its own thread, until this
+	 * worker is closed.
+	 */
+	public void serve() {
+		while (!server.isClosed()) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			}
+			catch (IOException e) {
+				if (server.isClosed())
+					return;
+				throw new IllegalStateException(e);
+			}
+
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					handle(socket);
+				}
+			}, "PartitionWorker");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stops accepting connections. Connections already accepted are served
+	 * until they close.
+	 */
+	public void close() {
+		try {
+			server.close();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void handle(Socket socket) {
+		log.debug("Accepted connection from {}.", socket.getRemoteSocketAddress());
+		Long sessionId = null;
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			sessionId = in.readLong();
+			ConcurrentMap<Integer, Element> elements = openSession(sessionId);
+
+			int request;
+			while ((request = in.read()) != -1) {
+				/* Each request is read completely before it can fail */
+				try {
+					switch (request) {
+					case LOAD: {
+						int id = in.readInt();
+						boolean primal = in.readBoolean();
+						int refinementSteps = in.readInt();
+						SparseCCDoubleMatrix2D A = readMatrix(in);
+						Element element = new Element();
+						Element existing = elements.putIfAbsent(id, element);
+						if (existing != null)
+							element = existing;
+						element.load(new LocalElementSystem(A, primal, refinementSteps), primal, A.columns());
+						out.writeByte(OK);
+						break;
+					}
+					case INV_H: {
+						int id = in.readInt();
+						SparseCCDoubleMatrix2D Hinv = readMatrix(in);
+						getElement(elements, id).setInvH(Hinv);
+						out.writeByte(OK);
+						break;
+					}
+					case FACTORIZE: {
+						int id = in.readInt();
+						boolean primal = in.readBoolean();
+						LocalElementSystem system = getElement(elements, id).getSystem(primal);
+						system.factorize();
+						out.writeByte(OK);
+						out.writeLong(system.getFactorizationTime());
+						out.writeLong(system.getFactorNonZeros());
+						break;
+					}
+					case SOLVE: {
+						int id = in.readInt();
+						boolean primal = in.readBoolean();
+						double mu = in.readDouble();
+						boolean stale = in.readBoolean();
+						Element element = elements.get(id);
+						DenseDoubleMatrix1D r = (element == null) ? null : element.getResidual(primal);
+						int size = in.readInt();
+						boolean valid = r != null && size == r.size();
+						for (int i = 0; i < size; i++) {
+							double value = in.readDouble();
+							if (valid)
+								r.setQuick(i, value);
+						}
+						LocalElementSystem system = getElement(elements, id).getSystem(primal);
+						if (!valid)
+							throw new IllegalArgumentException("Residual has size " + size
+									+ " but element " + id + " has " + r.size() + " variables.");
+						system.solve(r, mu, stale);
+						out.writeByte(OK);
+						out.writeLong(system.getSolveTime());
+						out.writeInt(system.getCGIterations());
+						if (system.getDx() != null)
+							writeVector(out, system.getDx());
+						writeVector(out, system.getDw());
+						writeVector(out, system.getDs());
+						break;
+					}
+					case CLEAR:
+						elements.clear();
+						out.writeByte(OK);
+						break;
+					default:
+						throw new IOException("Unknown request " + request + ".");
+					}
+				}
+				catch (RuntimeException e) {
+					log.warn("Request failed.", e);
+					out.writeByte(ERROR);
+					out.writeUTF(String.valueOf(e));
+				}
+				out.flush();
+			}
+		}
+		catch (IOException e) {
+			log.warn("Connection failed.", e);
+		}
+		finally {
+			if (sessionId != null)
+				closeSession(sessionId);
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				log.warn("Could not close connection.", e);
+			}
+			log.debug("Closed connection from {}.", socket.getRemoteSocketAddress());
+		}
+	}
+
+	/**
+	 * Adds a connection to a session, opening it if needed.
+	 *
+	 * @return the elements of the session
+	 */
+	private ConcurrentMap<Integer, Element> openSession(long id) {
+		synchronized (sessions) {
+			Session session = sessions.get(id);
+			if (session == null) {
+				session = new Session();
+				sessions.put(id, session);
+			}
+			session.connections++;
+			return session.elements;
+		}
+	}
+
+	/**
+	 * Removes a connection from a session, discarding the session's
+	 * elements once it has no connections.
+	 */
+	private void closeSession(long id) {
+		synchronized (sessions) {
+			Session session = sessions.get(id);
+			if (--session.connections == 0)
+				sessions.remove(id);
+		}
+	}
+
+	private static Element getElement(Map<Integer, Element> elements, int id) {
+		Element element = elements.get(id);
+		if (element == null)
+			throw new IllegalArgumentException("Unknown element " + id + ".");
+		return element;
+	}
+
+	/**
+	 * Reads a reply, throwing an exception if it reports a failure.
+	 */
+	static void readReply(DataInputStream in) throws IOException {
+		byte reply = in.readByte();
+		if (reply == ERROR)
+			throw new IllegalStateException("Worker failed: " + in.readUTF());
+		else if (reply != OK)
+			throw new IOException("Unknown reply " + reply + ".");
+	}
+
+	static void writeMatrix(DataOutputStream out, SparseCCDoubleMatrix2D A) throws IOException {
+		int[] colPtr = A.getColumnPointers();
+		int[] rowIndexes = A.getRowIndexes();
+		double[] values = A.getValues();
+		int nnz = colPtr[A.columns()];
+
+		out.writeInt(A.rows());
+		out.writeInt(A.columns());
+		out.writeInt(nnz);
+		for (int j = 0; j <= A.columns(); j++)
+			out.writeInt(colPtr[j]);
+		for (int k = 0; k < nnz; k++) {
+			out.writeInt(rowIndexes[k]);
+			out.writeDouble(values[k]);
+		}
+	}
+
+	static SparseCCDoubleMatrix2D readMatrix(DataInputStream in) throws IOException {
+		int rows = in.readInt();
+		int columns = in.readInt();
+		int nnz = in.readInt();
+		int[] colPtr = new int[columns + 1];
+		for (int j = 0; j <= columns; j++)
+			colPtr[j] = in.readInt();
+
+		int[] rowIndexes = new int[nnz];
+		int[] columnIndexes = new int[nnz];
+		double[] values = new double[nnz];
+		for (int j = 0; j < columns; j++) {
+			for (int k = colPtr[j]; k < colPtr[j+1]; k++) {
+				rowIndexes[k] = in.readInt();
+				columnIndexes[k] = j;
+				values[k] = in.readDouble();
+			}
+		}
+		return new SparseCCDoubleMatrix2D(rows, columns, rowIndexes, columnIndexes, values, false, false, false);
+	}
+
+	static void writeVector(DataOutputStream out, DoubleMatrix1D vector) throws IOException {
+		out.writeInt((int) vector.size());
+		for (int i = 0; i < vector.size(); i++)
+			out.writeDouble(vector.getQuick(i));
+	}
+
+	/**
+	 * Reads a vector into one of the same size.
+	 */
+	static void readVector(DataInputStream in, DoubleMatrix1D vector) throws IOException {
+		int size = in.readInt();
+		if (size != vector.size())
+			throw new IOException("Expected vector of size " + vector.size() + " but read " + size + ".");
+		for (int i = 0; i < size; i++)
+			vector.setQuick(i, in.readDouble());
+	}
+
+	private static class Session {
+		private final ConcurrentMap<Integer, Element> elements = new ConcurrentHashMap<Integer, Element>();
+		private int connections;
+	}
+
+	/**
+	 * The systems of an element, which may be loaded and used through
+	 * different connections, and the inverse barrier Hessian they share.
+	 */
+	private static class Element {
+		private LocalElementSystem primal;
+		private LocalElementSystem dual;
+		private DenseDoubleMatrix1D primalResidual;
+		private DenseDoubleMatrix1D dualResidual;
+		private SparseCCDoubleMatrix2D Hinv;
+
+		synchronized void load(LocalElementSystem system, boolean isPrimal, int numVariables) {
+			DenseDoubleMatrix1D residual = new DenseDoubleMatrix1D(numVariables);
+			if (Hinv != null)
+				system.setInvH(Hinv);
+			if (isPrimal) {
+				primal = system;
+				primalResidual = residual;
+			}
+			else {
+				dual = system;
+				dualResidual = residual;
+			}
+		}
+
+		synchronized void setInvH(SparseCCDoubleMatrix2D Hinv) {
+			this.Hinv = Hinv;
+			if (primal != null)
+				primal.setInvH(Hinv);
+			if (dual != null)
+				dual.setInvH(Hinv);
+		}
+
+		synchronized LocalElementSystem getSystem(boolean isPrimal) {
+			LocalElementSystem system = (isPrimal) ? primal : dual;
+			if (system == null)
+				throw new IllegalArgumentException("Element has no " + ((isPrimal) ? "primal" : "dual") + " system.");
+			return system;
+		}
+
+		synchronized DenseDoubleMatrix1D getResidual(boolean isPrimal) {
+			return (isPrimal) ? primalResidual : dualResidual;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1)
+			throw new IllegalArgumentException("Usage: PartitionWorker <port>");
+
+		PartitionWorker worker = new PartitionWorker(Integer.parseInt(args[0]));
+		log.info("Listening on port {}.", worker.getPort());
+		worker.serve();
+	}
+}
@@ -183,12 +183,14 @@ public class PartitionedIPM extends IPM {
 
 			log.debug("Remaining error: {}", err);
 
+			long start = System.nanoTime();
 			double primalStepSize = 1.0;
 			double dualStepSize = 1.0;
 			for (Cone cone : cones) {
 				primalStepSize = Math.min(primalStepSize, cone.getMaxStep(varMap, x, dx));
 				dualStepSize = Math.min(dualStepSize, cone.getMaxStep(varMap, s, ds));
 			}
+			statistics.addStepSizeTime(System.nanoTime() - start);
 
 			log.trace("Primal step size: {} * {}", primalStepSize, alg.norm2(dx));
 			log.trace("Dual step size: {} * {}", dualStepSize, alg.norm2(ds));
@@ -201,6 +203,9 @@ public class PartitionedIPM extends IPM {
 			ds.assign(0);
 			dw.assign(0);
 			mu = alg.mult(x, s) / v;
+			statistics.addIteration();
+			if (notifyIterationListeners(program, mu, Math.min(primalStepSize, dualStepSize)))
+				break;
 		}
 
 		partitioner.checkInAllMatrices();
@@ -213,7 +218,7 @@ public class PartitionedIPM extends IPM {
 		ds = DoubleFactory1D.dense.make(A.columns());
 		Hinv = ((SparseDoubleMatrix2D) Hinv).getColumnCompressed(false);
 		dw = alg.mult(A, alg.mult(Hinv, r.copy()));
-		cd.solve(dw);
+		solve(cd, dw);
 		A.zMult(dw, ds, 1.0, 0.0, true);
 		ds.assign(DoubleFunctions.mult(-1.0));
 		dx.assign(alg.mult(Hinv, r.copy().assign(ds, DoubleFunctions.plus)).assign(DoubleFunctions.div(-1 * mu)), DoubleFunctions.plus);
@@ -226,12 +231,18 @@ public class PartitionedIPM extends IPM {
 		Hinv = ((SparseDoubleMatrix2D) Hinv).getColumnCompressed(false);
 		DenseDoubleMatrix1D newDs = new DenseDoubleMatrix1D((int) ds.size());
 		dw = alg.mult(innerA, alg.mult(Hinv, r.copy()));
-		cd.solve(dw);
+		solve(cd, dw);
 		innerA.zMult(dw, newDs, 1.0, 0.0, true);
 		ds.assign(newDs, DoubleFunctions.minus);
 		innerDw.assign(dw, DoubleFunctions.plus);
 	}
 
+	private void solve(SparseDoubleCholeskyDecomposition cd, DoubleMatrix1D b) {
+		long start = System.nanoTime();
+		cd.solve(b);
+		statistics.addTriangularSolveTime(System.nanoTime() - start);
+	}
+
 	private void prepareCDs(Partition partition) {
 		for (int i = 0; i < partition.dx.size(); i++) {
 
@@ -245,17 +256,25 @@ public class PartitionedIPM extends IPM {
 			A.zMult(Hinv, partial, 1.0, 0.0, false, false);
 			partial.zMult(A, coeff, 1.0, 0.0, false, true);
 
-			partition.primalStepCDs.add(new SparseDoubleCholeskyDecomposition(coeff, 1));
+			partition.primalStepCDs.add(factorize(coeff));
 
 			partial = new SparseCCDoubleMatrix2D(innerA.rows(), innerA.columns());
 			coeff = new SparseCCDoubleMatrix2D(innerA.rows(), innerA.rows());
 			innerA.zMult(Hinv, partial, 1.0, 0.0, false, false);
 			partial.zMult(innerA, coeff, 1.0, 0.0, false, true);
 
-			partition.dualStepCDs.add(new SparseDoubleCholeskyDecomposition(coeff, 1));
+			partition.dualStepCDs.add(factorize(coeff));
 		}
 	}
 
+	private SparseDoubleCholeskyDecomposition factorize(SparseCCDoubleMatrix2D coeff) {
+		long start = System.nanoTime();
+		SparseDoubleCholeskyDecomposition cd = new SparseDoubleCholeskyDecomposition(coeff, 1);
+		statistics.addFactorizationTime(System.nanoTime() - start);
+		statistics.updatePeakFactorNonZeros(getFactorNonZeros(cd));
+		return cd;
+	}
+
 	private class Partition {
 		private List<SparseCCDoubleMatrix2D> A;
 		private List<SparseCCDoubleMatrix2D> innerA;
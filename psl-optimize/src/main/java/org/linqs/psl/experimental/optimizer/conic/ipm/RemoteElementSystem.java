@@ -0,0 +1,227 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * An {@link ElementSystem} factorized and solved by a {@link PartitionWorker}.
+ * <p>
+ * The constraint matrix is sent when the system is created and is not kept.
+ * Each new inverse barrier Hessian is sent once per {@link Element}, before
+ * the next request of either of its systems, and is not kept after that.
+ * Factors stay on the worker.
+ */
+class RemoteElementSystem implements ElementSystem {
+
+	private final WorkerConnection connection;
+	private final Element element;
+	private final boolean primal;
+
+	private long factorizationTime;
+	private long factorNonZeros;
+
+	private final DenseDoubleMatrix1D dx;
+	private final DenseDoubleMatrix1D dw;
+	private final DenseDoubleMatrix1D ds;
+	private long solveTime;
+	private int cgIterations;
+
+	/**
+	 * Loads a system on a worker. The primal and dual systems of an element
+	 * may be loaded through different connections to the same worker.
+	 *
+	 * @see LocalElementSystem#LocalElementSystem(SparseCCDoubleMatrix2D, boolean, int)
+	 */
+	RemoteElementSystem(WorkerConnection connection, Element element, SparseCCDoubleMatrix2D A,
+			boolean primal, int refinementSteps) {
+		this.connection = connection;
+		this.element = element;
+		this.primal = primal;
+		dx = (primal) ? new DenseDoubleMatrix1D(A.columns()) : null;
+		dw = new DenseDoubleMatrix1D(A.rows());
+		ds = new DenseDoubleMatrix1D(A.columns());
+
+		synchronized (connection) {
+			try {
+				DataOutputStream out = connection.getOutput();
+				out.writeByte(PartitionWorker.LOAD);
+				out.writeInt(element.id);
+				out.writeBoolean(primal);
+				out.writeInt(refinementSteps);
+				PartitionWorker.writeMatrix(out, A);
+				out.flush();
+				PartitionWorker.readReply(connection.getInput());
+			}
+			catch (IOException e) {
+				throw connection.getException(e);
+			}
+		}
+	}
+
+	/**
+	 * Sets the inverse barrier Hessian of this system's element, which is
+	 * shared with the element's other system.
+	 */
+	@Override
+	public void setInvH(SparseCCDoubleMatrix2D Hinv) {
+		element.setInvH(Hinv);
+	}
+
+	@Override
+	public void factorize() {
+		element.sendInvH(connection);
+		synchronized (connection) {
+			try {
+				DataOutputStream out = connection.getOutput();
+				out.writeByte(PartitionWorker.FACTORIZE);
+				out.writeInt(element.id);
+				out.writeBoolean(primal);
+				out.flush();
+
+				DataInputStream in = connection.getInput();
+				PartitionWorker.readReply(in);
+				factorizationTime = in.readLong();
+				factorNonZeros = in.readLong();
+			}
+			catch (IOException e) {
+				throw connection.getException(e);
+			}
+		}
+	}
+
+	@Override
+	public long getFactorizationTime() {
+		return factorizationTime;
+	}
+
+	@Override
+	public long getFactorNonZeros() {
+		return factorNonZeros;
+	}
+
+	@Override
+	public void solve(DoubleMatrix1D r, double mu, boolean stale) {
+		element.sendInvH(connection);
+		synchronized (connection) {
+			try {
+				DataOutputStream out = connection.getOutput();
+				out.writeByte(PartitionWorker.SOLVE);
+				out.writeInt(element.id);
+				out.writeBoolean(primal);
+				out.writeDouble(mu);
+				out.writeBoolean(stale);
+				PartitionWorker.writeVector(out, r);
+				out.flush();
+
+				DataInputStream in = connection.getInput();
+				PartitionWorker.readReply(in);
+				solveTime = in.readLong();
+				cgIterations = in.readInt();
+				if (dx != null)
+					PartitionWorker.readVector(in, dx);
+				PartitionWorker.readVector(in, dw);
+				PartitionWorker.readVector(in, ds);
+			}
+			catch (IOException e) {
+				throw connection.getException(e);
+			}
+		}
+	}
+
+	@Override
+	public DoubleMatrix1D getDx() {
+		return dx;
+	}
+
+	@Override
+	public DoubleMatrix1D getDw() {
+		return dw;
+	}
+
+	@Override
+	public DoubleMatrix1D getDs() {
+		return ds;
+	}
+
+	@Override
+	public long getSolveTime() {
+		return solveTime;
+	}
+
+	@Override
+	public int getCGIterations() {
+		return cgIterations;
+	}
+
+	/**
+	 * An element whose primal and dual systems are on the same worker, and
+	 * share the inverse barrier Hessian stored there.
+	 */
+	static class Element {
+
+		private final int id;
+
+		/* The inverse barrier Hessian set since the latest one was sent, if any */
+		private SparseCCDoubleMatrix2D Hinv;
+
+		/**
+		 * @param id  an identifier of the element, unique among the elements
+		 *            of the solver
+		 */
+		Element(int id) {
+			this.id = id;
+		}
+
+		synchronized void setInvH(SparseCCDoubleMatrix2D Hinv) {
+			this.Hinv = Hinv;
+		}
+
+		/**
+		 * Sends the inverse barrier Hessian through a connection if it has
+		 * been set since it was last sent. Replies are awaited while
+		 * synchronized on the element, so the other system's next request
+		 * reaches the worker after the Hessian, through any connection.
+		 */
+		synchronized void sendInvH(WorkerConnection connection) {
+			if (Hinv == null)
+				return;
+
+			synchronized (connection) {
+				try {
+					DataOutputStream out = connection.getOutput();
+					out.writeByte(PartitionWorker.INV_H);
+					out.writeInt(id);
+					PartitionWorker.writeMatrix(out, Hinv);
+					out.flush();
+					PartitionWorker.readReply(connection.getInput());
+				}
+				catch (IOException e) {
+					throw connection.getException(e);
+				}
+			}
+			Hinv = null;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * A connection to a {@link PartitionWorker}, shared by the
+ * {@link RemoteElementSystem RemoteElementSystems} loaded through it.
+ * <p>
+ * Each connection belongs to a session, and the worker shares the elements
+ * of a session among all its connections, so a solver can use several
+ * connections to one worker for the same elements.
+ * <p>
+ * Each request and its reply must be made while synchronized on the
+ * connection.
+ */
+class WorkerConnection {
+
+	private final String address;
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	/**
+	 * @param address  the host and port of the worker, as host:port
+	 * @param session  an identifier of the session, shared by the
+	 *                 connections of one solver
+	 */
+	WorkerConnection(String address, long session) {
+		this.address = address;
+		int colon = address.lastIndexOf(':');
+		if (colon <= 0)
+			throw new IllegalArgumentException("Worker address must be host:port: " + address);
+
+		try {
+			socket = new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+			socket.setTcpNoDelay(true);
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeLong(session);
+			out.flush();
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Worker address must be host:port: " + address, e);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Could not connect to worker " + address + ".", e);
+		}
+	}
+
+	DataInputStream getInput() {
+		return in;
+	}
+
+	DataOutputStream getOutput() {
+		return out;
+	}
+
+	/**
+	 * Discards all elements loaded on the worker in this connection's
+	 * session, through any connection.
+	 */
+	synchronized void clear() {
+		try {
+			out.writeByte(PartitionWorker.CLEAR);
+			out.flush();
+			PartitionWorker.readReply(in);
+		}
+		catch (IOException e) {
+			throw getException(e);
+		}
+	}
+
+	/**
+	 * @return an exception for a failed request
+	 */
+	IllegalStateException getException(IOException e) {
+		return new IllegalStateException("Request to worker " + address + " failed.", e);
+	}
+
+	void close() {
+		try {
+			socket.close();
+		}
+		catch (IOException e) {
+			throw getException(e);
+		}
+	}
+}
@@ -18,25 +18,38 @@
 package org.linqs.psl.experimental.optimizer.conic.ipm.cg;
 
 import org.linqs.psl.config.Config;
+import org.linqs.psl.experimental.optimizer.conic.SolutionStatus;
 import org.linqs.psl.experimental.optimizer.conic.ipm.IPM;
+import org.linqs.psl.experimental.optimizer.conic.program.ConeType;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.MappedCCDoubleMatrix2D;
+import org.linqs.psl.experimental.optimizer.conic.program.MappedConicProgram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.algo.solver.DefaultDoubleIterationMonitor;
 import cern.colt.matrix.tdouble.algo.solver.DoubleCG;
+import cern.colt.matrix.tdouble.algo.solver.DoubleIterationMonitor;
 import cern.colt.matrix.tdouble.algo.solver.IterativeSolverDoubleNotConvergedException;
 import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoubleIdentity;
 import cern.colt.matrix.tdouble.algo.solver.preconditioner.DoublePreconditioner;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
 
+import java.util.Collections;
+
 /**
  * Primal-dual short-step interior point method.
  *
  * This IPM solves the normal system using an iterative conjugate gradient solver.
+ * It can also solve a {@link MappedConicProgram}, in which case the normal
+ * matrices are never formed and A is only multiplied with vectors.
  *
  * @author Stephen Bach <bach@cs.umd.edu>
  */
 public class ConjugateGradientIPM extends IPM {
+	private static final Logger log = LoggerFactory.getLogger(ConjugateGradientIPM.class);
 
 	/**
 	 * Prefix of property keys used by this class.
@@ -95,7 +108,8 @@ public class ConjugateGradientIPM extends IPM {
 	@Override
 	protected void solveNormalSystem(SparseCCDoubleMatrix2D A, DoubleMatrix1D x, ConicProgram program) {
 		DoubleCG cg = new DoubleCG(x);
-		cg.setIterationMonitor(new DefaultDoubleIterationMonitor(maxIter, relTol, absTol, divTol));
+		DoubleIterationMonitor monitor = new DefaultDoubleIterationMonitor(maxIter, relTol, absTol, divTol);
+		cg.setIterationMonitor(monitor);
 		DoublePreconditioner preconditioner = new DoubleIdentity();
 		preconditioner.setMatrix(A);
 		cg.setPreconditioner(preconditioner);
@@ -103,9 +117,183 @@ public class ConjugateGradientIPM extends IPM {
 		x.assign(0);
 		try {
 			cg.solve(A, b, x);
+			statistics.addCGIterations(monitor.iterations());
 		}
 		catch (IterativeSolverDoubleNotConvergedException e) {
 			throw new IllegalArgumentException(e);
 		}
 	}
+
+	/**
+	 * Solves a memory-mapped program whose cones are all non-negative orthant
+	 * cones, using the same iterations as {@link #solve()}.
+	 * <p>
+	 * The iterations start from the program's x, w, and s, which must be
+	 * feasible and interior, since the program cannot be dualized or
+	 * initialized. The solution is written to the mapped program's x, w,
+	 * and s, but not to its file. Iteration listeners are not notified.
+	 */
+	public void solve(MappedConicProgram program) {
+		if (!program.getConeTypes().isEmpty() && !program.getConeTypes().equals(
+				Collections.singleton(ConeType.NonNegativeOrthantCone))) {
+			throw new IllegalStateException("Program contains at least one unsupported cone."
+					+ " Supported cones are non-negative orthant cones.");
+		}
+
+		MappedCCDoubleMatrix2D A = program.getA();
+		DoubleMatrix1D x = program.getX();
+		DoubleMatrix1D b = program.getB();
+		DoubleMatrix1D w = program.getW();
+		DoubleMatrix1D s = program.getS();
+		DoubleMatrix1D c = program.getC();
+		int n = A.columns();
+		int m = A.rows();
+
+		statistics.clear();
+		aborted = false;
+		long nanoStart = System.nanoTime();
+
+		double primalInfeasibility = program.getPrimalInfeasibility();
+		double dualInfeasibility = program.getDualInfeasibility();
+		if (dualInfeasibility > 0.01 || primalInfeasibility > 0.01)
+			throw new IllegalStateException("Mapped program must start at a feasible point.");
+
+		log.debug("Starting matrix-free optimization with {} variables and {} constraints.", n, m);
+
+		/* The barrier gradient and diagonal inverse Hessian of the cones */
+		DoubleMatrix1D g = new DenseDoubleMatrix1D(n);
+		DoubleMatrix1D Hinv = new DenseDoubleMatrix1D(n);
+		DoubleMatrix1D dx = new DenseDoubleMatrix1D(n);
+		DoubleMatrix1D ds = new DenseDoubleMatrix1D(n);
+		DoubleMatrix1D dw = new DenseDoubleMatrix1D(m);
+		DoubleMatrix1D r = new DenseDoubleMatrix1D(m);
+		DoubleMatrix1D scratch = new DenseDoubleMatrix1D(n);
+
+		double muInitial = x.zDotProduct(s) / n;
+		double mu = muInitial;
+		double tau;
+		boolean inNeighborhood = false;
+		int stepNum = 0;
+
+		while (mu >= dualityGapThreshold || primalInfeasibility >= infeasibilityThreshold || dualInfeasibility >= infeasibilityThreshold) {
+			for (int i = 0; i < n; i++) {
+				g.setQuick(i, -1.0 / x.getQuick(i));
+				Hinv.setQuick(i, x.getQuick(i) * x.getQuick(i));
+			}
+
+			if (!inNeighborhood) {
+				double theta = 0.0;
+				for (int i = 0; i < n; i++) {
+					double ri = s.getQuick(i) + muInitial * g.getQuick(i);
+					theta += ri * Hinv.getQuick(i) * ri;
+				}
+				if (theta / muInitial < .1)
+					inNeighborhood = true;
+			}
+
+			if (inNeighborhood && primalInfeasibility < infeasibilityThreshold && dualInfeasibility < infeasibilityThreshold) {
+				tau = .85;
+			}
+			else {
+				mu = muInitial;
+				tau = 1;
+			}
+
+			/* r = mu (b - A x) + A Hinv (tau mu g - A^T w + c) */
+			A.zMult(w, scratch, 1.0, 0.0, true);
+			for (int i = 0; i < n; i++)
+				scratch.setQuick(i, Hinv.getQuick(i) * (tau * mu * g.getQuick(i) - scratch.getQuick(i) + c.getQuick(i)));
+			A.zMult(scratch, r);
+			for (int i = 0; i < m; i++)
+				r.setQuick(i, r.getQuick(i) + mu * b.getQuick(i));
+			A.zMult(x, r, -mu, 1.0, false);
+
+			solveNormalSystem(A, Hinv, r, dw);
+
+			/* ds = c - s - A^T (w + dw) */
+			for (int i = 0; i < m; i++)
+				r.setQuick(i, w.getQuick(i) + dw.getQuick(i));
+			A.zMult(r, ds, 1.0, 0.0, true);
+			for (int i = 0; i < n; i++)
+				ds.setQuick(i, c.getQuick(i) - s.getQuick(i) - ds.getQuick(i));
+
+			/* dx = Hinv (-tau mu g - ds - s) / mu */
+			for (int i = 0; i < n; i++)
+				dx.setQuick(i, Hinv.getQuick(i) * (-tau * mu * g.getQuick(i) - ds.getQuick(i) - s.getQuick(i)) / mu);
+
+			double primalStepSize = 1.0;
+			double dualStepSize = 1.0;
+			if (!inNeighborhood) {
+				long start = System.nanoTime();
+				for (int i = 0; i < n; i++) {
+					if (dx.getQuick(i) < 0)
+						primalStepSize = Math.min(primalStepSize, (x.getQuick(i) * .95) / (-dx.getQuick(i)));
+					if (ds.getQuick(i) < 0)
+						dualStepSize = Math.min(dualStepSize, (s.getQuick(i) * .95) / (-ds.getQuick(i)));
+				}
+				statistics.addStepSizeTime(System.nanoTime() - start);
+			}
+
+			for (int i = 0; i < n; i++) {
+				x.setQuick(i, x.getQuick(i) + primalStepSize * dx.getQuick(i));
+				s.setQuick(i, s.getQuick(i) + dualStepSize * ds.getQuick(i));
+			}
+			for (int i = 0; i < m; i++)
+				w.setQuick(i, w.getQuick(i) + dualStepSize * dw.getQuick(i));
+
+			mu = x.zDotProduct(s) / n;
+			primalInfeasibility = program.getPrimalInfeasibility();
+			dualInfeasibility = program.getDualInfeasibility();
+			statistics.addIteration();
+			log.debug("Itr: {} -- Gap: {} -- P. Inf: {} -- D. Inf: {} -- Obj: {}", new Object[] {++stepNum, mu, primalInfeasibility, dualInfeasibility, c.zDotProduct(x)});
+		}
+
+		statistics.setSolveTime(System.nanoTime() - nanoStart);
+		statistics.setSolution(SolutionStatus.Optimal, getRelativeGap(c, x, b, w), primalInfeasibility, dualInfeasibility);
+		log.debug("Statistics: {}", statistics);
+	}
+
+	/**
+	 * Solves A Hinv A^T dw = r with the conjugate gradient method, using only
+	 * products with A and its transpose.
+	 */
+	private void solveNormalSystem(MappedCCDoubleMatrix2D A, DoubleMatrix1D Hinv, DoubleMatrix1D r, DoubleMatrix1D dw) {
+		int m = A.rows();
+		DoubleMatrix1D res = r.copy();
+		DoubleMatrix1D p = r.copy();
+		DoubleMatrix1D q = new DenseDoubleMatrix1D(m);
+		DoubleMatrix1D scratch = new DenseDoubleMatrix1D(A.columns());
+		dw.assign(0.0);
+
+		double rr = res.zDotProduct(res);
+		double initialNorm = Math.sqrt(rr);
+		double tol = Math.max(relTol * initialNorm, absTol);
+		int iter = 0;
+		while (Math.sqrt(rr) > tol) {
+			if (iter == maxIter)
+				throw new IllegalArgumentException("Conjugate gradient method reached the"
+						+ " maximum number of iterations.");
+			if (Math.sqrt(rr) >= divTol * initialNorm)
+				throw new IllegalArgumentException("Conjugate gradient method diverged.");
+
+			/* q = A Hinv A^T p */
+			A.zMult(p, scratch, 1.0, 0.0, true);
+			for (int i = 0; i < scratch.size(); i++)
+				scratch.setQuick(i, Hinv.getQuick(i) * scratch.getQuick(i));
+			A.zMult(scratch, q);
+
+			double alpha = rr / p.zDotProduct(q);
+			for (int i = 0; i < m; i++) {
+				dw.setQuick(i, dw.getQuick(i) + alpha * p.getQuick(i));
+				res.setQuick(i, res.getQuick(i) - alpha * q.getQuick(i));
+			}
+			double rrNew = res.zDotProduct(res);
+			double beta = rrNew / rr;
+			rr = rrNew;
+			for (int i = 0; i < m; i++)
+				p.setQuick(i, res.getQuick(i) + beta * p.getQuick(i));
+			iter++;
+		}
+		statistics.addCGIterations(iter);
+	}
 }
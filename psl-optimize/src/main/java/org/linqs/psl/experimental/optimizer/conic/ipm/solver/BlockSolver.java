@@ -18,6 +18,7 @@
 package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
 
 import org.linqs.psl.config.Config;
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
 import org.linqs.psl.experimental.optimizer.conic.partition.ConicProgramPartition;
 import org.linqs.psl.experimental.optimizer.conic.partition.ObjectiveCoefficientPartitioner;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
@@ -123,6 +124,8 @@ public class BlockSolver implements NormalSystemSolver {
 	protected int[] rowAssignments;
 	protected boolean[] cutRows;
 
+	protected SolverStatistics statistics = new SolverStatistics();
+
 	public BlockSolver() {
 		maxIter = Config.getInt(CG_MAX_ITER_KEY, CG_MAX_ITER_DEFAULT);
 		relTol  = Config.getDouble(CG_REL_TOL_KEY, CG_REL_TOL_DEFAULT);
@@ -222,8 +225,12 @@ public class BlockSolver implements NormalSystemSolver {
 			C = ((SparseDoubleMatrix2D) C).getColumnCompressed(false);
 			D = ((SparseDoubleMatrix2D) D).getColumnCompressed(false);
 
+			long start = System.nanoTime();
 			choleskyB = new SparseDoubleCholeskyDecomposition(B, 1);
 			choleskyD = new SparseDoubleCholeskyDecomposition(D, 1);
+			statistics.addFactorizationTime(System.nanoTime() - start);
+			statistics.updatePeakFactorNonZeros((long) choleskyB.getSymbolicAnalysis().lnz
+					+ (long) choleskyD.getSymbolicAnalysis().lnz);
 
 			cg.setPreconditioner(new DoublePreconditioner() {
 
@@ -260,7 +267,10 @@ public class BlockSolver implements NormalSystemSolver {
 			});
 		}
 		else {
+			long start = System.nanoTime();
 			choleskyB = new SparseDoubleCholeskyDecomposition(A, 1);
+			statistics.addFactorizationTime(System.nanoTime() - start);
+			statistics.updatePeakFactorNonZeros((long) choleskyB.getSymbolicAnalysis().lnz);
 		}
 
 		log.trace("Finished setting A.");
@@ -293,6 +303,7 @@ public class BlockSolver implements NormalSystemSolver {
 			try {
 				cg.solve(new SchurComplement(), b0Scratch, y0);
 				log.debug("Solved for complement in {} iterations.", monitor.iterations());
+				statistics.addCGIterations(monitor.iterations());
 			} catch (IterativeSolverDoubleNotConvergedException e) {
 				throw new IllegalArgumentException(e);
 			}
@@ -307,10 +318,17 @@ public class BlockSolver implements NormalSystemSolver {
 			}
 		}
 		else {
+			long start = System.nanoTime();
 			choleskyB.solve(b);
+			statistics.addTriangularSolveTime(System.nanoTime() - start);
 		}
 	}
 
+	@Override
+	public void setStatistics(SolverStatistics statistics) {
+		this.statistics = statistics;
+	}
+
 	protected class SchurComplement extends SparseDoubleMatrix2D {
 
 		private static final long serialVersionUID = 112358132134L;
@@ -17,19 +17,46 @@
  */
 package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
 
+import java.util.Arrays;
+
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
 
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.algo.decomposition.SparseDoubleCholeskyDecomposition;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_chol;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcs;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcsn;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_common.Dcss;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_ipvec;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_lsolve;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_ltsolve;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_pvec;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_schol;
 
 /**
  * Solves normal systems using a Cholesky factorization.
+ * <p>
+ * The symbolic analysis of a matrix (its fill-reducing ordering and
+ * elimination tree) is reused for every following matrix with the same
+ * sparsity pattern, including across programs, so only the numeric
+ * factorization is recomputed.
  *
  * @author Stephen Bach <bach@cs.umd.edu>
  */
 public class Cholesky implements NormalSystemSolver {
-	private SparseDoubleCholeskyDecomposition decomposition;
+	
+	/* Symbolic analysis and the pattern it was computed for */
+	private Dcss symbolic;
+	private int[] patternColPtr;
+	private int[] patternRowIndexes;
+	private int numAnalyses;
+	
+	private Dcsn numeric;
+	private double[] rhs;
+	private double[] scratch;
+	
+	private SolverStatistics statistics = new SolverStatistics();
 
 	@Override
 	public void setConicProgram(ConicProgram program) {
@@ -38,11 +65,65 @@ public class Cholesky implements NormalSystemSolver {
 
 	@Override
 	public void setA(SparseCCDoubleMatrix2D A) {
-		decomposition = new SparseDoubleCholeskyDecomposition(A, 1);
+		long start = System.nanoTime();
+		Dcs dcs = A.elements();
+		if (symbolic == null || !hasPattern(dcs)) {
+			symbolic = Dcs_schol.cs_schol(1, dcs);
+			if (symbolic == null)
+				throw new IllegalArgumentException("Exception occurred in cs_schol().");
+			patternColPtr = Arrays.copyOf(dcs.p, dcs.n + 1);
+			patternRowIndexes = Arrays.copyOf(dcs.i, dcs.p[dcs.n]);
+			numAnalyses++;
+		}
+		
+		numeric = Dcs_chol.cs_chol(dcs, symbolic);
+		if (numeric == null)
+			throw new IllegalArgumentException("Matrix is not symmetric positive definite.");
+		statistics.addFactorizationTime(System.nanoTime() - start);
+		statistics.updatePeakFactorNonZeros(numeric.L.p[dcs.n]);
+		
+		if (rhs == null || rhs.length != dcs.n) {
+			rhs = new double[dcs.n];
+			scratch = new double[dcs.n];
+		}
+	}
+	
+	private boolean hasPattern(Dcs dcs) {
+		if (dcs.n + 1 != patternColPtr.length || dcs.p[dcs.n] != patternRowIndexes.length)
+			return false;
+		for (int j = 0; j <= dcs.n; j++)
+			if (dcs.p[j] != patternColPtr[j])
+				return false;
+		for (int k = 0; k < patternRowIndexes.length; k++)
+			if (dcs.i[k] != patternRowIndexes[k])
+				return false;
+		return true;
+	}
+	
+	/**
+	 * @return the number of symbolic analyses computed by this solver
+	 */
+	public int getNumAnalyses() {
+		return numAnalyses;
 	}
 
 	@Override
 	public void solve(DoubleMatrix1D b) {
-		decomposition.solve(b);
+		long start = System.nanoTime();
+		int n = rhs.length;
+		for (int i = 0; i < n; i++)
+			rhs[i] = b.getQuick(i);
+		Dcs_ipvec.cs_ipvec(symbolic.pinv, rhs, scratch, n);
+		Dcs_lsolve.cs_lsolve(numeric.L, scratch);
+		Dcs_ltsolve.cs_ltsolve(numeric.L, scratch);
+		Dcs_pvec.cs_pvec(symbolic.pinv, scratch, rhs, n);
+		for (int i = 0; i < n; i++)
+			b.setQuick(i, rhs[i]);
+		statistics.addTriangularSolveTime(System.nanoTime() - start);
+	}
+	
+	@Override
+	public void setStatistics(SolverStatistics statistics) {
+		this.statistics = statistics;
 	}
 }
@@ -18,6 +18,7 @@
 package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
 
 import org.linqs.psl.config.Config;
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
 import org.linqs.psl.experimental.optimizer.conic.ipm.solver.preconditioner.IdentityPreconditionerFactory;
 import org.linqs.psl.experimental.optimizer.conic.ipm.solver.preconditioner.PreconditionerFactory;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
@@ -103,6 +104,7 @@ public class ConjugateGradient implements NormalSystemSolver {
 	private DoubleIterationMonitor monitor;
 	private DoubleMatrix2D A;
 	private DoubleMatrix1D x;
+	private SolverStatistics statistics = new SolverStatistics();
 	
 	public ConjugateGradient() {
 		maxIter = Config.getInt(CG_MAX_ITER_KEY, CG_MAX_ITER_DEFAULT);
@@ -149,11 +151,17 @@ public class ConjugateGradient implements NormalSystemSolver {
 		try {
 			cg.solve(A, b, x);
 			log.debug("Solved in {} iterations.", monitor.iterations());
+			statistics.addCGIterations(monitor.iterations());
 		}
 		catch (IterativeSolverDoubleNotConvergedException e) {
 			throw new IllegalArgumentException(e);
 		}
 		b.assign(x);
 	}
+	
+	@Override
+	public void setStatistics(SolverStatistics statistics) {
+		this.statistics = statistics;
+	}
 
 }
@@ -0,0 +1,45 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+/**
+ * A {@link NormalSystemSolver} that solves normal systems A D A^T x = b with
+ * a diagonal D from A and D, so that the normal matrix is never formed.
+ * <p>
+ * The scaling of a program is diagonal when all its cones are non-negative
+ * orthant cones. For such programs, interior-point methods call
+ * {@link #setConstraintMatrix(SparseCCDoubleMatrix2D)} once per solve and
+ * then {@link #setScaling(DoubleMatrix1D)} instead of
+ * {@link #setA(SparseCCDoubleMatrix2D)} once per iteration.
+ */
+public interface MatrixFreeNormalSystemSolver extends NormalSystemSolver {
+	
+	/**
+	 * Sets A, which is unchanged until the next call to
+	 * {@link #setConicProgram(org.linqs.psl.experimental.optimizer.conic.program.ConicProgram)}.
+	 */
+	public void setConstraintMatrix(SparseCCDoubleMatrix2D A);
+	
+	/**
+	 * Sets the diagonal of D for the next systems to solve.
+	 */
+	public void setScaling(DoubleMatrix1D D);
+}
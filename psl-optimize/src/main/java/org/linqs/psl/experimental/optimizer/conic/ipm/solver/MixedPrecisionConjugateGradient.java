@@ -0,0 +1,361 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
+
+import org.linqs.psl.config.Config;
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Solves normal systems A D A^T x = b with a diagonal D using a conjugate
+ * gradient method in single precision with iterative refinement in double
+ * precision.
+ * <p>
+ * The normal matrix is never formed. A and D are copied to floats, and each
+ * conjugate gradient iteration computes A D A^T p as A (D (A^T p)) from the
+ * copies, so its matrix-vector products read 8 rather than 12 bytes per
+ * nonzero of A. Each conjugate gradient solve only needs to reduce its
+ * residual by a modest factor. The residual of the accumulated solution is
+ * then recomputed in double precision with the caller's A and D, and the
+ * correction for it is solved for in turn, until the residual meets the same
+ * tolerances as {@link ConjugateGradient}.
+ * <p>
+ * Compared with a solver given the normal matrix, this solver saves the
+ * memory of A D A^T and needs 4 more bytes per nonzero of A for its copy.
+ * The time spent in the single-precision solves and in the refinements is
+ * logged at the debug level.
+ * <p>
+ * A diagonal D requires all the cones of the program to be non-negative
+ * orthant cones, so this solver throws an exception if it is given a
+ * normal matrix with {@link #setA(SparseCCDoubleMatrix2D)}. The dual of a
+ * linear program has free variables, which dualizing puts in second-order
+ * cones, so the HomogeneousIPM should be used with its dualize property set
+ * to false.
+ * <p>
+ * This solver is meant for well-conditioned systems. As an interior-point
+ * method converges, its normal systems become ill-conditioned, and the
+ * single-precision solves may stop reducing the residual, in which case this
+ * solver throws an exception.
+ */
+public class MixedPrecisionConjugateGradient implements MatrixFreeNormalSystemSolver {
+
+	private static final Logger log = LoggerFactory.getLogger(MixedPrecisionConjugateGradient.class);
+
+	/**
+	 * Prefix of property keys used by this class.
+	 */
+	public static final String CONFIG_PREFIX = "mpcgsolver";
+
+	/**
+	 * Key for integer property. The MixedPrecisionConjugateGradient solver
+	 * will throw an exception if its conjugate gradient solves complete this
+	 * many iterations in total without solving the normal system.
+	 */
+	public static final String CG_MAX_ITER_KEY = CONFIG_PREFIX + ".maxcgiter";
+	/** Default value for CG_MAX_ITER_KEY property */
+	public static final int CG_MAX_ITER_DEFAULT = 1000000;
+
+	/**
+	 * Key for double property. The MixedPrecisionConjugateGradient solver
+	 * will terminate as converged if the residual, computed in double
+	 * precision, is less than this value times the norm of the right-hand side.
+	 */
+	public static final String CG_REL_TOL_KEY = CONFIG_PREFIX + ".cgreltol";
+	/** Default value for CG_REL_TOL_KEY property */
+	public static final double CG_REL_TOL_DEFAULT = 10e-10;
+
+	/**
+	 * Key for double property. The MixedPrecisionConjugateGradient solver
+	 * will terminate as converged if the residual, computed in double
+	 * precision, is less than this value.
+	 */
+	public static final String CG_ABS_TOL_KEY = CONFIG_PREFIX + ".cgabstol";
+	/** Default value for CG_ABS_TOL_KEY property */
+	public static final double CG_ABS_TOL_DEFAULT = 10e-50;
+
+	/**
+	 * Key for double property. Each single-precision conjugate gradient
+	 * solve terminates when its residual is less than this value times
+	 * its initial residual. Must be in (0,1).
+	 */
+	public static final String INNER_REL_TOL_KEY = CONFIG_PREFIX + ".innerreltol";
+	/** Default value for INNER_REL_TOL_KEY property */
+	public static final double INNER_REL_TOL_DEFAULT = 10e-5;
+
+	/**
+	 * Key for integer property. The MixedPrecisionConjugateGradient solver
+	 * will throw an exception if it refines the solution this many times
+	 * without solving the normal system.
+	 */
+	public static final String MAX_REFINEMENTS_KEY = CONFIG_PREFIX + ".maxrefinements";
+	/** Default value for MAX_REFINEMENTS_KEY property */
+	public static final int MAX_REFINEMENTS_DEFAULT = 20;
+
+	private final int maxIter;
+	private final double relTol;
+	private final double absTol;
+	private final double innerRelTol;
+	private final int maxRefinements;
+
+	/* The caller's A and D, for the residuals in double precision */
+	private SparseCCDoubleMatrix2D A;
+	private DoubleMatrix1D D;
+	private int[] colPtr;
+	private int[] rowIndexes;
+
+	/* Single-precision copies of the values of A and D, and the inverse of the diagonal of A D A^T */
+	private float[] values;
+	private float[] scaling;
+	private float[] invDiagonal;
+
+	/* Double-precision solution and residual, and scratch for A^T x */
+	private double[] x;
+	private double[] r;
+	private double[] t;
+
+	/* Single-precision vectors of the conjugate gradient solves */
+	private float[] d;
+	private float[] innerR;
+	private float[] z;
+	private float[] p;
+	private float[] q;
+	private float[] innerT;
+
+	private SolverStatistics statistics = new SolverStatistics();
+
+	public MixedPrecisionConjugateGradient() {
+		maxIter = Config.getInt(CG_MAX_ITER_KEY, CG_MAX_ITER_DEFAULT);
+		relTol = Config.getDouble(CG_REL_TOL_KEY, CG_REL_TOL_DEFAULT);
+		absTol = Config.getDouble(CG_ABS_TOL_KEY, CG_ABS_TOL_DEFAULT);
+
+		innerRelTol = Config.getDouble(INNER_REL_TOL_KEY, INNER_REL_TOL_DEFAULT);
+		if (innerRelTol <= 0.0 || innerRelTol >= 1.0)
+			throw new IllegalArgumentException("Property " + INNER_REL_TOL_KEY + " must be in (0,1).");
+
+		maxRefinements = Config.getInt(MAX_REFINEMENTS_KEY, MAX_REFINEMENTS_DEFAULT);
+		if (maxRefinements < 1)
+			throw new IllegalArgumentException("Property " + MAX_REFINEMENTS_KEY + " must be positive.");
+	}
+
+	@Override
+	public void setConicProgram(ConicProgram program) {
+		A = null;
+		D = null;
+		values = null;
+		scaling = null;
+	}
+
+	@Override
+	public void setConstraintMatrix(SparseCCDoubleMatrix2D A) {
+		int m = A.rows();
+		int n = A.columns();
+		this.A = A;
+		colPtr = A.getColumnPointers();
+		rowIndexes = A.getRowIndexes();
+		double[] doubleValues = A.getValues();
+
+		values = new float[colPtr[n]];
+		for (int k = 0; k < colPtr[n]; k++)
+			values[k] = (float) doubleValues[k];
+
+		scaling = new float[n];
+		t = new double[n];
+		innerT = new float[n];
+		invDiagonal = new float[m];
+		x = new double[m];
+		r = new double[m];
+		d = new float[m];
+		innerR = new float[m];
+		z = new float[m];
+		p = new float[m];
+		q = new float[m];
+	}
+
+	@Override
+	public void setScaling(DoubleMatrix1D D) {
+		this.D = D;
+		int n = scaling.length;
+		for (int j = 0; j < n; j++)
+			scaling[j] = (float) D.getQuick(j);
+
+		/* The diagonal of A D A^T, for the preconditioner */
+		for (int i = 0; i < invDiagonal.length; i++)
+			invDiagonal[i] = 0.0f;
+		for (int j = 0; j < n; j++)
+			for (int k = colPtr[j]; k < colPtr[j+1]; k++)
+				invDiagonal[rowIndexes[k]] += values[k] * values[k] * scaling[j];
+		for (int i = 0; i < invDiagonal.length; i++)
+			invDiagonal[i] = (invDiagonal[i] != 0.0f) ? 1.0f / invDiagonal[i] : 1.0f;
+	}
+
+	/**
+	 * @throws IllegalArgumentException  always, since this solver needs A
+	 *                                   and a diagonal D instead
+	 */
+	@Override
+	public void setA(SparseCCDoubleMatrix2D A) {
+		throw new IllegalArgumentException("MixedPrecisionConjugateGradient only solves"
+				+ " normal systems of programs whose cones are all non-negative orthant cones.");
+	}
+
+	@Override
+	public void solve(DoubleMatrix1D b) {
+		int m = x.length;
+		int n = t.length;
+		double[] doubleValues = A.getValues();
+
+		double bNorm = 0.0;
+		for (int i = 0; i < m; i++) {
+			x[i] = 0.0;
+			r[i] = b.getQuick(i);
+			bNorm += r[i] * r[i];
+		}
+		bNorm = Math.sqrt(bNorm);
+		double tol = Math.max(relTol * bNorm, absTol);
+
+		int iterations = 0;
+		int refinements = 0;
+		long innerTime = 0;
+		long refinementTime = 0;
+		double rNorm = bNorm;
+		while (rNorm > tol) {
+			if (refinements == maxRefinements)
+				throw new IllegalArgumentException("Residual " + rNorm + " exceeds tolerance "
+						+ tol + " after " + refinements + " refinements.");
+
+			/* Solves for the correction with the residual scaled to unit norm */
+			long start = System.nanoTime();
+			for (int i = 0; i < m; i++)
+				innerR[i] = (float) (r[i] / rNorm);
+			iterations += solveCorrection(maxIter - iterations);
+			for (int i = 0; i < m; i++)
+				x[i] += rNorm * d[i];
+			refinements++;
+			innerTime += System.nanoTime() - start;
+
+			/* Recomputes the residual r = b - A D A^T x in double precision */
+			start = System.nanoTime();
+			for (int j = 0; j < n; j++) {
+				double sum = 0.0;
+				for (int k = colPtr[j]; k < colPtr[j+1]; k++)
+					sum += doubleValues[k] * x[rowIndexes[k]];
+				t[j] = D.getQuick(j) * sum;
+			}
+			for (int i = 0; i < m; i++)
+				r[i] = b.getQuick(i);
+			for (int j = 0; j < n; j++)
+				for (int k = colPtr[j]; k < colPtr[j+1]; k++)
+					r[rowIndexes[k]] -= doubleValues[k] * t[j];
+
+			double lastNorm = rNorm;
+			rNorm = 0.0;
+			for (int i = 0; i < m; i++)
+				rNorm += r[i] * r[i];
+			rNorm = Math.sqrt(rNorm);
+			refinementTime += System.nanoTime() - start;
+			log.trace("Res. after refinement {}: {}", refinements, rNorm);
+
+			if (rNorm > tol && rNorm >= lastNorm)
+				throw new IllegalArgumentException("Refinement " + refinements
+						+ " did not reduce the residual. The normal system may be too"
+						+ " ill-conditioned for single precision.");
+		}
+
+		log.debug("Solved in {} iterations taking {} us and {} refinements taking {} us.",
+				new Object[] {iterations, innerTime / 1000, refinements, refinementTime / 1000});
+		statistics.addCGIterations(iterations);
+		for (int i = 0; i < m; i++)
+			b.setQuick(i, x[i]);
+	}
+
+	/**
+	 * Solves A D A^T d = innerR in single precision with a conjugate gradient
+	 * method preconditioned by the diagonal of A D A^T. Overwrites innerR.
+	 *
+	 * @return the number of iterations completed
+	 */
+	private int solveCorrection(int maxIter) {
+		int m = d.length;
+		int n = innerT.length;
+		double rz = 0.0;
+		double rNorm = 0.0;
+		for (int i = 0; i < m; i++) {
+			d[i] = 0.0f;
+			z[i] = invDiagonal[i] * innerR[i];
+			p[i] = z[i];
+			rz += innerR[i] * z[i];
+			rNorm += innerR[i] * innerR[i];
+		}
+
+		double tol = innerRelTol * Math.sqrt(rNorm);
+		int iter = 0;
+		while (Math.sqrt(rNorm) > tol) {
+			if (iter == maxIter)
+				throw new IllegalArgumentException("Conjugate gradient method reached the"
+						+ " maximum number of iterations.");
+
+			/* q = A (D (A^T p)) */
+			for (int j = 0; j < n; j++) {
+				float sum = 0.0f;
+				for (int k = colPtr[j]; k < colPtr[j+1]; k++)
+					sum += values[k] * p[rowIndexes[k]];
+				innerT[j] = scaling[j] * sum;
+			}
+			for (int i = 0; i < m; i++)
+				q[i] = 0.0f;
+			for (int j = 0; j < n; j++) {
+				float tj = innerT[j];
+				for (int k = colPtr[j]; k < colPtr[j+1]; k++)
+					q[rowIndexes[k]] += values[k] * tj;
+			}
+
+			double pq = 0.0;
+			for (int i = 0; i < m; i++)
+				pq += p[i] * q[i];
+			float alpha = (float) (rz / pq);
+
+			double rzNew = 0.0;
+			rNorm = 0.0;
+			for (int i = 0; i < m; i++) {
+				d[i] += alpha * p[i];
+				innerR[i] -= alpha * q[i];
+				z[i] = invDiagonal[i] * innerR[i];
+				rzNew += innerR[i] * z[i];
+				rNorm += innerR[i] * innerR[i];
+			}
+
+			float beta = (float) (rzNew / rz);
+			rz = rzNew;
+			for (int i = 0; i < m; i++)
+				p[i] = z[i] + beta * p[i];
+			iter++;
+		}
+		return iter;
+	}
+
+	@Override
+	public void setStatistics(SolverStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+}
@@ -17,6 +17,7 @@
  */
 package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
 
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
 
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
@@ -28,9 +29,28 @@ import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
  * @author Stephen Bach <bach@cs.umd.edu>
  */
 public interface NormalSystemSolver {
+	/**
+	 * Prepares to solve the normal systems of a program.
+	 */
 	public void setConicProgram(ConicProgram program);
 	
+	/**
+	 * Sets the matrix of the next systems to solve.
+	 * <p>
+	 * Interior-point methods call this method once per iteration with
+	 * matrices that usually share a sparsity pattern, as do repeated solves
+	 * of a program whose structure is unchanged. Implementations should
+	 * reuse any analysis of the pattern that does not depend on the values
+	 * of the matrix for as long as the pattern is unchanged.
+	 */
 	public void setA(SparseCCDoubleMatrix2D A);
 	
 	public void solve(DoubleMatrix1D b);
+	
+	/**
+	 * Sets the statistics to which this solver adds the time it spends
+	 * factorizing and solving, the nonzeros in its factors, and its
+	 * conjugate gradient iterations, as applicable.
+	 */
+	public void setStatistics(SolverStatistics statistics);
 }
@@ -384,6 +384,10 @@ public class ConicProgramPartition implements ConicProgramListener {
 		case SOCCreated:
 			unassignedCones.add((Cone) entity);
 			break;
+		case BatchCreated:
+			for (Object cone : (Collection<?>) data[0])
+				unassignedCones.add((Cone) cone);
+			break;
 		case NNOCDeleted:
 			removeCone((Cone) entity);
 			break;
@@ -0,0 +1,139 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.program;
+
+/**
+ * Counts the changes made to a {@link ConicProgram} since the journal was
+ * last cleared, so that a solver can decide how much of its previous work
+ * it can reuse.
+ * <p>
+ * Solvers clear the journal of a program after solving it to optimality, so
+ * a journal that is not cleared by a solve, for example because the solve
+ * stopped at an iteration limit, keeps accumulating changes since the last
+ * optimal solution. Cones and linear constraints created in a batch are counted individually.
+ * 
+ * @see ConicProgram#setJournaling(boolean)
+ */
+public class ChangeJournal {
+	
+	/**
+	 * The most significant kind of change recorded by a journal, in
+	 * increasing order of significance.
+	 */
+	public enum Level {
+		/** Nothing has changed. */
+		None,
+		
+		/**
+		 * Only objective coefficients and constrained values have changed, so
+		 * the previous solution is a good warm start.
+		 */
+		Values,
+		
+		/**
+		 * Coefficients of A have changed but its sparsity pattern has not, so
+		 * symbolic factorizations of matrices formed from A can be reused.
+		 */
+		Coefficients,
+		
+		/**
+		 * Cones or linear constraints have been created or deleted, or
+		 * variables have been added to or removed from linear constraints.
+		 */
+		Structure
+	}
+	
+	private final int[] counts;
+	private Level level;
+	
+	ChangeJournal() {
+		counts = new int[ConicProgramEvent.values().length];
+		level = Level.None;
+	}
+	
+	void record(ConicProgramEvent e) {
+		Level eventLevel;
+		switch (e) {
+		case MatricesCheckedIn:
+		case MatricesCheckedOut:
+		case BatchCreated:
+			/* Not changes, or already recorded individually */
+			return;
+		case ObjCoeffChanged:
+		case ConValueChanged:
+			eventLevel = Level.Values;
+			break;
+		case ConCoeffChanged:
+			eventLevel = Level.Coefficients;
+			break;
+		default:
+			eventLevel = Level.Structure;
+		}
+		
+		counts[e.ordinal()]++;
+		if (eventLevel.compareTo(level) > 0)
+			level = eventLevel;
+	}
+	
+	/**
+	 * @return the number of times an event has been recorded since the
+	 *         journal was last cleared
+	 */
+	public int getCount(ConicProgramEvent e) {
+		return counts[e.ordinal()];
+	}
+	
+	/**
+	 * @return the number of cones created minus the number deleted
+	 */
+	public int getNetConesCreated() {
+		return getCount(ConicProgramEvent.NNOCCreated) - getCount(ConicProgramEvent.NNOCDeleted)
+				+ getCount(ConicProgramEvent.SOCCreated) - getCount(ConicProgramEvent.SOCDeleted)
+				+ getCount(ConicProgramEvent.RSOCCreated) - getCount(ConicProgramEvent.RSOCDeleted);
+	}
+	
+	/**
+	 * @return the number of linear constraints created minus the number deleted
+	 */
+	public int getNetConstraintsCreated() {
+		return getCount(ConicProgramEvent.ConCreated) - getCount(ConicProgramEvent.ConDeleted);
+	}
+	
+	public Level getLevel() {
+		return level;
+	}
+	
+	public boolean isEmpty() {
+		return level == Level.None;
+	}
+	
+	public void clear() {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+		level = Level.None;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder("ChangeJournal(").append(level);
+		for (ConicProgramEvent e : ConicProgramEvent.values())
+			if (counts[e.ordinal()] > 0)
+				string.append(", ").append(e).append('=').append(counts[e.ordinal()]);
+		return string.append(')').toString();
+	}
+}
@@ -17,32 +17,82 @@
  */
 package org.linqs.psl.experimental.optimizer.conic.program;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 
+import org.linqs.psl.config.Config;
+import org.linqs.psl.experimental.optimizer.conic.util.WorkerPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import cern.colt.list.tdouble.DoubleArrayList;
 import cern.colt.list.tint.IntArrayList;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.algo.DenseDoubleAlgebra;
 import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
-import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
-import cern.jet.math.tdouble.DoubleFunctions;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_amd;
+import edu.emory.mathcs.csparsej.tdouble.Dcs_transpose;
 
 import com.google.common.collect.ImmutableSet;
 
 /**
  * Stores information about the primal and dual forms of a conic program.
+ * <p>
+ * The values of all {@link Variable Variables} and {@link LinearConstraint
+ * LinearConstraints} are kept in primitive arrays owned by the program. A
+ * program can optionally be made compact, in which case the coefficients of
+ * the linear constraints are also kept in primitive arrays instead of in
+ * per-entity hash collections. Compact programs use much less memory, but
+ * looking up a single coefficient takes time linear in the number of
+ * variables in the constraint (or constraints containing the variable,
+ * whichever is smaller).
  * 
  * @author Stephen Bach <bach@cs.umd.edu>
  */
 public class ConicProgram {
 	
+	private static final Logger log = LoggerFactory.getLogger(ConicProgram.class);
+	
+	/**
+	 * Prefix of property keys used by this class.
+	 * 
+	 * @see Config
+	 */
+	public static final String CONFIG_PREFIX = "conicprogram";
+	
+	/**
+	 * Key for positive integer property. The number of threads used to
+	 * assemble the matrices when they are checked out and to compute
+	 * infeasibilities. Programs with the same number of threads share
+	 * one {@link WorkerPool}.
+	 */
+	public static final String THREADS_KEY = CONFIG_PREFIX + ".threads";
+	/** Default value for THREADS_KEY property. */
+	public static final int THREADS_DEFAULT = 1;
+	
+	/**
+	 * Key for {@link MatrixOrdering} property. The order of the rows and
+	 * columns of the matrices when they are built.
+	 */
+	public static final String ORDERING_KEY = CONFIG_PREFIX + ".ordering";
+	/** Default value for ORDERING_KEY property. */
+	public static final String ORDERING_DEFAULT = MatrixOrdering.Creation.toString();
+	
+	/**
+	 * Key for boolean property. If true, programs keep a {@link ChangeJournal}
+	 * of changes made since they were last solved to optimality.
+	 */
+	public static final String JOURNAL_KEY = CONFIG_PREFIX + ".journal";
+	/** Default value for JOURNAL_KEY property. */
+	public static final boolean JOURNAL_DEFAULT = false;
+	
 	private Set<NonNegativeOrthantCone> NNOCs;
 	private Set<SecondOrderCone> SOCs;
 	private Set<RotatedSecondOrderCone> RSOCs;
@@ -51,10 +101,15 @@ public class ConicProgram {
 	
 	private Set<LinearConstraint> cons;
 	
+	private final EntityStore store;
+	
 	private boolean checkedOut;
 	
 	private Set<ConicProgramListener> listeners;
 	
+	/* Whether events are withheld from listeners while creating a batch */
+	private boolean batching;
+	
 	private SparseCCDoubleMatrix2D A;
 	private DenseDoubleMatrix1D x;
 	private DenseDoubleMatrix1D b;
@@ -64,6 +119,47 @@ public class ConicProgram {
 	private Map<Variable, Integer> varMap;
 	private Map<LinearConstraint, Integer> lcMap;
 	
+	/*
+	 * Changes made since the last check-out. If the structure is unchanged,
+	 * the next check-out patches the existing matrices instead of
+	 * rebuilding them.
+	 */
+	private boolean structureChanged;
+	private Set<Variable> changedObjCoeffs;
+	private Set<LinearConstraint> changedConValues;
+	private Map<LinearConstraint, Set<Variable>> changedConCoeffs;
+	
+	/* Changes made since the last solve, or null if not journaling */
+	private ChangeJournal journal;
+	
+	private MatrixOrdering ordering;
+	private long assemblyTime;
+	
+	private final WorkerPool pool;
+	
+	/*
+	 * Indices of the variables of the cones, for checking feasibility. The
+	 * variables of the ith second-order cone are at socIndexes[socPtr[i]]
+	 * through socIndexes[socPtr[i+1]-1], with its nth variable last. The
+	 * variables of the rotated second-order cones are stored the same way,
+	 * with their (n-1)st variables second to last.
+	 */
+	private int[] nnocIndexes;
+	private int[] socPtr;
+	private int[] socIndexes;
+	private int[] rsocPtr;
+	private int[] rsocIndexes;
+	
+	/*
+	 * Row-ordered index of A, for computing primal residuals by row. The
+	 * nonzeros of the ith row are at positions rowEntries[rowPtr[i]] through
+	 * rowEntries[rowPtr[i+1]-1] of the values of A, in the columns at the
+	 * same positions of rowCols.
+	 */
+	private int[] rowPtr;
+	private int[] rowEntries;
+	private int[] rowCols;
+	
 	private int nextID;
 	
 	// Error messages
@@ -71,6 +167,14 @@ public class ConicProgram {
 	private static final String UNEXPECTED_DATA = "Unexpected data.";
 	
 	public ConicProgram() {
+		this(false);
+	}
+	
+	/**
+	 * @param compact  whether to store linear constraint coefficients in
+	 *                 primitive arrays instead of hash collections
+	 */
+	public ConicProgram(boolean compact) {
 		NNOCs = new HashSet<NonNegativeOrthantCone>();
 		SOCs = new HashSet<SecondOrderCone>();
 		RSOCs = new HashSet<RotatedSecondOrderCone>();
@@ -79,9 +183,26 @@ public class ConicProgram {
 		
 		cons = new HashSet<LinearConstraint>();
 		
+		store = new EntityStore(compact);
+		
 		checkedOut = false;
 		
+		structureChanged = true;
+		changedObjCoeffs = new HashSet<Variable>();
+		changedConValues = new HashSet<LinearConstraint>();
+		changedConCoeffs = new HashMap<LinearConstraint, Set<Variable>>();
+		
 		listeners = new HashSet<ConicProgramListener>();
+		batching = false;
+		
+		journal = (Config.getBoolean(JOURNAL_KEY, JOURNAL_DEFAULT)) ? new ChangeJournal() : null;
+		ordering = MatrixOrdering.valueOf(Config.getString(ORDERING_KEY, ORDERING_DEFAULT));
+		assemblyTime = 0;
+		
+		int threads = Config.getInt(THREADS_KEY, THREADS_DEFAULT);
+		if (threads < 1)
+			throw new IllegalArgumentException("Property " + THREADS_KEY + " must be positive.");
+		pool = WorkerPool.getShared(threads);
 		
 		nextID = 0;
 	}
@@ -90,6 +211,53 @@ public class ConicProgram {
 		return nextID++;
 	}
 	
+	EntityStore getStore() {
+		return store;
+	}
+	
+	/**
+	 * @return whether this program stores linear constraint coefficients in
+	 *         primitive arrays
+	 */
+	public boolean isCompact() {
+		return store.isCompact();
+	}
+	
+	public MatrixOrdering getOrdering() {
+		return ordering;
+	}
+	
+	/**
+	 * Sets the order of the rows and columns of the matrices. Takes effect
+	 * the next time the matrices are checked out.
+	 */
+	public void setOrdering(MatrixOrdering ordering) {
+		verifyCheckedIn();
+		if (this.ordering != ordering) {
+			this.ordering = ordering;
+			structureChanged = true;
+		}
+	}
+	
+	/**
+	 * Starts or stops keeping a journal of changes. A new journal starts
+	 * empty.
+	 */
+	public void setJournaling(boolean journaling) {
+		if (journaling && journal == null)
+			journal = new ChangeJournal();
+		else if (!journaling)
+			journal = null;
+	}
+	
+	/**
+	 * @return the changes made since this program was last solved, or null
+	 *         if this program is not keeping a journal
+	 */
+	public ChangeJournal getJournal() {
+		return journal;
+	}
+	
 	public Collection<ConeType> getConeTypes() {
 		Set<ConeType> types = new HashSet<ConeType>();
 		if (getNumNNOC() > 0) types.add(ConeType.NonNegativeOrthantCone);
@@ -103,6 +271,25 @@ public class ConicProgram {
 		return new NonNegativeOrthantCone(this);
 	}
 	
+	/**
+	 * Creates n non-negative orthant cones. Listeners are sent a single
+	 * {@link ConicProgramEvent#BatchCreated} event.
+	 */
+	public List<NonNegativeOrthantCone> createNonNegativeOrthantCones(int n) {
+		verifyCheckedIn();
+		store.ensureVariableCapacity(n);
+		List<NonNegativeOrthantCone> created = new ArrayList<NonNegativeOrthantCone>(n);
+		batching = true;
+		try {
+			for (int i = 0; i < n; i++)
+				created.add(new NonNegativeOrthantCone(this));
+		}
+		finally {
+			endBatch(created, Collections.<LinearConstraint>emptyList());
+		}
+		return created;
+	}
+	
 	public Set<NonNegativeOrthantCone> getNonNegativeOrthantCones() {
 		return Collections.unmodifiableSet(NNOCs);
 	}
@@ -112,6 +299,25 @@ public class ConicProgram {
 		return new SecondOrderCone(this, n);
 	}
 	
+	/**
+	 * Creates count second-order cones, each with n dimensions. Listeners are
+	 * sent a single {@link ConicProgramEvent#BatchCreated} event.
+	 */
+	public List<SecondOrderCone> createSecondOrderCones(int count, int n) {
+		verifyCheckedIn();
+		store.ensureVariableCapacity(count * n);
+		List<SecondOrderCone> created = new ArrayList<SecondOrderCone>(count);
+		batching = true;
+		try {
+			for (int i = 0; i < count; i++)
+				created.add(new SecondOrderCone(this, n));
+		}
+		finally {
+			endBatch(created, Collections.<LinearConstraint>emptyList());
+		}
+		return created;
+	}
+	
 	public Set<SecondOrderCone> getSecondOrderCones() {
 		return Collections.unmodifiableSet(SOCs);
 	}
@@ -134,79 +340,343 @@ public class ConicProgram {
 		return new LinearConstraint(this);
 	}
 	
+	/**
+	 * Creates a block of linear constraints given in compressed-row form.
+	 * Listeners are sent a single {@link ConicProgramEvent#BatchCreated} event.
+	 * 
+	 * @param rowPtr  the coefficients of the ith new constraint are at
+	 *                positions rowPtr[i] through rowPtr[i+1]-1 of vars and
+	 *                coeffs, so its length is the number of new constraints
+	 *                plus one
+	 * @param vars  the variables of the coefficients
+	 * @param coeffs  the coefficients
+	 * @param values  the constrained values of the new constraints
+	 * @return the new constraints, in the order of the rows
+	 */
+	public List<LinearConstraint> createConstraints(int[] rowPtr, Variable[] vars, double[] coeffs, double[] values) {
+		verifyCheckedIn();
+		int numCons = rowPtr.length - 1;
+		if (numCons < 0 || values.length != numCons
+				|| vars.length < rowPtr[numCons] || coeffs.length < rowPtr[numCons])
+			throw new IllegalArgumentException("Sizes of constraint block arrays do not match.");
+		
+		store.ensureConstraintCapacity(numCons);
+		if (store.isCompact())
+			store.ensureEntryCapacity(rowPtr[numCons]);
+		
+		List<LinearConstraint> created = new ArrayList<LinearConstraint>(numCons);
+		batching = true;
+		try {
+			for (int i = 0; i < numCons; i++) {
+				LinearConstraint con = new LinearConstraint(this);
+				created.add(con);
+				for (int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+					con.setVariable(vars[k], coeffs[k]);
+				con.setConstrainedValue(values[i]);
+			}
+		}
+		finally {
+			endBatch(Collections.<Cone>emptyList(), created);
+		}
+		return created;
+	}
+	
+	private void endBatch(List<? extends Cone> cones, List<LinearConstraint> constraints) {
+		batching = false;
+		notify(ConicProgramEvent.BatchCreated, null,
+				Collections.unmodifiableList(cones), Collections.unmodifiableList(constraints));
+	}
+	
 	public Set<LinearConstraint> getConstraints() {
 		return new HashSet<LinearConstraint>(this.cons);
 	}
 	
+	/**
+	 * Makes the matrix representation of this program available.
+	 * <p>
+	 * If no cones, linear constraints, or nonzero coefficients have been added
+	 * or removed since the last check-out, the matrices from that check-out
+	 * are reused: only the changed entries of A, b, and c are updated and x,
+	 * w, and s are refilled in place. Otherwise they are rebuilt. In either
+	 * case, A, b, and c must be treated as read-only.
+	 * <p>
+	 * When the matrices are rebuilt, their rows and columns are ordered as
+	 * specified by {@link #getOrdering()}.
+	 */
 	public void checkOutMatrices() {
 		verifyCheckedIn();
-		Variable var;
-		int i, j;
-		varMap = new HashMap<Variable, Integer>();
-		lcMap = new HashMap<LinearConstraint, Integer>();
 		
-		/* Collects variables */
-		i = 0;
+		long start = System.nanoTime();
+		if (structureChanged || A == null)
+			buildMatrices();
+		else
+			updateMatrices();
+		assemblyTime = System.nanoTime() - start;
+		log.debug("Assembled matrices in {} us.", assemblyTime / 1000);
 		
-		/* NNOCs */
-		for (NonNegativeOrthantCone cone : NNOCs) {
-			var = cone.getVariable();
-			if (!varMap.containsKey(var)){
-				varMap.put(var, i++);
-			}
+		structureChanged = false;
+		changedObjCoeffs.clear();
+		changedConValues.clear();
+		changedConCoeffs.clear();
+		
+		checkedOut = true;
+		
+		notify(ConicProgramEvent.MatricesCheckedOut, null, (Object[]) null);
+	}
+	
+	private void buildMatrices() {
+		/* Collects variables in order of creation */
+		List<Variable> vars = new ArrayList<Variable>(numVars);
+		for (NonNegativeOrthantCone cone : NNOCs)
+			vars.add(cone.getVariable());
+		for (SecondOrderCone cone : SOCs)
+			vars.addAll(cone.getVariables());
+		for (RotatedSecondOrderCone cone : RSOCs)
+			vars.addAll(cone.getVariables());
+		Collections.sort(vars, Entity.CREATION_ORDER);
+		
+		Variable[] colVars = vars.toArray(new Variable[vars.size()]);
+		varMap = new HashMap<Variable, Integer>(colVars.length * 2);
+		for (int i = 0; i < colVars.length; i++)
+			varMap.put(colVars[i], i);
+		
+		/* Collects linear constraints in order of creation */
+		LinearConstraint[] rowCons = cons.toArray(new LinearConstraint[cons.size()]);
+		Arrays.sort(rowCons, Entity.CREATION_ORDER);
+		
+		int[] rowBySlot = new int[store.getNumConstraintSlots()];
+		for (int j = 0; j < rowCons.length; j++)
+			rowBySlot[rowCons[j].getSlot()] = j;
+		
+		/* Constructs A */
+		if (rowCons.length > 0) {
+			A = assembleA(colVars, rowBySlot, rowCons.length);
+			if (ordering == MatrixOrdering.MinimumDegree)
+				rowCons = reorderRows(rowCons);
+		}
+		else
+			A = new SparseCCDoubleMatrix2D(0, 0);
+		
+		lcMap = new HashMap<LinearConstraint, Integer>(rowCons.length * 2);
+		for (int j = 0; j < rowCons.length; j++)
+			lcMap.put(rowCons[j], j);
+		
+		buildConeIndexes();
+		buildRowIndex(rowCons.length);
+		
+		/* Initializes data matrices */
+		x = new DenseDoubleMatrix1D(colVars.length);
+		b = new DenseDoubleMatrix1D(rowCons.length);
+		w = new DenseDoubleMatrix1D(rowCons.length);
+		s = new DenseDoubleMatrix1D(colVars.length);
+		c = new DenseDoubleMatrix1D(colVars.length);
+		
+		/* Constructs b and w */
+		for (int j = 0; j < rowCons.length; j++) {
+			w.setQuick(j, rowCons[j].getLagrange());
+			b.setQuick(j, rowCons[j].getConstrainedValue());
+		}
+		
+		/* Constructs x, s, and c */
+		for (int i = 0; i < colVars.length; i++) {
+			x.setQuick(i, colVars[i].getValue());
+			s.setQuick(i, colVars[i].getDualValue());
+			c.setQuick(i, colVars[i].getObjectiveCoefficient());
 		}
+	}
+	
+	private void buildConeIndexes() {
+		nnocIndexes = new int[NNOCs.size()];
+		int i = 0;
+		for (NonNegativeOrthantCone cone : NNOCs)
+			nnocIndexes[i++] = varMap.get(cone.getVariable());
 		
-		/* SOCs */
+		socPtr = new int[SOCs.size() + 1];
+		int numSOCVars = 0;
 		for (SecondOrderCone cone : SOCs)
-			for (Variable v : cone.getVariables())
-				if (!varMap.containsKey(v))
-					varMap.put(v, i++);
+			numSOCVars += cone.getN();
+		socIndexes = new int[numSOCVars];
+		i = 0;
+		int k = 0;
+		for (SecondOrderCone cone : SOCs) {
+			for (Variable v : cone.getInnerVariables())
+				socIndexes[k++] = varMap.get(v);
+			socIndexes[k++] = varMap.get(cone.getNthVariable());
+			socPtr[++i] = k;
+		}
 		
-		/* RSOCs */
+		rsocPtr = new int[RSOCs.size() + 1];
+		int numRSOCVars = 0;
 		for (RotatedSecondOrderCone cone : RSOCs)
+			numRSOCVars += cone.getN();
+		rsocIndexes = new int[numRSOCVars];
+		i = 0;
+		k = 0;
+		for (RotatedSecondOrderCone cone : RSOCs) {
 			for (Variable v : cone.getVariables())
-				if (!varMap.containsKey(v))
-					varMap.put(v, i++);
-		
-		/* Collects linear constraints */
-		j = 0;
-		for (LinearConstraint con : cons)
-			if (!lcMap.containsKey(con))
-				lcMap.put((LinearConstraint) con, j++);
-				
+				if (!v.equals(cone.getNthVariable()) && !v.equals(cone.getNMinus1stVariable()))
+					rsocIndexes[k++] = varMap.get(v);
+			rsocIndexes[k++] = varMap.get(cone.getNMinus1stVariable());
+			rsocIndexes[k++] = varMap.get(cone.getNthVariable());
+			rsocPtr[++i] = k;
+		}
+	}
+	
+	/** Indexes the nonzeros of A by row, in order of column within each row. */
+	private void buildRowIndex(int numRows) {
+		int[] colPtr = A.getColumnPointers();
+		int[] rowIndexes = A.getRowIndexes();
+		int nnz = colPtr[A.columns()];
 		
-		/* Initializes data matrices */
-		SparseDoubleMatrix2D Atemp = new SparseDoubleMatrix2D(lcMap.size(), varMap.size(), lcMap.size()*4, 0.2, 0.5);
-		x = new DenseDoubleMatrix1D(varMap.size());
-		b = new DenseDoubleMatrix1D(lcMap.size());
-		w = new DenseDoubleMatrix1D(lcMap.size());
-		s = new DenseDoubleMatrix1D(varMap.size());
-		c = new DenseDoubleMatrix1D(varMap.size());
-		
-		/* Constructs A, b, and w */
-		for (Map.Entry<LinearConstraint, Integer> lc : lcMap.entrySet()) {
-			for (Entry<Variable, Double> v : lc.getKey().getVariables().entrySet()) {
-				Atemp.set(lc.getValue(), varMap.get(v.getKey()), v.getValue());
+		rowPtr = new int[numRows+1];
+		for (int k = 0; k < nnz; k++)
+			rowPtr[rowIndexes[k]+1]++;
+		for (int row = 0; row < numRows; row++)
+			rowPtr[row+1] += rowPtr[row];
+		
+		rowEntries = new int[nnz];
+		rowCols = new int[nnz];
+		int[] next = Arrays.copyOf(rowPtr, numRows);
+		for (int col = 0; col < A.columns(); col++) {
+			for (int k = colPtr[col]; k < colPtr[col+1]; k++) {
+				int l = next[rowIndexes[k]]++;
+				rowEntries[l] = k;
+				rowCols[l] = col;
 			}
-			w.set(lc.getValue(), lc.getKey().getLagrange());
-			b.set(lc.getValue(), lc.getKey().getConstrainedValue());
 		}
+	}
+	
+	/**
+	 * Assembles A in compressed-column form in two passes, first counting the
+	 * nonzeros of each column and then filling them in. Row indices are sorted
+	 * within each column.
+	 */
+	private SparseCCDoubleMatrix2D assembleA(final Variable[] colVars, final int[] rowBySlot, int numRows) {
+		/* Counts the nonzeros of each column */
+		int[] colPtr = new int[colVars.length+1];
+		for (int col = 0; col < colVars.length; col++)
+			colPtr[col+1] = colPtr[col] + colVars[col].getLinearConstraints().size();
 		
-		if (Atemp.rows() > 0)
-			A = Atemp.getColumnCompressed(false);
-		else
-			A = new SparseCCDoubleMatrix2D(0, 0);
+		final SparseCCDoubleMatrix2D A = new SparseCCDoubleMatrix2D(numRows, colVars.length, colPtr[colVars.length]);
+		System.arraycopy(colPtr, 0, A.getColumnPointers(), 0, colPtr.length);
 		
-		/* Constructs x, s, and c */
-		for (Map.Entry<Variable, Integer> v : varMap.entrySet()) {
-			x.set(v.getValue(), v.getKey().getValue());
-			s.set(v.getValue(), v.getKey().getDualValue());
-			c.set(v.getValue(), v.getKey().getObjectiveCoefficient());
+		/* Fills in the nonzeros, one range of columns per chunk */
+		pool.forEach(colVars.length, new WorkerPool.RangeTask() {
+			@Override
+			public void run(int chunk, int start, int end) {
+				assembleColumns(colVars, rowBySlot, A, start, end);
+			}
+		});
+		
+		return A;
+	}
+	
+	private void assembleColumns(Variable[] colVars, int[] rowBySlot, SparseCCDoubleMatrix2D A, int start, int end) {
+		int[] colPtr = A.getColumnPointers();
+		int[] rowIndexes = A.getRowIndexes();
+		double[] values = A.getValues();
+		
+		for (int col = start; col < end; col++) {
+			Variable var = colVars[col];
+			if (store.isCompact()) {
+				store.copyVariableCoefficients(var.getSlot(), rowBySlot, rowIndexes, values, colPtr[col]);
+			}
+			else {
+				int k = colPtr[col];
+				for (LinearConstraint con : var.getLinearConstraints()) {
+					rowIndexes[k] = rowBySlot[con.getSlot()];
+					values[k++] = con.getVariables().get(var);
+				}
+			}
 		}
 		
-		checkedOut = true;
+		sortColumns(A, start, end);
+	}
+	
+	/** Sorts the row indices of each column of A in [start, end). */
+	private static void sortColumns(SparseCCDoubleMatrix2D A, int start, int end) {
+		int[] colPtr = A.getColumnPointers();
+		int[] rowIndexes = A.getRowIndexes();
+		double[] values = A.getValues();
 		
-		notify(ConicProgramEvent.MatricesCheckedOut, null, (Object[]) null);
+		for (int col = start; col < end; col++) {
+			for (int k = colPtr[col] + 1; k < colPtr[col+1]; k++) {
+				int row = rowIndexes[k];
+				double value = values[k];
+				int l = k - 1;
+				while (l >= colPtr[col] && rowIndexes[l] > row) {
+					rowIndexes[l+1] = rowIndexes[l];
+					values[l+1] = values[l];
+					l--;
+				}
+				rowIndexes[l+1] = row;
+				values[l+1] = value;
+			}
+		}
+	}
+	
+	/**
+	 * Permutes the rows of A by an approximate minimum degree ordering of
+	 * A * A^T.
+	 * 
+	 * @param rowCons  the linear constraints in the current order of the rows
+	 * @return the linear constraints in the new order of the rows
+	 */
+	private LinearConstraint[] reorderRows(LinearConstraint[] rowCons) {
+		int[] perm = Dcs_amd.cs_amd(3, Dcs_transpose.cs_transpose(A.elements(), false));
+		if (perm == null)
+			throw new IllegalStateException("Could not compute minimum degree ordering.");
+		
+		int[] newRow = new int[rowCons.length];
+		LinearConstraint[] reordered = new LinearConstraint[rowCons.length];
+		for (int j = 0; j < rowCons.length; j++) {
+			newRow[perm[j]] = j;
+			reordered[j] = rowCons[perm[j]];
+		}
+		
+		int[] rowIndexes = A.getRowIndexes();
+		int nnz = A.getColumnPointers()[A.columns()];
+		for (int k = 0; k < nnz; k++)
+			rowIndexes[k] = newRow[rowIndexes[k]];
+		sortColumns(A, 0, A.columns());
+		
+		return reordered;
+	}
+	
+	private void updateMatrices() {
+		/* Updates b and c */
+		for (LinearConstraint con : changedConValues)
+			b.setQuick(lcMap.get(con), con.getConstrainedValue());
+		for (Variable var : changedObjCoeffs)
+			c.setQuick(varMap.get(var), var.getObjectiveCoefficient());
+		
+		/* Updates the changed nonzeros of A in place */
+		if (!changedConCoeffs.isEmpty()) {
+			int[] colPtr = A.getColumnPointers();
+			int[] rowIndexes = A.getRowIndexes();
+			double[] values = A.getValues();
+			for (Map.Entry<LinearConstraint, Set<Variable>> e : changedConCoeffs.entrySet()) {
+				int row = lcMap.get(e.getKey());
+				Map<Variable, Double> coeffs = e.getKey().getVariables();
+				for (Variable var : e.getValue()) {
+					int col = varMap.get(var);
+					for (int k = colPtr[col]; k < colPtr[col+1]; k++) {
+						if (rowIndexes[k] == row) {
+							values[k] = coeffs.get(var);
+							break;
+						}
+					}
+				}
+			}
+		}
+		
+		/* Refills x, s, and w */
+		for (Map.Entry<Variable, Integer> v : varMap.entrySet()) {
+			x.setQuick(v.getValue(), v.getKey().getValue());
+			s.setQuick(v.getValue(), v.getKey().getDualValue());
+		}
+		for (Map.Entry<LinearConstraint, Integer> lc : lcMap.entrySet())
+			w.setQuick(lc.getValue(), lc.getKey().getLagrange());
 	}
 	
 	public void checkInMatrices() {
@@ -262,6 +732,14 @@ public class ConicProgram {
 		return c;
 	}
 	
+	/**
+	 * @return the time in nanoseconds spent building or updating the
+	 *         matrices during the most recent check-out
+	 */
+	public long getAssemblyTime() {
+		return assemblyTime;
+	}
+	
 	public int getIndex(Variable v) {
 		verifyCheckedOut();
 		return varMap.get(v);
@@ -296,6 +774,10 @@ public class ConicProgram {
 		return cons.size();
 	}
 	
+	public boolean isCheckedOut() {
+		return checkedOut;
+	}
+	
 	public void verifyCheckedOut() {
 		if (!checkedOut)
 			throw new IllegalStateException("Matrices are not checked out.");
@@ -367,70 +849,172 @@ public class ConicProgram {
 		return getPrimalInfeasibility(false);
 	}
 	
+	/**
+	 * Computes the primal infeasibility of the checked-out point.
+	 * <p>
+	 * The cones and the rows of A are checked in parallel. Each call only
+	 * allocates one partial sum per chunk, so calls on the same program
+	 * may run concurrently.
+	 */
 	public double getPrimalInfeasibility(boolean requireInterior) {
 		verifyCheckedOut();
 		
-		double value;
+		if (!isInCones(x, requireInterior))
+			return Double.POSITIVE_INFINITY;
 		
-		for (NonNegativeOrthantCone cone : NNOCs) {
-			value = x.get(getIndex(cone.getVariable()));
-			if (value < 0.0 || (requireInterior && value == 0.0))
-				return Double.POSITIVE_INFINITY;
-		}
+		/* Computes ||Ax - b||, one range of rows per chunk */
+		PrimalResidualTask task = new PrimalResidualTask(pool.getNumChunks(A.rows()));
+		pool.forEach(A.rows(), task);
+		double inf = 0.0;
+		for (int chunk = 0; chunk < task.partials.length; chunk++)
+			inf += task.partials[chunk];
 		
-		for (SecondOrderCone cone : SOCs) {
-			value = 0.0;
-			for (Variable v : cone.getVariables()) {
-				if (!v.equals(cone.getNthVariable())) {
-					value += Math.pow(x.get(getIndex(v)), 2);
-				} 
-			}
-			value = Math.sqrt(value);
-			value = x.get(getIndex(cone.getNthVariable())) - value;
-			if (value < 0.0 || (requireInterior && value == 0.0))
-				return Double.POSITIVE_INFINITY;
-		}
-		
-		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
-		
-		double inf = alg.norm2(alg.mult(A, x).assign(b, DoubleFunctions.minus));
-		
-		return inf;
+		return Math.sqrt(inf);
 	}
 	
 	public double getDualInfeasibility() {
 		return getDualInfeasibility(false);
 	}
 	
+	/**
+	 * Computes the dual infeasibility of the checked-out point.
+	 * <p>
+	 * The cones and the columns of A are checked in parallel. Each call only
+	 * allocates one partial sum per chunk, so calls on the same program
+	 * may run concurrently.
+	 */
 	public double getDualInfeasibility(boolean requireInterior) {
 		verifyCheckedOut();
 		
-		double value;
+		if (!isInCones(s, requireInterior))
+			return Double.POSITIVE_INFINITY;
+		
+		/* Computes ||A^T w + s - c||, one range of columns per chunk */
+		DualResidualTask task = new DualResidualTask(pool.getNumChunks(A.columns()));
+		pool.forEach(A.columns(), task);
+		double inf = 0.0;
+		for (int chunk = 0; chunk < task.partials.length; chunk++)
+			inf += task.partials[chunk];
+		
+		return Math.sqrt(inf);
+	}
+	
+	/**
+	 * Checks whether a primal or dual point is in the non-negative orthant,
+	 * second-order, and rotated second-order cones of this program.
+	 */
+	private boolean isInCones(DoubleMatrix1D v, boolean requireInterior) {
+		int numCones = nnocIndexes.length + socPtr.length - 1 + rsocPtr.length - 1;
+		ConeTask task = new ConeTask(pool.getNumChunks(numCones), v, requireInterior);
+		pool.forEach(numCones, task);
+		for (int chunk = 0; chunk < task.outside.length; chunk++)
+			if (task.outside[chunk])
+				return false;
+		return true;
+	}
+	
+	/*
+	 * Sets outside[chunk] to true if any cone in the chunk does not contain
+	 * v (or its interior, if required)
+	 */
+	private class ConeTask implements WorkerPool.RangeTask {
+		
+		private final boolean[] outside;
+		private final DoubleMatrix1D v;
+		private final boolean requireInterior;
 		
-		for (NonNegativeOrthantCone cone : NNOCs) {
-			value = s.get(getIndex(cone.getVariable()));
-			if (value < 0.0 || (requireInterior && value == 0.0))
-				return Double.POSITIVE_INFINITY;
+		private ConeTask(int numChunks, DoubleMatrix1D v, boolean requireInterior) {
+			outside = new boolean[numChunks];
+			this.v = v;
+			this.requireInterior = requireInterior;
 		}
 		
-		for (SecondOrderCone cone : SOCs) {
-			value = 0.0;
-			for (Variable v : cone.getVariables()) {
-				if (!v.equals(cone.getNthVariable())) {
-					value += Math.pow(s.get(getIndex(v)), 2);
-				} 
+		@Override
+		public void run(int chunk, int start, int end) {
+			double value;
+			for (int i = start; i < end; i++) {
+				if (i < nnocIndexes.length) {
+					value = v.getQuick(nnocIndexes[i]);
+				}
+				else if (i < nnocIndexes.length + socPtr.length - 1) {
+					int soc = i - nnocIndexes.length;
+					int last = socPtr[soc+1] - 1;
+					value = 0.0;
+					for (int k = socPtr[soc]; k < last; k++)
+						value += v.getQuick(socIndexes[k]) * v.getQuick(socIndexes[k]);
+					value = v.getQuick(socIndexes[last]) - Math.sqrt(value);
+				}
+				else {
+					/* 2 x_n x_(n-1) >= ||z||^2 with x_n and x_(n-1) non-negative */
+					int rsoc = i - nnocIndexes.length - socPtr.length + 1;
+					int last = rsocPtr[rsoc+1] - 1;
+					value = 0.0;
+					for (int k = rsocPtr[rsoc]; k < last - 1; k++)
+						value += v.getQuick(rsocIndexes[k]) * v.getQuick(rsocIndexes[k]);
+					double xN = v.getQuick(rsocIndexes[last]);
+					double xNMinus1 = v.getQuick(rsocIndexes[last-1]);
+					value = Math.min(Math.min(xN, xNMinus1), 2 * xN * xNMinus1 - value);
+				}
+				if (value < 0.0 || (requireInterior && value == 0.0)) {
+					outside[chunk] = true;
+					return;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Sets partials[chunk] to the sum of the squares of the entries of
+	 * Ax - b in the chunk
+	 */
+	private class PrimalResidualTask implements WorkerPool.RangeTask {
+		
+		private final double[] partials;
+		
+		private PrimalResidualTask(int numChunks) {
+			partials = new double[numChunks];
+		}
+		
+		@Override
+		public void run(int chunk, int start, int end) {
+			double[] values = A.getValues();
+			double sum = 0.0;
+			for (int row = start; row < end; row++) {
+				double r = -1 * b.getQuick(row);
+				for (int l = rowPtr[row]; l < rowPtr[row+1]; l++)
+					r += values[rowEntries[l]] * x.getQuick(rowCols[l]);
+				sum += r * r;
 			}
-			value = Math.sqrt(value);
-			value = s.get(getIndex(cone.getNthVariable())) - value;
-			if (value < 0.0 || (requireInterior && value == 0.0))
-				return Double.POSITIVE_INFINITY;
+			partials[chunk] = sum;
 		}
+	}
+	
+	/*
+	 * Sets partials[chunk] to the sum of the squares of the entries of
+	 * A^T w + s - c in the chunk
+	 */
+	private class DualResidualTask implements WorkerPool.RangeTask {
 		
-		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
+		private final double[] partials;
 		
-		double inf = alg.norm2(A.zMult(w, s.copy(), 1.0, 1.0, true).assign(c, DoubleFunctions.minus));
+		private DualResidualTask(int numChunks) {
+			partials = new double[numChunks];
+		}
 		
-		return inf;
+		@Override
+		public void run(int chunk, int start, int end) {
+			int[] colPtr = A.getColumnPointers();
+			int[] rowIndexes = A.getRowIndexes();
+			double[] values = A.getValues();
+			double sum = 0.0;
+			for (int col = start; col < end; col++) {
+				double r = s.getQuick(col) - c.getQuick(col);
+				for (int k = colPtr[col]; k < colPtr[col+1]; k++)
+					r += values[k] * w.getQuick(rowIndexes[k]);
+				sum += r * r;
+			}
+			partials[chunk] = sum;
+		}
 	}
 	
 	public void registerForConicProgramEvents(ConicProgramListener l) {
@@ -459,6 +1043,7 @@ public class ConicProgram {
 			}
 			else
 				throw new IllegalArgumentException(UNEXPECTED_SENDER);
+			structureChanged = true;
 			break;
 		case SOCCreated:
 		case SOCDeleted:
@@ -476,6 +1061,7 @@ public class ConicProgram {
 			}
 			else
 				throw new IllegalArgumentException(UNEXPECTED_SENDER);
+			structureChanged = true;
 			break;
 		case RSOCCreated:
 		case RSOCDeleted:
@@ -493,10 +1079,11 @@ public class ConicProgram {
 			}
 			else
 				throw new IllegalArgumentException(UNEXPECTED_SENDER);
+			structureChanged = true;
 			break;
 		case ObjCoeffChanged:
 			if (sender instanceof Variable) {
-				/* Intentionally blank */
+				changedObjCoeffs.add((Variable) sender);
 			}
 			else
 				throw new IllegalArgumentException(UNEXPECTED_SENDER);
@@ -508,12 +1095,14 @@ public class ConicProgram {
 				switch(e) {
 				case ConCreated:
 					cons.add((LinearConstraint) sender);
+					structureChanged = true;
 					break;
 				case ConValueChanged:
-					/* Intentionally blank */
+					changedConValues.add((LinearConstraint) sender);
 					break;
 				case ConDeleted:
 					cons.remove((LinearConstraint) sender);
+					structureChanged = true;
 				}
 			}
 			else
@@ -522,16 +1111,37 @@ public class ConicProgram {
 		case VarAddedToCon:
 		case VarRemovedFromCon:
 			if (sender instanceof LinearConstraint && data.length > 0 && data[0] instanceof Variable) {
-				/* Intentionally blank */
+				structureChanged = true;
 			}
 			else if (sender instanceof LinearConstraint)
 				throw new IllegalArgumentException(UNEXPECTED_DATA);
 			else
 				throw new IllegalArgumentException(UNEXPECTED_SENDER);
 			break;
+		case ConCoeffChanged:
+			if (sender instanceof LinearConstraint && data.length > 0 && data[0] instanceof Variable) {
+				Set<Variable> changedVars = changedConCoeffs.get(sender);
+				if (changedVars == null) {
+					changedVars = new HashSet<Variable>();
+					changedConCoeffs.put((LinearConstraint) sender, changedVars);
+				}
+				changedVars.add((Variable) data[0]);
+			}
+			else if (sender instanceof LinearConstraint)
+				throw new IllegalArgumentException(UNEXPECTED_DATA);
+			else
+				throw new IllegalArgumentException(UNEXPECTED_SENDER);
+			break;
+		case BatchCreated:
+			/* Intentionally blank */
+			break;
 		}
 		
-		for (ConicProgramListener l : listeners)
-			l.notify(this, e, sender, data);
+		if (journal != null)
+			journal.record(e);
+		
+		if (!batching)
+			for (ConicProgramListener l : listeners)
+				l.notify(this, e, sender, data);
 	}
 }
@@ -23,5 +23,15 @@ public enum ConicProgramEvent {
 	SOCCreated, SOCDeleted,
 	RSOCCreated, RSOCDeleted,
 	ObjCoeffChanged,
-	ConCreated, VarAddedToCon, ConCoeffChanged, VarRemovedFromCon, ConValueChanged, ConDeleted
+	ConCreated, VarAddedToCon, ConCoeffChanged, VarRemovedFromCon, ConValueChanged, ConDeleted,
+	
+	/**
+	 * Sent once for a batch of cones or linear constraints created together,
+	 * in place of all the events that creating them one at a time would send
+	 * (including setting the coefficients and constrained values of the new
+	 * linear constraints). The entity is null, the first datum is a
+	 * Collection of the new Cones, and the second datum is a Collection of
+	 * the new LinearConstraints.
+	 */
+	BatchCreated
 }
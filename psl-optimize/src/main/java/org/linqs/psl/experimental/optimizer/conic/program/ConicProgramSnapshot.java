@@ -0,0 +1,419 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.program;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+
+/**
+ * Reads and writes {@link ConicProgram ConicPrograms} in a compact binary
+ * format, so that a program can be solved repeatedly without regenerating it.
+ * <p>
+ * A snapshot holds the cones, A in compressed-column form, b, c, and the
+ * current primal and dual point x, w, and s. Reading a snapshot memory-maps
+ * the file and recreates the cones and constraints in the order in which
+ * they were created in the original program, so the loaded program's
+ * matrices have the same rows and columns.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes and is
+ * followed by, in order and without padding, the double arrays
+ * A.values[nnz], b[m], c[n], x[n], w[m], and s[n] and the int arrays
+ * A.colPtr[n+1], A.rowIndexes[nnz], coneTypes[numCones],
+ * coneSizes[numCones], and coneColumns[n]. The columns of each cone are in
+ * the order in which its variables were created, so the nth variable of a
+ * cone is last. All values are big-endian.
+ */
+public class ConicProgramSnapshot {
+	
+	/** The first four bytes of every snapshot ("CPSN") */
+	public static final int MAGIC = 0x4350534E;
+	
+	/** The version of the format written by this class */
+	public static final int VERSION = 1;
+	
+	/** The size of the header in bytes */
+	public static final int HEADER_SIZE = 64;
+	
+	static final int NNOC = 0;
+	static final int SOC = 1;
+	static final int RSOC = 2;
+	
+	/* Largest region of the file mapped at once */
+	private static final int MAX_MAPPED_BYTES = 1 << 30;
+	
+	/* Size of the buffer used for writing */
+	private static final int WRITE_BUFFER_BYTES = 1 << 20;
+	
+	private ConicProgramSnapshot() {}
+	
+	/**
+	 * Writes a program to a file, replacing its contents.
+	 * <p>
+	 * If the program's matrices are checked in, they are checked out and then
+	 * checked back in.
+	 */
+	public static void write(ConicProgram program, File file) throws IOException {
+		boolean checkInWhenFinished = false;
+		if (!program.isCheckedOut()) {
+			program.checkOutMatrices();
+			checkInWhenFinished = true;
+		}
+		
+		try {
+			Map<Variable, Integer> varMap = program.getVarMap();
+			SparseCCDoubleMatrix2D A = program.getA();
+			int n = (int) program.getX().size();
+			int m = (int) program.getB().size();
+			int nnz = (A.columns() == 0) ? 0 : A.getColumnPointers()[A.columns()];
+			
+			/* Collects the cones in order of creation */
+			List<Cone> cones = new ArrayList<Cone>(program.getNumCones());
+			cones.addAll(program.getNonNegativeOrthantCones());
+			cones.addAll(program.getSecondOrderCones());
+			cones.addAll(program.getRotatedSecondOrderCones());
+			Collections.sort(cones, Entity.CREATION_ORDER);
+			
+			int[] coneTypes = new int[cones.size()];
+			int[] coneSizes = new int[cones.size()];
+			int[] coneColumns = new int[n];
+			int k = 0;
+			for (int i = 0; i < cones.size(); i++) {
+				Cone cone = cones.get(i);
+				List<Variable> vars = new ArrayList<Variable>();
+				if (cone instanceof NonNegativeOrthantCone) {
+					coneTypes[i] = NNOC;
+					vars.add(((NonNegativeOrthantCone) cone).getVariable());
+				}
+				else if (cone instanceof SecondOrderCone) {
+					coneTypes[i] = SOC;
+					vars.addAll(((SecondOrderCone) cone).getVariables());
+				}
+				else if (cone instanceof RotatedSecondOrderCone) {
+					coneTypes[i] = RSOC;
+					vars.addAll(((RotatedSecondOrderCone) cone).getVariables());
+				}
+				else
+					throw new IllegalStateException("Unsupported cone type: " + cone.getClass());
+				Collections.sort(vars, Entity.CREATION_ORDER);
+				coneSizes[i] = vars.size();
+				for (Variable var : vars)
+					coneColumns[k++] = varMap.get(var);
+			}
+			
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(0);
+				Output out = new Output(raf.getChannel());
+				
+				out.putInt(MAGIC);
+				out.putInt(VERSION);
+				out.putInt(program.isCompact() ? 1 : 0);
+				out.putInt(program.getOrdering().ordinal());
+				out.putInt(n);
+				out.putInt(m);
+				out.putInt(nnz);
+				out.putInt(cones.size());
+				for (int i = 8 * 4; i < HEADER_SIZE; i += 4)
+					out.putInt(0);
+				
+				if (nnz > 0)
+					out.putDoubles(A.getValues(), nnz);
+				out.putVector(program.getB());
+				out.putVector(program.getC());
+				out.putVector(program.getX());
+				out.putVector(program.getW());
+				out.putVector(program.getS());
+				
+				if (A.columns() == n)
+					out.putInts(A.getColumnPointers(), n + 1);
+				else
+					out.putInts(new int[n + 1], n + 1);
+				if (nnz > 0)
+					out.putInts(A.getRowIndexes(), nnz);
+				out.putInts(coneTypes, coneTypes.length);
+				out.putInts(coneSizes, coneSizes.length);
+				out.putInts(coneColumns, n);
+				
+				out.flush();
+			}
+			finally {
+				raf.close();
+			}
+		}
+		finally {
+			if (checkInWhenFinished)
+				program.checkInMatrices();
+		}
+	}
+	
+	/**
+	 * Reads a program from a file written by {@link #write(ConicProgram, File)}.
+	 * <p>
+	 * The returned program's matrices are checked in, and its variables and
+	 * linear constraints hold the primal and dual point of the snapshot.
+	 * 
+	 * @throws IOException  if the file cannot be read or is not a snapshot
+	 */
+	public static ConicProgram read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			Header header = readHeader(channel);
+			int n = header.n;
+			int m = header.m;
+			int nnz = header.nnz;
+			
+			long pos = HEADER_SIZE;
+			double[] values = new double[nnz];
+			pos = readDoubles(channel, pos, values);
+			double[] b = new double[m];
+			pos = readDoubles(channel, pos, b);
+			double[] c = new double[n];
+			pos = readDoubles(channel, pos, c);
+			double[] x = new double[n];
+			pos = readDoubles(channel, pos, x);
+			double[] w = new double[m];
+			pos = readDoubles(channel, pos, w);
+			double[] s = new double[n];
+			pos = readDoubles(channel, pos, s);
+			
+			int[] colPtr = new int[n + 1];
+			pos = readInts(channel, pos, colPtr);
+			int[] rowIndexes = new int[nnz];
+			pos = readInts(channel, pos, rowIndexes);
+			int[] coneTypes = new int[header.numCones];
+			pos = readInts(channel, pos, coneTypes);
+			int[] coneSizes = new int[header.numCones];
+			pos = readInts(channel, pos, coneSizes);
+			int[] coneColumns = new int[n];
+			pos = readInts(channel, pos, coneColumns);
+			
+			ConicProgram program = new ConicProgram(header.compact);
+			program.setOrdering(header.ordering);
+			
+			/* Creates the cones */
+			Variable[] colVars = new Variable[n];
+			int k = 0;
+			for (int i = 0; i < coneTypes.length; i++) {
+				Variable[] vars;
+				switch (coneTypes[i]) {
+				case NNOC:
+					vars = new Variable[] {program.createNonNegativeOrthantCone().getVariable()};
+					break;
+				case SOC:
+					vars = sort(program.createSecondOrderCone(coneSizes[i]).getVariables());
+					break;
+				case RSOC:
+					vars = sort(program.createRotatedSecondOrderCone(coneSizes[i]).getVariables());
+					break;
+				default:
+					throw new IOException("Unknown cone type in snapshot: " + coneTypes[i]);
+				}
+				if (vars.length != coneSizes[i] || k + vars.length > n)
+					throw new IOException("Malformed cones in snapshot.");
+				for (Variable var : vars) {
+					int j = coneColumns[k++];
+					if (j < 0 || j >= n || colVars[j] != null)
+						throw new IOException("Malformed cones in snapshot.");
+					colVars[j] = var;
+				}
+			}
+			if (k != n)
+				throw new IOException("Malformed cones in snapshot.");
+			
+			for (int j = 0; j < n; j++) {
+				colVars[j].setObjectiveCoefficient(c[j]);
+				colVars[j].setValue(x[j]);
+				colVars[j].setDualValue(s[j]);
+			}
+			
+			/* Transposes A to compressed-row form and creates the constraints */
+			int[] rowPtr = new int[m + 1];
+			for (int p = 0; p < nnz; p++)
+				rowPtr[rowIndexes[p] + 1]++;
+			for (int i = 0; i < m; i++)
+				rowPtr[i + 1] += rowPtr[i];
+			int[] next = Arrays.copyOf(rowPtr, m);
+			Variable[] rowVars = new Variable[nnz];
+			double[] rowCoeffs = new double[nnz];
+			for (int j = 0; j < n; j++) {
+				for (int p = colPtr[j]; p < colPtr[j + 1]; p++) {
+					int q = next[rowIndexes[p]]++;
+					rowVars[q] = colVars[j];
+					rowCoeffs[q] = values[p];
+				}
+			}
+			List<LinearConstraint> cons = program.createConstraints(rowPtr, rowVars, rowCoeffs, b);
+			for (int i = 0; i < m; i++)
+				cons.get(i).setLagrange(w[i]);
+			
+			return program;
+		}
+		finally {
+			raf.close();
+		}
+	}
+	
+	private static Variable[] sort(Collection<Variable> vars) {
+		Variable[] sorted = vars.toArray(new Variable[vars.size()]);
+		Arrays.sort(sorted, Entity.CREATION_ORDER);
+		return sorted;
+	}
+	
+	/** The sizes and options recorded in a snapshot's header */
+	static class Header {
+		boolean compact;
+		MatrixOrdering ordering;
+		int n;
+		int m;
+		int nnz;
+		int numCones;
+	}
+	
+	static Header readHeader(FileChannel channel) throws IOException {
+		if (channel.size() < HEADER_SIZE)
+			throw new IOException("File is too short to be a conic program snapshot.");
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+		if (buffer.getInt() != MAGIC)
+			throw new IOException("File is not a conic program snapshot.");
+		int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported snapshot version: " + version);
+		
+		Header header = new Header();
+		header.compact = buffer.getInt() != 0;
+		int ordering = buffer.getInt();
+		if (ordering < 0 || ordering >= MatrixOrdering.values().length)
+			throw new IOException("Unknown matrix ordering in snapshot: " + ordering);
+		header.ordering = MatrixOrdering.values()[ordering];
+		header.n = buffer.getInt();
+		header.m = buffer.getInt();
+		header.nnz = buffer.getInt();
+		header.numCones = buffer.getInt();
+		if (header.n < 0 || header.m < 0 || header.nnz < 0 || header.numCones < 0)
+			throw new IOException("Malformed snapshot header.");
+		
+		long size = HEADER_SIZE
+				+ 8L * (header.nnz + 2L * header.m + 3L * header.n)
+				+ 4L * (header.n + 1L + header.nnz + 2L * header.numCones + header.n);
+		if (channel.size() != size)
+			throw new IOException("Snapshot has " + channel.size() + " bytes but its header describes " + size + ".");
+		return header;
+	}
+	
+	/**
+	 * Fills an array with doubles read from a file starting at a position.
+	 * 
+	 * @return the position after the last double read
+	 */
+	static long readDoubles(FileChannel channel, long pos, double[] dst) throws IOException {
+		int perRegion = MAX_MAPPED_BYTES / 8;
+		for (int offset = 0; offset < dst.length; offset += perRegion) {
+			int length = Math.min(perRegion, dst.length - offset);
+			MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, pos, 8L * length);
+			region.asDoubleBuffer().get(dst, offset, length);
+			pos += 8L * length;
+		}
+		return pos;
+	}
+	
+	/**
+	 * Fills an array with ints read from a file starting at a position.
+	 * 
+	 * @return the position after the last int read
+	 */
+	static long readInts(FileChannel channel, long pos, int[] dst) throws IOException {
+		int perRegion = MAX_MAPPED_BYTES / 4;
+		for (int offset = 0; offset < dst.length; offset += perRegion) {
+			int length = Math.min(perRegion, dst.length - offset);
+			MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, pos, 4L * length);
+			region.asIntBuffer().get(dst, offset, length);
+			pos += 4L * length;
+		}
+		return pos;
+	}
+	
+	/* Writes primitive values to a channel through a reusable buffer */
+	private static class Output {
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		
+		Output(FileChannel channel) {
+			this.channel = channel;
+			buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+		}
+		
+		void putInt(int value) throws IOException {
+			if (buffer.remaining() < 4)
+				flush();
+			buffer.putInt(value);
+		}
+		
+		void putInts(int[] values, int length) throws IOException {
+			int offset = 0;
+			while (offset < length) {
+				if (buffer.remaining() < 4)
+					flush();
+				int count = Math.min(length - offset, buffer.remaining() / 4);
+				buffer.asIntBuffer().put(values, offset, count);
+				buffer.position(buffer.position() + 4 * count);
+				offset += count;
+			}
+		}
+		
+		void putDoubles(double[] values, int length) throws IOException {
+			int offset = 0;
+			while (offset < length) {
+				if (buffer.remaining() < 8)
+					flush();
+				int count = Math.min(length - offset, buffer.remaining() / 8);
+				buffer.asDoubleBuffer().put(values, offset, count);
+				buffer.position(buffer.position() + 8 * count);
+				offset += count;
+			}
+		}
+		
+		void putVector(DoubleMatrix1D vector) throws IOException {
+			for (int i = 0; i < vector.size(); i++) {
+				if (buffer.remaining() < 8)
+					flush();
+				buffer.putDouble(vector.getQuick(i));
+			}
+		}
+		
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+}
@@ -17,9 +17,19 @@
  */
 package org.linqs.psl.experimental.optimizer.conic.program;
 
+import java.util.Comparator;
+
 abstract public class Entity {
 	protected ConicProgram program;
 	protected int id;
+	
+	/** Orders entities by when they were created. */
+	static final Comparator<Entity> CREATION_ORDER = new Comparator<Entity>() {
+		@Override
+		public int compare(Entity e1, Entity e2) {
+			return Integer.compare(e1.id, e2.id);
+		}
+	};
 
 	Entity(ConicProgram p) {
 		program = p;
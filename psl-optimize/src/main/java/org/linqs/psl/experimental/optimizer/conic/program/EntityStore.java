@@ -0,0 +1,543 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.program;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Stores the numeric state of the {@link Variable Variables} and
+ * {@link LinearConstraint LinearConstraints} of a {@link ConicProgram} in
+ * primitive arrays indexed by slot.
+ * <p>
+ * Each variable and linear constraint is assigned a slot when it is created
+ * and releases it when it is deleted. Released slots are reused.
+ * <p>
+ * If the store is compact, it also holds the coefficients of every linear
+ * constraint as (constraint slot, variable slot, value) coordinates. Each
+ * coordinate is threaded into a linked list for its constraint and one for
+ * its variable, so neither needs a collection of its own.
+ */
+class EntityStore {
+
+	static final int NONE = -1;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final boolean compact;
+
+	/* Variables */
+	private Variable[] vars;
+	private double[] primal;
+	private double[] dual;
+	private double[] objCoeff;
+	private int numVarSlots;
+	private int[] freeVarSlots;
+	private int numFreeVarSlots;
+
+	/* Linear constraints */
+	private LinearConstraint[] cons;
+	private double[] conValue;
+	private double[] lagrange;
+	private int numConSlots;
+	private int[] freeConSlots;
+	private int numFreeConSlots;
+
+	/* Coefficient lists (compact only) */
+	private int[] varHead;
+	private int[] varSize;
+	private int[] conHead;
+	private int[] conSize;
+
+	/* Coefficient coordinates (compact only) */
+	private int[] entryCon;
+	private int[] entryVar;
+	private double[] entryValue;
+	private int[] entryNextInCon;
+	private int[] entryNextInVar;
+	private int numEntries;
+	private int freeEntry;
+
+	EntityStore(boolean compact) {
+		this.compact = compact;
+
+		vars = new Variable[INITIAL_CAPACITY];
+		primal = new double[INITIAL_CAPACITY];
+		dual = new double[INITIAL_CAPACITY];
+		objCoeff = new double[INITIAL_CAPACITY];
+		numVarSlots = 0;
+		freeVarSlots = new int[INITIAL_CAPACITY];
+		numFreeVarSlots = 0;
+
+		cons = new LinearConstraint[INITIAL_CAPACITY];
+		conValue = new double[INITIAL_CAPACITY];
+		lagrange = new double[INITIAL_CAPACITY];
+		numConSlots = 0;
+		freeConSlots = new int[INITIAL_CAPACITY];
+		numFreeConSlots = 0;
+
+		if (compact) {
+			varHead = new int[INITIAL_CAPACITY];
+			varSize = new int[INITIAL_CAPACITY];
+			conHead = new int[INITIAL_CAPACITY];
+			conSize = new int[INITIAL_CAPACITY];
+
+			entryCon = new int[INITIAL_CAPACITY];
+			entryVar = new int[INITIAL_CAPACITY];
+			entryValue = new double[INITIAL_CAPACITY];
+			entryNextInCon = new int[INITIAL_CAPACITY];
+			entryNextInVar = new int[INITIAL_CAPACITY];
+			numEntries = 0;
+			freeEntry = NONE;
+		}
+	}
+
+	boolean isCompact() {
+		return compact;
+	}
+
+	/*
+	 * Variables
+	 */
+
+	int addVariable(Variable v) {
+		int slot;
+		if (numFreeVarSlots > 0) {
+			slot = freeVarSlots[--numFreeVarSlots];
+		}
+		else {
+			slot = numVarSlots++;
+			if (slot == vars.length)
+				growVariables(2 * vars.length);
+		}
+
+		vars[slot] = v;
+		primal[slot] = 0.0;
+		dual[slot] = 0.0;
+		objCoeff[slot] = 0.0;
+		if (compact) {
+			varHead[slot] = NONE;
+			varSize[slot] = 0;
+		}
+
+		return slot;
+	}
+
+	void removeVariable(int slot) {
+		if (compact && varSize[slot] != 0)
+			throw new IllegalStateException("Variable still belongs to linear constraints.");
+		vars[slot] = null;
+		if (numFreeVarSlots == freeVarSlots.length)
+			freeVarSlots = Arrays.copyOf(freeVarSlots, 2 * freeVarSlots.length);
+		freeVarSlots[numFreeVarSlots++] = slot;
+	}
+
+	/**
+	 * Ensures that at least the given number of variables can be added without
+	 * growing the variable arrays.
+	 */
+	void ensureVariableCapacity(int additional) {
+		int required = numVarSlots - numFreeVarSlots + additional;
+		if (required > vars.length)
+			growVariables(Math.max(required, 2 * vars.length));
+	}
+
+	private void growVariables(int capacity) {
+		vars = Arrays.copyOf(vars, capacity);
+		primal = Arrays.copyOf(primal, capacity);
+		dual = Arrays.copyOf(dual, capacity);
+		objCoeff = Arrays.copyOf(objCoeff, capacity);
+		if (compact) {
+			varHead = Arrays.copyOf(varHead, capacity);
+			varSize = Arrays.copyOf(varSize, capacity);
+		}
+	}
+
+	int getNumVariableSlots() {
+		return numVarSlots;
+	}
+
+	Variable getVariable(int slot) {
+		return vars[slot];
+	}
+
+	double getPrimalValue(int slot) {
+		return primal[slot];
+	}
+
+	void setPrimalValue(int slot, double value) {
+		primal[slot] = value;
+	}
+
+	double getDualValue(int slot) {
+		return dual[slot];
+	}
+
+	void setDualValue(int slot, double value) {
+		dual[slot] = value;
+	}
+
+	double getObjectiveCoefficient(int slot) {
+		return objCoeff[slot];
+	}
+
+	void setObjectiveCoefficient(int slot, double value) {
+		objCoeff[slot] = value;
+	}
+
+	/*
+	 * Linear constraints
+	 */
+
+	int addConstraint(LinearConstraint lc) {
+		int slot;
+		if (numFreeConSlots > 0) {
+			slot = freeConSlots[--numFreeConSlots];
+		}
+		else {
+			slot = numConSlots++;
+			if (slot == cons.length)
+				growConstraints(2 * cons.length);
+		}
+
+		cons[slot] = lc;
+		conValue[slot] = 0.0;
+		lagrange[slot] = 0.0;
+		if (compact) {
+			conHead[slot] = NONE;
+			conSize[slot] = 0;
+		}
+
+		return slot;
+	}
+
+	void removeConstraint(int slot) {
+		if (compact && conSize[slot] != 0)
+			throw new IllegalStateException("Linear constraint still has variables.");
+		cons[slot] = null;
+		if (numFreeConSlots == freeConSlots.length)
+			freeConSlots = Arrays.copyOf(freeConSlots, 2 * freeConSlots.length);
+		freeConSlots[numFreeConSlots++] = slot;
+	}
+
+	/**
+	 * Ensures that at least the given number of linear constraints can be
+	 * added without growing the constraint arrays.
+	 */
+	void ensureConstraintCapacity(int additional) {
+		int required = numConSlots - numFreeConSlots + additional;
+		if (required > cons.length)
+			growConstraints(Math.max(required, 2 * cons.length));
+	}
+
+	private void growConstraints(int capacity) {
+		cons = Arrays.copyOf(cons, capacity);
+		conValue = Arrays.copyOf(conValue, capacity);
+		lagrange = Arrays.copyOf(lagrange, capacity);
+		if (compact) {
+			conHead = Arrays.copyOf(conHead, capacity);
+			conSize = Arrays.copyOf(conSize, capacity);
+		}
+	}
+
+	int getNumConstraintSlots() {
+		return numConSlots;
+	}
+
+	LinearConstraint getConstraint(int slot) {
+		return cons[slot];
+	}
+
+	double getConstrainedValue(int slot) {
+		return conValue[slot];
+	}
+
+	void setConstrainedValue(int slot, double value) {
+		conValue[slot] = value;
+	}
+
+	double getLagrange(int slot) {
+		return lagrange[slot];
+	}
+
+	void setLagrange(int slot, double value) {
+		lagrange[slot] = value;
+	}
+
+	/*
+	 * Coefficients (compact only)
+	 */
+
+	/**
+	 * Returns the coordinate holding the coefficient of a variable in a linear
+	 * constraint, or {@link #NONE} if the variable is not in the constraint.
+	 */
+	int findEntry(int con, int var) {
+		if (conSize[con] <= varSize[var]) {
+			for (int e = conHead[con]; e != NONE; e = entryNextInCon[e])
+				if (entryVar[e] == var)
+					return e;
+		}
+		else {
+			for (int e = varHead[var]; e != NONE; e = entryNextInVar[e])
+				if (entryCon[e] == con)
+					return e;
+		}
+		return NONE;
+	}
+
+	int addEntry(int con, int var, double value) {
+		int e;
+		if (freeEntry != NONE) {
+			e = freeEntry;
+			freeEntry = entryNextInCon[e];
+		}
+		else {
+			e = numEntries++;
+			if (e == entryCon.length)
+				growEntries(2 * entryCon.length);
+		}
+
+		entryCon[e] = con;
+		entryVar[e] = var;
+		entryValue[e] = value;
+
+		entryNextInCon[e] = conHead[con];
+		conHead[con] = e;
+		conSize[con]++;
+
+		entryNextInVar[e] = varHead[var];
+		varHead[var] = e;
+		varSize[var]++;
+
+		return e;
+	}
+
+	void removeEntry(int e) {
+		int con = entryCon[e];
+		int var = entryVar[e];
+
+		/* Unlinks the coordinate from its constraint's list */
+		if (conHead[con] == e) {
+			conHead[con] = entryNextInCon[e];
+		}
+		else {
+			int prev = conHead[con];
+			while (entryNextInCon[prev] != e)
+				prev = entryNextInCon[prev];
+			entryNextInCon[prev] = entryNextInCon[e];
+		}
+		conSize[con]--;
+
+		/* Unlinks the coordinate from its variable's list */
+		if (varHead[var] == e) {
+			varHead[var] = entryNextInVar[e];
+		}
+		else {
+			int prev = varHead[var];
+			while (entryNextInVar[prev] != e)
+				prev = entryNextInVar[prev];
+			entryNextInVar[prev] = entryNextInVar[e];
+		}
+		varSize[var]--;
+
+		entryCon[e] = NONE;
+		entryVar[e] = NONE;
+		entryNextInCon[e] = freeEntry;
+		freeEntry = e;
+	}
+
+	/**
+	 * Ensures that at least the given number of coefficients can be added
+	 * without growing the coordinate arrays.
+	 */
+	void ensureEntryCapacity(int additional) {
+		if (numEntries + additional > entryCon.length)
+			growEntries(Math.max(numEntries + additional, 2 * entryCon.length));
+	}
+
+	private void growEntries(int capacity) {
+		entryCon = Arrays.copyOf(entryCon, capacity);
+		entryVar = Arrays.copyOf(entryVar, capacity);
+		entryValue = Arrays.copyOf(entryValue, capacity);
+		entryNextInCon = Arrays.copyOf(entryNextInCon, capacity);
+		entryNextInVar = Arrays.copyOf(entryNextInVar, capacity);
+	}
+
+	double getEntryValue(int e) {
+		return entryValue[e];
+	}
+
+	void setEntryValue(int e, double value) {
+		entryValue[e] = value;
+	}
+
+	/**
+	 * Copies the coefficients of a variable into rows and values, starting at
+	 * offset. Each constraint is written as rowBySlot[slot of the constraint].
+	 * 
+	 * @return the number of coefficients copied
+	 */
+	int copyVariableCoefficients(int var, int[] rowBySlot, int[] rows, double[] values, int offset) {
+		int k = offset;
+		for (int e = varHead[var]; e != NONE; e = entryNextInVar[e]) {
+			rows[k] = rowBySlot[entryCon[e]];
+			values[k++] = entryValue[e];
+		}
+		return k - offset;
+	}
+
+	/**
+	 * Returns a live, unmodifiable view of the coefficients of a linear
+	 * constraint.
+	 */
+	Map<Variable, Double> getConstraintView(int con) {
+		return new ConstraintCoefficients(con);
+	}
+
+	/**
+	 * Returns a live, unmodifiable view of the linear constraints that contain
+	 * a variable.
+	 */
+	Set<LinearConstraint> getVariableView(int var) {
+		return new VariableConstraints(var);
+	}
+
+	private class ConstraintCoefficients extends AbstractMap<Variable, Double> {
+
+		private final int con;
+
+		ConstraintCoefficients(int con) {
+			this.con = con;
+		}
+
+		@Override
+		public int size() {
+			return conSize[con];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Double get(Object key) {
+			if (!(key instanceof Variable))
+				return null;
+			int var = ((Variable) key).getSlot();
+			if (var == NONE || vars[var] != key)
+				return null;
+			int e = findEntry(con, var);
+			return (e == NONE) ? null : entryValue[e];
+		}
+
+		@Override
+		public Set<Map.Entry<Variable, Double>> entrySet() {
+			return new AbstractSet<Map.Entry<Variable, Double>>() {
+
+				@Override
+				public int size() {
+					return conSize[con];
+				}
+
+				@Override
+				public Iterator<Map.Entry<Variable, Double>> iterator() {
+					return new Iterator<Map.Entry<Variable, Double>>() {
+
+						private int next = conHead[con];
+
+						@Override
+						public boolean hasNext() {
+							return next != NONE;
+						}
+
+						@Override
+						public Map.Entry<Variable, Double> next() {
+							if (next == NONE)
+								throw new NoSuchElementException();
+							Map.Entry<Variable, Double> entry = new AbstractMap.SimpleImmutableEntry<Variable, Double>(
+									vars[entryVar[next]], entryValue[next]);
+							next = entryNextInCon[next];
+							return entry;
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+	}
+
+	private class VariableConstraints extends AbstractSet<LinearConstraint> {
+
+		private final int var;
+
+		VariableConstraints(int var) {
+			this.var = var;
+		}
+
+		@Override
+		public int size() {
+			return varSize[var];
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof LinearConstraint))
+				return false;
+			int con = ((LinearConstraint) o).getSlot();
+			return con != NONE && cons[con] == o && findEntry(con, var) != NONE;
+		}
+
+		@Override
+		public Iterator<LinearConstraint> iterator() {
+			return new Iterator<LinearConstraint>() {
+
+				private int next = varHead[var];
+
+				@Override
+				public boolean hasNext() {
+					return next != NONE;
+				}
+
+				@Override
+				public LinearConstraint next() {
+					if (next == NONE)
+						throw new NoSuchElementException();
+					LinearConstraint lc = cons[entryCon[next]];
+					next = entryNextInVar[next];
+					return lc;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
@@ -25,23 +25,38 @@ import java.util.Set;
 
 public class LinearConstraint extends Entity {
 	
-	private Map<Variable, Double> vars;
+	/* Slot of this constraint in the program's EntityStore */
+	private int slot;
+	
+	/* Values of this constraint when it was deleted and released its slot */
+	private double deletedConValue;
+	private double deletedLagrange;
 	
-	private double constrainedValue;
-	private double lagrange;
+	/* Coefficients of this constraint, or null if the program is compact */
+	private Map<Variable, Double> vars;
 	
 	protected static final String UNOWNED_VAR = "Variable does not belong to this conic program.";
 	
 	LinearConstraint(ConicProgram p) {
 		super(p);
-		vars = new HashMap<Variable, Double>(8);
+		EntityStore store = p.getStore();
+		slot = store.addConstraint(this);
+		vars = (store.isCompact()) ? null : new HashMap<Variable, Double>(8);
 		doSetConstrainedValue(0.0);
 		setLagrange(0.0);
 		program.notify(ConicProgramEvent.ConCreated, this);
 	}
 	
+	int getSlot() {
+		return slot;
+	}
+	
 	public void setVariable(Variable v, Double coefficient) {
 		program.verifyCheckedIn();
+		if (vars == null) {
+			setCompactVariable(v, coefficient);
+			return;
+		}
 		Double currentCoefficient = vars.get(v);
 		if (currentCoefficient != null) {
 			if (coefficient == 0.0) {
@@ -60,13 +75,40 @@ public class LinearConstraint extends Entity {
 			program.notify(ConicProgramEvent.VarAddedToCon, this, v);
 		}
 	}
+	
+	private void setCompactVariable(Variable v, double coefficient) {
+		if (v.program != program || v.getSlot() == EntityStore.NONE)
+			throw new IllegalArgumentException(UNOWNED_VAR);
+		EntityStore store = program.getStore();
+		int entry = store.findEntry(slot, v.getSlot());
+		if (entry != EntityStore.NONE) {
+			double currentCoefficient = store.getEntryValue(entry);
+			if (coefficient == 0.0) {
+				store.removeEntry(entry);
+				program.notify(ConicProgramEvent.VarRemovedFromCon, this, v);
+			}
+			else if (coefficient != currentCoefficient) {
+				store.setEntryValue(entry, coefficient);
+				program.notify(ConicProgramEvent.ConCoeffChanged, this, new Object[] {v, currentCoefficient});
+			}
+		}
+		else if (coefficient != 0.0) {
+			store.addEntry(slot, v.getSlot(), coefficient);
+			program.notify(ConicProgramEvent.VarAddedToCon, this, v);
+		}
+	}
 
 	public Map<Variable, Double> getVariables() {
-		return Collections.unmodifiableMap(vars);
+		if (vars == null)
+			return program.getStore().getConstraintView(slot);
+		else
+			return Collections.unmodifiableMap(vars);
 	}
 
 	public Double getConstrainedValue() {
-		return constrainedValue;
+		if (slot == EntityStore.NONE)
+			return deletedConValue;
+		return program.getStore().getConstrainedValue(slot);
 	}
 
 	public void setConstrainedValue(Double v) {
@@ -76,15 +118,23 @@ public class LinearConstraint extends Entity {
 	}
 	
 	private void doSetConstrainedValue(Double v) {
-		constrainedValue = v;
+		if (slot == EntityStore.NONE)
+			deletedConValue = v;
+		else
+			program.getStore().setConstrainedValue(slot, v);
 	}
 	
 	public Double getLagrange() {
-		return lagrange;
+		if (slot == EntityStore.NONE)
+			return deletedLagrange;
+		return program.getStore().getLagrange(slot);
 	}
 	
 	void setLagrange(Double l) {
-		lagrange = l;
+		if (slot == EntityStore.NONE)
+			deletedLagrange = l;
+		else
+			program.getStore().setLagrange(slot, l);
 	}
 	
 	boolean isPrimalFeasible() {
@@ -108,6 +158,10 @@ public class LinearConstraint extends Entity {
 			setVariable(var, 0.0);
 		}
 		program.notify(ConicProgramEvent.ConDeleted, this, Collections.unmodifiableSet(originalVars));
+		deletedConValue = getConstrainedValue();
+		deletedLagrange = getLagrange();
+		program.getStore().removeConstraint(slot);
+		slot = EntityStore.NONE;
 		vars = null;
 	}
 }
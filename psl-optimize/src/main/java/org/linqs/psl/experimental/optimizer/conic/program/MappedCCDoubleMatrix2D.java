@@ -0,0 +1,171 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.program;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+
+/**
+ * A read-only sparse matrix in compressed-column form whose row indexes and
+ * values stay in a memory-mapped file.
+ * <p>
+ * Only the column pointers are kept on the heap, so the number of nonzeros
+ * is limited by the address space instead of the heap. This is not a Colt
+ * matrix. It supports only matrix-vector products and reading single
+ * entries, which is all that matrix-free solvers need.
+ */
+public class MappedCCDoubleMatrix2D {
+	
+	/* Each mapped segment holds 2^SEGMENT_SHIFT entries */
+	private static final int SEGMENT_SHIFT = 27;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+	
+	private final int rows;
+	private final int[] colPtr;
+	private final IntBuffer[] rowIndexes;
+	private final DoubleBuffer[] values;
+	
+	/**
+	 * Maps a matrix stored in a file.
+	 * 
+	 * @param channel  the file
+	 * @param rows  the number of rows
+	 * @param colPtr  the column pointers, whose length is the number of
+	 *                columns plus one
+	 * @param rowIndexesPos  the position of the row indexes in the file
+	 * @param valuesPos  the position of the values in the file
+	 */
+	public MappedCCDoubleMatrix2D(FileChannel channel, int rows, int[] colPtr,
+			long rowIndexesPos, long valuesPos) throws IOException {
+		this.rows = rows;
+		this.colPtr = colPtr;
+		
+		int nnz = colPtr[colPtr.length - 1];
+		int numSegments = (int) ((nnz + (long) SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		rowIndexes = new IntBuffer[numSegments];
+		values = new DoubleBuffer[numSegments];
+		for (int i = 0; i < numSegments; i++) {
+			long start = (long) i << SEGMENT_SHIFT;
+			long length = Math.min(nnz - start, 1L << SEGMENT_SHIFT);
+			rowIndexes[i] = channel.map(FileChannel.MapMode.READ_ONLY, rowIndexesPos + 4 * start, 4 * length).asIntBuffer();
+			values[i] = channel.map(FileChannel.MapMode.READ_ONLY, valuesPos + 8 * start, 8 * length).asDoubleBuffer();
+		}
+	}
+	
+	public int rows() {
+		return rows;
+	}
+	
+	public int columns() {
+		return colPtr.length - 1;
+	}
+	
+	/**
+	 * @return the number of nonzeros
+	 */
+	public int getNumNonZeros() {
+		return colPtr[colPtr.length - 1];
+	}
+	
+	public double getQuick(int row, int column) {
+		/* Rows within a column are sorted */
+		int low = colPtr[column];
+		int high = colPtr[column+1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midRow = getRowIndex(mid);
+			if (midRow < row)
+				low = mid + 1;
+			else if (midRow > row)
+				high = mid - 1;
+			else
+				return getValue(mid);
+		}
+		return 0.0;
+	}
+	
+	/**
+	 * Computes z = A y.
+	 * 
+	 * @param z  the result, or null to allocate one
+	 * @return z
+	 */
+	public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z) {
+		return zMult(y, z, 1.0, 0.0, false);
+	}
+	
+	/**
+	 * Computes z = alpha A y + beta z, or z = alpha A^T y + beta z if
+	 * transposeA is true.
+	 * 
+	 * @param z  the result, or null to allocate one, in which case beta is
+	 *           ignored
+	 * @return z
+	 */
+	public DoubleMatrix1D zMult(DoubleMatrix1D y, DoubleMatrix1D z, double alpha, double beta, boolean transposeA) {
+		int numCols = colPtr.length - 1;
+		if (y.size() != ((transposeA) ? rows() : numCols))
+			throw new IllegalArgumentException("Size of y does not match matrix.");
+		if (z == null) {
+			z = new DenseDoubleMatrix1D((transposeA) ? numCols : rows());
+			beta = 0.0;
+		}
+		else if (z.size() != ((transposeA) ? numCols : rows()))
+			throw new IllegalArgumentException("Size of z does not match matrix.");
+		
+		if (transposeA) {
+			for (int col = 0; col < numCols; col++) {
+				double sum = 0.0;
+				for (int k = colPtr[col]; k < colPtr[col+1]; k++)
+					sum += getValue(k) * y.getQuick(getRowIndex(k));
+				z.setQuick(col, alpha * sum + ((beta == 0.0) ? 0.0 : beta * z.getQuick(col)));
+			}
+		}
+		else {
+			if (beta == 0.0)
+				z.assign(0.0);
+			else if (beta != 1.0)
+				for (int row = 0; row < z.size(); row++)
+					z.setQuick(row, beta * z.getQuick(row));
+			
+			for (int col = 0; col < numCols; col++) {
+				double yj = alpha * y.getQuick(col);
+				if (yj != 0.0)
+					for (int k = colPtr[col]; k < colPtr[col+1]; k++) {
+						int row = getRowIndex(k);
+						z.setQuick(row, z.getQuick(row) + getValue(k) * yj);
+					}
+			}
+		}
+		
+		return z;
+	}
+	
+	private int getRowIndex(int k) {
+		return rowIndexes[k >>> SEGMENT_SHIFT].get(k & SEGMENT_MASK);
+	}
+	
+	private double getValue(int k) {
+		return values[k >>> SEGMENT_SHIFT].get(k & SEGMENT_MASK);
+	}
+}
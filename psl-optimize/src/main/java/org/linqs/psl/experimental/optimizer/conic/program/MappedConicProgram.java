@@ -0,0 +1,237 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.program;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+
+/**
+ * A read-only view of a {@link ConicProgramSnapshot} whose constraint matrix
+ * stays in the memory-mapped snapshot file.
+ * <p>
+ * Unlike {@link ConicProgramSnapshot#read(File)}, no cones, variables, or
+ * linear constraints are created, so programs whose A does not fit in the
+ * heap can still be examined and multiplied with. Only the column pointers
+ * of A, the cone layout, and the vectors b, c, x, w, and s, which are all
+ * linear in the number of rows and columns, are loaded onto the heap.
+ * Changes to x, w, and s are not written back to the file.
+ */
+public class MappedConicProgram implements Closeable {
+	
+	private final RandomAccessFile file;
+	
+	private final MappedCCDoubleMatrix2D A;
+	private final DenseDoubleMatrix1D x, b, w, s, c;
+	
+	/*
+	 * The columns of the ith cone are coneColumns[conePtr[i]] through
+	 * coneColumns[conePtr[i+1]-1], in the order in which the cone's
+	 * variables were created
+	 */
+	private final int[] coneTypes;
+	private final int[] conePtr;
+	private final int[] coneColumns;
+	
+	/**
+	 * Maps a snapshot written by {@link ConicProgramSnapshot#write(ConicProgram, File)}.
+	 * 
+	 * @throws IOException  if the file cannot be read or is not a snapshot
+	 */
+	public MappedConicProgram(File snapshot) throws IOException {
+		file = new RandomAccessFile(snapshot, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ConicProgramSnapshot.Header header = ConicProgramSnapshot.readHeader(channel);
+			int n = header.n;
+			int m = header.m;
+			int nnz = header.nnz;
+			
+			long valuesPos = ConicProgramSnapshot.HEADER_SIZE;
+			long pos = valuesPos + 8L * nnz;
+			double[] vector = new double[m];
+			pos = ConicProgramSnapshot.readDoubles(channel, pos, vector);
+			b = new DenseDoubleMatrix1D(vector);
+			vector = new double[n];
+			pos = ConicProgramSnapshot.readDoubles(channel, pos, vector);
+			c = new DenseDoubleMatrix1D(vector);
+			vector = new double[n];
+			pos = ConicProgramSnapshot.readDoubles(channel, pos, vector);
+			x = new DenseDoubleMatrix1D(vector);
+			vector = new double[m];
+			pos = ConicProgramSnapshot.readDoubles(channel, pos, vector);
+			w = new DenseDoubleMatrix1D(vector);
+			vector = new double[n];
+			pos = ConicProgramSnapshot.readDoubles(channel, pos, vector);
+			s = new DenseDoubleMatrix1D(vector);
+			
+			int[] colPtr = new int[n + 1];
+			pos = ConicProgramSnapshot.readInts(channel, pos, colPtr);
+			A = new MappedCCDoubleMatrix2D(channel, m, colPtr, pos, valuesPos);
+			pos += 4L * nnz;
+			
+			coneTypes = new int[header.numCones];
+			pos = ConicProgramSnapshot.readInts(channel, pos, coneTypes);
+			int[] coneSizes = new int[header.numCones];
+			pos = ConicProgramSnapshot.readInts(channel, pos, coneSizes);
+			coneColumns = new int[n];
+			pos = ConicProgramSnapshot.readInts(channel, pos, coneColumns);
+			
+			conePtr = new int[header.numCones + 1];
+			for (int i = 0; i < coneSizes.length; i++) {
+				if (coneTypes[i] < ConicProgramSnapshot.NNOC || coneTypes[i] > ConicProgramSnapshot.RSOC)
+					throw new IOException("Unknown cone type in snapshot: " + coneTypes[i]);
+				conePtr[i+1] = conePtr[i] + coneSizes[i];
+			}
+			if (conePtr[header.numCones] != n)
+				throw new IOException("Malformed cones in snapshot.");
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		catch (RuntimeException e) {
+			file.close();
+			throw e;
+		}
+	}
+	
+	public MappedCCDoubleMatrix2D getA() {
+		return A;
+	}
+	
+	public DenseDoubleMatrix1D getX() {
+		return x;
+	}
+	
+	public DenseDoubleMatrix1D getB() {
+		return b;
+	}
+	
+	public DenseDoubleMatrix1D getW() {
+		return w;
+	}
+	
+	public DenseDoubleMatrix1D getS() {
+		return s;
+	}
+	
+	public DenseDoubleMatrix1D getC() {
+		return c;
+	}
+	
+	public Collection<ConeType> getConeTypes() {
+		Set<ConeType> types = new HashSet<ConeType>();
+		for (int type : coneTypes)
+			types.add(getConeType(type));
+		return types;
+	}
+	
+	public int getNumCones() {
+		return coneTypes.length;
+	}
+	
+	public int getNumVariables() {
+		return coneColumns.length;
+	}
+	
+	public int getNumLinearConstraints() {
+		return A.rows();
+	}
+	
+	public double getPrimalInfeasibility() {
+		if (!isInCones(x))
+			return Double.POSITIVE_INFINITY;
+		
+		/* Computes ||Ax - b|| */
+		DoubleMatrix1D r = b.copy();
+		A.zMult(x, r, 1.0, -1.0, false);
+		return Math.sqrt(r.zDotProduct(r));
+	}
+	
+	public double getDualInfeasibility() {
+		if (!isInCones(s))
+			return Double.POSITIVE_INFINITY;
+		
+		/* Computes ||A^T w + s - c|| */
+		DoubleMatrix1D r = c.copy();
+		A.zMult(w, r, 1.0, -1.0, true);
+		for (int i = 0; i < r.size(); i++)
+			r.setQuick(i, r.getQuick(i) + s.getQuick(i));
+		return Math.sqrt(r.zDotProduct(r));
+	}
+	
+	private boolean isInCones(DoubleMatrix1D v) {
+		for (int i = 0; i < coneTypes.length; i++) {
+			int start = conePtr[i];
+			int last = conePtr[i+1] - 1;
+			double value = 0.0;
+			switch (coneTypes[i]) {
+			case ConicProgramSnapshot.NNOC:
+				if (v.getQuick(coneColumns[start]) < 0.0)
+					return false;
+				break;
+			case ConicProgramSnapshot.SOC:
+				for (int k = start; k < last; k++)
+					value += v.getQuick(coneColumns[k]) * v.getQuick(coneColumns[k]);
+				if (v.getQuick(coneColumns[last]) < Math.sqrt(value))
+					return false;
+				break;
+			case ConicProgramSnapshot.RSOC:
+				for (int k = start; k < last - 1; k++)
+					value += v.getQuick(coneColumns[k]) * v.getQuick(coneColumns[k]);
+				double v1 = v.getQuick(coneColumns[last-1]);
+				double v2 = v.getQuick(coneColumns[last]);
+				if (v1 < 0.0 || v2 < 0.0 || 2 * v1 * v2 < value)
+					return false;
+				break;
+			}
+		}
+		return true;
+	}
+	
+	private static ConeType getConeType(int type) {
+		switch (type) {
+		case ConicProgramSnapshot.NNOC:
+			return ConeType.NonNegativeOrthantCone;
+		case ConicProgramSnapshot.SOC:
+			return ConeType.SecondOrderCone;
+		case ConicProgramSnapshot.RSOC:
+			return ConeType.RotatedSecondOrderCone;
+		default:
+			throw new IllegalStateException("Unknown cone type: " + type);
+		}
+	}
+	
+	/**
+	 * Closes the snapshot file. Mapped regions of A stay valid until they are
+	 * garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -25,43 +25,66 @@ public class Variable extends Entity {
 	
 	private Cone cone;
 	
-	private double primalValue;
-	private double dualValue;
-	private double objCoeff;
+	/* Slot of this variable in the program's EntityStore */
+	private int slot;
 	
+	/* Values of this variable when it was deleted and released its slot */
+	private double deletedValue;
+	private double deletedDualValue;
+	private double deletedObjCoeff;
+	
+	/* Linear constraints containing this variable, or null if the program is compact */
 	private Set<LinearConstraint> cons;
 	
 	Variable(ConicProgram p, Cone c) {
 		super(p);
 		cone = c;
+		EntityStore store = p.getStore();
+		slot = store.addVariable(this);
 		setValue(0.5);
 		setDualValue(0.5);
 		doSetObjectiveCoefficient(0.0);
-		cons = new HashSet<LinearConstraint>(8);
+		cons = (store.isCompact()) ? null : new HashSet<LinearConstraint>(8);
 	}
 
 	public Cone getCone() {
 		return cone;
 	}
 	
+	int getSlot() {
+		return slot;
+	}
+	
 	public Double getValue() {
-		return primalValue;
+		if (slot == EntityStore.NONE)
+			return deletedValue;
+		return program.getStore().getPrimalValue(slot);
 	}
 	
 	void setValue(Double v) {
-		primalValue = v;
+		if (slot == EntityStore.NONE)
+			deletedValue = v;
+		else
+			program.getStore().setPrimalValue(slot, v);
 	}
 	
 	public Double getDualValue() {
-		return dualValue;
+		if (slot == EntityStore.NONE)
+			return deletedDualValue;
+		return program.getStore().getDualValue(slot);
 	}
 	
 	void setDualValue(Double v) {
-		dualValue = v;
+		if (slot == EntityStore.NONE)
+			deletedDualValue = v;
+		else
+			program.getStore().setDualValue(slot, v);
 	}
 	
 	public Double getObjectiveCoefficient() {
-		return objCoeff;
+		if (slot == EntityStore.NONE)
+			return deletedObjCoeff;
+		return program.getStore().getObjectiveCoefficient(slot);
 	}
 	
 	public void setObjectiveCoefficient(Double c) {
@@ -71,18 +94,26 @@ public class Variable extends Entity {
 	}
 	
 	private void doSetObjectiveCoefficient(Double c) {
-		objCoeff = c;
+		if (slot == EntityStore.NONE)
+			deletedObjCoeff = c;
+		else
+			program.getStore().setObjectiveCoefficient(slot, c);
 	}
 	
 	public Set<LinearConstraint> getLinearConstraints() {
-		return Collections.unmodifiableSet(cons);
+		if (cons == null)
+			return program.getStore().getVariableView(slot);
+		else
+			return Collections.unmodifiableSet(cons);
 	}
 	
 	void notifyAddedToLinearConstraint(LinearConstraint con) {
-		cons.add(con);
+		if (cons != null)
+			cons.add(con);
 	}
 	void notifyRemovedFromLinearConstraint(LinearConstraint con) {
-		cons.remove(con);
+		if (cons != null)
+			cons.remove(con);
 	}
 	
 	boolean isDualFeasible() {
@@ -101,10 +132,15 @@ public class Variable extends Entity {
 	
 	@Override
 	final void delete() {
-		Set<LinearConstraint> originalCons = new HashSet<LinearConstraint>(cons);
+		Set<LinearConstraint> originalCons = new HashSet<LinearConstraint>(getLinearConstraints());
 		for (LinearConstraint lc : originalCons) {
 			lc.setVariable(this, 0.0);
 		}
+		deletedValue = getValue();
+		deletedDualValue = getDualValue();
+		deletedObjCoeff = getObjectiveCoefficient();
+		program.getStore().removeVariable(slot);
+		slot = EntityStore.NONE;
 		cone = null;
 		cons = null;
 	}
@@ -62,7 +62,7 @@ public class Dualizer implements ConicProgramListener {
 	public Dualizer(ConicProgram program) {
 		primalProgram = program;
 
-		dualProgram = new ConicProgram();
+		dualProgram = new ConicProgram(program.isCompact());
 		primalVarsToDualCons = new HashMap<Variable, LinearConstraint>();
 		primalVarsToDualVars = new HashMap<Variable, Variable>();
 		primalConsToDualVars = new HashMap<LinearConstraint, Variable>();
@@ -146,6 +146,13 @@ public class Dualizer implements ConicProgramListener {
 			case NNOCCreated:
 				newCones.add((NonNegativeOrthantCone) entity);
 				break;
+			case BatchCreated:
+				for (Object cone : (Collection<?>) data[0])
+					if (cone instanceof NonNegativeOrthantCone)
+						newCones.add((NonNegativeOrthantCone) cone);
+				for (Object con : (Collection<?>) data[1])
+					newConstraints.add((LinearConstraint) con);
+				break;
 			case NNOCDeleted:
 				if (!newCones.remove(entity)) {
 					primalVar = ((NonNegativeOrthantCone) entity).getVariable();
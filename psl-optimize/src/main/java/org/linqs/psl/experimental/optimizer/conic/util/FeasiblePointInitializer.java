@@ -160,6 +160,23 @@ public class FeasiblePointInitializer implements ConicProgramListener {
 			else
 				throw new IllegalArgumentException(UNEXPECTED_SENDER);
 			break;
+		case BatchCreated:
+			if (madeDualFeasibleOnce) {
+				for (Object cone : (Collection<?>) data[0]) {
+					if (cone instanceof NonNegativeOrthantCone)
+						dualInfeasible.add(((NonNegativeOrthantCone) cone).getVariable());
+					else if (cone instanceof SecondOrderCone)
+						dualInfeasible.addAll(((SecondOrderCone) cone).getVariables());
+				}
+			}
+			for (Object con : (Collection<?>) data[1]) {
+				LinearConstraint lc = (LinearConstraint) con;
+				if (madePrimalFeasibleOnce)
+					primalInfeasible.add(lc);
+				if (madeDualFeasibleOnce)
+					dualInfeasible.addAll(lc.getVariables().keySet());
+			}
+			break;
 		case VarAddedToCon:
 		case VarRemovedFromCon:
 			if (entity instanceof LinearConstraint && data.length > 0 && data[0] instanceof Variable) {
@@ -0,0 +1,238 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs work over ranges of indices on a fixed set of reusable threads.
+ * <p>
+ * A range of n indices is split into contiguous chunks whose boundaries depend
+ * only on n and the number of threads, so per-chunk results combined in
+ * chunk order do not depend on scheduling. The calling thread works on the
+ * first chunk. A pool with one thread runs everything on the calling thread.
+ * <p>
+ * A pool can also run a list of independent tasks, which suits a few tasks
+ * of uneven cost better than splitting a range of indices.
+ * <p>
+ * Worker threads are daemon threads, so a pool that is never shut down does
+ * not keep the JVM alive.
+ * <p>
+ * Objects without a point at which they are finished, such as programs,
+ * should use {@link #getShared(int)} instead of creating their own pools,
+ * whose threads would otherwise stay idle until the JVM exits.
+ */
+public class WorkerPool {
+	
+	/** Work on a contiguous range of indices. */
+	public interface RangeTask {
+		/**
+		 * @param chunk  the index of the chunk, which is less than
+		 *               {@link WorkerPool#getNumThreads()}
+		 * @param start  the first index of the range
+		 * @param end  one past the last index of the range
+		 */
+		public void run(int chunk, int start, int end);
+	}
+	
+	/* Ranges are not split into chunks smaller than this */
+	private static final int MIN_CHUNK_SIZE = 512;
+	
+	/* Pools shared by number of threads */
+	private static final Map<Integer, WorkerPool> sharedPools = new HashMap<Integer, WorkerPool>();
+	
+	private final int numThreads;
+	private final ExecutorService executor;
+	private final boolean shared;
+	
+	/**
+	 * @param numThreads  the number of threads, including the calling thread
+	 */
+	public WorkerPool(int numThreads) {
+		this(numThreads, false);
+	}
+	
+	private WorkerPool(int numThreads, boolean shared) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive.");
+		this.numThreads = numThreads;
+		this.shared = shared;
+		if (numThreads > 1) {
+			executor = Executors.newFixedThreadPool(numThreads - 1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "WorkerPool");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		else
+			executor = null;
+	}
+	
+	/**
+	 * Returns the pool with the given number of threads that is shared by
+	 * all callers, creating it if needed. Shared pools cannot be shut down.
+	 * <p>
+	 * Several threads may use a shared pool at once, in which case their
+	 * chunks wait for each other's, so tasks run on a shared pool must not
+	 * themselves wait on it.
+	 * 
+	 * @param numThreads  the number of threads, including the calling thread
+	 */
+	public static WorkerPool getShared(int numThreads) {
+		synchronized (sharedPools) {
+			WorkerPool pool = sharedPools.get(numThreads);
+			if (pool == null) {
+				pool = new WorkerPool(numThreads, true);
+				sharedPools.put(numThreads, pool);
+			}
+			return pool;
+		}
+	}
+	
+	public int getNumThreads() {
+		return numThreads;
+	}
+	
+	/**
+	 * @return the number of chunks a range of n indices is split into
+	 */
+	public int getNumChunks(int n) {
+		return Math.max(1, Math.min(numThreads, n / MIN_CHUNK_SIZE));
+	}
+	
+	/**
+	 * Runs a task on every chunk of the range [0, n) and waits for all chunks
+	 * to finish.
+	 * 
+	 * @throws RuntimeException  if the task threw one on any chunk
+	 */
+	public void forEach(int n, final RangeTask task) {
+		final int numChunks = getNumChunks(n);
+		if (numChunks == 1) {
+			task.run(0, 0, n);
+			return;
+		}
+		run(n, numChunks, task);
+	}
+	
+	/**
+	 * Runs a list of tasks and waits for all of them to finish. Each thread
+	 * takes the next task not yet started until none remain, so the tasks
+	 * may run in any order.
+	 * 
+	 * @throws RuntimeException  if any task threw one
+	 */
+	public void runAll(final List<? extends Runnable> tasks) {
+		int numChunks = Math.min(numThreads, tasks.size());
+		if (numChunks <= 1) {
+			for (Runnable task : tasks)
+				task.run();
+			return;
+		}
+		
+		final AtomicInteger next = new AtomicInteger();
+		run(numChunks, numChunks, new RangeTask() {
+			@Override
+			public void run(int chunk, int start, int end) {
+				int i;
+				while ((i = next.getAndIncrement()) < tasks.size())
+					tasks.get(i).run();
+			}
+		});
+	}
+	
+	/**
+	 * Runs a task on each of numChunks chunks of [0, n), with the first on
+	 * the calling thread, and waits for all chunks to finish.
+	 */
+	private void run(int n, int numChunks, final RangeTask task) {
+		final CountDownLatch done = new CountDownLatch(numChunks - 1);
+		final Throwable[] error = new Throwable[1];
+		for (int i = 1; i < numChunks; i++) {
+			final int chunk = i;
+			final int start = getChunkStart(n, numChunks, i);
+			final int end = getChunkStart(n, numChunks, i + 1);
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run(chunk, start, end);
+					}
+					catch (Throwable t) {
+						synchronized (error) {
+							if (error[0] == null)
+								error[0] = t;
+						}
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		
+		try {
+			task.run(0, 0, getChunkStart(n, numChunks, 1));
+		}
+		finally {
+			try {
+				done.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		}
+		
+		synchronized (error) {
+			if (error[0] instanceof RuntimeException)
+				throw (RuntimeException) error[0];
+			else if (error[0] instanceof Error)
+				throw (Error) error[0];
+			else if (error[0] != null)
+				throw new IllegalStateException(error[0]);
+		}
+	}
+	
+	private static int getChunkStart(int n, int numChunks, int chunk) {
+		return (int) ((long) n * chunk / numChunks);
+	}
+	
+	/**
+	 * Stops the worker threads once they finish any current work. The pool
+	 * cannot be used afterward.
+	 * 
+	 * @throws IllegalStateException  if this pool is shared
+	 */
+	public void shutdown() {
+		if (shared)
+			throw new IllegalStateException("Shared pools cannot be shut down.");
+		if (executor != null)
+			executor.shutdown();
+	}
+}
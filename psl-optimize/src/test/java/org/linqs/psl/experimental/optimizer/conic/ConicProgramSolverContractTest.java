@@ -30,6 +30,7 @@ import org.junit.Test;
 import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
 import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.RotatedSecondOrderCone;
 import org.linqs.psl.experimental.optimizer.conic.program.SecondOrderCone;
 import org.linqs.psl.experimental.optimizer.conic.program.Variable;
 
@@ -75,6 +76,7 @@ abstract public class ConicProgramSolverContractTest {
 			solver = itr.next();
 			addLP();
 			addSOCP();
+			addRSOCP();
 			
 			for (int i = 0; i < programs.size(); i++) {
 				program = programs.get(i);
@@ -202,6 +204,91 @@ abstract public class ConicProgramSolverContractTest {
 		}
 	}
 	
+	/**
+	 * Tests solving a program again after its stored primal and dual values
+	 * have been moved outside its rotated second-order cones, from which
+	 * solvers that warm start must not start.
+	 */
+	@Test
+	public void testSolveFromOutsideRSOCs() {
+		ConicProgram program;
+		ConicProgramSolver solver;
+		DoubleMatrix1D solutionMatrix;
+		
+		DenseDoubleAlgebra alg = new DenseDoubleAlgebra();
+		Iterator<? extends ConicProgramSolver> itr = solvers.iterator();
+		
+		while (itr.hasNext()) {
+			solver = itr.next();
+			addRSOCP();
+			program = programs.get(0);
+			
+			if (solver.supportsConeTypes(program.getConeTypes())) {
+				solver.setConicProgram(program);
+				solver.solve();
+				
+				/* 2 * 0.1 * 0.1 < 1, so the values are outside the cones */
+				program.checkOutMatrices();
+				for (RotatedSecondOrderCone cone : program.getRotatedSecondOrderCones()) {
+					for (Variable v : cone.getVariables()) {
+						boolean inner = !v.equals(cone.getNthVariable()) && !v.equals(cone.getNMinus1stVariable());
+						program.getX().set(program.getIndex(v), (inner) ? 1.0 : 0.1);
+						program.getS().set(program.getIndex(v), (inner) ? 1.0 : 0.1);
+					}
+				}
+				program.checkInMatrices();
+				
+				solver.solve();
+				assertTrue(solver.getStatistics().getStatus() == SolutionStatus.Optimal);
+				
+				program.checkOutMatrices();
+				solutionMatrix = new DenseDoubleMatrix1D((int) program.getX().size());
+				for (Map.Entry<Variable, Double> e : solutions.get(0).entrySet()) {
+					solutionMatrix.set(program.getIndex(e.getKey()), e.getValue());
+				}
+				assertTrue(alg.norm2(solutionMatrix.assign(program.getX(), DoubleFunctions.minus)) < SOLUTION_TOLERANCE);
+				program.checkInMatrices();
+			}
+			
+			programs.clear();
+			solutions.clear();
+		}
+	}
+	
+	/** Tests that solvers report statistics about their last solve. */
+	@Test
+	public void testStatistics() {
+		ConicProgram program;
+		SolverStatistics statistics;
+		Iterator<? extends ConicProgramSolver> itr = solvers.iterator();
+		
+		while (itr.hasNext()) {
+			ConicProgramSolver solver = itr.next();
+			addLP();
+			program = programs.get(0);
+			
+			if (solver.supportsConeTypes(program.getConeTypes())) {
+				solver.setConicProgram(program);
+				solver.solve();
+				statistics = solver.getStatistics();
+				assertTrue(statistics.getStatus() == SolutionStatus.Optimal);
+				assertTrue(statistics.getIterations() > 0);
+				assertTrue(statistics.getSolveTime() > 0);
+				assertTrue(statistics.getGap() >= 0.0);
+				assertTrue(statistics.getPrimalInfeasibility() >= 0.0);
+				assertTrue(statistics.getDualInfeasibility() >= 0.0);
+				
+				/* Statistics are cleared, not accumulated, by the next solve */
+				int iterations = statistics.getIterations();
+				solver.solve();
+				assertTrue(solver.getStatistics().getIterations() < 2 * iterations);
+			}
+			
+			programs.clear();
+			solutions.clear();
+		}
+	}
+	
 	private void addLP() {
 		ConicProgram program = new ConicProgram();
 		
@@ -455,4 +542,107 @@ abstract public class ConicProgramSolverContractTest {
 		
 		solutions.add(solution);
 	}
+	
+	/** Adds the program of {@link #addSOCP()} with its squares in rotated second-order cones. */
+	private void addRSOCP() {
+		ConicProgram program = new ConicProgram();
+		
+		LinearConstraint phi1 = (LinearConstraint) program.createConstraint();
+		LinearConstraint phi2 = (LinearConstraint) program.createConstraint();
+		LinearConstraint phi3 = (LinearConstraint) program.createConstraint();
+		LinearConstraint c1 = (LinearConstraint) program.createConstraint();
+		LinearConstraint c2 = (LinearConstraint) program.createConstraint();
+		
+		Variable x1 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x2 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x3 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x4 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x5 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x6 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x7 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x8 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x9 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x10 = program.createNonNegativeOrthantCone().getVariable();
+		
+		phi1.setVariable(x1, 1.0);
+		phi1.setVariable(x3, 1.0);
+		phi1.setVariable(x4, -1.0);
+		
+		phi2.setVariable(x1, -1.0);
+		phi2.setVariable(x2, 1.0);
+		phi2.setVariable(x5, 1.0);
+		phi2.setVariable(x6, -1.0);
+
+		phi3.setVariable(x2, -1.0);
+		phi3.setVariable(x7, 1.0);
+		phi3.setVariable(x8, -1.0);
+		
+		c1.setVariable(x1, 1.0);
+		c1.setVariable(x9, 1.0);
+		
+		c2.setVariable(x2, 1.0);
+		c2.setVariable(x10, 1.0);
+		
+		phi1.setConstrainedValue(0.7);
+		phi2.setConstrainedValue(0.0);
+		phi3.setConstrainedValue(-0.2);
+		c1.setConstrainedValue(1.0);
+		c2.setConstrainedValue(1.0);
+		
+		Map<Variable, Double> solution = new HashMap<Variable, Double>();
+		
+		solution.put(x1, 0.4273);
+		solution.put(x2, 0.2909);
+		solution.put(x3, 0.2727);
+		solution.put(x4, 0.0);
+		solution.put(x5, 0.1363);
+		solution.put(x6, 0.0);
+		solution.put(x7, 0.0909);
+		solution.put(x8, 0.0);
+		solution.put(x9, 0.5727);
+		solution.put(x10, 0.7091);
+		
+		Variable x3Sq = addSquare(program, x3, solution);
+		Variable x5Sq = addSquare(program, x5, solution);
+		Variable x7Sq = addSquare(program, x7, solution);
+		
+		x3Sq.setObjectiveCoefficient(1.0);
+		x5Sq.setObjectiveCoefficient(2.0);
+		x7Sq.setObjectiveCoefficient(3.0);
+		
+		programs.add(program);
+		solutions.add(solution);
+	}
+	
+	/**
+	 * Constrains the nth variable of a new rotated second-order cone to be at
+	 * least the square of a variable, using 2 * x_n * x_(n-1) >= z^2 with
+	 * x_(n-1) fixed to 0.5 and z equal to the variable. Adds the values of
+	 * the variables of the cone to a solution that contains the variable.
+	 * 
+	 * @return the nth variable
+	 */
+	private Variable addSquare(ConicProgram program, Variable var, Map<Variable, Double> solution) {
+		RotatedSecondOrderCone rsoc = program.createRotatedSecondOrderCone(3);
+		Variable inner = null;
+		for (Variable v : rsoc.getVariables())
+			if (!v.equals(rsoc.getNthVariable()) && !v.equals(rsoc.getNMinus1stVariable()))
+				inner = v;
+		
+		LinearConstraint innerCon = program.createConstraint();
+		innerCon.setVariable(var, 1.0);
+		innerCon.setVariable(inner, -1.0);
+		innerCon.setConstrainedValue(0.0);
+		
+		LinearConstraint halfCon = program.createConstraint();
+		halfCon.setVariable(rsoc.getNMinus1stVariable(), 1.0);
+		halfCon.setConstrainedValue(0.5);
+		
+		double value = solution.get(var);
+		solution.put(inner, value);
+		solution.put(rsoc.getNMinus1stVariable(), 0.5);
+		solution.put(rsoc.getNthVariable(), value * value);
+		
+		return rsoc.getNthVariable();
+	}
 }
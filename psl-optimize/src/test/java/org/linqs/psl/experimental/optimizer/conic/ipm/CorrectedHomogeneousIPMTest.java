@@ -0,0 +1,93 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.SolutionStatus;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.SecondOrderCone;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+/**
+ * Runs the contract tests on a {@link HomogeneousIPM} that applies centrality correctors.
+ */
+public class CorrectedHomogeneousIPMTest extends HomogeneousIPMContractTest {
+
+	@Override
+	protected List<? extends ConicProgramSolver> getConicProgramSolverImplementations()
+			throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+		Vector<HomogeneousIPM> solvers = new Vector<HomogeneousIPM>(1);
+		solvers.add(getSolver(HomogeneousIPM.CORRECTORS_KEY, 2));
+		return solvers;
+	}
+	
+	/**
+	 * Tests that correctors are accepted and do not increase the number of
+	 * iterations. The program has several optimal solutions, so only the
+	 * objective values are compared.
+	 */
+	@Test
+	public void testCorrectorsAccepted() {
+		Variable[] x = new Variable[20];
+		ConicProgram program = getLinearProgram(x);
+		
+		/* Bounds the norm of (x_0, ..., x_4) */
+		SecondOrderCone soc = program.createSecondOrderCone(6);
+		int i = 0;
+		for (Variable v : soc.getVariables()) {
+			LinearConstraint con = program.createConstraint();
+			con.setVariable(v, 1.0);
+			if (v.equals(soc.getNthVariable()))
+				con.setConstrainedValue(1.0);
+			else {
+				con.setVariable(x[i++], -1.0);
+				con.setConstrainedValue(0.0);
+			}
+		}
+		
+		HomogeneousIPM corrected = getSolver(HomogeneousIPM.CORRECTORS_KEY, 2);
+		corrected.setConicProgram(program);
+		corrected.solve();
+		assertTrue(corrected.getStatus() == SolutionStatus.Optimal);
+		assertTrue(corrected.getStatistics().getCorrectors() > 0);
+		double correctedObjective = getObjective(x);
+		
+		HomogeneousIPM uncorrected = new HomogeneousIPM();
+		uncorrected.setConicProgram(program);
+		uncorrected.solve();
+		assertTrue(uncorrected.getStatus() == SolutionStatus.Optimal);
+		assertTrue(uncorrected.getStatistics().getCorrectors() == 0);
+		assertTrue(corrected.getStatistics().getIterations() <= uncorrected.getStatistics().getIterations());
+		assertTrue(Math.abs(getObjective(x) - correctedObjective) < 0.001);
+	}
+	
+	private double getObjective(Variable[] x) {
+		double objective = 0.0;
+		for (Variable v : x)
+			objective += v.getObjectiveCoefficient() * v.getValue();
+		return objective;
+	}
+
+}
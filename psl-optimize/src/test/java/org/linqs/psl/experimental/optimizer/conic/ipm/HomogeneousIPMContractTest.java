@@ -0,0 +1,80 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import org.linqs.psl.config.Config;
+import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolverContractTest;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+/**
+ * Contract tests for configurations of {@link HomogeneousIPM}, with a
+ * program that is large enough for differences between configurations to
+ * show in their statistics.
+ */
+abstract public class HomogeneousIPMContractTest extends ConicProgramSolverContractTest {
+	
+	/**
+	 * Creates a solver with properties that are set only while it is
+	 * constructed.
+	 *
+	 * @param properties  alternating property keys and values
+	 */
+	public static HomogeneousIPM getSolver(Object... properties) {
+		for (int i = 0; i < properties.length; i += 2)
+			Config.setProperty((String) properties[i], properties[i+1]);
+		try {
+			return new HomogeneousIPM();
+		}
+		finally {
+			for (int i = 0; i < properties.length; i += 2)
+				Config.clearProperty((String) properties[i]);
+		}
+	}
+	
+	/**
+	 * Minimizes the sum of (1 + 0.5 (i mod 7)) x_i over twenty variables
+	 * subject to x_i + x_{i+10} + 0.5 x_{(i+5) mod 10 + 10} = 1 + 0.1 i
+	 * for i from 0 to 9, adding the variables to x.
+	 */
+	protected static ConicProgram getLinearProgram(Variable[] x) {
+		ConicProgram program = new ConicProgram();
+		addLinearProgram(program, x);
+		return program;
+	}
+	
+	/**
+	 * Adds the program of {@link #getLinearProgram(Variable[])} to another,
+	 * such as one that is keeping a journal.
+	 */
+	protected static void addLinearProgram(ConicProgram program, Variable[] x) {
+		for (int i = 0; i < 20; i++) {
+			x[i] = program.createNonNegativeOrthantCone().getVariable();
+			x[i].setObjectiveCoefficient(1.0 + 0.5 * (i % 7));
+		}
+		for (int i = 0; i < 10; i++) {
+			LinearConstraint con = program.createConstraint();
+			con.setVariable(x[i], 1.0);
+			con.setVariable(x[i+10], 1.0);
+			con.setVariable(x[(i+5) % 10 + 10], 0.5);
+			con.setConstrainedValue(1.0 + 0.1 * i);
+		}
+	}
+
+}
@@ -17,14 +17,24 @@
  */
 package org.linqs.psl.experimental.optimizer.conic.ipm;
 
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 import java.util.List;
 import java.util.Vector;
 
+import org.junit.Test;
 import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.IterationListener;
+import org.linqs.psl.experimental.optimizer.conic.IterationSnapshot;
+import org.linqs.psl.experimental.optimizer.conic.SolutionStatus;
 import org.linqs.psl.experimental.optimizer.conic.ipm.HomogeneousIPM;
-import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolverContractTest;
+import org.linqs.psl.experimental.optimizer.conic.program.ChangeJournal;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
 
-public class HomogeneousIPMTest extends ConicProgramSolverContractTest {
+public class HomogeneousIPMTest extends HomogeneousIPMContractTest {
 
 	@Override
 	protected List<? extends ConicProgramSolver> getConicProgramSolverImplementations()
@@ -33,5 +43,148 @@ public class HomogeneousIPMTest extends ConicProgramSolverContractTest {
 		solvers.add(new HomogeneousIPM());
 		return solvers;
 	}
+	
+	/**
+	 * Tests that the IPM stops with the best iterate when its budget runs out
+	 * and only clears the journal of the program once it is solved.
+	 */
+	@Test
+	public void testIterationLimit() {
+		ConicProgram program = new ConicProgram();
+		program.setJournaling(true);
+		Variable x1 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x2 = program.createNonNegativeOrthantCone().getVariable();
+		LinearConstraint con = program.createConstraint();
+		con.setVariable(x1, 1.0);
+		con.setVariable(x2, 1.0);
+		con.setConstrainedValue(1.0);
+		x1.setObjectiveCoefficient(1.0);
+		x2.setObjectiveCoefficient(2.0);
+		
+		HomogeneousIPM ipm = getSolver(HomogeneousIPM.MAX_ITERATIONS_KEY, 1);
+		ipm.setConicProgram(program);
+		ipm.solve();
+		assertTrue(ipm.getStatus() == SolutionStatus.IterationLimit);
+		assertTrue(x1.getValue() > 0.0 && x2.getValue() > 0.0);
+		assertTrue(ipm.getGap() > 0.0);
+		assertTrue(program.getJournal().getLevel() == ChangeJournal.Level.Structure);
+		
+		ipm = new HomogeneousIPM();
+		ipm.setConicProgram(program);
+		ipm.solve();
+		assertTrue(ipm.getStatus() == SolutionStatus.Optimal);
+		assertTrue(Math.abs(x1.getValue() - 1.0) < 0.001);
+		assertTrue(ipm.getGap() <= HomogeneousIPM.GAP_THRESHOLD_DEFAULT);
+		assertTrue(program.getJournal().isEmpty());
+	}
+	
+	/**
+	 * Tests that the IPM reports an infeasible program through its status
+	 * when it has a budget and throws an exception otherwise.
+	 */
+	@Test
+	public void testInfeasibleWithBudget() {
+		ConicProgram program = new ConicProgram();
+		Variable x1 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x2 = program.createNonNegativeOrthantCone().getVariable();
+		LinearConstraint con = program.createConstraint();
+		con.setVariable(x1, 1.0);
+		con.setVariable(x2, 1.0);
+		con.setConstrainedValue(-1.0);
+		x1.setObjectiveCoefficient(1.0);
+		x2.setObjectiveCoefficient(2.0);
+		
+		HomogeneousIPM ipm = getSolver(HomogeneousIPM.MAX_ITERATIONS_KEY, 100);
+		ipm.setConicProgram(program);
+		ipm.solve();
+		/* The dualized program has an unbounded objective, which the IPM may report either way */
+		assertTrue(ipm.getStatus() == SolutionStatus.Infeasible || ipm.getStatus() == SolutionStatus.IllPosed);
+		assertTrue(x1.getValue() >= 0.0 && x2.getValue() >= 0.0);
+		
+		ipm = new HomogeneousIPM();
+		ipm.setConicProgram(program);
+		try {
+			ipm.solve();
+			fail("Expected an exception for an infeasible program.");
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+	
+	/**
+	 * Tests that warm starting from the solution of a slightly different
+	 * program takes fewer iterations than a cold start.
+	 */
+	@Test
+	public void testWarmStart() {
+		ConicProgram program = new ConicProgram();
+		program.setJournaling(true);
+		Variable[] x = new Variable[20];
+		addLinearProgram(program, x);
+		
+		HomogeneousIPM warm = getSolver(HomogeneousIPM.WARM_START_KEY, true);
+		warm.setConicProgram(program);
+		warm.solve();
+		assertTrue(warm.getStatus() == SolutionStatus.Optimal);
+		assertTrue(!warm.getStatistics().isWarmStarted());
+		
+		x[0].setObjectiveCoefficient(1.05);
+		warm.solve();
+		assertTrue(warm.getStatus() == SolutionStatus.Optimal);
+		assertTrue(warm.getStatistics().isWarmStarted());
+		int warmIterations = warm.getStatistics().getIterations();
+		double[] warmSolution = new double[x.length];
+		for (int i = 0; i < x.length; i++)
+			warmSolution[i] = x[i].getValue();
+		
+		HomogeneousIPM cold = new HomogeneousIPM();
+		cold.setConicProgram(program);
+		cold.solve();
+		assertTrue(cold.getStatus() == SolutionStatus.Optimal);
+		assertTrue(!cold.getStatistics().isWarmStarted());
+		assertTrue(warmIterations < cold.getStatistics().getIterations());
+		for (int i = 0; i < x.length; i++)
+			assertTrue(Math.abs(x[i].getValue() - warmSolution[i]) < 0.001);
+	}
+	
+	/** Tests that listeners see each iteration and can stop the IPM. */
+	@Test
+	public void testIterationListener() {
+		ConicProgram program = new ConicProgram();
+		Variable x1 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x2 = program.createNonNegativeOrthantCone().getVariable();
+		LinearConstraint con = program.createConstraint();
+		con.setVariable(x1, 1.0);
+		con.setVariable(x2, 1.0);
+		con.setConstrainedValue(1.0);
+		x1.setObjectiveCoefficient(1.0);
+		x2.setObjectiveCoefficient(2.0);
+		
+		final int[] iterations = new int[1];
+		IterationListener listener = new IterationListener() {
+			@Override
+			public boolean iterationCompleted(ConicProgramSolver sender, IterationSnapshot snapshot) {
+				assertTrue(snapshot.getIteration() == ++iterations[0]);
+				assertTrue(snapshot.getStepSize() > 0.0 && snapshot.getStepSize() <= 1.0);
+				assertTrue(snapshot.getIterationTime() >= snapshot.getFactorizationTime());
+				return iterations[0] == 2;
+			}
+		};
+		
+		HomogeneousIPM ipm = new HomogeneousIPM();
+		ipm.registerForIterationEvents(listener);
+		ipm.setConicProgram(program);
+		ipm.solve();
+		assertTrue(iterations[0] == 2);
+		assertTrue(ipm.getStatus() == SolutionStatus.Aborted);
+		assertTrue(ipm.getStatistics().getIterations() == 2);
+		assertTrue(x1.getValue() > 0.0 && x2.getValue() > 0.0);
+		
+		iterations[0] = 0;
+		ipm.unregisterForIterationEvents(listener);
+		ipm.solve();
+		assertTrue(iterations[0] == 0);
+		assertTrue(ipm.getStatus() == SolutionStatus.Optimal);
+	}
 
 }
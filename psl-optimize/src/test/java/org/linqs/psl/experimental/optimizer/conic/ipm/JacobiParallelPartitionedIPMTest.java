@@ -0,0 +1,183 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.partition.AbstractCompletePartitioner;
+import org.linqs.psl.experimental.optimizer.conic.partition.ConicProgramPartition;
+import org.linqs.psl.experimental.optimizer.conic.program.Cone;
+import org.linqs.psl.experimental.optimizer.conic.program.ConeType;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.NonNegativeOrthantCone;
+import org.linqs.psl.experimental.optimizer.conic.program.SecondOrderCone;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+/**
+ * Runs the contract tests on a {@link ParallelPartitionedIPM} that sweeps
+ * its partitions in block Jacobi mode on multiple threads.
+ * <p>
+ * The default partitioner only splits programs with thousands of
+ * constraints, so the tests of the sweeps use {@link HalvingPartitioner}
+ * to partition small programs more than once.
+ */
+public class JacobiParallelPartitionedIPMTest extends ParallelPartitionedIPMContractTest {
+	
+	private static final int THREADS = 2;
+
+	@Override
+	protected List<? extends ConicProgramSolver> getConicProgramSolverImplementations()
+			throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+		Vector<ParallelPartitionedIPM> solvers = new Vector<ParallelPartitionedIPM>(1);
+		solvers.add(getSolver(ParallelPartitionedIPM.JACOBI_KEY, true,
+				ParallelPartitionedIPM.THREAD_POOL_SIZE_KEY, THREADS));
+		return solvers;
+	}
+	
+	/**
+	 * Tests that block Jacobi sweeps over more than one partition find the
+	 * solution of Gauss-Seidel sweeps.
+	 */
+	@Test
+	public void testMatchesGaussSeidel() {
+		assertMatchesGaussSeidel(ParallelPartitionedIPM.JACOBI_DAMPING_DEFAULT);
+	}
+	
+	/** Tests that damped block Jacobi sweeps find the same solution. */
+	@Test
+	public void testDamping() {
+		assertMatchesGaussSeidel(0.5);
+	}
+	
+	private void assertMatchesGaussSeidel(double damping) {
+		Variable[] jacobiVars = new Variable[12];
+		ConicProgram jacobiProgram = getLinkedProgram(jacobiVars);
+		ParallelPartitionedIPM jacobi = getSolver(true, damping);
+		jacobi.setConicProgram(jacobiProgram);
+		jacobi.solve();
+		
+		Variable[] gaussSeidelVars = new Variable[12];
+		ConicProgram gaussSeidelProgram = getLinkedProgram(gaussSeidelVars);
+		ParallelPartitionedIPM gaussSeidel = getSolver(false, damping);
+		gaussSeidel.setConicProgram(gaussSeidelProgram);
+		gaussSeidel.solve();
+		
+		for (int i = 0; i < jacobiVars.length; i++) {
+			double expected = (i % 6 < SOLUTION.length) ? SOLUTION[i % 6] : 0.0;
+			assertTrue(Math.abs(jacobiVars[i].getValue() - gaussSeidelVars[i].getValue()) < 0.001);
+			assertTrue(Math.abs(jacobiVars[i].getValue() - expected) < 0.001);
+		}
+	}
+	
+	/*
+	 * Partitions programs with HalvingPartitioner and does not dualize them,
+	 * so that the linked program is split between its two copies of the
+	 * smaller program
+	 */
+	private ParallelPartitionedIPM getSolver(boolean jacobi, double damping) {
+		return getSolver(ParallelPartitionedIPM.JACOBI_KEY, jacobi,
+				ParallelPartitionedIPM.JACOBI_DAMPING_KEY, damping,
+				ParallelPartitionedIPM.PARTITIONER_KEY, HalvingPartitioner.class.getName(),
+				ParallelPartitionedIPM.DUALIZE_KEY, false,
+				ParallelPartitionedIPM.THREAD_POOL_SIZE_KEY, THREADS);
+	}
+	
+	/*
+	 * Adds the program of getProgram(Variable[]) over vars[0] through
+	 * vars[4] and again over vars[6] through vars[10], with objective
+	 * coefficient 1.0 on vars[5] and vars[11] and x_4 - x_10 + x_6 - x_12 = 0,
+	 * so that only the last constraint is cut when the cones are split in half
+	 */
+	private ConicProgram getLinkedProgram(Variable[] vars) {
+		ConicProgram program = new ConicProgram();
+		for (int offset = 0; offset < vars.length; offset += 6) {
+			addProgram(program, vars, offset);
+			vars[offset + 5] = program.createNonNegativeOrthantCone().getVariable();
+			vars[offset + 5].setObjectiveCoefficient(1.0);
+		}
+		
+		LinearConstraint link = program.createConstraint();
+		link.setVariable(vars[3], 1.0);
+		link.setVariable(vars[9], -1.0);
+		link.setVariable(vars[5], 1.0);
+		link.setVariable(vars[11], -1.0);
+		link.setConstrainedValue(0.0);
+		
+		return program;
+	}
+	
+	/**
+	 * Partitions a program twice, first with all its cones in one element
+	 * and then with the cones split in half, in the order of their
+	 * variables, between two elements.
+	 */
+	public static class HalvingPartitioner extends AbstractCompletePartitioner {
+		
+		@Override
+		public boolean supportsConeTypes(Collection<ConeType> types) {
+			for (ConeType type : types)
+				if (type != ConeType.NonNegativeOrthantCone && type != ConeType.SecondOrderCone)
+					return false;
+			return true;
+		}
+		
+		@Override
+		protected void doPartition() {
+			partitions.clear();
+			
+			List<Cone> cones = new ArrayList<Cone>(program.getCones());
+			Collections.sort(cones, new Comparator<Cone>() {
+				@Override
+				public int compare(Cone c1, Cone c2) {
+					return firstIndex(c1) - firstIndex(c2);
+				}
+			});
+			
+			List<Set<Cone>> whole = new ArrayList<Set<Cone>>(1);
+			whole.add(new HashSet<Cone>(cones));
+			partitions.add(new ConicProgramPartition(program, whole));
+			
+			List<Set<Cone>> halves = new ArrayList<Set<Cone>>(2);
+			halves.add(new HashSet<Cone>(cones.subList(0, cones.size() / 2)));
+			halves.add(new HashSet<Cone>(cones.subList(cones.size() / 2, cones.size())));
+			partitions.add(new ConicProgramPartition(program, halves));
+		}
+		
+		private int firstIndex(Cone cone) {
+			if (cone instanceof NonNegativeOrthantCone)
+				return program.getIndex(((NonNegativeOrthantCone) cone).getVariable());
+			int index = Integer.MAX_VALUE;
+			for (Variable var : ((SecondOrderCone) cone).getVariables())
+				index = Math.min(program.getIndex(var), index);
+			return index;
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+
+/**
+ * Tests {@link NormalMatrixProduct}.
+ */
+public class NormalMatrixProductTest {
+	
+	private static final double TOLERANCE = 10e-10;
+	
+	/** Tests that products with block-diagonal matrices match dense products. */
+	@Test
+	public void testMultiply() {
+		SparseDoubleMatrix2D ABuilder = new SparseDoubleMatrix2D(4, 6);
+		ABuilder.setQuick(0, 0, 1.0);
+		ABuilder.setQuick(0, 3, 2.0);
+		ABuilder.setQuick(1, 1, -1.0);
+		ABuilder.setQuick(1, 4, 0.5);
+		ABuilder.setQuick(2, 2, 3.0);
+		ABuilder.setQuick(2, 5, -2.0);
+		ABuilder.setQuick(3, 0, 1.5);
+		ABuilder.setQuick(3, 1, 1.0);
+		SparseCCDoubleMatrix2D A = ABuilder.getColumnCompressed(false);
+		
+		/* Two scalar blocks followed by a block of three variables */
+		ConeBlockMatrix D = new ConeBlockMatrix(new int[] {0, 1, 2, 5}, new int[] {1, 0, 4, 3, 5});
+		NormalMatrixProduct product = new NormalMatrixProduct(A, D);
+		
+		for (int trial = 1; trial <= 2; trial++) {
+			double[] values = D.getValues();
+			values[0] = 2.0 * trial;
+			values[1] = 0.5 * trial;
+			double[] block = {3.0, 1.0, -0.5, 1.0, 2.0, 0.25, -0.5, 0.25, 4.0};
+			for (int i = 0; i < block.length; i++)
+				values[2 + i] = block[i] * trial;
+			
+			DoubleMatrix2D denseD = new DenseDoubleMatrix2D(6, 6);
+			int[] indexes = D.getIndexes();
+			for (int b = 0; b < D.getNumBlocks(); b++) {
+				int size = D.getBlockSize(b);
+				for (int i = 0; i < size; i++)
+					for (int j = 0; j < size; j++)
+						denseD.setQuick(indexes[D.getBlockStart(b) + i], indexes[D.getBlockStart(b) + j],
+								values[D.getValueStart(b) + i * size + j]);
+			}
+			
+			product.multiply(D);
+			DoubleMatrix2D denseA = new DenseDoubleMatrix2D(4, 6).assign(A);
+			DoubleMatrix2D expected = denseA.zMult(denseD.zMult(denseA, null, 1.0, 0.0, false, true), null);
+			for (int i = 0; i < 4; i++)
+				for (int j = 0; j < 4; j++)
+					assertTrue(Math.abs(product.getProduct().getQuick(i, j) - expected.getQuick(i, j)) < TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.After;
+import org.linqs.psl.config.Config;
+import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolverContractTest;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+/**
+ * Contract tests for configurations of {@link ParallelPartitionedIPM}, with
+ * a small program whose solutions they compare across configurations.
+ */
+abstract public class ParallelPartitionedIPMContractTest extends ConicProgramSolverContractTest {
+	
+	/** Solution of the program of {@link #getProgram(Variable[])} */
+	protected static final double[] SOLUTION = new double[] {0.5, 0.5, 0.0, 0.0, 0.0};
+	
+	private final List<ParallelPartitionedIPM> created = new Vector<ParallelPartitionedIPM>();
+	
+	@After
+	public void closeSolvers() {
+		for (ParallelPartitionedIPM solver : created)
+			solver.close();
+		created.clear();
+	}
+	
+	/**
+	 * Creates a solver with properties that are set only while it is
+	 * constructed. The solver is closed after the test.
+	 *
+	 * @param properties  alternating property keys and values
+	 */
+	protected ParallelPartitionedIPM getSolver(Object... properties) {
+		for (int i = 0; i < properties.length; i += 2)
+			Config.setProperty((String) properties[i], properties[i+1]);
+		try {
+			ParallelPartitionedIPM solver = new ParallelPartitionedIPM();
+			created.add(solver);
+			return solver;
+		}
+		finally {
+			for (int i = 0; i < properties.length; i += 2)
+				Config.clearProperty((String) properties[i]);
+		}
+	}
+	
+	/**
+	 * Minimizes x_1 + 2 x_2 + 3 x_3 subject to x_1 + x_2 + x_3 - x_4 = 1 and
+	 * x_1 + x_5 = 0.5, adding x_1 through x_5 to vars.
+	 */
+	protected static ConicProgram getProgram(Variable[] vars) {
+		ConicProgram program = new ConicProgram();
+		addProgram(program, vars, 0);
+		return program;
+	}
+	
+	/**
+	 * Adds the program of {@link #getProgram(Variable[])} to another, with
+	 * its variables at vars[offset] through vars[offset + 4].
+	 */
+	protected static void addProgram(ConicProgram program, Variable[] vars, int offset) {
+		for (int i = 0; i < 5; i++) {
+			vars[offset + i] = program.createNonNegativeOrthantCone().getVariable();
+			vars[offset + i].setObjectiveCoefficient((i < 3) ? i + 1.0 : 0.0);
+		}
+		
+		LinearConstraint sum = program.createConstraint();
+		for (int i = 0; i < 3; i++)
+			sum.setVariable(vars[offset + i], 1.0);
+		sum.setVariable(vars[offset + 3], -1.0);
+		sum.setConstrainedValue(1.0);
+		
+		LinearConstraint bound = program.createConstraint();
+		bound.setVariable(vars[offset], 1.0);
+		bound.setVariable(vars[offset + 4], 1.0);
+		bound.setConstrainedValue(0.5);
+	}
+
+}
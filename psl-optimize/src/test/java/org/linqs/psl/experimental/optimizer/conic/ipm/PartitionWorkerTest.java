@@ -0,0 +1,118 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+
+/**
+ * Tests {@link PartitionWorker}.
+ */
+public class PartitionWorkerTest {
+	
+	private static final double TOLERANCE = 10e-10;
+	
+	private static final long SESSION = 1;
+	
+	/**
+	 * Tests that systems on a worker compute the same steps as local ones,
+	 * with the two systems of an element on different connections.
+	 */
+	@Test
+	public void testRemoteSolve() throws Exception {
+		final PartitionWorker worker = new PartitionWorker(0);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				worker.serve();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		
+		String address = "127.0.0.1:" + worker.getPort();
+		WorkerConnection primalConnection = new WorkerConnection(address, SESSION);
+		WorkerConnection dualConnection = new WorkerConnection(address, SESSION);
+		try {
+			SparseDoubleMatrix2D ABuilder = new SparseDoubleMatrix2D(2, 3);
+			ABuilder.setQuick(0, 0, 1.0);
+			ABuilder.setQuick(0, 1, 1.0);
+			ABuilder.setQuick(1, 1, -1.0);
+			ABuilder.setQuick(1, 2, 2.0);
+			SparseCCDoubleMatrix2D A = ABuilder.getColumnCompressed(false);
+			DoubleMatrix1D r = new DenseDoubleMatrix1D(new double[] {0.5, -1.0, 2.0});
+			
+			RemoteElementSystem.Element element = new RemoteElementSystem.Element(0);
+			ElementSystem[] local = new ElementSystem[] {
+					new LocalElementSystem(A, true, 5), new LocalElementSystem(A, false, 5)};
+			ElementSystem[] remote = new ElementSystem[] {
+					new RemoteElementSystem(primalConnection, element, A, true, 5),
+					new RemoteElementSystem(dualConnection, element, A, false, 5)};
+			
+			/* Solves with a current factor, then with a stale one */
+			for (int trial = 1; trial <= 2; trial++) {
+				SparseCCDoubleMatrix2D Hinv = getDiagonal(3, trial);
+				for (int i = 0; i < 2; i++) {
+					local[i].setInvH(Hinv);
+					remote[i].setInvH(Hinv);
+				}
+				for (int i = 0; i < 2; i++) {
+					if (trial == 1) {
+						local[i].factorize();
+						remote[i].factorize();
+						assertTrue(local[i].getFactorNonZeros() == remote[i].getFactorNonZeros());
+					}
+					
+					local[i].solve(r, 0.1, trial == 2);
+					remote[i].solve(r, 0.1, trial == 2);
+					assertTrue(local[i].getCGIterations() == remote[i].getCGIterations());
+					assertClose(local[i].getDw(), remote[i].getDw());
+					assertClose(local[i].getDs(), remote[i].getDs());
+				}
+				assertClose(local[0].getDx(), remote[0].getDx());
+				assertTrue(remote[1].getDx() == null);
+			}
+			
+			primalConnection.clear();
+		}
+		finally {
+			primalConnection.close();
+			dualConnection.close();
+			worker.close();
+		}
+	}
+	
+	private SparseCCDoubleMatrix2D getDiagonal(int n, double scale) {
+		SparseDoubleMatrix2D D = new SparseDoubleMatrix2D(n, n);
+		for (int i = 0; i < n; i++)
+			D.setQuick(i, i, scale * (i + 1));
+		return D.getColumnCompressed(false);
+	}
+	
+	private void assertClose(DoubleMatrix1D expected, DoubleMatrix1D actual) {
+		assertTrue(expected.size() == actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertTrue(Math.abs(expected.getQuick(i) - actual.getQuick(i)) < TOLERANCE);
+	}
+}
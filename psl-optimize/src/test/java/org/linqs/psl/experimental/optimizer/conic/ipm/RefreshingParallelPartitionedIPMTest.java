@@ -0,0 +1,74 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+/**
+ * Runs the contract tests on a {@link ParallelPartitionedIPM} that reuses
+ * the factors of its element systems until they change by half.
+ */
+public class RefreshingParallelPartitionedIPMTest extends ParallelPartitionedIPMContractTest {
+	
+	private static final double REFRESH_THRESHOLD = 0.5;
+
+	@Override
+	protected List<? extends ConicProgramSolver> getConicProgramSolverImplementations()
+			throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+		Vector<ParallelPartitionedIPM> solvers = new Vector<ParallelPartitionedIPM>(1);
+		solvers.add(getSolver(ParallelPartitionedIPM.REFRESH_THRESHOLD_KEY, REFRESH_THRESHOLD));
+		return solvers;
+	}
+	
+	/**
+	 * Tests that solves refined from stale factors find the solution of
+	 * solves that refactorize every iteration.
+	 */
+	@Test
+	public void testMatchesRefactorization() {
+		Variable[] refreshingVars = new Variable[5];
+		ConicProgram refreshingProgram = getProgram(refreshingVars);
+		ParallelPartitionedIPM refreshing = getSolver(ParallelPartitionedIPM.REFRESH_THRESHOLD_KEY, REFRESH_THRESHOLD);
+		refreshing.setConicProgram(refreshingProgram);
+		refreshing.solve();
+		
+		Variable[] refactorizingVars = new Variable[5];
+		ConicProgram refactorizingProgram = getProgram(refactorizingVars);
+		ParallelPartitionedIPM refactorizing = getSolver();
+		refactorizing.setConicProgram(refactorizingProgram);
+		refactorizing.solve();
+		
+		assertTrue(refreshing.getStatistics().getCGIterations() > 0);
+		assertEquals(0, refactorizing.getStatistics().getCGIterations());
+		
+		for (int i = 0; i < SOLUTION.length; i++) {
+			assertTrue(Math.abs(refreshingVars[i].getValue() - refactorizingVars[i].getValue()) < 0.001);
+			assertTrue(Math.abs(refreshingVars[i].getValue() - SOLUTION[i]) < 0.001);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+/**
+ * Runs the contract tests on a {@link ParallelPartitionedIPM} that solves
+ * the systems of its elements on a {@link PartitionWorker} in this process.
+ */
+public class RemoteParallelPartitionedIPMTest extends ParallelPartitionedIPMContractTest {
+	
+	private static final int THREADS = 2;
+	
+	private static PartitionWorker worker;
+	
+	@BeforeClass
+	public static void startWorker() throws IOException {
+		worker = new PartitionWorker(0);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				worker.serve();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	@AfterClass
+	public static void stopWorker() {
+		worker.close();
+	}
+
+	@Override
+	protected List<? extends ConicProgramSolver> getConicProgramSolverImplementations()
+			throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+		Vector<ParallelPartitionedIPM> solvers = new Vector<ParallelPartitionedIPM>(1);
+		solvers.add(getSolver(true));
+		return solvers;
+	}
+	
+	/** Tests that solves on a worker find the solution of local solves. */
+	@Test
+	public void testMatchesLocal() {
+		Variable[] remoteVars = new Variable[5];
+		ConicProgram remoteProgram = getProgram(remoteVars);
+		ParallelPartitionedIPM remote = getSolver(true);
+		remote.setConicProgram(remoteProgram);
+		remote.solve();
+		
+		Variable[] localVars = new Variable[5];
+		ConicProgram localProgram = getProgram(localVars);
+		ParallelPartitionedIPM local = getSolver(false);
+		local.setConicProgram(localProgram);
+		local.solve();
+		
+		assertTrue(remote.getStatistics().getIterations() == local.getStatistics().getIterations());
+		
+		for (int i = 0; i < SOLUTION.length; i++) {
+			assertTrue(Math.abs(remoteVars[i].getValue() - localVars[i].getValue()) < 10e-10);
+			assertTrue(Math.abs(remoteVars[i].getValue() - SOLUTION[i]) < 0.001);
+		}
+	}
+	
+	/*
+	 * Lists the worker once for each thread, so that elements can be
+	 * solved on it concurrently
+	 */
+	private ParallelPartitionedIPM getSolver(boolean remote) {
+		if (remote) {
+			String address = "127.0.0.1:" + worker.getPort();
+			return getSolver(ParallelPartitionedIPM.WORKERS_KEY, address + "," + address,
+					ParallelPartitionedIPM.THREAD_POOL_SIZE_KEY, THREADS);
+		}
+		else
+			return getSolver(ParallelPartitionedIPM.THREAD_POOL_SIZE_KEY, THREADS);
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.SecondOrderCone;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+/**
+ * Runs the contract tests on a {@link HomogeneousIPM} that processes cones
+ * on multiple threads.
+ */
+public class ThreadedHomogeneousIPMTest extends HomogeneousIPMContractTest {
+	
+	private static final int THREADS = 4;
+	
+	/* Enough terms that the cones are split into several chunks */
+	private static final int NUM_TERMS = 600;
+
+	@Override
+	protected List<? extends ConicProgramSolver> getConicProgramSolverImplementations()
+			throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+		Vector<HomogeneousIPM> solvers = new Vector<HomogeneousIPM>(1);
+		solvers.add(getSolver(HomogeneousIPM.THREADS_KEY, THREADS));
+		return solvers;
+	}
+	
+	/** Tests that the solution does not depend on the number of threads. */
+	@Test
+	public void testDeterminism() {
+		List<Variable> serialVars = new ArrayList<Variable>();
+		ConicProgram serialProgram = getLargeProgram(serialVars);
+		HomogeneousIPM serialSolver = getSolver(HomogeneousIPM.THREADS_KEY, 1);
+		serialSolver.setConicProgram(serialProgram);
+		serialSolver.solve();
+		
+		List<Variable> threadedVars = new ArrayList<Variable>();
+		ConicProgram threadedProgram = getLargeProgram(threadedVars);
+		HomogeneousIPM threadedSolver = getSolver(HomogeneousIPM.THREADS_KEY, THREADS);
+		threadedSolver.setConicProgram(threadedProgram);
+		threadedSolver.solve();
+		
+		for (int i = 0; i < NUM_TERMS; i++) {
+			assertTrue(serialVars.get(i).getValue().equals(threadedVars.get(i).getValue()));
+			assertTrue(Math.abs(serialVars.get(i).getValue() - getTarget(i)) < 0.001);
+		}
+	}
+	
+	/*
+	 * Minimizes the sum of (x_i - t_i)^2 subject to x_i + y_i = 1, adding
+	 * the variables x_i to vars
+	 */
+	private ConicProgram getLargeProgram(List<Variable> vars) {
+		ConicProgram program = new ConicProgram();
+		for (int i = 0; i < NUM_TERMS; i++) {
+			Variable x = program.createNonNegativeOrthantCone().getVariable();
+			Variable y = program.createNonNegativeOrthantCone().getVariable();
+			Variable xSq = program.createNonNegativeOrthantCone().getVariable();
+			vars.add(x);
+			
+			LinearConstraint sum = program.createConstraint();
+			sum.setVariable(x, 1.0);
+			sum.setVariable(y, 1.0);
+			sum.setConstrainedValue(1.0);
+			
+			SecondOrderCone soc = program.createSecondOrderCone(3);
+			Variable outerSquaredVar = soc.getNthVariable();
+			Variable innerFeatureVar = null, innerSquaredVar = null;
+			for (Variable v : soc.getVariables()) {
+				if (!v.equals(outerSquaredVar))
+					if (innerFeatureVar == null)
+						innerFeatureVar = v;
+					else
+						innerSquaredVar = v;
+			}
+			
+			LinearConstraint innerFeatureCon = program.createConstraint();
+			innerFeatureCon.setVariable(x, 1.0);
+			innerFeatureCon.setVariable(innerFeatureVar, -1.0);
+			innerFeatureCon.setConstrainedValue(getTarget(i));
+			
+			LinearConstraint innerSquaredCon = program.createConstraint();
+			innerSquaredCon.setVariable(innerSquaredVar, 1.0);
+			innerSquaredCon.setVariable(xSq, 0.5);
+			innerSquaredCon.setConstrainedValue(0.5);
+			
+			LinearConstraint outerSquaredCon = program.createConstraint();
+			outerSquaredCon.setVariable(outerSquaredVar, 1.0);
+			outerSquaredCon.setVariable(xSq, -0.5);
+			outerSquaredCon.setConstrainedValue(0.5);
+			
+			x.setObjectiveCoefficient(0.0);
+			y.setObjectiveCoefficient(0.0);
+			xSq.setObjectiveCoefficient(1.0);
+		}
+		return program;
+	}
+	
+	private double getTarget(int i) {
+		return 0.05 + (i % 10) / 10.0;
+	}
+
+}
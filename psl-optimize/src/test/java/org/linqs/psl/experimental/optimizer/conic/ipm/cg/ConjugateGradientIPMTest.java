@@ -17,10 +17,20 @@
  */
 package org.linqs.psl.experimental.optimizer.conic.ipm.cg;
 
+import static org.junit.Assert.assertTrue;
+
 import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolver;
 import org.linqs.psl.experimental.optimizer.conic.ipm.cg.ConjugateGradientIPM;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgramSnapshot;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.MappedConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
 import org.linqs.psl.experimental.optimizer.conic.ConicProgramSolverContractTest;
 
+import org.junit.Test;
+
+import java.io.File;
 import java.util.List;
 import java.util.Vector;
 
@@ -31,4 +41,70 @@ public class ConjugateGradientIPMTest extends ConicProgramSolverContractTest {
 		solvers.add(new ConjugateGradientIPM());
 		return solvers;
 	}
+
+	/** Tests solving a memory-mapped snapshot of a program. */
+	@Test
+	public void testSolveMapped() throws Exception {
+		/* Minimizes x1 + 2 x2 + 3 x3 such that x1 + x2 + x3 = 1 and x1 + x4 = 0.5 */
+		ConicProgram program = new ConicProgram();
+		Variable x1 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x2 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x3 = program.createNonNegativeOrthantCone().getVariable();
+		Variable x4 = program.createNonNegativeOrthantCone().getVariable();
+		x1.setObjectiveCoefficient(1.0);
+		x2.setObjectiveCoefficient(2.0);
+		x3.setObjectiveCoefficient(3.0);
+		x4.setObjectiveCoefficient(0.0);
+
+		LinearConstraint sum = program.createConstraint();
+		sum.setVariable(x1, 1.0);
+		sum.setVariable(x2, 1.0);
+		sum.setVariable(x3, 1.0);
+		sum.setConstrainedValue(1.0);
+		LinearConstraint bound = program.createConstraint();
+		bound.setVariable(x1, 1.0);
+		bound.setVariable(x4, 1.0);
+		bound.setConstrainedValue(0.5);
+
+		/* Starts at an interior point with w = (0, -1) and s = c - A^T w */
+		program.checkOutMatrices();
+		program.getX().set(program.getIndex(x1), 0.25);
+		program.getX().set(program.getIndex(x2), 0.375);
+		program.getX().set(program.getIndex(x3), 0.375);
+		program.getX().set(program.getIndex(x4), 0.25);
+		program.getW().set(program.getIndex(sum), 0.0);
+		program.getW().set(program.getIndex(bound), -1.0);
+		program.getS().set(program.getIndex(x1), 2.0);
+		program.getS().set(program.getIndex(x2), 2.0);
+		program.getS().set(program.getIndex(x3), 3.0);
+		program.getS().set(program.getIndex(x4), 1.0);
+		program.checkInMatrices();
+
+		File file = File.createTempFile("conicprogram", ".snapshot");
+		try {
+			ConicProgramSnapshot.write(program, file);
+			MappedConicProgram mapped = new MappedConicProgram(file);
+			try {
+				ConjugateGradientIPM solver = new ConjugateGradientIPM();
+				solver.solve(mapped);
+
+				assertTrue(Math.abs(mapped.getC().zDotProduct(mapped.getX()) - 1.5) < 0.001);
+				assertTrue(mapped.getPrimalInfeasibility() < 10e-8);
+				assertTrue(mapped.getDualInfeasibility() < 10e-8);
+				assertTrue(solver.getStatistics().getIterations() > 0);
+				assertTrue(solver.getStatistics().getCGIterations() > 0);
+
+				/* The gap is relative to the dual objective, not the complementarity */
+				double dualObjective = mapped.getB().zDotProduct(mapped.getW());
+				double gap = Math.abs(mapped.getC().zDotProduct(mapped.getX()) - dualObjective) / (1 + Math.abs(dualObjective));
+				assertTrue(Math.abs(solver.getStatistics().getGap() - gap) < 10e-12);
+			}
+			finally {
+				mapped.close();
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
 }
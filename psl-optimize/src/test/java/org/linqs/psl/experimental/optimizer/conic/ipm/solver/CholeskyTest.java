@@ -0,0 +1,73 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+
+/**
+ * Tests {@link Cholesky}.
+ */
+public class CholeskyTest {
+	
+	private static final double TOLERANCE = 10e-10;
+	
+	/** Tests that matrices with the same pattern share a symbolic analysis. */
+	@Test
+	public void testReuseAnalysis() {
+		Cholesky cholesky = new Cholesky();
+		cholesky.setConicProgram(null);
+		
+		for (int i = 1; i <= 3; i++) {
+			SparseCCDoubleMatrix2D A = getTridiagonal(4, 2.0 * i);
+			DoubleMatrix1D b = new DenseDoubleMatrix1D(new double[] {1.0, 2.0, 3.0, 4.0});
+			DoubleMatrix1D x = b.copy();
+			cholesky.setA(A);
+			cholesky.solve(x);
+			
+			DoubleMatrix1D r = A.zMult(x, b.copy(), 1.0, -1.0, false);
+			assertTrue(Math.sqrt(r.zDotProduct(r)) < TOLERANCE);
+		}
+		assertTrue(cholesky.getNumAnalyses() == 1);
+		
+		cholesky.setA(getTridiagonal(5, 3.0));
+		assertTrue(cholesky.getNumAnalyses() == 2);
+		
+		cholesky.setConicProgram(null);
+		cholesky.setA(getTridiagonal(5, 4.0));
+		assertTrue(cholesky.getNumAnalyses() == 2);
+	}
+	
+	private SparseCCDoubleMatrix2D getTridiagonal(int n, double diagonal) {
+		SparseDoubleMatrix2D A = new SparseDoubleMatrix2D(n, n);
+		for (int i = 0; i < n; i++) {
+			A.setQuick(i, i, diagonal);
+			if (i > 0) {
+				A.setQuick(i, i-1, -1.0);
+				A.setQuick(i-1, i, -1.0);
+			}
+		}
+		return A.getColumnCompressed(true);
+	}
+}
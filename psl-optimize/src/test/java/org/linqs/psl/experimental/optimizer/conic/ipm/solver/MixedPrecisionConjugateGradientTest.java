@@ -0,0 +1,113 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.ipm.solver;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.linqs.psl.experimental.optimizer.conic.SolutionStatus;
+import org.linqs.psl.experimental.optimizer.conic.SolverStatistics;
+import org.linqs.psl.experimental.optimizer.conic.ipm.HomogeneousIPM;
+import org.linqs.psl.experimental.optimizer.conic.ipm.HomogeneousIPMContractTest;
+import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
+import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
+import org.linqs.psl.experimental.optimizer.conic.program.Variable;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.DenseDoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.colt.matrix.tdouble.impl.SparseDoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
+
+/**
+ * Tests {@link MixedPrecisionConjugateGradient}.
+ */
+public class MixedPrecisionConjugateGradientTest {
+	
+	/** Tests that refinement reaches a residual below single precision. */
+	@Test
+	public void testRefinement() {
+		MixedPrecisionConjugateGradient solver = new MixedPrecisionConjugateGradient();
+		SolverStatistics statistics = new SolverStatistics();
+		solver.setStatistics(statistics);
+		solver.setConicProgram(null);
+		
+		int m = 50;
+		int n = 120;
+		SparseDoubleMatrix2D builder = new SparseDoubleMatrix2D(m, n);
+		DoubleMatrix1D D = new DenseDoubleMatrix1D(n);
+		double[] values = new double[m];
+		for (int j = 0; j < n; j++) {
+			builder.setQuick(j % m, j, 1.0 + 0.1 * (j % 7));
+			builder.setQuick((j * 3 + 1) % m, j, -1.0 / 3.0);
+			D.setQuick(j, 0.5 + 0.01 * j);
+		}
+		for (int i = 0; i < m; i++)
+			values[i] = Math.sin(i) + 1.0 / 7.0;
+		SparseCCDoubleMatrix2D A = builder.getColumnCompressed(true);
+		DoubleMatrix1D b = new DenseDoubleMatrix1D(values);
+		DoubleMatrix1D x = b.copy();
+		
+		solver.setConstraintMatrix(A);
+		solver.setScaling(D);
+		solver.solve(x);
+		
+		DoubleMatrix1D ADATx = A.zMult(A.zMult(x, null, 1.0, 0.0, true).assign(D, DoubleFunctions.mult), null);
+		DoubleMatrix1D r = ADATx.assign(b, DoubleFunctions.minus);
+		double bNorm = Math.sqrt(b.zDotProduct(b));
+		assertTrue(Math.sqrt(r.zDotProduct(r)) <= MixedPrecisionConjugateGradient.CG_REL_TOL_DEFAULT * bNorm);
+		assertTrue(statistics.getCGIterations() > 0);
+	}
+	
+	/**
+	 * Tests that the HomogeneousIPM solves a linear program with this solver
+	 * as with the default one.
+	 */
+	@Test
+	public void testHomogeneousIPM() {
+		ConicProgram program = new ConicProgram();
+		Variable[] vars = new Variable[6];
+		for (int i = 0; i < vars.length; i++) {
+			vars[i] = program.createNonNegativeOrthantCone().getVariable();
+			vars[i].setObjectiveCoefficient(1.0 + i);
+		}
+		for (int i = 0; i < 3; i++) {
+			LinearConstraint con = program.createConstraint();
+			con.setVariable(vars[i], 1.0);
+			con.setVariable(vars[i+3], 1.0);
+			con.setConstrainedValue(1.0 + i);
+		}
+		
+		HomogeneousIPM ipm = HomogeneousIPMContractTest.getSolver(
+				HomogeneousIPM.NORMAL_SYS_SOLVER_KEY, MixedPrecisionConjugateGradient.class.getName(),
+				HomogeneousIPM.DUALIZE_KEY, false);
+		ipm.setConicProgram(program);
+		ipm.solve();
+		assertTrue(ipm.getStatus() == SolutionStatus.Optimal);
+		assertTrue(ipm.getStatistics().getCGIterations() > 0);
+		double[] mixed = new double[vars.length];
+		for (int i = 0; i < vars.length; i++)
+			mixed[i] = vars[i].getValue();
+		
+		ipm = new HomogeneousIPM();
+		ipm.setConicProgram(program);
+		ipm.solve();
+		for (int i = 0; i < vars.length; i++)
+			assertTrue(Math.abs(vars[i].getValue() - mixed[i]) < 1e-4);
+	}
+}
@@ -19,8 +19,14 @@ package org.linqs.psl.experimental.optimizer.conic.program;
 
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.linqs.psl.config.Config;
 import org.linqs.psl.experimental.optimizer.conic.program.Cone;
 import org.linqs.psl.experimental.optimizer.conic.program.ConicProgram;
 import org.linqs.psl.experimental.optimizer.conic.program.LinearConstraint;
@@ -28,6 +34,8 @@ import org.linqs.psl.experimental.optimizer.conic.program.SecondOrderCone;
 import org.linqs.psl.experimental.optimizer.conic.program.Variable;
 
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.impl.SparseCCDoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
 
 /**
  * Tests {@link ConicProgram}. 
@@ -395,7 +403,140 @@ public class ConicProgramTest {
 		
 		assertTrue(program.getC().cardinality() == 3);
 	}
-	
+
+	/** Tests that A matches the coefficients of the linear constraints. */
+	@Test
+	public void testAssembleA() {
+		defineSOCP();
+
+		program.checkOutMatrices();
+		verifyA();
+	}
+
+	/** Tests that variables and constraints are indexed in order of creation. */
+	@Test
+	public void testCreationOrdering() {
+		defineSOCP();
+
+		program.checkOutMatrices();
+
+		for (Variable v1 : program.getVarMap().keySet())
+			for (Variable v2 : program.getVarMap().keySet())
+				assertTrue((v1.id < v2.id) == (program.getIndex(v1) < program.getIndex(v2)));
+		for (LinearConstraint lc1 : program.getConstraints())
+			for (LinearConstraint lc2 : program.getConstraints())
+				assertTrue((lc1.id < lc2.id) == (program.getIndex(lc1) < program.getIndex(lc2)));
+	}
+
+	/** Tests checking out matrices with a minimum degree ordering. */
+	@Test
+	public void testMinimumDegreeOrdering() {
+		defineSOCP();
+
+		program.setOrdering(MatrixOrdering.MinimumDegree);
+		program.checkOutMatrices();
+		verifyA();
+
+		boolean[] used = new boolean[program.getNumLinearConstraints()];
+		for (LinearConstraint lc : program.getConstraints()) {
+			assertTrue(!used[program.getIndex(lc)]);
+			used[program.getIndex(lc)] = true;
+			assertTrue(program.getB().get(program.getIndex(lc)) == lc.getConstrainedValue());
+		}
+	}
+
+	private void verifyA() {
+		SparseCCDoubleMatrix2D A = program.getA();
+
+		int nnz = 0;
+		for (LinearConstraint con : program.getConstraints()) {
+			for (Map.Entry<Variable, Double> e : con.getVariables().entrySet()) {
+				assertTrue(A.getQuick(program.getIndex(con), program.getIndex(e.getKey())) == e.getValue());
+				nnz++;
+			}
+		}
+		assertTrue(A.cardinality() == nnz);
+
+		int[] colPtr = A.getColumnPointers();
+		int[] rowIndexes = A.getRowIndexes();
+		for (int col = 0; col < A.columns(); col++)
+			for (int k = colPtr[col] + 1; k < colPtr[col+1]; k++)
+				assertTrue(rowIndexes[k-1] < rowIndexes[k]);
+	}
+
+	/** Tests creating cones and constraints in batches. */
+	@Test
+	public void testCreateBatch() {
+		final List<ConicProgramEvent> events = new ArrayList<ConicProgramEvent>();
+		program.registerForConicProgramEvents(new ConicProgramListener() {
+			@Override
+			public void notify(ConicProgram sender, ConicProgramEvent event, Entity entity, Object... data) {
+				events.add(event);
+			}
+		});
+
+		List<NonNegativeOrthantCone> nnocs = program.createNonNegativeOrthantCones(3);
+		List<SecondOrderCone> socs = program.createSecondOrderCones(2, 3);
+		Variable[] vars = new Variable[] {
+				nnocs.get(0).getVariable(), nnocs.get(1).getVariable(),
+				nnocs.get(1).getVariable(), nnocs.get(2).getVariable(), socs.get(0).getNthVariable()};
+		List<LinearConstraint> cons = program.createConstraints(new int[] {0, 2, 5},
+				vars, new double[] {1.0, -1.0, 1.0, 2.0, 3.0}, new double[] {0.5, 1.5});
+
+		assertTrue(events.size() == 3);
+		for (ConicProgramEvent event : events)
+			assertTrue(event == ConicProgramEvent.BatchCreated);
+
+		assertTrue(program.getNumNNOC() == 3);
+		assertTrue(program.gtNumSOC() == 2);
+		assertTrue(program.getNumVariables() == 9);
+		assertTrue(program.getNumLinearConstraints() == 2);
+
+		assertTrue(cons.get(0).getVariables().size() == 2);
+		assertTrue(cons.get(0).getVariables().get(vars[1]) == -1.0);
+		assertTrue(cons.get(0).getConstrainedValue() == 0.5);
+		assertTrue(cons.get(1).getVariables().size() == 3);
+		assertTrue(cons.get(1).getVariables().get(vars[4]) == 3.0);
+		assertTrue(cons.get(1).getConstrainedValue() == 1.5);
+		assertTrue(vars[1].getLinearConstraints().size() == 2);
+
+		program.checkOutMatrices();
+		verifyA();
+	}
+
+	/** Tests checking out matrices again after only changing values. */
+	@Test
+	public void testCheckOutChangedValuesSOCP() {
+		defineSOCP();
+		LinearConstraint con = program.createConstraint();
+		con.setVariable(x1, 1.0);
+		con.setConstrainedValue(2.0);
+
+		program.checkOutMatrices();
+		SparseCCDoubleMatrix2D A = program.getA();
+		program.checkInMatrices();
+
+		x1.setObjectiveCoefficient(5.0);
+		con.setConstrainedValue(3.0);
+		con.setVariable(x1, 4.0);
+
+		program.checkOutMatrices();
+
+		assertTrue(program.getA() == A);
+		assertTrue(program.getA().getQuick(program.getIndex(con), program.getIndex(x1)) == 4.0);
+		assertTrue(program.getB().get(program.getIndex(con)) == 3.0);
+		assertTrue(program.getC().get(program.getIndex(x1)) == 5.0);
+		assertTrue(program.getC().cardinality() == 4);
+
+		program.checkInMatrices();
+		con.setVariable(x2, 1.0);
+		program.checkOutMatrices();
+
+		assertTrue(program.getA() != A);
+		assertTrue(program.getA().getQuick(program.getIndex(con), program.getIndex(x1)) == 4.0);
+		assertTrue(program.getA().getQuick(program.getIndex(con), program.getIndex(x2)) == 1.0);
+	}
+
 	/** Tests adding the same variable twice to a linear constraint. */
 	@Test
 	public void testAddDuplicateVariableToConstraint() {
@@ -408,5 +549,234 @@ public class ConicProgramTest {
 		assertTrue(lc.getVariables().size() == 1);
 		assertTrue(lc.getVariables().get(x) == -1.0);
 	}
+	
+	/** Tests checking out matrices for a compact second-order cone program. */
+	@Test
+	public void testCheckOutCompactSOCP() {
+		program = new ConicProgram(true);
+		defineSOCP();
+		
+		assertTrue(program.isCompact());
+		
+		program.checkOutMatrices();
+		
+		assertTrue(program.getA().rows() == 14);
+		assertTrue(program.getA().columns() == 22);
+		assertTrue(program.getA().cardinality() == 32);
+		assertTrue(program.getX().size() == 22);
+		assertTrue(program.getB().size() == 14);
+		assertTrue(program.getC().size() == 22);
+		
+		assertTrue(program.getC().cardinality() == 3);
+	}
+	
+	/** Tests changing and removing coefficients in a compact program. */
+	@Test
+	public void testCompactConstraintCoefficients() {
+		program = new ConicProgram(true);
+		Variable x = program.createNonNegativeOrthantCone().getVariable();
+		Variable y = program.createNonNegativeOrthantCone().getVariable();
+		LinearConstraint lc = program.createConstraint();
+		
+		lc.setVariable(x, 1.0);
+		lc.setVariable(y, 2.0);
+		lc.setVariable(x, -1.0);
+		
+		assertTrue(lc.getVariables().size() == 2);
+		assertTrue(lc.getVariables().get(x) == -1.0);
+		assertTrue(lc.getVariables().get(y) == 2.0);
+		assertTrue(x.getLinearConstraints().contains(lc));
+		assertTrue(y.getLinearConstraints().size() == 1);
+		
+		lc.setVariable(y, 0.0);
+		
+		assertTrue(lc.getVariables().size() == 1);
+		assertTrue(!lc.getVariables().containsKey(y));
+		assertTrue(y.getLinearConstraints().isEmpty());
+		
+		x.getCone().delete();
+		
+		assertTrue(lc.getVariables().isEmpty());
+		assertTrue(program.getNumNNOC() == 1);
+		
+		Variable z = program.createNonNegativeOrthantCone().getVariable();
+		lc.setVariable(z, 3.0);
+		
+		assertTrue(lc.getVariables().get(z) == 3.0);
+		assertTrue(z.getValue() == 0.5);
+	}
+	
+	/** Tests infeasibilities computed on several threads against direct computations. */
+	@Test
+	public void testInfeasibilityWithThreads() {
+		Config.setProperty(ConicProgram.THREADS_KEY, 4);
+		try {
+			program = new ConicProgram();
+		}
+		finally {
+			Config.clearProperty(ConicProgram.THREADS_KEY);
+		}
+		
+		int n = 4000;
+		Variable[] vars = new Variable[n];
+		for (int i = 0; i < n; i++) {
+			vars[i] = program.createNonNegativeOrthantCone().getVariable();
+			vars[i].setObjectiveCoefficient(1.0 + (i % 3));
+		}
+		for (int i = 0; i < n / 2; i++) {
+			LinearConstraint lc = program.createConstraint();
+			lc.setVariable(vars[i], 1.0);
+			lc.setVariable(vars[(7 * i + 3) % n], -0.5);
+			lc.setVariable(vars[n - 1 - i], 2.0);
+			lc.setConstrainedValue(0.1 * (i % 11));
+		}
+		
+		program.checkOutMatrices();
+		SparseCCDoubleMatrix2D A = program.getA();
+		DoubleMatrix1D primal = A.zMult(program.getX(), null);
+		primal.assign(program.getB(), DoubleFunctions.minus);
+		DoubleMatrix1D dual = A.zMult(program.getW(), null, 1.0, 0.0, true);
+		dual.assign(program.getS(), DoubleFunctions.plus).assign(program.getC(), DoubleFunctions.minus);
+		
+		assertTrue(Math.abs(program.getPrimalInfeasibility() - Math.sqrt(primal.zDotProduct(primal))) < 1e-9);
+		assertTrue(Math.abs(program.getDualInfeasibility() - Math.sqrt(dual.zDotProduct(dual))) < 1e-9);
+		
+		program.getX().setQuick(n / 2, -1.0);
+		assertTrue(program.getPrimalInfeasibility() == Double.POSITIVE_INFINITY);
+		program.checkInMatrices();
+	}
+	
+	/** Tests that deleted entities keep their last values after their slots are reused. */
+	@Test
+	public void testValuesAfterDelete() {
+		program = new ConicProgram(true);
+		Variable x = program.createNonNegativeOrthantCone().getVariable();
+		LinearConstraint lc = program.createConstraint();
+		x.setObjectiveCoefficient(2.0);
+		lc.setVariable(x, 1.0);
+		lc.setConstrainedValue(3.0);
+		
+		lc.delete();
+		x.getCone().delete();
+		Variable y = program.createNonNegativeOrthantCone().getVariable();
+		LinearConstraint lc2 = program.createConstraint();
+		y.setObjectiveCoefficient(5.0);
+		lc2.setConstrainedValue(7.0);
+		
+		assertTrue(x.getValue() == 0.5);
+		assertTrue(x.getDualValue() == 0.5);
+		assertTrue(x.getObjectiveCoefficient() == 2.0);
+		assertTrue(lc.getConstrainedValue() == 3.0);
+		assertTrue(lc.getLagrange() == 0.0);
+	}
+	
+	/** Tests writing a program to a snapshot and reading it back. */
+	@Test
+	public void testSnapshot() throws Exception {
+		defineSOCP();
+		program.checkOutMatrices();
+		program.getX().set(0, 0.25);
+		program.getW().set(1, -2.0);
+		program.checkInMatrices();
+		
+		File file = File.createTempFile("conicprogram", ".snapshot");
+		try {
+			ConicProgramSnapshot.write(program, file);
+			ConicProgram loaded = ConicProgramSnapshot.read(file);
+			
+			assertTrue(loaded.getNumNNOC() == program.getNumNNOC());
+			assertTrue(loaded.gtNumSOC() == program.gtNumSOC());
+			assertTrue(loaded.getNumLinearConstraints() == program.getNumLinearConstraints());
+			
+			program.checkOutMatrices();
+			loaded.checkOutMatrices();
+			assertTrue(loaded.getA().equals(program.getA()));
+			assertTrue(loaded.getB().equals(program.getB()));
+			assertTrue(loaded.getC().equals(program.getC()));
+			assertTrue(loaded.getX().equals(program.getX()));
+			assertTrue(loaded.getW().equals(program.getW()));
+			assertTrue(loaded.getS().equals(program.getS()));
+			
+			program = loaded;
+			verifyA();
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/** Tests that a memory-mapped snapshot matches the program it was written from. */
+	@Test
+	public void testMappedProgram() throws Exception {
+		defineSOCP();
+		
+		File file = File.createTempFile("conicprogram", ".snapshot");
+		try {
+			ConicProgramSnapshot.write(program, file);
+			MappedConicProgram mapped = new MappedConicProgram(file);
+			try {
+				program.checkOutMatrices();
+				SparseCCDoubleMatrix2D A = program.getA();
+				MappedCCDoubleMatrix2D mappedA = mapped.getA();
+				
+				assertTrue(mappedA.rows() == A.rows());
+				assertTrue(mappedA.columns() == A.columns());
+				assertTrue(mappedA.getNumNonZeros() == A.cardinality());
+				for (int i = 0; i < A.rows(); i++)
+					for (int j = 0; j < A.columns(); j++)
+						assertTrue(mappedA.getQuick(i, j) == A.getQuick(i, j));
+				
+				assertTrue(mappedA.zMult(program.getX(), null).equals(A.zMult(program.getX(), null)));
+				assertTrue(mappedA.zMult(program.getW(), null, 2.0, 0.0, true).equals(
+						A.zMult(program.getW(), null, 2.0, 0.0, true)));
+				
+				assertTrue(Math.abs(mapped.getPrimalInfeasibility() - program.getPrimalInfeasibility()) < 1e-9);
+				assertTrue(Math.abs(mapped.getDualInfeasibility() - program.getDualInfeasibility()) < 1e-9);
+			}
+			finally {
+				mapped.close();
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	/** Tests that the change journal records the most significant change. */
+	@Test
+	public void testJournal() {
+		assertTrue(program.getJournal() == null);
+		program.setJournaling(true);
+		ChangeJournal journal = program.getJournal();
+		assertTrue(journal.isEmpty());
+		
+		Variable x = program.createNonNegativeOrthantCone().getVariable();
+		program.createNonNegativeOrthantCones(2);
+		LinearConstraint lc = program.createConstraint();
+		lc.setVariable(x, 1.0);
+		assertTrue(journal.getLevel() == ChangeJournal.Level.Structure);
+		assertTrue(journal.getNetConesCreated() == 3);
+		assertTrue(journal.getNetConstraintsCreated() == 1);
+		
+		journal.clear();
+		assertTrue(journal.isEmpty());
+		x.setObjectiveCoefficient(2.0);
+		lc.setConstrainedValue(1.0);
+		assertTrue(journal.getLevel() == ChangeJournal.Level.Values);
+		
+		lc.setVariable(x, 3.0);
+		assertTrue(journal.getLevel() == ChangeJournal.Level.Coefficients);
+		assertTrue(journal.getCount(ConicProgramEvent.ConCoeffChanged) == 1);
+		
+		program.checkOutMatrices();
+		program.checkInMatrices();
+		assertTrue(journal.getLevel() == ChangeJournal.Level.Coefficients);
+		
+		lc.delete();
+		assertTrue(journal.getLevel() == ChangeJournal.Level.Structure);
+		assertTrue(journal.getNetConstraintsCreated() == -1);
+		
+		program.setJournaling(false);
+		assertTrue(program.getJournal() == null);
+	}
 }
-
@@ -0,0 +1,123 @@
+/*
+ * This file is part of the PSL software.
+ * Copyright 2011-2015 University of Maryland
+ * Copyright 2013-2018 The Regents of the University of California
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.linqs.psl.experimental.optimizer.conic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class WorkerPoolTest {
+	
+	@Test
+	public void testForEachCoversRange() {
+		WorkerPool pool = new WorkerPool(4);
+		try {
+			for (int n : new int[] {0, 1, 511, 2048, 5000}) {
+				final int[] visits = new int[n];
+				final int[] lastEnd = new int[pool.getNumThreads() + 1];
+				pool.forEach(n, new WorkerPool.RangeTask() {
+					@Override
+					public void run(int chunk, int start, int end) {
+						lastEnd[chunk + 1] = end;
+						for (int i = start; i < end; i++)
+							visits[i]++;
+					}
+				});
+				
+				for (int i = 0; i < n; i++)
+					assertEquals(1, visits[i]);
+				assertEquals(n, lastEnd[pool.getNumChunks(n)]);
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testForEachRethrows() {
+		WorkerPool pool = new WorkerPool(2);
+		try {
+			pool.forEach(4096, new WorkerPool.RangeTask() {
+				@Override
+				public void run(int chunk, int start, int end) {
+					if (chunk == 1)
+						throw new IllegalStateException();
+				}
+			});
+			assertTrue(false);
+		}
+		catch (IllegalStateException e) {
+			/* Expected */
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testSharedPools() {
+		WorkerPool pool = WorkerPool.getShared(2);
+		assertTrue(pool == WorkerPool.getShared(2));
+		assertTrue(pool != WorkerPool.getShared(3));
+		assertEquals(2, pool.getNumThreads());
+		
+		try {
+			pool.shutdown();
+			assertTrue(false);
+		}
+		catch (IllegalStateException e) {
+			/* Expected */
+		}
+	}
+	
+	@Test
+	public void testRunAllRunsEachTaskOnce() {
+		WorkerPool pool = new WorkerPool(3);
+		try {
+			for (int n : new int[] {0, 1, 2, 10}) {
+				final AtomicIntegerArray runs = new AtomicIntegerArray(n);
+				List<Runnable> tasks = new ArrayList<Runnable>();
+				for (int i = 0; i < n; i++) {
+					final int task = i;
+					tasks.add(new Runnable() {
+						@Override
+						public void run() {
+							runs.incrementAndGet(task);
+						}
+					});
+				}
+				
+				/* The same pool runs several batches */
+				for (int batch = 1; batch <= 3; batch++) {
+					pool.runAll(tasks);
+					for (int i = 0; i < n; i++)
+						assertEquals(batch, runs.get(i));
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}